@@ -1,21 +1,23 @@
-# Add project specific ProGuard rules here.
-# You can control the set of applied configuration files using the
-# proguardFiles setting in build.gradle.
-#
-# For more details, see
-#   http://developer.android.com/guide/developing/tools/proguard.html
-
-# If your project uses WebView with JS, uncomment the following
-# and specify the fully qualified class name to the JavaScript interface
-# class:
-#-keepclassmembers class fqcn.of.javascript.interface.for.webview {
-#   public *;
-#}
+# Rules for the release builds, which are shrunk and obfuscated, see
+# app/build.gradle. The sharing APK needs to be small, so only what is looked
+# up by name is kept.
 
 # Uncomment this to preserve the line number information for
 # debugging stack traces.
 #-keepattributes SourceFile,LineNumberTable
 
-# If you keep the line number information, uncomment this to
-# hide the original source file name.
-#-renamesourcefileattribute SourceFile
+# NanoHTTPD loads its MIME types from META-INF/nanohttpd by absolute name, so
+# only its class names are kept, which also keeps its log output readable
+-keepnames class fi.iki.elonen.**
+-dontwarn fi.iki.elonen.**
+
+# jsoup loads its entity tables as resources relative to Entities, so the
+# class and its package must not be renamed or merged
+-keep class org.jsoup.nodes.Entities
+-keep class org.jsoup.nodes.Entities$EscapeMode { *; }
+-keeppackagenames org.jsoup.nodes
+-dontwarn org.jsoup.**
+
+# The FileProvider is only referenced from the manifest, and reads its paths
+# from the meta-data there, see res/raw/keep.xml for the resource
+-keep class androidx.core.content.FileProvider
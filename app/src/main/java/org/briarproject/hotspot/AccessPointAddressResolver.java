@@ -0,0 +1,136 @@
+package org.briarproject.hotspot;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.wifi.p2p.WifiP2pGroup;
+import android.net.wifi.p2p.WifiP2pInfo;
+
+import java.net.InetAddress;
+import java.util.logging.Logger;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.UiThread;
+
+import static android.net.wifi.p2p.WifiP2pManager.EXTRA_WIFI_P2P_GROUP;
+import static android.net.wifi.p2p.WifiP2pManager.EXTRA_WIFI_P2P_INFO;
+import static android.net.wifi.p2p.WifiP2pManager.WIFI_P2P_CONNECTION_CHANGED_ACTION;
+import static java.util.logging.Level.INFO;
+import static java.util.logging.Logger.getLogger;
+import static org.briarproject.hotspot.server.NetworkUtils.getIpv4Address;
+
+/**
+ * Keeps track of the address of the access point interface, so it doesn't
+ * need to be looked up by enumerating all network interfaces.
+ * <p>
+ * The address is updated from the (sticky) broadcasts that are sent when the
+ * Wi-Fi Direct group or the soft AP used by the local-only hotspot change.
+ * Only the interface named in the broadcast is queried.
+ */
+class AccessPointAddressResolver {
+
+	interface AddressListener {
+
+		@UiThread
+		void onAccessPointAddressChanged(@Nullable InetAddress address);
+
+	}
+
+	private static final Logger LOG =
+			getLogger(AccessPointAddressResolver.class.getName());
+
+	// Hidden constants of WifiManager, sent with the soft AP state broadcast
+	private static final String WIFI_AP_STATE_CHANGED_ACTION =
+			"android.net.wifi.WIFI_AP_STATE_CHANGED";
+	private static final String EXTRA_WIFI_AP_STATE = "wifi_state";
+	private static final String EXTRA_WIFI_AP_INTERFACE_NAME =
+			"wifi_ap_interface_name";
+	private static final int WIFI_AP_STATE_ENABLED = 13;
+
+	private final Context ctx;
+	private final AddressListener listener;
+
+	@Nullable
+	private volatile InetAddress p2pAddress = null, softApAddress = null;
+	private boolean registered = false;
+
+	AccessPointAddressResolver(Context ctx, AddressListener listener) {
+		this.ctx = ctx;
+		this.listener = listener;
+	}
+
+	@UiThread
+	void start() {
+		if (registered) return;
+		IntentFilter filter = new IntentFilter();
+		filter.addAction(WIFI_P2P_CONNECTION_CHANGED_ACTION);
+		filter.addAction(WIFI_AP_STATE_CHANGED_ACTION);
+		ctx.registerReceiver(receiver, filter);
+		registered = true;
+	}
+
+	@UiThread
+	void stop() {
+		if (!registered) return;
+		ctx.unregisterReceiver(receiver);
+		registered = false;
+		p2pAddress = null;
+		softApAddress = null;
+	}
+
+	/**
+	 * @return the cached address of the access point interface or null if
+	 * it is not known (yet).
+	 */
+	@Nullable
+	InetAddress getAddress() {
+		InetAddress address = p2pAddress;
+		return address == null ? softApAddress : address;
+	}
+
+	private final BroadcastReceiver receiver = new BroadcastReceiver() {
+
+		@Override
+		@UiThread
+		public void onReceive(Context context, Intent intent) {
+			InetAddress before = getAddress();
+			if (WIFI_P2P_CONNECTION_CHANGED_ACTION.equals(intent.getAction())) {
+				p2pAddress = getP2pAddress(intent);
+			} else if (WIFI_AP_STATE_CHANGED_ACTION.equals(
+					intent.getAction())) {
+				softApAddress = getSoftApAddress(intent);
+			}
+			InetAddress after = getAddress();
+			if (after == null ? before != null : !after.equals(before)) {
+				if (LOG.isLoggable(INFO))
+					LOG.info("Access point address changed: " + after);
+				listener.onAccessPointAddressChanged(after);
+			}
+		}
+
+	};
+
+	@Nullable
+	private InetAddress getP2pAddress(Intent intent) {
+		WifiP2pInfo info = intent.getParcelableExtra(EXTRA_WIFI_P2P_INFO);
+		if (info == null || !info.groupFormed || !info.isGroupOwner) {
+			return null;
+		}
+		WifiP2pGroup group = intent.getParcelableExtra(EXTRA_WIFI_P2P_GROUP);
+		if (group != null && group.getInterface() != null) {
+			InetAddress address = getIpv4Address(group.getInterface());
+			if (address != null) return address;
+		}
+		return info.groupOwnerAddress;
+	}
+
+	@Nullable
+	private InetAddress getSoftApAddress(Intent intent) {
+		int state = intent.getIntExtra(EXTRA_WIFI_AP_STATE, -1);
+		String iface = intent.getStringExtra(EXTRA_WIFI_AP_INTERFACE_NAME);
+		if (state != WIFI_AP_STATE_ENABLED || iface == null) return null;
+		return getIpv4Address(iface);
+	}
+
+}
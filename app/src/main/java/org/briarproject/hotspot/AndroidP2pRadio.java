@@ -0,0 +1,169 @@
+package org.briarproject.hotspot;
+
+import android.content.Context;
+import android.net.wifi.WifiManager;
+import android.net.wifi.WifiManager.WifiLock;
+import android.net.wifi.p2p.WifiP2pConfig;
+import android.net.wifi.p2p.WifiP2pDevice;
+import android.net.wifi.p2p.WifiP2pGroup;
+import android.net.wifi.p2p.WifiP2pManager;
+import android.net.wifi.p2p.WifiP2pManager.ActionListener;
+import android.net.wifi.p2p.WifiP2pManager.Channel;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import androidx.annotation.Nullable;
+
+import static android.content.Context.WIFI_P2P_SERVICE;
+import static android.content.Context.WIFI_SERVICE;
+import static android.net.wifi.WifiManager.WIFI_MODE_FULL;
+import static android.net.wifi.WifiManager.WIFI_MODE_FULL_HIGH_PERF;
+import static android.net.wifi.p2p.WifiP2pConfig.GROUP_OWNER_BAND_2GHZ;
+import static android.net.wifi.p2p.WifiP2pConfig.GROUP_OWNER_BAND_5GHZ;
+import static android.os.Build.VERSION.SDK_INT;
+import static org.briarproject.hotspot.HotspotManager.UNKNOWN_FREQUENCY;
+
+/**
+ * {@link P2pRadio} backed by the {@link WifiP2pManager} and
+ * {@link WifiManager} system services.
+ */
+class AndroidP2pRadio implements P2pRadio {
+
+	private final Context ctx;
+	private final WifiManager wifiManager;
+	@Nullable
+	private final WifiP2pManager wifiP2pManager;
+	private final String lockTag;
+
+	@Nullable
+	private Channel channel;
+	@Nullable
+	private WifiLock wifiLock;
+
+	AndroidP2pRadio(Context ctx) {
+		this.ctx = ctx;
+		wifiManager = (WifiManager) ctx.getApplicationContext()
+				.getSystemService(WIFI_SERVICE);
+		wifiP2pManager =
+				(WifiP2pManager) ctx.getSystemService(WIFI_P2P_SERVICE);
+		lockTag = ctx.getPackageName() + ":app-sharing-hotspot";
+	}
+
+	@Override
+	public boolean isSupported() {
+		return wifiP2pManager != null;
+	}
+
+	@Override
+	public boolean initialize() {
+		if (wifiP2pManager == null) return false;
+		channel = wifiP2pManager.initialize(ctx, ctx.getMainLooper(), null);
+		return channel != null;
+	}
+
+	@Override
+	public boolean isInitialized() {
+		return channel != null;
+	}
+
+	@Override
+	public void close() {
+		if (channel == null) return;
+		if (SDK_INT >= 27) channel.close();
+		channel = null;
+	}
+
+	@Override
+	public void createGroup(@Nullable String networkName,
+			@Nullable String passphrase, boolean band5Ghz,
+			ActionCallback callback) {
+		if (wifiP2pManager == null || channel == null) return;
+		try {
+			if (SDK_INT >= 29 && networkName != null && passphrase != null) {
+				int band = band5Ghz && wifiManager.is5GHzBandSupported() ?
+						GROUP_OWNER_BAND_5GHZ : GROUP_OWNER_BAND_2GHZ;
+				WifiP2pConfig config = new WifiP2pConfig.Builder()
+						.setGroupOperatingBand(band)
+						.setNetworkName(networkName)
+						.setPassphrase(passphrase)
+						.build();
+				wifiP2pManager.createGroup(channel, config,
+						toActionListener(callback));
+			} else {
+				wifiP2pManager.createGroup(channel,
+						toActionListener(callback));
+			}
+		} catch (SecurityException e) {
+			// this should never happen, because we request permissions before
+			throw new AssertionError(e);
+		}
+	}
+
+	@Override
+	public void removeGroup(ActionCallback callback) {
+		if (wifiP2pManager == null || channel == null) return;
+		wifiP2pManager.removeGroup(channel, toActionListener(callback));
+	}
+
+	@Override
+	public void requestGroupInfo(GroupInfoCallback callback) {
+		if (wifiP2pManager == null || channel == null) return;
+		try {
+			wifiP2pManager.requestGroupInfo(channel, group ->
+					callback.onGroupInfoAvailable(toGroupInfo(group)));
+		} catch (SecurityException e) {
+			throw new AssertionError(e);
+		}
+	}
+
+	@Override
+	public void acquireWifiLock(boolean highPerformance) {
+		// Otherwise a lock from an earlier start would be held for good
+		releaseWifiLock();
+		// WIFI_MODE_FULL has no effect on API >= 29
+		int lockType = highPerformance && SDK_INT >= 29 ?
+				WIFI_MODE_FULL_HIGH_PERF : WIFI_MODE_FULL;
+		wifiLock = wifiManager.createWifiLock(lockType, lockTag);
+		wifiLock.acquire();
+	}
+
+	@Override
+	public void releaseWifiLock() {
+		if (wifiLock == null) return;
+		wifiLock.release();
+		wifiLock = null;
+	}
+
+	private ActionListener toActionListener(ActionCallback callback) {
+		return new ActionListener() {
+
+			@Override
+			public void onSuccess() {
+				callback.onSuccess();
+			}
+
+			@Override
+			public void onFailure(int reason) {
+				callback.onFailure(reason);
+			}
+
+		};
+	}
+
+	@Nullable
+	private GroupInfo toGroupInfo(@Nullable WifiP2pGroup group) {
+		if (group == null) return null;
+		double frequency = UNKNOWN_FREQUENCY;
+		if (SDK_INT >= 29) {
+			frequency = ((double) group.getFrequency()) / 1000;
+		}
+		List<String> clients = new ArrayList<>();
+		for (WifiP2pDevice device : group.getClientList()) {
+			clients.add(device.deviceAddress);
+		}
+		return new GroupInfo(group.getNetworkName(), group.getPassphrase(),
+				frequency, clients);
+	}
+
+}
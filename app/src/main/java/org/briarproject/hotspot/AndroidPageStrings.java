@@ -0,0 +1,64 @@
+package org.briarproject.hotspot;
+
+import android.content.Context;
+
+import org.briarproject.hotspot.server.PageStrings;
+
+/**
+ * Provides the strings of the web pages from the app's resources, so they
+ * are localised like the app.
+ */
+class AndroidPageStrings implements PageStrings {
+
+	private final Context ctx;
+
+	AndroidPageStrings(Context ctx) {
+		this.ctx = ctx;
+	}
+
+	@Override
+	public String get(Key key, Object... formatArgs) {
+		return ctx.getString(getResId(key), formatArgs);
+	}
+
+	private static int getResId(Key key) {
+		switch (key) {
+			case APP_NAME:
+				return R.string.app_name;
+			case DOWNLOAD_TITLE:
+				return R.string.website_download_title;
+			case DOWNLOAD_INTRO:
+				return R.string.website_download_intro;
+			case DOWNLOAD_OUTRO:
+				return R.string.website_download_outro;
+			case TROUBLESHOOTING_TITLE:
+				return R.string.website_troubleshooting_title;
+			case TROUBLESHOOTING_1:
+				return R.string.website_troubleshooting_1;
+			case TROUBLESHOOTING_2_NEW:
+				return R.string.website_troubleshooting_2_new;
+			case TROUBLESHOOTING_2_OLD:
+				return R.string.website_troubleshooting_2_old;
+			case SHARE_LINK:
+				return R.string.website_share_link;
+			case SHARE_TITLE:
+				return R.string.website_share_title;
+			case SHARE_WIFI:
+				return R.string.website_share_wifi;
+			case SHARE_NETWORK_NAME:
+				return R.string.website_share_network_name;
+			case SHARE_PASSWORD:
+				return R.string.website_share_password;
+			case SHARE_DOWNLOAD:
+				return R.string.website_share_download;
+			case APPS_TITLE:
+				return R.string.website_apps_title;
+			case APP_DETAILS:
+				return R.string.website_app_details;
+			case APP_DIGEST:
+				return R.string.website_app_digest;
+		}
+		throw new AssertionError(key);
+	}
+
+}
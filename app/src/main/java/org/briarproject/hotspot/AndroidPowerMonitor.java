@@ -0,0 +1,57 @@
+package org.briarproject.hotspot;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.PowerManager;
+
+import static android.content.Context.POWER_SERVICE;
+import static android.content.Intent.ACTION_BATTERY_CHANGED;
+import static android.os.BatteryManager.EXTRA_LEVEL;
+import static android.os.BatteryManager.EXTRA_PLUGGED;
+import static android.os.BatteryManager.EXTRA_SCALE;
+import static android.os.Build.VERSION.SDK_INT;
+
+/**
+ * A {@link PowerMonitor} backed by the {@link PowerManager} and the sticky
+ * {@link Intent#ACTION_BATTERY_CHANGED} broadcast.
+ */
+class AndroidPowerMonitor implements PowerMonitor {
+
+	private final Context ctx;
+	private final PowerManager powerManager;
+
+	AndroidPowerMonitor(Context ctx) {
+		this.ctx = ctx.getApplicationContext();
+		powerManager = (PowerManager) this.ctx.getSystemService(POWER_SERVICE);
+	}
+
+	@Override
+	public int getThermalStatus() {
+		if (SDK_INT < 29 || powerManager == null) return THERMAL_STATUS_NONE;
+		return powerManager.getCurrentThermalStatus();
+	}
+
+	@Override
+	public int getBatteryPercent() {
+		Intent i = getBatteryStatus();
+		if (i == null) return 100;
+		int level = i.getIntExtra(EXTRA_LEVEL, -1);
+		int scale = i.getIntExtra(EXTRA_SCALE, -1);
+		if (level < 0 || scale <= 0) return 100;
+		return level * 100 / scale;
+	}
+
+	@Override
+	public boolean isCharging() {
+		Intent i = getBatteryStatus();
+		return i != null && i.getIntExtra(EXTRA_PLUGGED, 0) != 0;
+	}
+
+	private Intent getBatteryStatus() {
+		// Registering a null receiver just returns the sticky broadcast
+		return ctx.registerReceiver(null,
+				new IntentFilter(ACTION_BATTERY_CHANGED));
+	}
+
+}
@@ -0,0 +1,44 @@
+package org.briarproject.hotspot;
+
+import android.os.Trace;
+
+import org.briarproject.hotspot.server.Tracer;
+
+import static android.os.Build.VERSION.SDK_INT;
+
+/**
+ * Passes the spans of the {@link Tracer} on to Android's system tracing, so
+ * they show up in systrace and Perfetto next to what the system does.
+ * Async spans are only supported on API 29 and higher.
+ */
+class AndroidTraceBackend implements Tracer.Backend {
+
+	// Longer section names are rejected
+	private static final int MAX_NAME_LENGTH = 127;
+
+	@Override
+	public void beginSection(String name) {
+		if (SDK_INT >= 18) Trace.beginSection(truncate(name));
+	}
+
+	@Override
+	public void endSection() {
+		if (SDK_INT >= 18) Trace.endSection();
+	}
+
+	@Override
+	public void beginAsyncSection(String name, int cookie) {
+		if (SDK_INT >= 29) Trace.beginAsyncSection(truncate(name), cookie);
+	}
+
+	@Override
+	public void endAsyncSection(String name, int cookie) {
+		if (SDK_INT >= 29) Trace.endAsyncSection(truncate(name), cookie);
+	}
+
+	private static String truncate(String name) {
+		if (name.length() <= MAX_NAME_LENGTH) return name;
+		return name.substring(0, MAX_NAME_LENGTH);
+	}
+
+}
@@ -0,0 +1,120 @@
+package org.briarproject.hotspot;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.wifi.WifiManager;
+import android.net.wifi.p2p.WifiP2pManager;
+import android.net.wifi.p2p.WifiP2pManager.Channel;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.UiThread;
+
+import static android.content.Context.WIFI_P2P_SERVICE;
+import static android.content.Context.WIFI_SERVICE;
+import static android.net.wifi.p2p.WifiP2pManager.EXTRA_WIFI_STATE;
+import static android.net.wifi.p2p.WifiP2pManager.WIFI_P2P_STATE_CHANGED_ACTION;
+import static android.net.wifi.p2p.WifiP2pManager.WIFI_P2P_STATE_DISABLED;
+import static android.net.wifi.p2p.WifiP2pManager.WIFI_P2P_STATE_ENABLED;
+import static android.os.Build.VERSION.SDK_INT;
+
+/**
+ * {@link WifiRadio} backed by the {@link WifiManager} and
+ * {@link WifiP2pManager} system services and the
+ * WIFI_P2P_STATE_CHANGED_ACTION broadcast.
+ */
+class AndroidWifiRadio implements WifiRadio {
+
+	private final Context ctx;
+	private final WifiManager wifiManager;
+	@Nullable
+	private final WifiP2pManager wifiP2pManager;
+
+	@Nullable
+	private P2pStateListener p2pStateListener;
+	// only used for requesting the P2P state
+	@Nullable
+	private Channel channel;
+
+	AndroidWifiRadio(Context ctx) {
+		this.ctx = ctx;
+		wifiManager = (WifiManager) ctx.getApplicationContext()
+				.getSystemService(WIFI_SERVICE);
+		wifiP2pManager =
+				(WifiP2pManager) ctx.getSystemService(WIFI_P2P_SERVICE);
+	}
+
+	/**
+	 * When Wifi is off and gets enabled using {@link WifiManager#setWifiEnabled},
+	 * it takes a while until Wifi P2P is also available and it is safe to call
+	 * {@link android.net.wifi.p2p.WifiP2pManager#createGroup}. On API levels 29
+	 * and above, there's {@link android.net.wifi.p2p.WifiP2pManager#requestP2pState},
+	 * but on pre 29 the only thing we can do is register a broadcast on
+	 * WIFI_P2P_STATE_CHANGED_ACTION and wait until Wifi P2P is available.
+	 * Issue #2088 uncovered that this is necessary.
+	 */
+	private final BroadcastReceiver receiver = new BroadcastReceiver() {
+
+		@Override
+		@UiThread
+		public void onReceive(Context context, Intent intent) {
+			if (!WIFI_P2P_STATE_CHANGED_ACTION.equals(intent.getAction())) {
+				return;
+			}
+			int state = intent.getIntExtra(EXTRA_WIFI_STATE,
+					WIFI_P2P_STATE_DISABLED);
+			if (p2pStateListener != null) {
+				p2pStateListener.onP2pStateChanged(
+						state == WIFI_P2P_STATE_ENABLED);
+			}
+		}
+
+	};
+
+	@Override
+	public boolean isWifiEnabled() {
+		return wifiManager.isWifiEnabled();
+	}
+
+	@Override
+	public boolean setWifiEnabled(boolean enabled) {
+		return wifiManager.setWifiEnabled(enabled);
+	}
+
+	@Override
+	public boolean is5GHzBandSupported() {
+		return SDK_INT >= 21 && wifiManager.is5GHzBandSupported();
+	}
+
+	@Override
+	public void setP2pStateListener(@Nullable P2pStateListener listener) {
+		if (p2pStateListener == null && listener != null) {
+			ctx.registerReceiver(receiver, new IntentFilter(
+					WIFI_P2P_STATE_CHANGED_ACTION));
+		} else if (p2pStateListener != null && listener == null) {
+			ctx.unregisterReceiver(receiver);
+			closeChannel();
+		}
+		p2pStateListener = listener;
+	}
+
+	@Override
+	public void requestP2pState(P2pStateListener listener) {
+		if (SDK_INT < 29 || wifiP2pManager == null) return;
+		if (channel == null) {
+			channel = wifiP2pManager.initialize(ctx, ctx.getMainLooper(),
+					null);
+			if (channel == null) return;
+		}
+		wifiP2pManager.requestP2pState(channel, state ->
+				listener.onP2pStateChanged(state == WIFI_P2P_STATE_ENABLED));
+	}
+
+	private void closeChannel() {
+		if (channel == null) return;
+		if (SDK_INT >= 27) channel.close();
+		channel = null;
+	}
+
+}
@@ -0,0 +1,92 @@
+package org.briarproject.hotspot;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+
+import org.briarproject.hotspot.server.ApkCatalog;
+import org.briarproject.hotspot.server.ApkCatalog.Variant;
+import org.briarproject.hotspot.server.ServedFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Logger;
+
+import androidx.annotation.WorkerThread;
+
+import static java.util.logging.Level.INFO;
+import static java.util.logging.Level.WARNING;
+import static java.util.logging.Logger.getLogger;
+import static org.briarproject.hotspot.server.LogUtils.logException;
+
+/**
+ * Loads the {@link ApkCatalog} from the APK of {@link ApkSource} and the
+ * split APKs that are bundled as assets, see app/build.gradle.
+ */
+class ApkCatalogLoader {
+
+	private static final Logger LOG =
+			getLogger(ApkCatalogLoader.class.getName());
+
+	private static final String ASSET_DIR = "sharing";
+
+	@WorkerThread
+	static ApkCatalog load(Context ctx) {
+		List<Variant> variants = new ArrayList<>();
+		try {
+			variants.add(ApkCatalog.createUniversal(new ServedFile() {
+
+				@Override
+				public long getLength() throws IOException {
+					ApkSource apk = ApkSource.open(ctx);
+					apk.inputStream.close();
+					return apk.length;
+				}
+
+				@Override
+				public InputStream open() throws IOException {
+					return ApkSource.open(ctx).inputStream;
+				}
+			}));
+			String[] files = ctx.getAssets().list(ASSET_DIR);
+			if (files != null) {
+				for (String file : files) {
+					Variant v = ApkCatalog.parse(file,
+							new AssetFile(ctx, ASSET_DIR + "/" + file));
+					if (v != null) variants.add(v);
+				}
+			}
+		} catch (IOException e) {
+			logException(LOG, WARNING, e);
+		}
+		if (LOG.isLoggable(INFO)) LOG.info("APK variants: " + variants);
+		return new ApkCatalog(Collections.unmodifiableList(variants));
+	}
+
+	private static class AssetFile implements ServedFile {
+
+		private final Context ctx;
+		private final String asset;
+
+		private AssetFile(Context ctx, String asset) {
+			this.ctx = ctx;
+			this.asset = asset;
+		}
+
+		@Override
+		public long getLength() throws IOException {
+			AssetFileDescriptor fd = ctx.getAssets().openFd(asset);
+			long length = fd.getLength();
+			fd.close();
+			return length;
+		}
+
+		@Override
+		public InputStream open() throws IOException {
+			return ctx.getAssets().openFd(asset).createInputStream();
+		}
+	}
+
+}
@@ -0,0 +1,56 @@
+package org.briarproject.hotspot;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The APK that gets shared with other devices.
+ */
+class ApkSource {
+
+	// Bundled by the standard flavour, see app/build.gradle
+	private static final String FILE_SHARING_APK = "sharing.apk";
+
+	final InputStream inputStream;
+	final long length;
+
+	ApkSource(InputStream inputStream, long length) {
+		this.inputStream = inputStream;
+		this.length = length;
+	}
+
+	/**
+	 * Opens the APK. The caller needs to close the {@link #inputStream}.
+	 */
+	static ApkSource open(Context ctx) throws IOException {
+		try {
+			// Prefer the APK that has been built for sharing
+			AssetFileDescriptor fd = ctx.getAssets().openFd(FILE_SHARING_APK);
+			return new ApkSource(fd.createInputStream(), fd.getLength());
+		} catch (FileNotFoundException e) {
+			// This is the sharing build itself
+			File file = new File(ctx.getPackageCodePath());
+			return new ApkSource(new FileInputStream(file), file.length());
+		}
+	}
+
+	static byte[] readFully(Context ctx) throws IOException {
+		ApkSource apk = open(ctx);
+		try (InputStream is = apk.inputStream) {
+			ByteArrayOutputStream out =
+					new ByteArrayOutputStream((int) apk.length);
+			byte[] buf = new byte[8192];
+			int read;
+			while ((read = is.read(buf)) != -1) out.write(buf, 0, read);
+			return out.toByteArray();
+		}
+	}
+
+}
@@ -0,0 +1,101 @@
+package org.briarproject.hotspot;
+
+import android.content.Context;
+
+import org.briarproject.hotspot.server.CarouselSender;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.util.concurrent.Executor;
+import java.util.logging.Logger;
+
+import androidx.annotation.Nullable;
+
+import static java.util.concurrent.Executors.newSingleThreadExecutor;
+import static java.util.logging.Level.INFO;
+import static java.util.logging.Level.WARNING;
+import static java.util.logging.Logger.getLogger;
+import static org.briarproject.hotspot.server.CarouselPacket.GROUP_ADDRESS;
+import static org.briarproject.hotspot.server.CarouselPacket.PORT;
+import static org.briarproject.hotspot.server.LogUtils.logException;
+
+/**
+ * Runs a {@link CarouselSender} for the shared APK on the interface of the
+ * access point, so that devices that already have the app can receive it
+ * over multicast.
+ */
+class CarouselManager {
+
+	private static final Logger LOG =
+			getLogger(CarouselManager.class.getName());
+
+	// Multicast is sent at a low basic rate, at ~3.4 Mbit/s this is slow
+	// enough to get through on the 6 Mbit/s basic rate of Wi-Fi Direct
+	private static final int PACKETS_PER_SECOND = 300;
+
+	private final Context ctx;
+	// Reading and encoding the APK can block, so it's done on this executor,
+	// which also keeps starting and stopping in order
+	private final Executor executor = newSingleThreadExecutor();
+
+	// The following fields are only accessed on the executor
+	@Nullable
+	private byte[] apk = null;
+	@Nullable
+	private CarouselSender sender = null;
+	@Nullable
+	private InetAddress senderAddress = null;
+
+	CarouselManager(Context ctx) {
+		this.ctx = ctx;
+	}
+
+	/**
+	 * Starts sending on the interface with the given address, or moves the
+	 * sender there if it's already running on a different interface.
+	 *
+	 * @param address The address of the access point or null to let the
+	 * system choose the interface.
+	 */
+	void startCarousel(@Nullable InetAddress address) {
+		executor.execute(() -> {
+			if (sender != null) {
+				if (address == null || address.equals(senderAddress)) return;
+				sender.stop();
+				sender = null;
+			}
+			try {
+				if (apk == null) apk = ApkSource.readFully(ctx);
+				CarouselSender s = new CarouselSender(apk,
+						InetAddress.getByName(GROUP_ADDRESS), PORT,
+						getInterface(address), PACKETS_PER_SECOND);
+				s.start();
+				sender = s;
+				senderAddress = address;
+			} catch (IOException e) {
+				logException(LOG, WARNING, e);
+			}
+		});
+	}
+
+	void stopCarousel() {
+		executor.execute(() -> {
+			if (sender != null) sender.stop();
+			sender = null;
+			senderAddress = null;
+		});
+	}
+
+	@Nullable
+	private static NetworkInterface getInterface(@Nullable InetAddress address)
+			throws SocketException {
+		if (address == null) return null;
+		NetworkInterface iface = NetworkInterface.getByInetAddress(address);
+		if (iface != null && LOG.isLoggable(INFO))
+			LOG.info("Sending carousel on " + iface.getName());
+		return iface;
+	}
+
+}
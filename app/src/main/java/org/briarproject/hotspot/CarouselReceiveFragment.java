@@ -0,0 +1,102 @@
+package org.briarproject.hotspot;
+
+import android.content.ActivityNotFoundException;
+import android.content.Intent;
+import android.os.Bundle;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.Button;
+import android.widget.ProgressBar;
+import android.widget.TextView;
+
+import org.briarproject.hotspot.CarouselReceiveViewModel.ReceiveFailed;
+import org.briarproject.hotspot.CarouselReceiveViewModel.Received;
+import org.briarproject.hotspot.CarouselReceiveViewModel.Receiving;
+
+import java.util.logging.Logger;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.fragment.app.Fragment;
+import androidx.lifecycle.ViewModelProvider;
+
+import static android.content.Intent.FLAG_GRANT_READ_URI_PERMISSION;
+import static android.view.View.GONE;
+import static android.view.View.INVISIBLE;
+import static android.view.View.VISIBLE;
+import static java.util.logging.Level.WARNING;
+import static java.util.logging.Logger.getLogger;
+import static org.briarproject.hotspot.server.LogUtils.logException;
+
+/**
+ * Lets a device that already has the app receive it from another device's
+ * multicast carousel.
+ */
+public class CarouselReceiveFragment extends Fragment {
+
+	private static final Logger LOG =
+			getLogger(CarouselReceiveFragment.class.getName());
+
+	private static final String MIME_APK =
+			"application/vnd.android.package-archive";
+
+	private CarouselReceiveViewModel viewModel;
+
+	@Override
+	public View onCreateView(LayoutInflater inflater, ViewGroup container,
+			Bundle savedInstanceState) {
+		viewModel = new ViewModelProvider(this)
+				.get(CarouselReceiveViewModel.class);
+		return inflater.inflate(R.layout.fragment_carousel_receive, container,
+				false);
+	}
+
+	@Override
+	public void onViewCreated(@NonNull View v,
+			@Nullable Bundle savedInstanceState) {
+		super.onViewCreated(v, savedInstanceState);
+		TextView statusView = v.findViewById(R.id.status);
+		ProgressBar progressBar = v.findViewById(R.id.progress);
+		Button button = v.findViewById(R.id.button);
+		Button installButton = v.findViewById(R.id.install);
+		button.setOnClickListener(view -> viewModel.startReceiving());
+
+		viewModel.getState().observe(getViewLifecycleOwner(), state -> {
+			button.setEnabled(!(state instanceof Receiving));
+			progressBar.setVisibility(
+					state instanceof Receiving ? VISIBLE : INVISIBLE);
+			installButton.setVisibility(GONE);
+			if (state instanceof Receiving) {
+				Receiving r = (Receiving) state;
+				if (r.blockCount == 0) {
+					statusView.setText(R.string.carousel_receiving);
+				} else {
+					statusView.setText(getString(R.string.carousel_progress,
+							r.blocksDecoded, r.blockCount));
+					progressBar.setMax(r.blockCount);
+					progressBar.setProgress(r.blocksDecoded);
+				}
+			} else if (state instanceof Received) {
+				statusView.setText(R.string.carousel_received);
+				installButton.setVisibility(VISIBLE);
+				installButton.setOnClickListener(
+						view -> install((Received) state));
+			} else if (state instanceof ReceiveFailed) {
+				statusView.setText(((ReceiveFailed) state).error);
+			}
+		});
+	}
+
+	private void install(Received state) {
+		Intent i = new Intent(Intent.ACTION_VIEW);
+		i.setDataAndType(state.uri, MIME_APK);
+		i.addFlags(FLAG_GRANT_READ_URI_PERMISSION);
+		try {
+			startActivity(i);
+		} catch (ActivityNotFoundException e) {
+			logException(LOG, WARNING, e);
+		}
+	}
+
+}
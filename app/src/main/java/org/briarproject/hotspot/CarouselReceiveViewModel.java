@@ -0,0 +1,170 @@
+package org.briarproject.hotspot;
+
+import android.app.Application;
+import android.net.Uri;
+import android.net.wifi.WifiManager;
+import android.net.wifi.WifiManager.MulticastLock;
+
+import org.briarproject.hotspot.server.CarouselReceiver;
+import org.briarproject.hotspot.server.CarouselSender;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.util.logging.Logger;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.StringRes;
+import androidx.annotation.UiThread;
+import androidx.annotation.WorkerThread;
+import androidx.core.content.FileProvider;
+import androidx.lifecycle.AndroidViewModel;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import static android.content.Context.WIFI_SERVICE;
+import static android.os.Build.VERSION.SDK_INT;
+import static java.util.logging.Level.INFO;
+import static java.util.logging.Level.WARNING;
+import static java.util.logging.Logger.getLogger;
+import static org.briarproject.hotspot.BuildConfig.APPLICATION_ID;
+import static org.briarproject.hotspot.server.CarouselPacket.GROUP_ADDRESS;
+import static org.briarproject.hotspot.server.CarouselPacket.PORT;
+import static org.briarproject.hotspot.server.LogUtils.logException;
+
+/**
+ * Receives the APK from another device's {@link CarouselSender} while this
+ * device is connected to its hotspot.
+ */
+public class CarouselReceiveViewModel extends AndroidViewModel {
+
+	static abstract class ReceiveState {
+	}
+
+	static class Receiving extends ReceiveState {
+		final int blocksDecoded, blockCount;
+
+		Receiving(int blocksDecoded, int blockCount) {
+			this.blocksDecoded = blocksDecoded;
+			this.blockCount = blockCount;
+		}
+	}
+
+	static class Received extends ReceiveState {
+		final Uri uri;
+
+		Received(Uri uri) {
+			this.uri = uri;
+		}
+	}
+
+	static class ReceiveFailed extends ReceiveState {
+		@StringRes
+		final int error;
+
+		ReceiveFailed(@StringRes int error) {
+			this.error = error;
+		}
+	}
+
+	private static final Logger LOG =
+			getLogger(CarouselReceiveViewModel.class.getName());
+
+	private static final long TIMEOUT_MILLIS = 30_000;
+	private static final String FILE_NAME = "received/app.apk";
+
+	private final MutableLiveData<ReceiveState> state =
+			new MutableLiveData<>();
+
+	@Nullable
+	private volatile CarouselReceiver receiver = null;
+
+	public CarouselReceiveViewModel(@NonNull Application app) {
+		super(app);
+	}
+
+	LiveData<ReceiveState> getState() {
+		return state;
+	}
+
+	@UiThread
+	void startReceiving() {
+		if (state.getValue() instanceof Receiving) return;
+		state.setValue(new Receiving(0, 0));
+		new Thread(this::receive, "CarouselReceiver").start();
+	}
+
+	@Override
+	protected void onCleared() {
+		CarouselReceiver r = receiver;
+		if (r != null) r.cancel();
+	}
+
+	@WorkerThread
+	private void receive() {
+		WifiManager wifiManager = (WifiManager) getApplication()
+				.getApplicationContext().getSystemService(WIFI_SERVICE);
+		// Without this, the Wi-Fi chip may filter out multicast packets
+		MulticastLock lock = wifiManager.createMulticastLock(
+				APPLICATION_ID + ":carousel");
+		lock.setReferenceCounted(false);
+		lock.acquire();
+		try {
+			CarouselReceiver r = new CarouselReceiver(
+					InetAddress.getByName(GROUP_ADDRESS), PORT,
+					getWifiInterface(wifiManager), (decoded, count) ->
+					state.postValue(new Receiving(decoded, count)));
+			receiver = r;
+			byte[] apk = r.receive(TIMEOUT_MILLIS);
+			if (apk == null) {
+				state.postValue(new ReceiveFailed(R.string.carousel_timeout));
+			} else {
+				state.postValue(new Received(save(apk)));
+			}
+		} catch (IOException e) {
+			logException(LOG, WARNING, e);
+			state.postValue(new ReceiveFailed(R.string.carousel_error));
+		} finally {
+			receiver = null;
+			lock.release();
+		}
+	}
+
+	/**
+	 * Returns the interface connected to the hotspot, so the group isn't
+	 * joined on mobile data.
+	 */
+	@Nullable
+	private NetworkInterface getWifiInterface(WifiManager wifiManager)
+			throws IOException {
+		int ip = wifiManager.getConnectionInfo().getIpAddress();
+		if (ip == 0) return null;
+		// The address is in little-endian byte order
+		InetAddress address = InetAddress.getByAddress(new byte[] {(byte) ip,
+				(byte) (ip >> 8), (byte) (ip >> 16), (byte) (ip >> 24)});
+		NetworkInterface iface = NetworkInterface.getByInetAddress(address);
+		if (iface != null && LOG.isLoggable(INFO))
+			LOG.info("Receiving carousel on " + iface.getName());
+		return iface;
+	}
+
+	private Uri save(byte[] apk) throws IOException {
+		File file = new File(getApplication().getExternalFilesDir(null),
+				FILE_NAME);
+		File dir = file.getParentFile();
+		if (dir != null && !dir.exists() && !dir.mkdirs())
+			throw new IOException("Could not create " + dir);
+		try (OutputStream out = new FileOutputStream(file)) {
+			out.write(apk);
+		}
+		// Before API 24 the package installer can't open content URIs
+		if (SDK_INT < 24) return Uri.fromFile(file);
+		return FileProvider.getUriForFile(getApplication(),
+				APPLICATION_ID + ".fileprovider", file);
+	}
+
+}
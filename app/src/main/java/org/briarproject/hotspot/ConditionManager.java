@@ -1,21 +1,10 @@
 package org.briarproject.hotspot;
 
-import android.content.BroadcastReceiver;
-import android.content.Context;
-import android.content.Intent;
-import android.content.IntentFilter;
-import android.net.wifi.WifiManager;
-
 import java.util.logging.Logger;
 
 import androidx.annotation.UiThread;
 import androidx.fragment.app.FragmentActivity;
 
-import static android.content.Context.WIFI_SERVICE;
-import static android.net.wifi.p2p.WifiP2pManager.EXTRA_WIFI_STATE;
-import static android.net.wifi.p2p.WifiP2pManager.WIFI_P2P_STATE_CHANGED_ACTION;
-import static android.net.wifi.p2p.WifiP2pManager.WIFI_P2P_STATE_DISABLED;
-import static android.net.wifi.p2p.WifiP2pManager.WIFI_P2P_STATE_ENABLED;
 import static java.util.logging.Level.INFO;
 import static java.util.logging.Logger.getLogger;
 
@@ -35,7 +24,7 @@ abstract class ConditionManager {
 
 	protected final Runnable permissionUpdateCallback;
 	protected FragmentActivity ctx;
-	protected WifiManager wifiManager;
+	protected WifiRadio wifiRadio;
 	protected boolean wifiP2pEnabled = false;
 
 	ConditionManager(Runnable permissionUpdateCallback) {
@@ -46,45 +35,48 @@ abstract class ConditionManager {
 	 * Pass a FragmentActivity context here during `onCreateView()`.
 	 */
 	void init(FragmentActivity ctx) {
+		init(ctx, new AndroidWifiRadio(ctx));
+	}
+
+	/**
+	 * Like {@link #init(FragmentActivity)}, but lets the caller choose the
+	 * {@link WifiRadio} the conditions are checked against.
+	 */
+	void init(FragmentActivity ctx, WifiRadio wifiRadio) {
 		this.ctx = ctx;
-		this.wifiManager = (WifiManager) ctx.getApplicationContext()
-				.getSystemService(WIFI_SERVICE);
+		this.wifiRadio = wifiRadio;
 	}
 
 	/**
-	 * When Wifi is off and gets enabled using {@link WifiManager#setWifiEnabled},
-	 * it takes a while until Wifi P2P is also available and it is safe to call
-	 * {@link android.net.wifi.p2p.WifiP2pManager#createGroup}. On API levels 29
-	 * and above, there's {@link android.net.wifi.p2p.WifiP2pManager#requestP2pState},
-	 * but on pre 29 the only thing we can do is register a broadcast on
-	 * WIFI_P2P_STATE_CHANGED_ACTION and wait until Wifi P2P is available.
-	 * Issue #2088 uncovered that this is necessary.
+	 * When Wifi is off and gets enabled, it takes a while until Wifi P2P is
+	 * also available and it is safe to call
+	 * {@link android.net.wifi.p2p.WifiP2pManager#createGroup}, so we track the
+	 * P2P state reported by the {@link WifiRadio}.
 	 */
-	final BroadcastReceiver receiver = new BroadcastReceiver() {
-
-		@Override
-		@UiThread
-		public void onReceive(Context context, Intent intent) {
-			if (!WIFI_P2P_STATE_CHANGED_ACTION.equals(intent.getAction())) {
-				return;
-			}
-			int state = intent.getIntExtra(EXTRA_WIFI_STATE,
-					WIFI_P2P_STATE_DISABLED);
-			wifiP2pEnabled = state == WIFI_P2P_STATE_ENABLED;
-			if (LOG.isLoggable(INFO))
-				LOG.info("WifiP2pState: " + wifiP2pEnabled);
-			permissionUpdateCallback.run();
-		}
-
-	};
+	@UiThread
+	private void onP2pStateChanged(boolean enabled) {
+		wifiP2pEnabled = enabled;
+		if (LOG.isLoggable(INFO))
+			LOG.info("WifiP2pState: " + wifiP2pEnabled);
+		permissionUpdateCallback.run();
+	}
 
 	/**
 	 * Call this during onStart() in the fragment where the ConditionManager
 	 * is used.
 	 */
 	void onStart() {
-		ctx.registerReceiver(receiver, new IntentFilter(
-				WIFI_P2P_STATE_CHANGED_ACTION));
+		wifiRadio.setP2pStateListener(this::onP2pStateChanged);
+		prefetchConditions();
+	}
+
+	/**
+	 * Resolves as many conditions as possible before the user asks to start
+	 * the hotspot, without bringing up any dialogs, so that the request can
+	 * go straight to creating the group.
+	 */
+	void prefetchConditions() {
+		wifiRadio.requestP2pState(this::onP2pStateChanged);
 	}
 
 	/**
@@ -92,7 +84,7 @@ abstract class ConditionManager {
 	 * is used.
 	 */
 	void onStop() {
-		ctx.unregisterReceiver(receiver);
+		wifiRadio.setP2pStateListener(null);
 	}
 
 	/**
@@ -13,7 +13,9 @@ import androidx.annotation.Nullable;
 import androidx.annotation.RequiresApi;
 
 import static android.Manifest.permission.ACCESS_FINE_LOCATION;
+import static android.content.pm.PackageManager.PERMISSION_GRANTED;
 import static androidx.core.app.ActivityCompat.shouldShowRequestPermissionRationale;
+import static androidx.core.content.ContextCompat.checkSelfPermission;
 import static java.util.logging.Level.INFO;
 import static java.util.logging.Logger.getLogger;
 import static org.briarproject.hotspot.UiUtils.getGoToSettingsListener;
@@ -77,7 +79,10 @@ class ConditionManager29Impl extends ConditionManager {
 	@Override
 	void onStart() {
 		super.onStart();
-		locationPermission = Permission.UNKNOWN;
+		// If the permission has been granted before, we don't need to ask
+		// for it again once the user wants to start the hotspot
+		locationPermission = checkSelfPermission(ctx, ACCESS_FINE_LOCATION) ==
+				PERMISSION_GRANTED ? Permission.GRANTED : Permission.UNKNOWN;
 	}
 
 	private boolean areEssentialPermissionsGranted() {
@@ -85,15 +90,15 @@ class ConditionManager29Impl extends ConditionManager {
 			LOG.info(String.format("areEssentialPermissionsGranted():" +
 							"locationPermission? %s, " +
 							"wifiRequestInProgress? %b, " +
-							"wifiManager.isWifiEnabled()? %b, " +
+							"wifiRadio.isWifiEnabled()? %b, " +
 							"wifiP2pEnabled? %b",
 					locationPermission,
 					wifiRequestInProgress,
-					wifiManager.isWifiEnabled(),
+					wifiRadio.isWifiEnabled(),
 					wifiP2pEnabled));
 		}
 		return locationPermission == Permission.GRANTED &&
-				!wifiRequestInProgress && wifiManager.isWifiEnabled() &&
+				!wifiRequestInProgress && wifiRadio.isWifiEnabled() &&
 				wifiP2pEnabled;
 	}
 
@@ -124,7 +129,7 @@ class ConditionManager29Impl extends ConditionManager {
 		}
 
 		// If Wifi is not enabled, we show the rationale for enabling Wifi?
-		if (!wifiRequestInProgress && !wifiManager.isWifiEnabled()) {
+		if (!wifiRequestInProgress && !wifiRadio.isWifiEnabled()) {
 			showRationale(ctx, R.string.wifi_settings_title,
 					R.string.wifi_settings_request_enable_body,
 					this::requestEnableWiFi);
@@ -41,26 +41,36 @@ class ConditionManagerImpl extends ConditionManager {
 		super.init(ctx);
 	}
 
+	@Override
+	void prefetchConditions() {
+		super.prefetchConditions();
+		// Enabling Wifi and then Wifi P2P takes a while, so we start early.
+		// Below API 29 this doesn't need any interaction from the user.
+		if (!wifiRadio.isWifiEnabled() && wifiRadio.setWifiEnabled(true)) {
+			LOG.info("Enabling wifi in advance");
+		}
+	}
+
 	private boolean areEssentialPermissionsGranted() {
 		if (LOG.isLoggable(INFO)) {
 			LOG.info(String.format("areEssentialPermissionsGranted():" +
-							"wifiManager.isWifiEnabled()? %b, " +
+							"wifiRadio.isWifiEnabled()? %b, " +
 							"wifiP2pEnabled? %b",
-					wifiManager.isWifiEnabled(),
+					wifiRadio.isWifiEnabled(),
 					wifiP2pEnabled));
 		}
-		return wifiManager.isWifiEnabled() && wifiP2pEnabled;
+		return wifiRadio.isWifiEnabled() && wifiP2pEnabled;
 	}
 
 	@Override
 	boolean checkAndRequestConditions() {
 		if (areEssentialPermissionsGranted()) return true;
 
-		if (!wifiManager.isWifiEnabled()) {
+		if (!wifiRadio.isWifiEnabled()) {
 			// Try enabling the Wifi and return true if that seems to have been
 			// successful, i.e. "Wifi is either already in the requested state, or
 			// in progress toward the requested state".
-			if (wifiManager.setWifiEnabled(true)) {
+			if (wifiRadio.setWifiEnabled(true)) {
 				LOG.info("Enabled wifi");
 				return wifiP2pEnabled;
 			}
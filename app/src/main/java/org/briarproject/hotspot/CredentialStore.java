@@ -0,0 +1,224 @@
+package org.briarproject.hotspot;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.security.keystore.KeyGenParameterSpec;
+import android.util.Base64;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyStore;
+import java.util.logging.Logger;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
+
+import static android.content.Context.MODE_PRIVATE;
+import static android.security.keystore.KeyProperties.BLOCK_MODE_GCM;
+import static android.security.keystore.KeyProperties.ENCRYPTION_PADDING_NONE;
+import static android.security.keystore.KeyProperties.KEY_ALGORITHM_AES;
+import static android.security.keystore.KeyProperties.PURPOSE_DECRYPT;
+import static android.security.keystore.KeyProperties.PURPOSE_ENCRYPT;
+import static java.util.concurrent.TimeUnit.DAYS;
+import static java.util.logging.Level.INFO;
+import static java.util.logging.Level.WARNING;
+import static java.util.logging.Logger.getLogger;
+import static org.briarproject.hotspot.StringUtils.getRandomString;
+import static org.briarproject.hotspot.server.LogUtils.logException;
+
+/**
+ * Provides the network name and passphrase of the Wi-Fi Direct hotspot.
+ * <p>
+ * By default, new credentials are created for each session. If the user
+ * chooses to remember them, they are reused across sessions, so devices that
+ * joined before reconnect by themselves. Remembered credentials are replaced
+ * when the user rotates them or when they are older than the rotation
+ * interval. The passphrase is encrypted with a key that is kept in the
+ * Android Keystore.
+ * <p>
+ * Choosing the credentials requires API 29, on older devices the system
+ * chooses them for each group.
+ */
+class CredentialStore {
+
+	static class Credentials {
+
+		final String networkName, passphrase;
+
+		private Credentials(String networkName, String passphrase) {
+			this.networkName = networkName;
+			this.passphrase = passphrase;
+		}
+	}
+
+	static final long ROTATE_NEVER = 0;
+	static final long ROTATE_DAILY = DAYS.toMillis(1);
+	static final long ROTATE_WEEKLY = DAYS.toMillis(7);
+	static final long ROTATE_MONTHLY = DAYS.toMillis(30);
+
+	private static final Logger LOG =
+			getLogger(CredentialStore.class.getName());
+
+	private static final String PREFS_NAME = "hotspot_credentials";
+	private static final String KEY_PERSISTENT = "persistent";
+	private static final String KEY_ROTATION_INTERVAL = "rotationInterval";
+	private static final String KEY_NETWORK_NAME = "networkName";
+	private static final String KEY_PASSPHRASE = "passphrase";
+	private static final String KEY_IV = "iv";
+	private static final String KEY_CREATED = "created";
+
+	private static final String KEYSTORE = "AndroidKeyStore";
+	private static final String KEY_ALIAS = "hotspot_credentials";
+	private static final String CIPHER = "AES/GCM/NoPadding";
+	private static final int TAG_BITS = 128;
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final SharedPreferences prefs;
+
+	CredentialStore(Context ctx) {
+		prefs = ctx.getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
+	}
+
+	boolean isPersistent() {
+		return prefs.getBoolean(KEY_PERSISTENT, false);
+	}
+
+	/**
+	 * Turning this off forgets the remembered credentials.
+	 */
+	void setPersistent(boolean persistent) {
+		SharedPreferences.Editor editor =
+				prefs.edit().putBoolean(KEY_PERSISTENT, persistent);
+		if (!persistent) clear(editor);
+		editor.apply();
+	}
+
+	/**
+	 * @return how long remembered credentials are used for, or
+	 * {@link #ROTATE_NEVER}.
+	 */
+	long getRotationIntervalMillis() {
+		return prefs.getLong(KEY_ROTATION_INTERVAL, ROTATE_WEEKLY);
+	}
+
+	void setRotationIntervalMillis(long interval) {
+		prefs.edit().putLong(KEY_ROTATION_INTERVAL, interval).apply();
+	}
+
+	/**
+	 * Forgets the remembered credentials, so the next session uses new ones.
+	 * Devices that joined before need to scan the QR code again.
+	 */
+	void rotate() {
+		LOG.info("Rotating hotspot credentials");
+		SharedPreferences.Editor editor = prefs.edit();
+		clear(editor);
+		editor.apply();
+	}
+
+	/**
+	 * Returns the remembered credentials if there are any that are still
+	 * valid, otherwise new credentials, which get remembered if the user
+	 * chose to.
+	 */
+	@RequiresApi(29)
+	Credentials getCredentials() {
+		if (!isPersistent()) return createCredentials();
+		Credentials c = load();
+		if (c != null) return c;
+		c = createCredentials();
+		try {
+			save(c);
+		} catch (GeneralSecurityException | IOException e) {
+			// Use them for this session anyway
+			logException(LOG, WARNING, e);
+		}
+		return c;
+	}
+
+	static Credentials createCredentials() {
+		return new Credentials("DIRECT-" + getRandomString(2) + "-" +
+				getRandomString(10), getRandomString(8));
+	}
+
+	@Nullable
+	@RequiresApi(29)
+	private Credentials load() {
+		String networkName = prefs.getString(KEY_NETWORK_NAME, null);
+		String passphrase = prefs.getString(KEY_PASSPHRASE, null);
+		String iv = prefs.getString(KEY_IV, null);
+		if (networkName == null || passphrase == null || iv == null) {
+			return null;
+		}
+		long age = System.currentTimeMillis() - prefs.getLong(KEY_CREATED, 0);
+		long interval = getRotationIntervalMillis();
+		// A negative age means the clock has been turned back
+		if (interval != ROTATE_NEVER && (age < 0 || age >= interval)) {
+			LOG.info("Hotspot credentials expired");
+			return null;
+		}
+		try {
+			Cipher cipher = Cipher.getInstance(CIPHER);
+			cipher.init(Cipher.DECRYPT_MODE, getKey(), new GCMParameterSpec(
+					TAG_BITS, Base64.decode(iv, Base64.NO_WRAP)));
+			byte[] plaintext = cipher.doFinal(
+					Base64.decode(passphrase, Base64.NO_WRAP));
+			if (LOG.isLoggable(INFO))
+				LOG.info("Reusing hotspot credentials, age " + age + " ms");
+			return new Credentials(networkName, new String(plaintext, UTF_8));
+		} catch (GeneralSecurityException | IOException |
+				IllegalArgumentException e) {
+			// For example the key is gone after restoring a backup
+			logException(LOG, WARNING, e);
+			return null;
+		}
+	}
+
+	@RequiresApi(29)
+	private void save(Credentials c)
+			throws GeneralSecurityException, IOException {
+		Cipher cipher = Cipher.getInstance(CIPHER);
+		cipher.init(Cipher.ENCRYPT_MODE, getKey());
+		byte[] ciphertext = cipher.doFinal(c.passphrase.getBytes(UTF_8));
+		prefs.edit()
+				.putString(KEY_NETWORK_NAME, c.networkName)
+				.putString(KEY_PASSPHRASE,
+						Base64.encodeToString(ciphertext, Base64.NO_WRAP))
+				.putString(KEY_IV,
+						Base64.encodeToString(cipher.getIV(), Base64.NO_WRAP))
+				.putLong(KEY_CREATED, System.currentTimeMillis())
+				.apply();
+	}
+
+	@RequiresApi(29)
+	private static SecretKey getKey()
+			throws GeneralSecurityException, IOException {
+		KeyStore keyStore = KeyStore.getInstance(KEYSTORE);
+		keyStore.load(null);
+		Key key = keyStore.getKey(KEY_ALIAS, null);
+		if (key instanceof SecretKey) return (SecretKey) key;
+		KeyGenerator generator =
+				KeyGenerator.getInstance(KEY_ALGORITHM_AES, KEYSTORE);
+		generator.init(new KeyGenParameterSpec.Builder(KEY_ALIAS,
+				PURPOSE_ENCRYPT | PURPOSE_DECRYPT)
+				.setBlockModes(BLOCK_MODE_GCM)
+				.setEncryptionPaddings(ENCRYPTION_PADDING_NONE)
+				.build());
+		return generator.generateKey();
+	}
+
+	private static void clear(SharedPreferences.Editor editor) {
+		editor.remove(KEY_NETWORK_NAME)
+				.remove(KEY_PASSPHRASE)
+				.remove(KEY_IV)
+				.remove(KEY_CREATED);
+	}
+
+}
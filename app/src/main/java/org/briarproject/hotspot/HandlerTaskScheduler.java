@@ -0,0 +1,24 @@
+package org.briarproject.hotspot;
+
+import android.os.Handler;
+import android.os.SystemClock;
+
+class HandlerTaskScheduler implements TaskScheduler {
+
+	private final Handler handler;
+
+	HandlerTaskScheduler(Handler handler) {
+		this.handler = handler;
+	}
+
+	@Override
+	public long now() {
+		return SystemClock.elapsedRealtime();
+	}
+
+	@Override
+	public void schedule(Runnable task, long delayMillis) {
+		handler.postDelayed(task, delayMillis);
+	}
+
+}
@@ -3,17 +3,23 @@ package org.briarproject.hotspot;
 import android.graphics.Bitmap;
 import android.os.Bundle;
 import android.view.LayoutInflater;
+import android.view.Menu;
+import android.view.MenuInflater;
+import android.view.MenuItem;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.Button;
 import android.widget.ImageView;
 import android.widget.TextView;
+import android.widget.Toast;
 
 import org.briarproject.hotspot.HotspotState.HotspotError;
 import org.briarproject.hotspot.HotspotState.HotspotStarted;
 import org.briarproject.hotspot.HotspotState.HotspotStopped;
 import org.briarproject.hotspot.HotspotState.NetworkConfig;
 import org.briarproject.hotspot.HotspotState.StartingHotspot;
+import org.briarproject.hotspot.server.Tracer;
+import org.briarproject.hotspot.server.Tracer.Span;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -23,9 +29,14 @@ import androidx.lifecycle.ViewModelProvider;
 import static android.os.Build.VERSION.SDK_INT;
 import static android.view.View.GONE;
 import static android.view.View.VISIBLE;
+import static android.widget.Toast.LENGTH_LONG;
+import static org.briarproject.hotspot.CredentialStore.ROTATE_DAILY;
+import static org.briarproject.hotspot.CredentialStore.ROTATE_MONTHLY;
+import static org.briarproject.hotspot.CredentialStore.ROTATE_NEVER;
+import static org.briarproject.hotspot.CredentialStore.ROTATE_WEEKLY;
 import static org.briarproject.hotspot.HotspotManager.UNKNOWN_FREQUENCY;
-import static org.briarproject.hotspot.QrCodeUtils.createQrCode;
-import static org.briarproject.hotspot.QrCodeUtils.createWifiLoginString;
+import static org.briarproject.hotspot.QrCodeUtils.showQrCode;
+import static org.briarproject.hotspot.UiUtils.showProfileDialog;
 
 public class HotspotFragment extends Fragment {
 
@@ -50,12 +61,13 @@ public class HotspotFragment extends Fragment {
 	private boolean hotspotStarted = false;
 
 	private final ConditionManager conditionManager = SDK_INT < 29 ?
-			new ConditionManagerImpl(this, this::startWifiP2pHotspot) :
-			new ConditionManager29Impl(this, this::startWifiP2pHotspot);
+			new ConditionManagerImpl(this, this::startHotspot) :
+			new ConditionManager29Impl(this, this::startHotspot);
 
 	@Override
 	public View onCreateView(LayoutInflater inflater, ViewGroup container,
 			Bundle savedInstanceState) {
+		setHasOptionsMenu(true);
 		viewModel = new ViewModelProvider(requireActivity())
 				.get(MainViewModel.class);
 		conditionManager.init(requireActivity());
@@ -107,17 +119,11 @@ public class HotspotFragment extends Fragment {
 			statusView.setText(getString(R.string.start_callback_started_freq,
 					config.frequency));
 
-		String qrCodeText = createWifiLoginString(config.ssid,
-				config.password);
-		// TODO: heavy operation should be handed off to worker thread,
-		//  potentially within the view model and provide it together
-		//  with NetworkConfig?
-		Bitmap qrCodeBitmap = createQrCode(
-				getResources().getDisplayMetrics(), qrCodeText);
+		Bitmap qrCodeBitmap = state.getWifiQrCode();
 		if (qrCodeBitmap == null) {
 			qrCode.setVisibility(GONE);
 		} else {
-			qrCode.setImageBitmap(qrCodeBitmap);
+			showQrCode(qrCode, qrCodeBitmap);
 			qrCode.setVisibility(VISIBLE);
 		}
 		ssidView.setText(getString(R.string.ssid, config.ssid));
@@ -145,6 +151,78 @@ public class HotspotFragment extends Fragment {
 		statusView.setText(state.getError());
 	}
 
+	@Override
+	public void onCreateOptionsMenu(@NonNull Menu menu,
+			@NonNull MenuInflater inflater) {
+		inflater.inflate(R.menu.hotspot, menu);
+	}
+
+	@Override
+	public void onPrepareOptionsMenu(@NonNull Menu menu) {
+		// Before API 29 the system chooses the credentials for each group
+		boolean supported = SDK_INT >= 29;
+		CredentialStore store = viewModel.getCredentialStore();
+		boolean persistent = store.isPersistent();
+		menu.findItem(R.id.remember_network).setVisible(supported)
+				.setChecked(persistent);
+		menu.findItem(R.id.rotate_credentials).setVisible(supported)
+				.setEnabled(persistent);
+		menu.findItem(R.id.rotation_interval).setVisible(supported)
+				.setEnabled(persistent);
+		long interval = store.getRotationIntervalMillis();
+		int checked;
+		if (interval == ROTATE_NEVER) checked = R.id.rotate_never;
+		else if (interval == ROTATE_DAILY) checked = R.id.rotate_daily;
+		else if (interval == ROTATE_MONTHLY) checked = R.id.rotate_monthly;
+		else checked = R.id.rotate_weekly;
+		menu.findItem(checked).setChecked(true);
+	}
+
+	@Override
+	public boolean onOptionsItemSelected(MenuItem item) {
+		CredentialStore store = viewModel.getCredentialStore();
+		if (item.getItemId() == R.id.receive_carousel) {
+			getParentFragmentManager().beginTransaction()
+					.replace(R.id.fragment_container,
+							new CarouselReceiveFragment())
+					.addToBackStack(null)
+					.commit();
+			return true;
+		} else if (item.getItemId() == R.id.performance_profile) {
+			showProfileDialog(requireContext(), viewModel);
+			return true;
+		} else if (item.getItemId() == R.id.session_history) {
+			getParentFragmentManager().beginTransaction()
+					.replace(R.id.fragment_container, new SessionsFragment())
+					.addToBackStack(null)
+					.commit();
+			return true;
+		} else if (item.getItemId() == R.id.remember_network) {
+			boolean persistent = !item.isChecked();
+			item.setChecked(persistent);
+			store.setPersistent(persistent);
+			return true;
+		} else if (item.getItemId() == R.id.rotate_credentials) {
+			store.rotate();
+			if (hotspotStarted) {
+				Toast.makeText(requireContext(), R.string.credentials_rotated,
+						LENGTH_LONG).show();
+			}
+			return true;
+		}
+		long interval;
+		if (item.getItemId() == R.id.rotate_never) interval = ROTATE_NEVER;
+		else if (item.getItemId() == R.id.rotate_daily) interval = ROTATE_DAILY;
+		else if (item.getItemId() == R.id.rotate_weekly)
+			interval = ROTATE_WEEKLY;
+		else if (item.getItemId() == R.id.rotate_monthly)
+			interval = ROTATE_MONTHLY;
+		else return super.onOptionsItemSelected(item);
+		item.setChecked(true);
+		store.setRotationIntervalMillis(interval);
+		return true;
+	}
+
 	@Override
 	public void onStart() {
 		super.onStart();
@@ -161,18 +239,24 @@ public class HotspotFragment extends Fragment {
 		if (hotspotStarted) {
 			// the hotspot is currently started → stop it
 			button.setEnabled(false);
-			viewModel.stopWifiP2pHotspot();
+			viewModel.stopHotspot();
 		} else {
 			// the hotspot is currently stopped → start it
 			button.setEnabled(false);
 			startRequested = true;
-			startWifiP2pHotspot();
+			viewModel.onStartRequested();
+			startHotspot();
 		}
 	}
 
-	private void startWifiP2pHotspot() {
-		if (startRequested && conditionManager.checkAndRequestConditions())
-			viewModel.startWifiP2pHotspot();
+	@SuppressWarnings("try")
+	private void startHotspot() {
+		if (!startRequested) return;
+		boolean conditionsMet;
+		try (Span ignored = Tracer.begin("checkAndRequestConditions")) {
+			conditionsMet = conditionManager.checkAndRequestConditions();
+		}
+		if (conditionsMet) viewModel.startHotspot();
 	}
 
 	public void onServerButtonClick(View view) {
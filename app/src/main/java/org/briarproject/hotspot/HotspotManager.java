@@ -1,132 +1,179 @@
 package org.briarproject.hotspot;
 
 import android.content.Context;
-import android.net.wifi.WifiManager;
-import android.net.wifi.p2p.WifiP2pConfig;
-import android.net.wifi.p2p.WifiP2pGroup;
-import android.net.wifi.p2p.WifiP2pManager;
-import android.net.wifi.p2p.WifiP2pManager.ActionListener;
 import android.os.Handler;
 
+import org.briarproject.hotspot.CredentialStore.Credentials;
 import org.briarproject.hotspot.HotspotState.NetworkConfig;
+import org.briarproject.hotspot.P2pRadio.ActionCallback;
+import org.briarproject.hotspot.P2pRadio.GroupInfo;
+import org.briarproject.hotspot.P2pRadio.GroupInfoCallback;
+import org.briarproject.hotspot.server.Tracer;
 
+import java.util.concurrent.Executor;
 import java.util.logging.Logger;
 
 import androidx.annotation.Nullable;
-import androidx.annotation.RequiresApi;
 import androidx.annotation.UiThread;
 
-import static android.content.Context.WIFI_P2P_SERVICE;
-import static android.content.Context.WIFI_SERVICE;
-import static android.net.wifi.WifiManager.WIFI_MODE_FULL;
-import static android.net.wifi.WifiManager.WIFI_MODE_FULL_HIGH_PERF;
-import static android.net.wifi.p2p.WifiP2pConfig.GROUP_OWNER_BAND_2GHZ;
-import static android.net.wifi.p2p.WifiP2pManager.BUSY;
-import static android.net.wifi.p2p.WifiP2pManager.ERROR;
-import static android.net.wifi.p2p.WifiP2pManager.NO_SERVICE_REQUESTS;
-import static android.net.wifi.p2p.WifiP2pManager.P2P_UNSUPPORTED;
 import static android.os.Build.VERSION.SDK_INT;
+import static java.util.concurrent.Executors.newSingleThreadExecutor;
 import static java.util.logging.Level.INFO;
 import static java.util.logging.Logger.getLogger;
-import static org.briarproject.hotspot.StringUtils.getRandomString;
+import static org.briarproject.hotspot.P2pRadio.BUSY;
+import static org.briarproject.hotspot.P2pRadio.ERROR;
+import static org.briarproject.hotspot.P2pRadio.NO_SERVICE_REQUESTS;
+import static org.briarproject.hotspot.P2pRadio.P2P_UNSUPPORTED;
 
-class HotspotManager implements ActionListener {
-
-	interface HotspotListener {
-
-		void onStartingHotspot();
-
-		void onHotspotStarted(NetworkConfig networkConfig);
-
-		void onDeviceConnected();
-
-		void onHotspotStopped();
-
-		void onHotspotError(String error);
-
-	}
+/**
+ * Provides the hotspot by creating a Wi-Fi Direct group with this device as
+ * the group owner.
+ */
+class HotspotManager implements HotspotTransport, ActionCallback {
 
 	private static final Logger LOG = getLogger(HotspotManager.class.getName());
 
-	private static final int MAX_GROUP_INFO_ATTEMPTS = 5;
-	private static final int RETRY_DELAY_MILLIS = 1000;
+	private static final String TRACE_CREATE_GROUP = "createGroup";
+	private static final String TRACE_GROUP_INFO = "requestGroupInfo";
 
 	static final double UNKNOWN_FREQUENCY = Double.NEGATIVE_INFINITY;
 
-	private final Context ctx;
+	private final StringResolver strings;
+	private final int sdkInt;
 	private final HotspotListener listener;
-	private final WifiManager wifiManager;
-	private final WifiP2pManager wifiP2pManager;
-	private final Handler handler;
-	private final String lockTag;
+	private final P2pRadio radio;
+	private final TaskScheduler scheduler;
+	@Nullable
+	private final CredentialStore credentialStore;
+	// Loads the remembered credentials, which involves the Keystore
+	private final Executor credentialExecutor;
 
 	@Nullable
 	// on API < 29 this is null because we cannot request a custom network name
 	private String networkName = null;
 
-	private WifiManager.WifiLock wifiLock;
-	private WifiP2pManager.Channel channel;
+	// time at which the last start was requested, see TaskScheduler#now()
+	private long startTime;
+	private boolean highPerformance = true, wifiLockHeld = false;
+	private PerformanceProfile profile = PerformanceProfile.MANY_CLIENTS;
+	// The cookie of the async trace span of createGroup()
+	private int createGroupTrace = 0;
+	// Changes with each start and stop, so that tasks of an earlier start
+	// can tell that they are outdated
+	private int generation = 0;
 
 	HotspotManager(Context ctx, HotspotListener listener) {
-		this.ctx = ctx;
+		this(ctx::getString, SDK_INT, listener, new AndroidP2pRadio(ctx),
+				new HandlerTaskScheduler(new Handler(ctx.getMainLooper())),
+				new CredentialStore(ctx), newSingleThreadExecutor());
+	}
+
+	/**
+	 * Use this constructor to drive the hotspot with a different radio, for
+	 * example a simulated one, as if it ran on the given API level. New
+	 * credentials are created for each start.
+	 */
+	HotspotManager(StringResolver strings, int sdkInt,
+			HotspotListener listener, P2pRadio radio,
+			TaskScheduler scheduler) {
+		this(strings, sdkInt, listener, radio, scheduler, null, Runnable::run);
+	}
+
+	private HotspotManager(StringResolver strings, int sdkInt,
+			HotspotListener listener, P2pRadio radio,
+			TaskScheduler scheduler, @Nullable CredentialStore credentialStore,
+			Executor credentialExecutor) {
+		this.strings = strings;
+		this.sdkInt = sdkInt;
 		this.listener = listener;
-		wifiManager = (WifiManager) ctx.getApplicationContext()
-				.getSystemService(WIFI_SERVICE);
-		wifiP2pManager =
-				(WifiP2pManager) ctx.getSystemService(WIFI_P2P_SERVICE);
-		handler = new Handler(ctx.getMainLooper());
-		lockTag = ctx.getPackageName() + ":app-sharing-hotspot";
+		this.radio = radio;
+		this.scheduler = scheduler;
+		this.credentialStore = credentialStore;
+		this.credentialExecutor = credentialExecutor;
 	}
 
+	@Override
 	@UiThread
-	void startWifiP2pHotspot() {
-		if (wifiP2pManager == null) {
-			listener.onHotspotError(ctx.getString(R.string.no_wifi_direct));
-			return;
-		}
-		listener.onStartingHotspot();
-		channel = wifiP2pManager.initialize(ctx, ctx.getMainLooper(), null);
-		if (channel == null) {
-			listener.onHotspotError(ctx.getString(R.string.no_wifi_direct));
-			return;
-		}
-		acquireLock();
-		try {
-			if (SDK_INT >= 29) {
-				networkName = getNetworkName();
-				String passphrase = getPassphrase();
-				// TODO: maybe remove this in the production version
-				if (LOG.isLoggable(INFO))
-					LOG.info("networkName: " + networkName);
-				WifiP2pConfig config = new WifiP2pConfig.Builder()
-						.setGroupOperatingBand(GROUP_OWNER_BAND_2GHZ)
-						.setNetworkName(networkName)
-						.setPassphrase(passphrase)
-						.build();
-				wifiP2pManager.createGroup(channel, config, this);
+	public void startHotspot() {
+		if (prepare()) createGroup();
+	}
+
+	/**
+	 * The group outlives the process that created it, so it can be reused
+	 * as long as the system keeps it running.
+	 */
+	@Override
+	@UiThread
+	public void reattachHotspot(String networkName) {
+		if (!prepare()) return;
+		int trace = Tracer.beginAsync(TRACE_GROUP_INFO);
+		radio.requestGroupInfo(group -> {
+			Tracer.endAsync(TRACE_GROUP_INFO, trace);
+			if (group != null && group.networkName.equals(networkName)) {
+				LOG.info("Reattaching to running group");
+				if (sdkInt >= 29) this.networkName = networkName;
+				onGroupStarted(group);
 			} else {
-				wifiP2pManager.createGroup(channel, this);
+				LOG.info("Group is gone, creating a new one");
+				createGroup();
 			}
-		} catch (SecurityException e) {
-			// this should never happen, because we request permissions before
-			throw new AssertionError(e);
+		});
+	}
+
+	private boolean prepare() {
+		if (!radio.isSupported()) {
+			listener.onHotspotError(strings.getString(R.string.no_wifi_direct));
+			return false;
+		}
+		startTime = scheduler.now();
+		generation++;
+		listener.onStartingHotspot();
+		if (!radio.initialize()) {
+			listener.onHotspotError(strings.getString(R.string.no_wifi_direct));
+			return false;
 		}
+		radio.acquireWifiLock(highPerformance);
+		wifiLockHeld = true;
+		return true;
 	}
 
-	@RequiresApi(29)
-	private String getNetworkName() {
-		return "DIRECT-" + getRandomString(2) + "-" +
-				getRandomString(10);
+	private void createGroup() {
+		createGroupTrace = Tracer.beginAsync(TRACE_CREATE_GROUP);
+		if (sdkInt < 29) {
+			radio.createGroup(null, null, profile.band5Ghz, this);
+			return;
+		}
+		// Remembered credentials let devices that joined before reconnect
+		// without scanning the QR code again
+		CredentialStore store = credentialStore;
+		if (store == null) {
+			createGroup(CredentialStore.createCredentials());
+			return;
+		}
+		// Decrypting them takes too long for the main thread
+		int g = generation;
+		credentialExecutor.execute(() -> {
+			Credentials c = store.getCredentials();
+			scheduler.schedule(() -> {
+				// The hotspot may have been stopped meanwhile
+				if (g == generation) createGroup(c);
+			}, 0);
+		});
 	}
 
-	private String getPassphrase() {
-		return getRandomString(8);
+	private void createGroup(Credentials c) {
+		networkName = c.networkName;
+		// TODO: maybe remove this in the production version
+		if (LOG.isLoggable(INFO))
+			LOG.info("networkName: " + networkName);
+		radio.createGroup(networkName, c.passphrase, profile.band5Ghz, this);
 	}
 
+	@Override
 	@UiThread
-	void stopWifiP2pHotspot() {
-		if (channel == null) return;
-		wifiP2pManager.removeGroup(channel, new ActionListener() {
+	public void stopHotspot() {
+		if (!radio.isInitialized()) return;
+		radio.removeGroup(new ActionCallback() {
 
 			@Override
 			public void onSuccess() {
@@ -135,21 +182,13 @@ class HotspotManager implements ActionListener {
 
 			@Override
 			public void onFailure(int reason) {
-				releaseHotspotWithError(ctx.getString(
+				releaseHotspotWithError(strings.getString(
 						R.string.stop_callback_failed, reason));
 			}
 
 		});
 	}
 
-	private void acquireLock() {
-		// WIFI_MODE_FULL has no effect on API >= 29
-		int lockType =
-				SDK_INT >= 29 ? WIFI_MODE_FULL_HIGH_PERF : WIFI_MODE_FULL;
-		wifiLock = wifiManager.createWifiLock(lockType, lockTag);
-		wifiLock.acquire();
-	}
-
 	private void releaseHotspot() {
 		listener.onHotspotStopped();
 		closeChannelAndReleaseLock();
@@ -161,35 +200,55 @@ class HotspotManager implements ActionListener {
 	}
 
 	private void closeChannelAndReleaseLock() {
-		if (SDK_INT >= 27) channel.close();
-		channel = null;
-		wifiLock.release();
+		generation++;
+		radio.close();
+		radio.releaseWifiLock();
+		wifiLockHeld = false;
 	}
 
 	@Override
-	// Callback for wifiP2pManager#createGroup() during startWifiP2pHotspot()
+	@UiThread
+	public void setHighPerformance(boolean highPerformance) {
+		if (highPerformance == this.highPerformance) return;
+		this.highPerformance = highPerformance;
+		if (wifiLockHeld) {
+			radio.releaseWifiLock();
+			radio.acquireWifiLock(highPerformance);
+		}
+	}
+
+	@Override
+	@UiThread
+	public void setProfile(PerformanceProfile profile) {
+		this.profile = profile;
+	}
+
+	@Override
+	// Callback for P2pRadio#createGroup() during startHotspot()
 	public void onSuccess() {
+		Tracer.endAsync(TRACE_CREATE_GROUP, createGroupTrace);
 		requestGroupInfo(1);
 	}
 
 	@Override
-	// Callback for wifiP2pManager#createGroup() during startWifiP2pHotspot()
+	// Callback for P2pRadio#createGroup() during startHotspot()
 	public void onFailure(int reason) {
+		Tracer.endAsync(TRACE_CREATE_GROUP, createGroupTrace);
 		if (reason == BUSY) {
 			// Hotspot already running
 			requestGroupInfo(1);
 		} else if (reason == P2P_UNSUPPORTED) {
-			releaseHotspotWithError(ctx.getString(
+			releaseHotspotWithError(strings.getString(
 					R.string.start_callback_failed, "p2p unsupported"));
 		} else if (reason == ERROR) {
-			releaseHotspotWithError(ctx.getString(
+			releaseHotspotWithError(strings.getString(
 					R.string.start_callback_failed, "p2p error"));
 		} else if (reason == NO_SERVICE_REQUESTS) {
-			releaseHotspotWithError(ctx.getString(
+			releaseHotspotWithError(strings.getString(
 					R.string.start_callback_failed, "no service requests"));
 		} else {
 			// all cases covered, in doubt set to error
-			releaseHotspotWithError(ctx.getString(
+			releaseHotspotWithError(strings.getString(
 					R.string.start_callback_failed_unknown, reason));
 		}
 	}
@@ -198,68 +257,71 @@ class HotspotManager implements ActionListener {
 		if (LOG.isLoggable(INFO))
 			LOG.info("requestGroupInfo attempt: " + attempt);
 
-		WifiP2pManager.GroupInfoListener groupListener = group -> {
+		int trace = Tracer.beginAsync(TRACE_GROUP_INFO);
+		GroupInfoCallback groupListener = group -> {
+			Tracer.endAsync(TRACE_GROUP_INFO, trace);
 			boolean valid = isGroupValid(group);
 			// If the group is valid, set the hotspot to started. If we don't
 			// have any attempts left, we try what we got
-			if (valid || attempt >= MAX_GROUP_INFO_ATTEMPTS) {
-				double frequency = UNKNOWN_FREQUENCY;
-				if (SDK_INT >= 29) {
-					frequency = ((double) group.getFrequency()) / 1000;
+			if (valid || attempt >= profile.groupInfoAttempts) {
+				if (group == null) {
+					retryRequestingGroupInfo(attempt);
+					return;
 				}
-				listener.onHotspotStarted(new NetworkConfig(
-						group.getNetworkName(), group.getPassphrase(),
-						frequency));
-				requestGroupInfoForConnection();
+				onGroupStarted(group);
 			} else {
 				retryRequestingGroupInfo(attempt);
 			}
 		};
-		try {
-			if (channel == null) return;
-			wifiP2pManager.requestGroupInfo(channel, groupListener);
-		} catch (SecurityException e) {
-			throw new AssertionError(e);
+		radio.requestGroupInfo(groupListener);
+	}
+
+	private void onGroupStarted(GroupInfo group) {
+		if (LOG.isLoggable(INFO)) {
+			LOG.info("hotspot started after " +
+					(scheduler.now() - startTime) + " ms");
 		}
+		listener.onHotspotStarted(new NetworkConfig(group.networkName,
+				group.passphrase, group.frequency));
+		requestGroupInfoForConnection();
 	}
 
 	private void requestGroupInfoForConnection() {
 		if (LOG.isLoggable(INFO))
 			LOG.info("requestGroupInfo for connection");
-		WifiP2pManager.GroupInfoListener groupListener = group -> {
-			if (group == null || group.getClientList().isEmpty()) {
-				handler.postDelayed(this::requestGroupInfoForConnection,
-						RETRY_DELAY_MILLIS);
+		// Polling ends when the hotspot stops
+		int g = generation;
+		GroupInfoCallback groupListener = group -> {
+			if (g != generation) return;
+			if (group == null || group.clients.isEmpty()) {
+				scheduler.schedule(() -> {
+					if (g == generation) requestGroupInfoForConnection();
+				}, profile.groupInfoRetryMillis);
 			} else {
 				if (LOG.isLoggable(INFO)) {
-					LOG.info("client list " + group.getClientList());
+					LOG.info("client list " + group.clients);
 				}
 				listener.onDeviceConnected();
 			}
 		};
-		try {
-			if (channel == null) return;
-			wifiP2pManager.requestGroupInfo(channel, groupListener);
-		} catch (SecurityException e) {
-			throw new AssertionError(e);
-		}
+		radio.requestGroupInfo(groupListener);
 	}
 
-	private boolean isGroupValid(@Nullable WifiP2pGroup group) {
+	private boolean isGroupValid(@Nullable GroupInfo group) {
 		if (group == null) {
 			LOG.info("group is null");
 			return false;
-		} else if (!group.getNetworkName().startsWith("DIRECT-")) {
+		} else if (!group.networkName.startsWith("DIRECT-")) {
 			if (LOG.isLoggable(INFO)) {
 				LOG.info("received networkName without prefix 'DIRECT-': " +
-						group.getNetworkName());
+						group.networkName);
 			}
 			return false;
 		} else if (networkName != null &&
-				!networkName.equals(group.getNetworkName())) {
+				!networkName.equals(group.networkName)) {
 			if (LOG.isLoggable(INFO)) {
 				LOG.info("expected networkName: " + networkName);
-				LOG.info("received networkName: " + group.getNetworkName());
+				LOG.info("received networkName: " + group.networkName);
 			}
 			return false;
 		}
@@ -269,12 +331,14 @@ class HotspotManager implements ActionListener {
 	private void retryRequestingGroupInfo(int attempt) {
 		LOG.info("retrying");
 		// On some devices we need to wait for the group info to become available
-		if (attempt < MAX_GROUP_INFO_ATTEMPTS) {
-			handler.postDelayed(() -> requestGroupInfo(attempt + 1),
-					RETRY_DELAY_MILLIS);
+		if (attempt < profile.groupInfoAttempts) {
+			int g = generation;
+			scheduler.schedule(() -> {
+				if (g == generation) requestGroupInfo(attempt + 1);
+			}, profile.groupInfoRetryMillis);
 		} else {
 			releaseHotspotWithError(
-					ctx.getString(R.string.start_callback_no_group_info));
+					strings.getString(R.string.start_callback_no_group_info));
 		}
 	}
 
@@ -0,0 +1,180 @@
+package org.briarproject.hotspot;
+
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.PowerManager;
+import android.os.PowerManager.WakeLock;
+
+import java.util.logging.Logger;
+
+import androidx.annotation.Nullable;
+import androidx.core.app.NotificationCompat;
+import androidx.core.app.NotificationManagerCompat;
+import androidx.core.content.ContextCompat;
+import androidx.lifecycle.LifecycleService;
+
+import static android.content.Context.POWER_SERVICE;
+import static android.os.Build.VERSION.SDK_INT;
+import static android.os.PowerManager.PARTIAL_WAKE_LOCK;
+import static androidx.core.app.NotificationCompat.PRIORITY_LOW;
+import static java.util.logging.Logger.getLogger;
+
+/**
+ * Keeps the {@link HotspotSession} running in the foreground, so that
+ * transfers carry on when the user switches to another app or the activity
+ * is destroyed.
+ * <p>
+ * The notification shows how many devices are connected and downloading.
+ * While downloads are in progress, a partial wake lock keeps the CPU serving
+ * at full speed with the screen off. The service stops itself when the
+ * hotspot stops.
+ */
+public class HotspotService extends LifecycleService {
+
+	private static final Logger LOG = getLogger(HotspotService.class.getName());
+
+	private static final String ACTION_START = "start";
+	private static final String ACTION_REATTACH = "reattach";
+	private static final String ACTION_STOP = "stop";
+	private static final String CHANNEL_ID = "hotspot";
+	private static final int NOTIFICATION_ID = 1;
+	private static final long UPDATE_INTERVAL_MILLIS = 5000;
+	// Renewed with each update while downloads are in progress, so the lock
+	// is released even if a download is never accounted as finished
+	private static final long WAKE_LOCK_TIMEOUT_MILLIS = 60_000;
+	private static final String WAKE_LOCK_TAG = "hotspot:transfers";
+
+	private final Handler handler = new Handler(Looper.getMainLooper());
+
+	private HotspotSession session;
+	private WakeLock wakeLock;
+	private boolean observing = false;
+
+	/**
+	 * Starts the hotspot in the foreground.
+	 */
+	static void start(Context ctx) {
+		Intent i = new Intent(ctx, HotspotService.class);
+		i.setAction(ACTION_START);
+		ContextCompat.startForegroundService(ctx, i);
+	}
+
+	/**
+	 * Reattaches to the hotspot that was running when the process went
+	 * away.
+	 */
+	static void reattach(Context ctx) {
+		Intent i = new Intent(ctx, HotspotService.class);
+		i.setAction(ACTION_REATTACH);
+		ContextCompat.startForegroundService(ctx, i);
+	}
+
+	@Override
+	public void onCreate() {
+		super.onCreate();
+		session = HotspotSession.getInstance(getApplication());
+		PowerManager pm = (PowerManager) getSystemService(POWER_SERVICE);
+		wakeLock = pm.newWakeLock(PARTIAL_WAKE_LOCK, WAKE_LOCK_TAG);
+		wakeLock.setReferenceCounted(false);
+		if (SDK_INT >= 26) {
+			NotificationManager nm =
+					getSystemService(NotificationManager.class);
+			nm.createNotificationChannel(new NotificationChannel(CHANNEL_ID,
+					getString(R.string.notification_channel),
+					NotificationManager.IMPORTANCE_LOW));
+		}
+		startForeground(NOTIFICATION_ID, createNotification(0, 0, 0));
+	}
+
+	@Override
+	public int onStartCommand(@Nullable Intent intent, int flags,
+			int startId) {
+		super.onStartCommand(intent, flags, startId);
+		String action = intent == null ? null : intent.getAction();
+		if (ACTION_STOP.equals(action)) {
+			LOG.info("Stopping hotspot from notification");
+			session.stopHotspot();
+		} else if (ACTION_START.equals(action)) {
+			session.startHotspot();
+		} else {
+			// Also restarted by the system without an intent after the
+			// process went away
+			session.reattachHotspot();
+			// Without a checkpoint there is nothing to reattach to, and
+			// nothing would stop the service again
+			if (!session.isActive()) {
+				LOG.info("No session to reattach to, stopping");
+				stopSelf();
+				return START_NOT_STICKY;
+			}
+		}
+		if (!observing) {
+			// Only now, otherwise the status from before the start would stop
+			// the service again
+			observing = true;
+			session.getStatus().observe(this, status -> {
+				if (!session.isActive()) stopSelf();
+			});
+			session.getActiveTransfers().observe(this, active -> update());
+			handler.postDelayed(updateTask, UPDATE_INTERVAL_MILLIS);
+		}
+		return START_STICKY;
+	}
+
+	@Override
+	public void onDestroy() {
+		super.onDestroy();
+		handler.removeCallbacks(updateTask);
+		wakeLock.release();
+		stopForeground(true);
+	}
+
+	private final Runnable updateTask = new Runnable() {
+		@Override
+		public void run() {
+			update();
+			handler.postDelayed(this, UPDATE_INTERVAL_MILLIS);
+		}
+	};
+
+	private void update() {
+		Integer value = session.getActiveTransfers().getValue();
+		int active = value == null ? 0 : value;
+		if (active > 0) wakeLock.acquire(WAKE_LOCK_TIMEOUT_MILLIS);
+		else if (wakeLock.isHeld()) wakeLock.release();
+		NotificationManagerCompat.from(this).notify(NOTIFICATION_ID,
+				createNotification(session.getClientCount(),
+						session.getKnownClientCount(), active));
+	}
+
+	private Notification createNotification(int clients, int knownClients,
+			int transfers) {
+		long startedAt = session.getStartedAt();
+		Intent open = new Intent(this, MainActivity.class);
+		Intent stop = new Intent(this, HotspotService.class);
+		stop.setAction(ACTION_STOP);
+		return new NotificationCompat.Builder(this, CHANNEL_ID)
+				.setSmallIcon(R.drawable.ic_notification)
+				.setContentTitle(getString(R.string.notification_title))
+				.setContentText(getString(R.string.notification_text,
+						clients, knownClients, transfers))
+				.setShowWhen(startedAt > 0)
+				.setWhen(startedAt)
+				.setUsesChronometer(startedAt > 0)
+				.setContentIntent(
+						PendingIntent.getActivity(this, 0, open, 0))
+				.addAction(0, getString(R.string.stop_hotspot),
+						PendingIntent.getService(this, 0, stop, 0))
+				.setOngoing(true)
+				.setOnlyAlertOnce(true)
+				.setPriority(PRIORITY_LOW)
+				.build();
+	}
+
+}
@@ -0,0 +1,576 @@
+package org.briarproject.hotspot;
+
+import android.app.Application;
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.widget.Toast;
+
+import org.briarproject.hotspot.HotspotState.HotspotError;
+import org.briarproject.hotspot.HotspotState.HotspotStarted;
+import org.briarproject.hotspot.HotspotState.HotspotStopped;
+import org.briarproject.hotspot.HotspotState.NetworkConfig;
+import org.briarproject.hotspot.HotspotState.StartingHotspot;
+import org.briarproject.hotspot.ServingGovernor.GovernorListener;
+import org.briarproject.hotspot.ServingGovernor.ServingLevel;
+import org.briarproject.hotspot.SessionCheckpoint.Checkpoint;
+import org.briarproject.hotspot.SessionJournal.EventType;
+import org.briarproject.hotspot.server.ConnectionGuard.CloseReason;
+import org.briarproject.hotspot.server.LinkQuality;
+import org.briarproject.hotspot.server.SharePage;
+import org.briarproject.hotspot.server.Tracer;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.logging.Logger;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.Nullable;
+import androidx.annotation.UiThread;
+import androidx.annotation.WorkerThread;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import static android.widget.Toast.LENGTH_LONG;
+import static java.util.concurrent.Executors.newSingleThreadExecutor;
+import static java.util.logging.Level.INFO;
+import static java.util.logging.Logger.getLogger;
+import static org.briarproject.hotspot.HotspotTransport.HotspotListener;
+import static org.briarproject.hotspot.QrCodeUtils.createWifiLoginString;
+import static org.briarproject.hotspot.StartupMetrics.Milestone.BUTTON_TAPPED;
+import static org.briarproject.hotspot.StartupMetrics.Milestone.CONDITIONS_MET;
+import static org.briarproject.hotspot.StartupMetrics.Milestone.HOTSPOT_STARTED;
+import static org.briarproject.hotspot.StartupMetrics.Milestone.WEB_SERVER_STARTED;
+import static org.briarproject.hotspot.WebServerManager.WebServerListener;
+
+/**
+ * The hotspot, the web server and everything serving the app along with
+ * them.
+ * <p>
+ * There is one session per process, so that it outlives the activity. It is
+ * started by the {@link HotspotService}, which keeps the process in the
+ * foreground while the hotspot is running.
+ */
+class HotspotSession
+		implements WebServerListener, HotspotListener, GovernorListener {
+
+	private static final Logger LOG = getLogger(HotspotSession.class.getName());
+
+	private static final String TRACE_START = "start hotspot";
+	private static final String TRACE_CONDITIONS = "conditions";
+	private static final String TRACE_FIRST_CLIENT = "wait for first client";
+
+	@Nullable
+	private static HotspotSession instance = null;
+
+	@UiThread
+	static HotspotSession getInstance(Application app) {
+		if (instance == null) instance = new HotspotSession(app);
+		return instance;
+	}
+
+	private final Application app;
+	private final HotspotTransport hotspotTransport;
+	private final WebServerManager webServerManager;
+	private final CarouselManager carouselManager;
+	private final ServingGovernor servingGovernor;
+	private final CredentialStore credentialStore;
+	private final ProfileStore profileStore;
+	private final SessionCheckpoint sessionCheckpoint;
+	private final SessionJournal journal;
+	private final Handler handler;
+	// QR codes get created on this executor and cached, so that they are
+	// available instantly after configuration changes and restarts
+	private final ExecutorService qrCodeExecutor = newSingleThreadExecutor();
+	private final QrCodeCache qrCodeCache = new QrCodeCache();
+	private final StartupMetrics startupMetrics = new StartupMetrics();
+	// The latest speed test results of the session's clients, by address
+	private final Map<String, LinkQuality> linkQualities =
+			new ConcurrentHashMap<>();
+
+	private final MutableLiveData<HotspotState> status =
+			new MutableLiveData<>();
+	private final MutableLiveData<Boolean> carouselEnabled =
+			new MutableLiveData<>(false);
+	private final MutableLiveData<Boolean> sharePageEnabled =
+			new MutableLiveData<>(false);
+	private final MutableLiveData<ServingLevel> servingLevel =
+			new MutableLiveData<>(ServingLevel.NORMAL);
+	private final MutableLiveData<Integer> activeTransfers =
+			new MutableLiveData<>(0);
+	private final MutableLiveData<PerformanceProfile> profile;
+
+	private HotspotSession(Application app) {
+		this.app = app;
+		profileStore = new ProfileStore(app);
+		PerformanceProfile p = profileStore.getProfile();
+		profile = new MutableLiveData<>(p);
+		hotspotTransport = new TransportSelector(app, this);
+		hotspotTransport.setProfile(p);
+		hotspotTransport.setHighPerformance(p.highPerformance);
+		handler = new Handler(app.getMainLooper());
+		servingGovernor = new ServingGovernor(new AndroidPowerMonitor(app),
+				new HandlerTaskScheduler(handler), this, p);
+		webServerManager =
+				new WebServerManager(app, this, servingGovernor);
+		carouselManager = new CarouselManager(app);
+		credentialStore = new CredentialStore(app);
+		sessionCheckpoint = new SessionCheckpoint(app);
+		journal = new SessionJournal(new File(app.getFilesDir(), "journal"));
+		if (BuildConfig.DEBUG) Tracer.enable(new AndroidTraceBackend());
+	}
+
+	LiveData<HotspotState> getStatus() {
+		return status;
+	}
+
+	LiveData<ServingLevel> getServingLevel() {
+		return servingLevel;
+	}
+
+	Map<CloseReason, Long> getClosedConnectionCounts() {
+		return webServerManager.getClosedConnectionCounts();
+	}
+
+	Map<String, Long> getBytesServed() {
+		return webServerManager.getBytesServed();
+	}
+
+	/**
+	 * Returns the quality of the clients' links, as measured by the speed
+	 * test of the download page, by address.
+	 */
+	Map<String, LinkQuality> getLinkQualities() {
+		return new TreeMap<>(linkQualities);
+	}
+
+	/**
+	 * Loads the summaries of past sessions, including the running one,
+	 * newest first.
+	 */
+	@AnyThread
+	void loadSessionSummaries(MutableLiveData<List<SessionSummary>> result) {
+		journal.loadEvents(events ->
+				result.postValue(SessionSummary.aggregate(events)));
+	}
+
+	/**
+	 * Returns the number of APK downloads in progress.
+	 */
+	LiveData<Integer> getActiveTransfers() {
+		return activeTransfers;
+	}
+
+	/**
+	 * Returns the number of devices that have connections open to the web
+	 * server.
+	 */
+	int getClientCount() {
+		return webServerManager.getClientCount();
+	}
+
+	/**
+	 * Returns the number of devices that have connected to the web server
+	 * in this session.
+	 */
+	int getKnownClientCount() {
+		return webServerManager.getKnownClientCount();
+	}
+
+	/**
+	 * Returns the wall clock time when the session started, or 0 if it is
+	 * not running.
+	 */
+	long getStartedAt() {
+		return startedAt;
+	}
+
+	/**
+	 * Returns true if the hotspot is starting or running.
+	 */
+	boolean isActive() {
+		HotspotState s = status.getValue();
+		return s instanceof StartingHotspot || s instanceof HotspotStarted;
+	}
+
+	/**
+	 * The settings for remembering the credentials of the hotspot. They are
+	 * read each time the hotspot starts.
+	 */
+	CredentialStore getCredentialStore() {
+		return credentialStore;
+	}
+
+	LiveData<PerformanceProfile> getProfile() {
+		return profile;
+	}
+
+	/**
+	 * Switches to the given profile and remembers it. The limits of
+	 * downloads and the Wi-Fi lock change at once, the band and the server's
+	 * threads when the hotspot starts next time.
+	 */
+	@UiThread
+	void setProfile(PerformanceProfile p) {
+		if (LOG.isLoggable(INFO)) LOG.info("Switching to profile " + p);
+		profileStore.setProfile(p);
+		profile.setValue(p);
+		servingGovernor.setProfile(p);
+		hotspotTransport.setProfile(p);
+		hotspotTransport.setHighPerformance(
+				servingGovernor.isHighPerformance());
+	}
+
+	LiveData<Boolean> getCarouselEnabled() {
+		return carouselEnabled;
+	}
+
+	/**
+	 * Sending the APK over multicast as well as over HTTP lets any number of
+	 * devices that already have the app receive it in the same airtime.
+	 */
+	@UiThread
+	void setCarouselEnabled(boolean enabled) {
+		carouselEnabled.setValue(enabled);
+		if (enabled && status.getValue() instanceof HotspotStarted) {
+			carouselManager.startCarousel(
+					webServerManager.getAccessPointAddress());
+		} else if (!enabled) {
+			carouselManager.stopCarousel();
+		}
+	}
+
+	LiveData<Boolean> getSharePageEnabled() {
+		return sharePageEnabled;
+	}
+
+	/**
+	 * The share page shows the network name and password in plain text to
+	 * anyone who can reach the web server, so it's only served if the user
+	 * asks for it.
+	 */
+	@UiThread
+	void setSharePageEnabled(boolean enabled) {
+		sharePageEnabled.setValue(enabled);
+		webServerManager.setSharePage(enabled ? sharePage : null);
+	}
+
+	/**
+	 * Call this when the user asks to start the hotspot, before the
+	 * conditions for starting it are checked.
+	 */
+	@UiThread
+	void onStartRequested() {
+		startupMetrics.reset();
+		startupMetrics.mark(BUTTON_TAPPED, SystemClock.elapsedRealtime());
+		endTraces();
+		startTrace = Tracer.beginAsync(TRACE_START);
+		conditionsTrace = Tracer.beginAsync(TRACE_CONDITIONS);
+	}
+
+	/**
+	 * Only the {@link HotspotService} starts the hotspot, so that it's in
+	 * the foreground while the hotspot is running.
+	 */
+	@UiThread
+	void startHotspot() {
+		if (isActive()) return;
+		reattaching = null;
+		stopError = null;
+		startupMetrics.mark(CONDITIONS_MET, SystemClock.elapsedRealtime());
+		Tracer.endAsync(TRACE_CONDITIONS, conditionsTrace);
+		conditionsTrace = 0;
+		hotspotTransport.startHotspot();
+	}
+
+	/**
+	 * Returns true if the hotspot was running when the process went away,
+	 * so the session can be reattached.
+	 */
+	@UiThread
+	boolean canReattach() {
+		return !isActive() && sessionCheckpoint.load() != null;
+	}
+
+	/**
+	 * Reattaches to the hotspot of the checkpointed session, so clients stay
+	 * connected, or starts a new one if it isn't running anymore. The web
+	 * server went away with the process, so it gets started again.
+	 */
+	@UiThread
+	void reattachHotspot() {
+		if (isActive()) return;
+		Checkpoint c = sessionCheckpoint.load();
+		if (c == null) return;
+		if (LOG.isLoggable(INFO))
+			LOG.info("Reattaching to session started at " + c.startedAt);
+		reattaching = c;
+		stopError = null;
+		webServerManager.addKnownClients(c.clients);
+		startupMetrics.reset();
+		startupMetrics.mark(CONDITIONS_MET, SystemClock.elapsedRealtime());
+		endTraces();
+		startTrace = Tracer.beginAsync(TRACE_START);
+		hotspotTransport.reattachHotspot(c.networkName);
+	}
+
+	@UiThread
+	void stopHotspot() {
+		// stop the webserver and carousel before the hotspot
+		webServerManager.stopWebServer();
+		carouselManager.stopCarousel();
+		servingGovernor.stop();
+		hotspotTransport.stopHotspot();
+	}
+
+	@Override
+	public void onStartingHotspot() {
+		status.setValue(new StartingHotspot());
+		// Binding overlaps with the group forming
+		webServerManager.bindSocket();
+	}
+
+	@Nullable
+	// Field to store the network config received via onHotspotStarted()
+	// in order to post it along with HotspotStarted statuses
+	private volatile NetworkConfig networkConfig;
+	// The session that is being reattached, or null
+	@Nullable
+	private volatile Checkpoint reattaching = null;
+	private volatile long startedAt = 0;
+	// The share page of the running hotspot, whether it's served or not.
+	// Only accessed on the main thread.
+	@Nullable
+	private SharePage sharePage = null;
+	// The error to report when the hotspot has stopped because of it. Only
+	// accessed on the main thread.
+	@Nullable
+	private String stopError = null;
+	// The cookies of the async trace spans of the start
+	private volatile int startTrace = 0, conditionsTrace = 0,
+			firstClientTrace = 0;
+
+	@Override
+	public void onHotspotStarted(NetworkConfig networkConfig) {
+		startupMetrics.mark(HOTSPOT_STARTED, SystemClock.elapsedRealtime());
+		this.networkConfig = networkConfig;
+		Checkpoint c = reattaching;
+		if (c != null && !c.networkName.equals(networkConfig.ssid)) {
+			LOG.info("Hotspot was gone, started a new session");
+			reattaching = null;
+		}
+		servingGovernor.start();
+		LOG.info("starting webserver");
+		webServerManager.startWebServer();
+	}
+
+	@Override
+	public void onDeviceConnected() {
+		Toast.makeText(app, R.string.connected_toast, LENGTH_LONG).show();
+	}
+
+	@Override
+	public void onHotspotStopped() {
+		String error = stopError;
+		if (error != null) {
+			onHotspotError(error);
+			return;
+		}
+		status.setValue(new HotspotStopped());
+		networkConfig = null;
+		onSessionEnded("");
+		LOG.info("stopping webserver");
+		webServerManager.stopWebServer();
+		carouselManager.stopCarousel();
+		servingGovernor.stop();
+	}
+
+	@Override
+	public void onHotspotError(String error) {
+		stopError = null;
+		status.setValue(new HotspotError(error));
+		networkConfig = null;
+		onSessionEnded(error);
+		webServerManager.stopWebServer();
+		carouselManager.stopCarousel();
+		servingGovernor.stop();
+	}
+
+	private void onSessionEnded(String error) {
+		if (startedAt != 0) {
+			journal.append(EventType.HOTSPOT_STOPPED, "", error, 0,
+					System.currentTimeMillis() - startedAt);
+		}
+		reattaching = null;
+		startedAt = 0;
+		sharePage = null;
+		linkQualities.clear();
+		sessionCheckpoint.clear();
+		endTraces();
+	}
+
+	/**
+	 * Ends the trace spans of a start that didn't get that far.
+	 */
+	private void endTraces() {
+		Tracer.endAsync(TRACE_START, startTrace);
+		Tracer.endAsync(TRACE_CONDITIONS, conditionsTrace);
+		Tracer.endAsync(TRACE_FIRST_CLIENT, firstClientTrace);
+		startTrace = 0;
+		conditionsTrace = 0;
+		firstClientTrace = 0;
+	}
+
+	@Override
+	@UiThread
+	public void onServingLevelChanged(ServingLevel level) {
+		servingLevel.setValue(level);
+		hotspotTransport.setHighPerformance(
+				servingGovernor.isHighPerformance());
+	}
+
+	@Override
+	@WorkerThread
+	public void onWebServerStarted(String url) {
+		startupMetrics.mark(WEB_SERVER_STARTED, SystemClock.elapsedRealtime());
+		Tracer.endAsync(TRACE_START, startTrace);
+		startTrace = 0;
+		firstClientTrace = Tracer.beginAsync(TRACE_FIRST_CLIENT);
+		checkpoint(url);
+		if (LOG.isLoggable(INFO))
+			LOG.info("Startup metrics: " + startupMetrics);
+		publishHotspotStarted(url);
+	}
+
+	@Override
+	@WorkerThread
+	public void onWebServerUrlChanged(String url) {
+		sessionCheckpoint.setUrl(url);
+		publishHotspotStarted(url);
+	}
+
+	private void checkpoint(String url) {
+		NetworkConfig config = networkConfig;
+		if (config == null) return;
+		long took = startupMetrics.getDuration(CONDITIONS_MET,
+				WEB_SERVER_STARTED);
+		Checkpoint c = reattaching;
+		reattaching = null;
+		if (c == null) {
+			startedAt = System.currentTimeMillis();
+			sessionCheckpoint.save(config.ssid, config.frequency, url,
+					startedAt, took);
+			journal.append(EventType.HOTSPOT_STARTED, config.ssid, url, 0,
+					took);
+		} else {
+			startedAt = c.startedAt;
+			sessionCheckpoint.setUrl(url);
+			if (c.startupMillis >= 0 && took >= 0) {
+				startupMetrics.setSavedMillis(
+						Math.max(0, c.startupMillis - took));
+			}
+		}
+	}
+
+	private void publishHotspotStarted(String url) {
+		NetworkConfig config = networkConfig;
+		if (config == null) return;
+		if (Boolean.TRUE.equals(carouselEnabled.getValue())) {
+			// follow the access point if it moved to a different address
+			carouselManager.startCarousel(
+					webServerManager.getAccessPointAddress());
+		}
+		List<String> urls = webServerManager.getRankedUrls();
+		qrCodeExecutor.execute(() -> {
+			String wifiLogin =
+					createWifiLoginString(config.ssid, config.password);
+			Bitmap wifiQrCode = qrCodeCache.getQrCode(wifiLogin);
+			Bitmap urlQrCode = qrCodeCache.getQrCode(url);
+			// Lets clients pass the QR codes on to the next person
+			String wifiSvg = qrCodeCache.getQrCodeSvg(wifiLogin);
+			String urlSvg = qrCodeCache.getQrCodeSvg(url);
+			handler.post(() -> {
+				// The hotspot may have stopped or restarted meanwhile,
+				// which also happens on the main thread
+				if (networkConfig != config) return;
+				status.setValue(new HotspotStarted(config, url, urls,
+						wifiQrCode, urlQrCode));
+				if (wifiSvg != null && urlSvg != null) {
+					sharePage = new SharePage(config.ssid, config.password,
+							wifiSvg, url, urlSvg);
+					if (Boolean.TRUE.equals(sharePageEnabled.getValue()))
+						webServerManager.setSharePage(sharePage);
+				}
+			});
+		});
+	}
+
+	@Override
+	@AnyThread
+	public void onActiveTransfersChanged(int active) {
+		activeTransfers.postValue(active);
+	}
+
+	@Override
+	@AnyThread
+	public void onClientsChanged(Set<String> clients) {
+		sessionCheckpoint.setClients(clients);
+	}
+
+	@Override
+	@AnyThread
+	public void onClientConnected(String address) {
+		Tracer.endAsync(TRACE_FIRST_CLIENT, firstClientTrace);
+		firstClientTrace = 0;
+		journal.append(EventType.CLIENT_JOINED, address, "", 0, 0);
+	}
+
+	@Override
+	@AnyThread
+	public void onClientDisconnected(String address) {
+		journal.append(EventType.CLIENT_LEFT, address, "", 0, 0);
+	}
+
+	@Override
+	@AnyThread
+	public void onTransferStarted(String client, String variant,
+			long length) {
+		journal.append(EventType.DOWNLOAD_STARTED, client, variant, length,
+				0);
+	}
+
+	@Override
+	@AnyThread
+	public void onTransferFinished(String client, String variant,
+			long bytes, long durationMillis, boolean complete) {
+		journal.append(complete ? EventType.DOWNLOAD_COMPLETED :
+				EventType.DOWNLOAD_ABORTED, client, variant, bytes,
+				durationMillis);
+	}
+
+	@Override
+	@AnyThread
+	public void onLinkMeasured(String client, LinkQuality quality) {
+		linkQualities.put(client, quality);
+	}
+
+	@Override
+	@WorkerThread
+	public void onWebServerError() {
+		String error = app.getString(R.string.web_server_error);
+		handler.post(() -> {
+			if (!isActive()) return;
+			// Without the server there's nothing to serve, so everything
+			// is stopped, and the error is reported when the hotspot has
+			// stopped
+			stopError = error;
+			stopHotspot();
+		});
+	}
+
+}
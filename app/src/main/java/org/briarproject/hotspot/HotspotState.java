@@ -1,5 +1,11 @@
 package org.briarproject.hotspot;
 
+import android.graphics.Bitmap;
+
+import java.util.List;
+
+import androidx.annotation.Nullable;
+
 abstract class HotspotState {
 
 	static class StartingHotspot extends HotspotState {
@@ -23,10 +29,17 @@ abstract class HotspotState {
 
 		private final NetworkConfig config;
 		private final String url;
+		private final List<String> urls;
+		@Nullable
+		private final Bitmap wifiQrCode, urlQrCode;
 
-		HotspotStarted(NetworkConfig config, String url) {
+		HotspotStarted(NetworkConfig config, String url, List<String> urls,
+				@Nullable Bitmap wifiQrCode, @Nullable Bitmap urlQrCode) {
 			this.config = config;
 			this.url = url;
+			this.urls = urls;
+			this.wifiQrCode = wifiQrCode;
+			this.urlQrCode = urlQrCode;
 		}
 
 		NetworkConfig getConfig() {
@@ -36,6 +49,32 @@ abstract class HotspotState {
 		String getUrl() {
 			return url;
 		}
+
+		/**
+		 * @return the URLs of the server on all interfaces, the one that is
+		 * likely to be fastest first.
+		 */
+		List<String> getUrls() {
+			return urls;
+		}
+
+		/**
+		 * @return the QR code with the Wi-Fi login details or null if it
+		 * couldn't be created.
+		 */
+		@Nullable
+		Bitmap getWifiQrCode() {
+			return wifiQrCode;
+		}
+
+		/**
+		 * @return the QR code with the download URL or null if it couldn't
+		 * be created.
+		 */
+		@Nullable
+		Bitmap getUrlQrCode() {
+			return urlQrCode;
+		}
 	}
 
 	static class HotspotStopped extends HotspotState {
@@ -0,0 +1,59 @@
+package org.briarproject.hotspot;
+
+import org.briarproject.hotspot.HotspotState.NetworkConfig;
+
+import androidx.annotation.UiThread;
+
+/**
+ * A way of providing a Wi-Fi network that other devices can join in order to
+ * download the app. Implementations report their progress to a
+ * {@link HotspotListener}.
+ */
+interface HotspotTransport {
+
+	interface HotspotListener {
+
+		void onStartingHotspot();
+
+		void onHotspotStarted(NetworkConfig networkConfig);
+
+		void onDeviceConnected();
+
+		void onHotspotStopped();
+
+		void onHotspotError(String error);
+
+	}
+
+	@UiThread
+	void startHotspot();
+
+	/**
+	 * Reattaches to the hotspot with the given network name if it is still
+	 * running after the process has been recreated, otherwise starts a new
+	 * hotspot. The listener is informed in the same way as for a start.
+	 */
+	@UiThread
+	void reattachHotspot(String networkName);
+
+	/**
+	 * It is safe to call this if the hotspot has not been started.
+	 */
+	@UiThread
+	void stopHotspot();
+
+	/**
+	 * Sets whether the Wi-Fi lock held while the hotspot is running keeps
+	 * the radio out of power save mode. Applies to a running hotspot as well
+	 * as to later starts. The default is true.
+	 */
+	@UiThread
+	void setHighPerformance(boolean highPerformance);
+
+	/**
+	 * Sets the profile whose band and timings are used from the next start.
+	 */
+	@UiThread
+	void setProfile(PerformanceProfile profile);
+
+}
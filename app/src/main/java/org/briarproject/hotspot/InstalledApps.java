@@ -0,0 +1,258 @@
+package org.briarproject.hotspot;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.content.pm.PackageManager.NameNotFoundException;
+import android.graphics.Bitmap;
+import android.graphics.Bitmap.CompressFormat;
+import android.graphics.Canvas;
+import android.graphics.drawable.Drawable;
+import android.net.Uri;
+
+import org.briarproject.hotspot.server.AppCatalog;
+import org.briarproject.hotspot.server.FileServedFile;
+import org.briarproject.hotspot.server.SharedApp;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.logging.Logger;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.UiThread;
+import androidx.annotation.WorkerThread;
+
+import static android.content.Intent.ACTION_PACKAGE_ADDED;
+import static android.content.Intent.ACTION_PACKAGE_CHANGED;
+import static android.content.Intent.ACTION_PACKAGE_REMOVED;
+import static android.content.Intent.ACTION_PACKAGE_REPLACED;
+import static android.graphics.Bitmap.Config.ARGB_8888;
+import static android.os.Build.VERSION.SDK_INT;
+import static java.util.concurrent.Executors.newSingleThreadExecutor;
+import static java.util.logging.Level.INFO;
+import static java.util.logging.Level.WARNING;
+import static java.util.logging.Logger.getLogger;
+import static org.briarproject.hotspot.server.LogUtils.logException;
+
+/**
+ * Indexes the installed apps that are shared besides our own APK into an
+ * {@link AppCatalog}. The apps are listed in the shared_packages resource.
+ * <p>
+ * Indexing reads each APK to compute its digest, so it's done lazily on a
+ * background thread when the server starts. The digests and icons are
+ * cached until the package is updated. While the server runs, the catalog
+ * is indexed again whenever one of the packages is installed, updated or
+ * removed.
+ */
+class InstalledApps {
+
+	interface CatalogListener {
+		@WorkerThread
+		void onAppCatalogChanged(AppCatalog catalog);
+	}
+
+	private static final Logger LOG =
+			getLogger(InstalledApps.class.getName());
+
+	// 48dp at xhdpi
+	private static final int ICON_PX = 96;
+	private static final int ICON_QUALITY = 80;
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private final Context ctx;
+	private final CatalogListener listener;
+	private final List<String> packageNames;
+	private final Executor executor = newSingleThreadExecutor();
+
+	// Only accessed on the main thread
+	private boolean registered = false;
+
+	// The following fields are only accessed on the executor
+	private final Map<String, Entry> cache = new HashMap<>();
+	@Nullable
+	private List<SharedApp> indexed = null;
+	private int version = 0;
+
+	InstalledApps(Context ctx, CatalogListener listener) {
+		this.ctx = ctx;
+		this.listener = listener;
+		packageNames = Arrays.asList(
+				ctx.getResources().getStringArray(R.array.shared_packages));
+	}
+
+	/**
+	 * Indexes the apps in the background and watches them for changes.
+	 * The listener is called when the catalog has changed, and at least
+	 * once after the first start.
+	 */
+	@UiThread
+	void start() {
+		if (packageNames.isEmpty() || registered) return;
+		IntentFilter filter = new IntentFilter();
+		filter.addAction(ACTION_PACKAGE_ADDED);
+		filter.addAction(ACTION_PACKAGE_CHANGED);
+		filter.addAction(ACTION_PACKAGE_REMOVED);
+		filter.addAction(ACTION_PACKAGE_REPLACED);
+		filter.addDataScheme("package");
+		ctx.registerReceiver(receiver, filter);
+		registered = true;
+		// The packages may have changed while we weren't watching
+		executor.execute(this::index);
+	}
+
+	@UiThread
+	void stop() {
+		if (!registered) return;
+		ctx.unregisterReceiver(receiver);
+		registered = false;
+	}
+
+	@WorkerThread
+	private void index() {
+		PackageManager pm = ctx.getPackageManager();
+		List<SharedApp> apps = new ArrayList<>();
+		Map<String, Entry> entries = new HashMap<>();
+		for (String packageName : packageNames) {
+			Entry e = getEntry(pm, packageName);
+			if (e != null) {
+				entries.put(packageName, e);
+				apps.add(e.app);
+			}
+		}
+		// Entries are reused as long as their package is unchanged
+		if (apps.equals(indexed)) return;
+		cache.clear();
+		cache.putAll(entries);
+		indexed = apps;
+		AppCatalog catalog = new AppCatalog(++version, apps);
+		if (LOG.isLoggable(INFO)) LOG.info("Indexed apps " + catalog);
+		listener.onAppCatalogChanged(catalog);
+	}
+
+	@WorkerThread
+	@Nullable
+	private Entry getEntry(PackageManager pm, String packageName) {
+		PackageInfo info;
+		try {
+			info = pm.getPackageInfo(packageName, 0);
+		} catch (NameNotFoundException e) {
+			// Or it isn't listed in the manifest's queries
+			if (LOG.isLoggable(INFO))
+				LOG.info(packageName + " is not installed");
+			return null;
+		}
+		ApplicationInfo app = info.applicationInfo;
+		if (SDK_INT >= 21 && app.splitSourceDirs != null) {
+			// It can't be installed from a single APK
+			if (LOG.isLoggable(INFO))
+				LOG.info(packageName + " has split APKs, not sharing it");
+			return null;
+		}
+		Entry cached = cache.get(packageName);
+		if (cached != null && cached.sourceDir.equals(app.sourceDir) &&
+				cached.lastUpdateTime == info.lastUpdateTime) {
+			return cached;
+		}
+		try {
+			File apk = new File(app.sourceDir);
+			String versionName =
+					info.versionName == null ? "" : info.versionName;
+			SharedApp shared = new SharedApp(packageName,
+					pm.getApplicationLabel(app).toString(), versionName,
+					new FileServedFile(apk), getSha256(apk),
+					getIcon(pm.getApplicationIcon(app)));
+			return new Entry(app.sourceDir, info.lastUpdateTime, shared);
+		} catch (IOException e) {
+			logException(LOG, WARNING, e);
+			return null;
+		}
+	}
+
+	private static String getSha256(File f) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new AssertionError(e);
+		}
+		byte[] buf = new byte[64 * 1024];
+		try (InputStream in = new FileInputStream(f)) {
+			int read;
+			while ((read = in.read(buf)) != -1) digest.update(buf, 0, read);
+		}
+		char[] hex = new char[digest.getDigestLength() * 2];
+		byte[] hash = digest.digest();
+		for (int i = 0; i < hash.length; i++) {
+			hex[i * 2] = HEX[(hash[i] >> 4) & 0xF];
+			hex[i * 2 + 1] = HEX[hash[i] & 0xF];
+		}
+		return new String(hex);
+	}
+
+	/**
+	 * Returns the icon encoded as WebP, which is smaller than PNG for the
+	 * same quality and supported by the browsers of all Android versions
+	 * we serve.
+	 */
+	@Nullable
+	private static byte[] getIcon(Drawable icon) {
+		Bitmap bitmap = Bitmap.createBitmap(ICON_PX, ICON_PX, ARGB_8888);
+		icon.setBounds(0, 0, ICON_PX, ICON_PX);
+		icon.draw(new Canvas(bitmap));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		boolean compressed =
+				bitmap.compress(getWebPFormat(), ICON_QUALITY, out);
+		bitmap.recycle();
+		return compressed ? out.toByteArray() : null;
+	}
+
+	@SuppressWarnings("deprecation")
+	private static CompressFormat getWebPFormat() {
+		return SDK_INT >= 30 ? CompressFormat.WEBP_LOSSY : CompressFormat.WEBP;
+	}
+
+	private final BroadcastReceiver receiver = new BroadcastReceiver() {
+
+		@Override
+		@UiThread
+		public void onReceive(Context context, Intent intent) {
+			Uri data = intent.getData();
+			if (data == null) return;
+			String packageName = data.getSchemeSpecificPart();
+			if (packageNames.contains(packageName)) {
+				if (LOG.isLoggable(INFO))
+					LOG.info(packageName + " changed: " + intent.getAction());
+				executor.execute(InstalledApps.this::index);
+			}
+		}
+	};
+
+	private static class Entry {
+
+		private final String sourceDir;
+		private final long lastUpdateTime;
+		private final SharedApp app;
+
+		private Entry(String sourceDir, long lastUpdateTime, SharedApp app) {
+			this.sourceDir = sourceDir;
+			this.lastUpdateTime = lastUpdateTime;
+			this.app = app;
+		}
+	}
+
+}
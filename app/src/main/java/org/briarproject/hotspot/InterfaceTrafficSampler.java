@@ -0,0 +1,240 @@
+package org.briarproject.hotspot;
+
+import android.net.TrafficStats;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.logging.Logger;
+
+import androidx.annotation.Nullable;
+
+import static java.util.logging.Level.WARNING;
+import static java.util.logging.Logger.getLogger;
+import static org.briarproject.hotspot.server.LogUtils.logException;
+
+/**
+ * Samples the traffic counters of all network interfaces from /proc/net/dev
+ * and computes rates between samples.
+ * <p>
+ * After the first samples, sampling doesn't allocate: the file is kept open
+ * and read into a fixed buffer, and the results are written into
+ * {@link InterfaceStats} objects that are reused. If /proc/net/dev can't be
+ * read, the totals from {@link TrafficStats} are reported as a single
+ * interface instead.
+ * <p>
+ * This class is not thread-safe.
+ */
+class InterfaceTrafficSampler {
+
+	static final int HISTORY_SIZE = 60;
+
+	private static final Logger LOG =
+			getLogger(InterfaceTrafficSampler.class.getName());
+
+	private static final String PROC_NET_DEV = "/proc/net/dev";
+	private static final String TOTAL = "total";
+	private static final int MAX_INTERFACES = 32;
+	// Number of counters per line of /proc/net/dev
+	private static final int COUNTERS = 16;
+	// Indices of the counters we're interested in
+	private static final int RX_BYTES = 0, RX_PACKETS = 1, RX_ERRORS = 2,
+			RX_DROPS = 3, TX_BYTES = 8, TX_PACKETS = 9, TX_ERRORS = 10,
+			TX_DROPS = 11;
+
+	static class InterfaceStats {
+
+		final String name;
+
+		long rxErrors, txErrors, rxDrops, txDrops;
+		float rxBytesPerSecond, txBytesPerSecond;
+		float rxPacketsPerSecond, txPacketsPerSecond;
+		// Whether the interface was present in the latest sample
+		boolean present;
+
+		// Ring buffer of the sum of received and sent bytes per second
+		final float[] history = new float[HISTORY_SIZE];
+		// Index of the latest value in the history
+		int historyHead = HISTORY_SIZE - 1;
+
+		private long rxBytes, txBytes, rxPackets, txPackets;
+		private boolean hasCounters = false;
+
+		private InterfaceStats(String name) {
+			this.name = name;
+		}
+
+		private void update(long[] counters, float seconds) {
+			if (hasCounters && seconds > 0) {
+				rxBytesPerSecond = rate(rxBytes, counters[RX_BYTES], seconds);
+				txBytesPerSecond = rate(txBytes, counters[TX_BYTES], seconds);
+				rxPacketsPerSecond =
+						rate(rxPackets, counters[RX_PACKETS], seconds);
+				txPacketsPerSecond =
+						rate(txPackets, counters[TX_PACKETS], seconds);
+				historyHead = (historyHead + 1) % HISTORY_SIZE;
+				history[historyHead] = rxBytesPerSecond + txBytesPerSecond;
+			}
+			rxBytes = counters[RX_BYTES];
+			txBytes = counters[TX_BYTES];
+			rxPackets = counters[RX_PACKETS];
+			txPackets = counters[TX_PACKETS];
+			rxErrors = counters[RX_ERRORS];
+			txErrors = counters[TX_ERRORS];
+			rxDrops = counters[RX_DROPS];
+			txDrops = counters[TX_DROPS];
+			hasCounters = true;
+			present = true;
+		}
+
+		private float rate(long before, long after, float seconds) {
+			// Counters start from zero if the interface was recreated
+			if (after < before) return 0;
+			return (after - before) / seconds;
+		}
+
+	}
+
+	private final InterfaceStats[] stats = new InterfaceStats[MAX_INTERFACES];
+	private final byte[] buffer = new byte[16 * 1024];
+	private final long[] counters = new long[COUNTERS];
+
+	private int interfaceCount = 0;
+	@Nullable
+	private RandomAccessFile file = null;
+	private boolean useTrafficStats = false;
+	private long lastSampleMillis = -1;
+
+	int getInterfaceCount() {
+		return interfaceCount;
+	}
+
+	InterfaceStats getInterface(int index) {
+		return stats[index];
+	}
+
+	/**
+	 * Takes a sample of all counters.
+	 *
+	 * @param nowMillis The current time, used to compute the rates.
+	 */
+	void sample(long nowMillis) {
+		float seconds = lastSampleMillis < 0 ? 0 :
+				(nowMillis - lastSampleMillis) / 1000f;
+		lastSampleMillis = nowMillis;
+		for (int i = 0; i < interfaceCount; i++) stats[i].present = false;
+		if (!useTrafficStats) {
+			int length = readProcNetDev();
+			if (length >= 0) {
+				parse(length, seconds);
+				return;
+			}
+			LOG.info("Falling back to TrafficStats");
+			useTrafficStats = true;
+		}
+		sampleTrafficStats(seconds);
+	}
+
+	/**
+	 * Closes the file kept open between samples. Sampling can continue
+	 * afterwards, but the next rates will be computed from scratch.
+	 */
+	void close() {
+		if (file != null) {
+			try {
+				file.close();
+			} catch (IOException e) {
+				logException(LOG, WARNING, e);
+			}
+			file = null;
+		}
+		lastSampleMillis = -1;
+	}
+
+	private int readProcNetDev() {
+		try {
+			if (file == null) file = new RandomAccessFile(PROC_NET_DEV, "r");
+			file.seek(0);
+			int length = 0;
+			while (length < buffer.length) {
+				int read = file.read(buffer, length, buffer.length - length);
+				if (read == -1) break;
+				length += read;
+			}
+			return length;
+		} catch (IOException | SecurityException e) {
+			logException(LOG, WARNING, e);
+			close();
+			return -1;
+		}
+	}
+
+	private void parse(int length, float seconds) {
+		// The first two lines are headers
+		int pos = skipLine(skipLine(0, length), length);
+		while (pos < length) {
+			while (pos < length && buffer[pos] == ' ') pos++;
+			int nameStart = pos;
+			while (pos < length && buffer[pos] != ':' && buffer[pos] != '\n')
+				pos++;
+			int nameEnd = pos;
+			if (pos >= length || buffer[pos] != ':') {
+				pos = skipLine(pos, length);
+				continue;
+			}
+			pos++;
+			for (int i = 0; i < COUNTERS; i++) {
+				while (pos < length && buffer[pos] == ' ') pos++;
+				long value = 0;
+				while (pos < length && buffer[pos] >= '0' &&
+						buffer[pos] <= '9') {
+					value = value * 10 + (buffer[pos] - '0');
+					pos++;
+				}
+				counters[i] = value;
+			}
+			pos = skipLine(pos, length);
+			InterfaceStats s = getOrAdd(nameStart, nameEnd);
+			if (s != null) s.update(counters, seconds);
+		}
+	}
+
+	private int skipLine(int pos, int length) {
+		while (pos < length && buffer[pos] != '\n') pos++;
+		return pos + 1;
+	}
+
+	@Nullable
+	private InterfaceStats getOrAdd(int nameStart, int nameEnd) {
+		for (int i = 0; i < interfaceCount; i++) {
+			if (nameEquals(stats[i].name, nameStart, nameEnd)) return stats[i];
+		}
+		if (interfaceCount == MAX_INTERFACES) return null;
+		// Only allocates when an interface shows up for the first time
+		String name = new String(buffer, nameStart, nameEnd - nameStart);
+		InterfaceStats s = new InterfaceStats(name);
+		stats[interfaceCount++] = s;
+		return s;
+	}
+
+	private boolean nameEquals(String name, int nameStart, int nameEnd) {
+		if (name.length() != nameEnd - nameStart) return false;
+		for (int i = 0; i < name.length(); i++) {
+			if (name.charAt(i) != buffer[nameStart + i]) return false;
+		}
+		return true;
+	}
+
+	private void sampleTrafficStats(float seconds) {
+		if (interfaceCount == 0) stats[interfaceCount++] =
+				new InterfaceStats(TOTAL);
+		counters[RX_BYTES] = TrafficStats.getTotalRxBytes();
+		counters[TX_BYTES] = TrafficStats.getTotalTxBytes();
+		counters[RX_PACKETS] = TrafficStats.getTotalRxPackets();
+		counters[TX_PACKETS] = TrafficStats.getTotalTxPackets();
+		// Not available from TrafficStats
+		counters[RX_ERRORS] = counters[TX_ERRORS] = 0;
+		counters[RX_DROPS] = counters[TX_DROPS] = 0;
+		stats[0].update(counters, seconds);
+	}
+
+}
@@ -1,20 +1,58 @@
 package org.briarproject.hotspot;
 
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.view.LayoutInflater;
+import android.view.Menu;
+import android.view.MenuInflater;
+import android.view.MenuItem;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.LinearLayout;
 import android.widget.TextView;
 
+import org.briarproject.hotspot.InterfaceTrafficSampler.InterfaceStats;
+import org.briarproject.hotspot.server.NetworkUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
 
+import static android.text.format.Formatter.formatShortFileSize;
+import static android.view.View.GONE;
+import static android.view.View.VISIBLE;
+
+/**
+ * Shows the addresses of all network interfaces and their live traffic.
+ * Sampling only happens while the fragment is started.
+ */
 public class InterfacesFragment extends Fragment {
 
+	private static final String KEY_INTERVAL = "intervalMillis";
+	private static final long DEFAULT_INTERVAL_MILLIS = 1000;
+
+	private final Handler handler = new Handler(Looper.getMainLooper());
+	private final InterfaceTrafficSampler sampler =
+			new InterfaceTrafficSampler();
+	// Rows of the traffic list, in the same order as the sampler's interfaces
+	private final List<View> rows = new ArrayList<>();
+
+	private LinearLayout trafficList;
+	private long intervalMillis = DEFAULT_INTERVAL_MILLIS;
+
 	@Override
 	public View onCreateView(LayoutInflater inflater, ViewGroup container,
 			Bundle savedInstanceState) {
+		setHasOptionsMenu(true);
+		if (savedInstanceState != null) {
+			intervalMillis = savedInstanceState.getLong(KEY_INTERVAL,
+					DEFAULT_INTERVAL_MILLIS);
+		}
 		return inflater.inflate(R.layout.fragment_interfaces, container, false);
 	}
 
@@ -24,6 +62,93 @@ public class InterfacesFragment extends Fragment {
 		super.onViewCreated(v, savedInstanceState);
 		TextView textView = v.findViewById(R.id.text);
 		textView.setText(NetworkUtils.getNetworkInterfaceSummary());
+		trafficList = v.findViewById(R.id.traffic);
+		rows.clear();
+	}
+
+	@Override
+	public void onStart() {
+		super.onStart();
+		handler.post(sampleTask);
+	}
+
+	@Override
+	public void onStop() {
+		super.onStop();
+		handler.removeCallbacks(sampleTask);
+		sampler.close();
+	}
+
+	@Override
+	public void onSaveInstanceState(@NonNull Bundle outState) {
+		super.onSaveInstanceState(outState);
+		outState.putLong(KEY_INTERVAL, intervalMillis);
+	}
+
+	@Override
+	public void onCreateOptionsMenu(@NonNull Menu menu,
+			@NonNull MenuInflater inflater) {
+		inflater.inflate(R.menu.interfaces, menu);
+		int id = R.id.interval_1000;
+		if (intervalMillis == 500) id = R.id.interval_500;
+		else if (intervalMillis == 2000) id = R.id.interval_2000;
+		else if (intervalMillis == 5000) id = R.id.interval_5000;
+		menu.findItem(id).setChecked(true);
+	}
+
+	@Override
+	public boolean onOptionsItemSelected(MenuItem item) {
+		long interval;
+		if (item.getItemId() == R.id.interval_500) interval = 500;
+		else if (item.getItemId() == R.id.interval_1000) interval = 1000;
+		else if (item.getItemId() == R.id.interval_2000) interval = 2000;
+		else if (item.getItemId() == R.id.interval_5000) interval = 5000;
+		else return super.onOptionsItemSelected(item);
+		item.setChecked(true);
+		intervalMillis = interval;
+		handler.removeCallbacks(sampleTask);
+		handler.post(sampleTask);
+		return true;
+	}
+
+	private final Runnable sampleTask = new Runnable() {
+		@Override
+		public void run() {
+			// Reading /proc/net/dev takes well below a millisecond
+			sampler.sample(SystemClock.elapsedRealtime());
+			updateRows();
+			handler.postDelayed(this, intervalMillis);
+		}
+	};
+
+	private void updateRows() {
+		LayoutInflater inflater = getLayoutInflater();
+		for (int i = 0; i < sampler.getInterfaceCount(); i++) {
+			InterfaceStats s = sampler.getInterface(i);
+			if (i == rows.size()) {
+				View row = inflater.inflate(
+						R.layout.list_item_interface_traffic, trafficList,
+						false);
+				TextView name = row.findViewById(R.id.name);
+				name.setText(s.name);
+				trafficList.addView(row);
+				rows.add(row);
+			}
+			View row = rows.get(i);
+			row.setVisibility(s.present ? VISIBLE : GONE);
+			if (!s.present) continue;
+			TextView rates = row.findViewById(R.id.rates);
+			rates.setText(getString(R.string.traffic_rates,
+					formatShortFileSize(requireContext(),
+							(long) s.rxBytesPerSecond),
+					(long) s.rxPacketsPerSecond,
+					formatShortFileSize(requireContext(),
+							(long) s.txBytesPerSecond),
+					(long) s.txPacketsPerSecond,
+					s.rxErrors, s.txErrors, s.rxDrops, s.txDrops));
+			SparklineView sparkline = row.findViewById(R.id.sparkline);
+			sparkline.setValues(s.history, s.historyHead);
+		}
 	}
 
 }
@@ -0,0 +1,262 @@
+package org.briarproject.hotspot;
+
+import android.content.Context;
+import android.net.wifi.SoftApConfiguration;
+import android.net.wifi.WifiConfiguration;
+import android.net.wifi.WifiManager;
+import android.net.wifi.WifiManager.LocalOnlyHotspotCallback;
+import android.net.wifi.WifiManager.LocalOnlyHotspotReservation;
+import android.os.Handler;
+
+import org.briarproject.hotspot.HotspotState.NetworkConfig;
+import org.briarproject.hotspot.server.Tracer;
+
+import java.util.logging.Logger;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
+import androidx.annotation.UiThread;
+
+import static android.content.Context.WIFI_SERVICE;
+import static android.net.wifi.WifiManager.LocalOnlyHotspotCallback.ERROR_GENERIC;
+import static android.net.wifi.WifiManager.LocalOnlyHotspotCallback.ERROR_INCOMPATIBLE_MODE;
+import static android.net.wifi.WifiManager.LocalOnlyHotspotCallback.ERROR_NO_CHANNEL;
+import static android.net.wifi.WifiManager.LocalOnlyHotspotCallback.ERROR_TETHERING_DISALLOWED;
+import static android.net.wifi.WifiManager.WIFI_MODE_FULL;
+import static android.net.wifi.WifiManager.WIFI_MODE_FULL_HIGH_PERF;
+import static android.os.Build.VERSION.SDK_INT;
+import static java.util.logging.Level.INFO;
+import static java.util.logging.Level.WARNING;
+import static java.util.logging.Logger.getLogger;
+import static org.briarproject.hotspot.HotspotManager.UNKNOWN_FREQUENCY;
+import static org.briarproject.hotspot.server.LogUtils.logException;
+
+/**
+ * Provides the hotspot using {@link WifiManager#startLocalOnlyHotspot}.
+ * The framework chooses the network name and passphrase.
+ * <p>
+ * Unlike Wi-Fi Direct, there is no API that tells us about connected clients,
+ * so {@link HotspotListener#onDeviceConnected()} is never called.
+ */
+@RequiresApi(26)
+class LocalOnlyHotspotManager implements HotspotTransport {
+
+	private static final Logger LOG =
+			getLogger(LocalOnlyHotspotManager.class.getName());
+
+	private static final String TRACE_START = "startLocalOnlyHotspot";
+
+	private final Context ctx;
+	private final HotspotListener listener;
+	private final WifiManager wifiManager;
+	private final Handler handler;
+	private final String lockTag;
+
+	@Nullable
+	private LocalOnlyHotspotReservation reservation;
+	@Nullable
+	private WifiManager.WifiLock wifiLock;
+	private boolean highPerformance = true;
+	// Whether startLocalOnlyHotspot() hasn't called back yet, and whether
+	// the hotspot has been stopped in the meantime
+	private boolean starting = false, stopPending = false;
+	// The cookie of the async trace span of starting the hotspot
+	private int startTrace = 0;
+
+	LocalOnlyHotspotManager(Context ctx, HotspotListener listener) {
+		this.ctx = ctx;
+		this.listener = listener;
+		wifiManager = (WifiManager) ctx.getApplicationContext()
+				.getSystemService(WIFI_SERVICE);
+		handler = new Handler(ctx.getMainLooper());
+		lockTag = ctx.getPackageName() + ":app-sharing-local-only-hotspot";
+	}
+
+	@Override
+	@UiThread
+	public void startHotspot() {
+		listener.onStartingHotspot();
+		acquireLock();
+		if (starting) {
+			// The request of a stopped start is still outstanding, and
+			// another one would fail, so it serves this start instead
+			stopPending = false;
+			return;
+		}
+		startTrace = Tracer.beginAsync(TRACE_START);
+		starting = true;
+		try {
+			wifiManager.startLocalOnlyHotspot(callback, handler);
+		} catch (IllegalStateException e) {
+			// thrown if we have an outstanding request already
+			logException(LOG, WARNING, e);
+			starting = false;
+			releaseHotspotWithError(ctx.getString(
+					R.string.start_callback_failed, "already requested"));
+		} catch (SecurityException e) {
+			// this should never happen, because we request permissions before
+			throw new AssertionError(e);
+		}
+	}
+
+	/**
+	 * The reservation of the hotspot ends with the process that made it, so
+	 * a new hotspot gets started.
+	 */
+	@Override
+	@UiThread
+	public void reattachHotspot(String networkName) {
+		startHotspot();
+	}
+
+	@Override
+	@UiThread
+	public void stopHotspot() {
+		if (starting) {
+			// The request can't be cancelled, so the hotspot gets closed
+			// and reported as stopped when it has started
+			LOG.info("stopping local-only hotspot when it has started");
+			stopPending = true;
+			releaseLock();
+			return;
+		}
+		if (reservation == null) return;
+		// closing the reservation doesn't trigger onStopped()
+		reservation.close();
+		reservation = null;
+		releaseHotspot();
+	}
+
+	private final LocalOnlyHotspotCallback callback =
+			new LocalOnlyHotspotCallback() {
+
+				@Override
+				public void onStarted(LocalOnlyHotspotReservation r) {
+					Tracer.endAsync(TRACE_START, startTrace);
+					starting = false;
+					if (stopPending) {
+						stopPending = false;
+						r.close();
+						releaseHotspot();
+						return;
+					}
+					reservation = r;
+					NetworkConfig config = getNetworkConfig(r);
+					if (config == null) {
+						r.close();
+						reservation = null;
+						releaseHotspotWithError(ctx.getString(
+								R.string.start_callback_no_group_info));
+					} else {
+						listener.onHotspotStarted(config);
+					}
+				}
+
+				@Override
+				public void onStopped() {
+					LOG.info("local-only hotspot stopped by the system");
+					reservation = null;
+					releaseHotspot();
+				}
+
+				@Override
+				public void onFailed(int reason) {
+					Tracer.endAsync(TRACE_START, startTrace);
+					starting = false;
+					if (LOG.isLoggable(INFO))
+						LOG.info("local-only hotspot failed: " + reason);
+					if (stopPending) {
+						// It was going to be stopped anyway
+						stopPending = false;
+						releaseHotspot();
+					} else {
+						releaseHotspotWithError(getFailureString(reason));
+					}
+				}
+
+			};
+
+	@Nullable
+	private NetworkConfig getNetworkConfig(LocalOnlyHotspotReservation r) {
+		String ssid, passphrase;
+		if (SDK_INT >= 30) {
+			SoftApConfiguration config = r.getSoftApConfiguration();
+			ssid = config.getSsid();
+			passphrase = config.getPassphrase();
+		} else {
+			WifiConfiguration config = r.getWifiConfiguration();
+			if (config == null) return null;
+			ssid = config.SSID;
+			passphrase = config.preSharedKey;
+		}
+		if (ssid == null || passphrase == null) return null;
+		return new NetworkConfig(unquote(ssid), unquote(passphrase),
+				UNKNOWN_FREQUENCY);
+	}
+
+	private String unquote(String s) {
+		if (s.length() >= 2 && s.startsWith("\"") && s.endsWith("\"")) {
+			return s.substring(1, s.length() - 1);
+		}
+		return s;
+	}
+
+	private String getFailureString(int reason) {
+		if (reason == ERROR_NO_CHANNEL) {
+			return ctx.getString(R.string.start_callback_failed, "no channel");
+		} else if (reason == ERROR_GENERIC) {
+			return ctx.getString(R.string.start_callback_failed,
+					"generic error");
+		} else if (reason == ERROR_INCOMPATIBLE_MODE) {
+			return ctx.getString(R.string.start_callback_failed,
+					"incompatible mode");
+		} else if (reason == ERROR_TETHERING_DISALLOWED) {
+			return ctx.getString(R.string.start_callback_failed,
+					"tethering disallowed");
+		}
+		return ctx.getString(R.string.start_callback_failed_unknown, reason);
+	}
+
+	private void acquireLock() {
+		if (wifiLock != null) return;
+		// WIFI_MODE_FULL has no effect on API >= 29
+		int lockType = highPerformance && SDK_INT >= 29 ?
+				WIFI_MODE_FULL_HIGH_PERF : WIFI_MODE_FULL;
+		wifiLock = wifiManager.createWifiLock(lockType, lockTag);
+		wifiLock.acquire();
+	}
+
+	private void releaseHotspot() {
+		listener.onHotspotStopped();
+		releaseLock();
+	}
+
+	private void releaseHotspotWithError(String error) {
+		listener.onHotspotError(error);
+		releaseLock();
+	}
+
+	@Override
+	@UiThread
+	public void setHighPerformance(boolean highPerformance) {
+		if (highPerformance == this.highPerformance) return;
+		this.highPerformance = highPerformance;
+		if (wifiLock != null) {
+			releaseLock();
+			acquireLock();
+		}
+	}
+
+	@Override
+	@UiThread
+	public void setProfile(PerformanceProfile profile) {
+		// The system chooses the band of a local-only hotspot
+	}
+
+	private void releaseLock() {
+		if (wifiLock == null) return;
+		wifiLock.release();
+		wifiLock = null;
+	}
+
+}
@@ -1,137 +1,144 @@
 package org.briarproject.hotspot;
 
 import android.app.Application;
-import android.net.wifi.WifiManager;
-import android.widget.Toast;
 
-import org.briarproject.hotspot.HotspotState.HotspotError;
-import org.briarproject.hotspot.HotspotState.HotspotStarted;
-import org.briarproject.hotspot.HotspotState.HotspotStopped;
-import org.briarproject.hotspot.HotspotState.NetworkConfig;
-import org.briarproject.hotspot.HotspotState.StartingHotspot;
+import org.briarproject.hotspot.ServingGovernor.ServingLevel;
+import org.briarproject.hotspot.server.ConnectionGuard.CloseReason;
+import org.briarproject.hotspot.server.LinkQuality;
 
-import java.util.logging.Logger;
+import java.util.List;
+import java.util.Map;
 
 import androidx.annotation.NonNull;
-import androidx.annotation.Nullable;
 import androidx.annotation.UiThread;
-import androidx.annotation.WorkerThread;
 import androidx.lifecycle.AndroidViewModel;
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
 
-import static android.content.Context.WIFI_SERVICE;
-import static android.os.Build.VERSION.SDK_INT;
-import static android.widget.Toast.LENGTH_LONG;
-import static java.util.logging.Logger.getLogger;
-import static org.briarproject.hotspot.HotspotManager.HotspotListener;
-import static org.briarproject.hotspot.WebServerManager.WebServerListener;
-
-public class MainViewModel extends AndroidViewModel
-		implements WebServerListener, HotspotListener {
-
-	private static final Logger LOG = getLogger(MainViewModel.class.getName());
+/**
+ * Gives the UI access to the {@link HotspotSession}, which lives on when the
+ * activity goes away, so transfers in progress carry on in the background.
+ */
+public class MainViewModel extends AndroidViewModel {
 
 	private final MutableLiveData<Boolean> is5GhzSupported =
 			new MutableLiveData<>();
 
-	private final HotspotManager hotspotManager;
-	private final WebServerManager webServerManager;
-
-	private final MutableLiveData<HotspotState> status =
+	private final MutableLiveData<List<SessionSummary>> sessionSummaries =
 			new MutableLiveData<>();
 
+	private final HotspotSession session;
+
 	public MainViewModel(@NonNull Application app) {
 		super(app);
-		hotspotManager = new HotspotManager(app, this);
-		webServerManager = new WebServerManager(app, this);
-
-		if (SDK_INT >= 21) {
-			WifiManager wifiManager =
-					(WifiManager) app.getSystemService(WIFI_SERVICE);
-			if (wifiManager.is5GHzBandSupported()) {
-				is5GhzSupported.setValue(true);
-			}
+		session = HotspotSession.getInstance(app);
+		// The hotspot was running when the process went away
+		if (session.canReattach()) HotspotService.reattach(app);
+
+		if (new AndroidWifiRadio(app).is5GHzBandSupported()) {
+			is5GhzSupported.setValue(true);
 		}
 	}
 
 	LiveData<HotspotState> getStatus() {
-		return status;
+		return session.getStatus();
 	}
 
 	LiveData<Boolean> getIs5GhzSupported() {
 		return is5GhzSupported;
 	}
 
-	@UiThread
-	void startWifiP2pHotspot() {
-		hotspotManager.startWifiP2pHotspot();
+	LiveData<ServingLevel> getServingLevel() {
+		return session.getServingLevel();
+	}
+
+	Map<CloseReason, Long> getClosedConnectionCounts() {
+		return session.getClosedConnectionCounts();
+	}
+
+	Map<String, Long> getBytesServed() {
+		return session.getBytesServed();
+	}
+
+	Map<String, LinkQuality> getLinkQualities() {
+		return session.getLinkQualities();
+	}
+
+	LiveData<List<SessionSummary>> getSessionSummaries() {
+		return sessionSummaries;
 	}
 
+	/**
+	 * Loads the summaries of past sessions from the journal in the
+	 * background and posts them to {@link #getSessionSummaries()}.
+	 */
 	@UiThread
-	void stopWifiP2pHotspot() {
-		// stop the webserver before the hotspot
-		// TODO maybe off-load stopping to IoExecutor as it can block
-		webServerManager.stopWebServer();
-		hotspotManager.stopWifiP2pHotspot();
+	void loadSessionSummaries() {
+		session.loadSessionSummaries(sessionSummaries);
 	}
 
-	@Override
-	protected void onCleared() {
-		stopWifiP2pHotspot();
+	boolean isHotspotActive() {
+		return session.isActive();
 	}
 
-	@Override
-	public void onStartingHotspot() {
-		status.setValue(new StartingHotspot());
+	/**
+	 * The settings for remembering the credentials of the hotspot. They are
+	 * read each time the hotspot starts.
+	 */
+	CredentialStore getCredentialStore() {
+		return session.getCredentialStore();
 	}
 
-	@Nullable
-	// Field to temporarily store the network config received via onHotspotStarted()
-	// in order to post it along with a HotspotStarted status
-	private volatile NetworkConfig networkConfig;
+	LiveData<PerformanceProfile> getProfile() {
+		return session.getProfile();
+	}
 
-	@Override
-	public void onHotspotStarted(NetworkConfig networkConfig) {
-		this.networkConfig = networkConfig;
-		LOG.info("starting webserver");
-		// TODO: offload this to the IoExecutor
-		webServerManager.startWebServer();
+	PerformanceProfile[] getAvailableProfiles() {
+		Boolean supports5Ghz = is5GhzSupported.getValue();
+		return PerformanceProfile.getAvailable(
+				supports5Ghz != null && supports5Ghz);
 	}
 
-	@Override
-	public void onDeviceConnected() {
-		Toast.makeText(getApplication(), R.string.connected_toast, LENGTH_LONG)
-				.show();
+	@UiThread
+	void setProfile(PerformanceProfile profile) {
+		session.setProfile(profile);
 	}
 
-	@Override
-	public void onHotspotStopped() {
-		status.setValue(new HotspotStopped());
-		LOG.info("stopping webserver");
-		// TODO maybe off-load stopping to IoExecutor as it can block
-		webServerManager.stopWebServer();
+	LiveData<Boolean> getCarouselEnabled() {
+		return session.getCarouselEnabled();
 	}
 
-	@Override
-	public void onHotspotError(String error) {
-		status.setValue(new HotspotError(error));
-		// TODO maybe off-load stopping to IoExecutor as it can block
-		webServerManager.stopWebServer();
+	@UiThread
+	void setCarouselEnabled(boolean enabled) {
+		session.setCarouselEnabled(enabled);
 	}
 
-	@Override
-	@WorkerThread
-	public void onWebServerStarted(String url) {
-		status.postValue(new HotspotStarted(networkConfig, url));
-		networkConfig = null;
+	LiveData<Boolean> getSharePageEnabled() {
+		return session.getSharePageEnabled();
 	}
 
-	@Override
-	@WorkerThread
-	public void onWebServerError() {
-		status.postValue(new HotspotError(
-				getApplication().getString(R.string.web_server_error)));
+	@UiThread
+	void setSharePageEnabled(boolean enabled) {
+		session.setSharePageEnabled(enabled);
+	}
+
+	/**
+	 * Call this when the user asks to start the hotspot, before the
+	 * conditions for starting it are checked.
+	 */
+	@UiThread
+	void onStartRequested() {
+		session.onStartRequested();
+	}
+
+	@UiThread
+	void startHotspot() {
+		HotspotService.start(getApplication());
+	}
+
+	@UiThread
+	void stopHotspot() {
+		session.stopHotspot();
 	}
 
 }
@@ -0,0 +1,101 @@
+package org.briarproject.hotspot;
+
+import java.util.List;
+
+import androidx.annotation.Nullable;
+
+/**
+ * Abstraction over the Wi-Fi Direct system services used by
+ * {@link HotspotManager}. The Android implementation is
+ * {@link AndroidP2pRadio}, other implementations allow the start flow to be
+ * driven without a device.
+ * <p>
+ * All callbacks are expected to be delivered on the thread that drives the
+ * {@link TaskScheduler} passed to the {@link HotspotManager}.
+ */
+interface P2pRadio {
+
+	// Failure reasons, these mirror the ones of WifiP2pManager.ActionListener
+	int ERROR = 0;
+	int P2P_UNSUPPORTED = 1;
+	int BUSY = 2;
+	int NO_SERVICE_REQUESTS = 3;
+
+	interface ActionCallback {
+
+		void onSuccess();
+
+		void onFailure(int reason);
+
+	}
+
+	interface GroupInfoCallback {
+
+		void onGroupInfoAvailable(@Nullable GroupInfo group);
+
+	}
+
+	class GroupInfo {
+
+		final String networkName, passphrase;
+		// in GHz or HotspotManager.UNKNOWN_FREQUENCY
+		final double frequency;
+		final List<String> clients;
+
+		GroupInfo(String networkName, String passphrase, double frequency,
+				List<String> clients) {
+			this.networkName = networkName;
+			this.passphrase = passphrase;
+			this.frequency = frequency;
+			this.clients = clients;
+		}
+
+	}
+
+	/**
+	 * @return false if the device does not support Wi-Fi Direct at all.
+	 */
+	boolean isSupported();
+
+	/**
+	 * Opens a channel to the Wi-Fi Direct framework.
+	 *
+	 * @return false if no channel could be opened.
+	 */
+	boolean initialize();
+
+	boolean isInitialized();
+
+	/**
+	 * Closes the channel opened by {@link #initialize()}.
+	 */
+	void close();
+
+	/**
+	 * Creates a group, with the given network name and passphrase if both are
+	 * not null. Custom credentials are only supported on API 29+.
+	 *
+	 * @param band5Ghz Whether to use the 5 GHz band if the device supports
+	 * it, otherwise 2.4 GHz. Only applies along with custom credentials.
+	 */
+	void createGroup(@Nullable String networkName, @Nullable String passphrase,
+			boolean band5Ghz, ActionCallback callback);
+
+	void removeGroup(ActionCallback callback);
+
+	/**
+	 * Requests information about the current group. This is a no-op if the
+	 * radio is not initialized.
+	 */
+	void requestGroupInfo(GroupInfoCallback callback);
+
+	/**
+	 * @param highPerformance Whether to keep the radio out of power save
+	 * mode, which has an effect on API 29+ only. A lock that is already
+	 * held is replaced.
+	 */
+	void acquireWifiLock(boolean highPerformance);
+
+	void releaseWifiLock();
+
+}
@@ -0,0 +1,87 @@
+package org.briarproject.hotspot;
+
+import androidx.annotation.StringRes;
+
+/**
+ * Bundles of settings that trade throughput, the number of clients served
+ * at once, battery and memory against each other. The limits of a profile
+ * are combined with those of the {@link ServingGovernor}, which only ever
+ * tightens them.
+ */
+enum PerformanceProfile {
+
+	// Few transfers at a time finish sooner than many sharing the airtime
+	MAX_THROUGHPUT(R.string.profile_max_throughput, true, true, 3, 0, 0, 5,
+			1000),
+	MANY_CLIENTS(R.string.profile_many_clients, false, true, 8, 0, 0, 5,
+			1000),
+	BATTERY_SAVER(R.string.profile_battery_saver, false, false, 3,
+			512 * 1024, 0, 5, 2000),
+	// Slow devices take longer until the group info is available
+	LOW_RAM(R.string.profile_low_ram, false, true, 2, 0, 8, 8, 1000);
+
+	@StringRes
+	final int label;
+	/**
+	 * Whether the Wi-Fi Direct group should use the 5 GHz band, if the
+	 * device supports it. Some clients can only join groups on 2.4 GHz.
+	 */
+	final boolean band5Ghz;
+	/**
+	 * Whether the Wi-Fi lock may keep the radio out of power save.
+	 */
+	final boolean highPerformance;
+	/**
+	 * The number of APK downloads that may run at the same time.
+	 */
+	final int maxTransfers;
+	/**
+	 * The rate limit of each download, or 0 if unlimited.
+	 */
+	final long bytesPerSecond;
+	/**
+	 * The number of threads serving connections, or 0 for a thread per
+	 * connection.
+	 */
+	final int maxServerThreads;
+	/**
+	 * How often and how far apart the group info is requested after
+	 * creating the group.
+	 */
+	final int groupInfoAttempts;
+	final long groupInfoRetryMillis;
+
+	PerformanceProfile(@StringRes int label, boolean band5Ghz,
+			boolean highPerformance, int maxTransfers, long bytesPerSecond,
+			int maxServerThreads, int groupInfoAttempts,
+			long groupInfoRetryMillis) {
+		this.label = label;
+		this.band5Ghz = band5Ghz;
+		this.highPerformance = highPerformance;
+		this.maxTransfers = maxTransfers;
+		this.bytesPerSecond = bytesPerSecond;
+		this.maxServerThreads = maxServerThreads;
+		this.groupInfoAttempts = groupInfoAttempts;
+		this.groupInfoRetryMillis = groupInfoRetryMillis;
+	}
+
+	/**
+	 * Returns the profile for a device with the given capabilities. The
+	 * default stays on 2.4 GHz even if 5 GHz is supported, because clients
+	 * that can't see 5 GHz networks could not join.
+	 */
+	static PerformanceProfile getDefault(boolean lowRam, int cores) {
+		if (lowRam || cores <= 2) return LOW_RAM;
+		return MANY_CLIENTS;
+	}
+
+	/**
+	 * Returns the profiles that make sense on a device, which excludes
+	 * {@link #MAX_THROUGHPUT} if it doesn't support 5 GHz.
+	 */
+	static PerformanceProfile[] getAvailable(boolean supports5Ghz) {
+		if (supports5Ghz) return values();
+		return new PerformanceProfile[] {MANY_CLIENTS, BATTERY_SAVER, LOW_RAM};
+	}
+
+}
@@ -0,0 +1,27 @@
+package org.briarproject.hotspot;
+
+/**
+ * Readings that tell how much load the device can take. The thermal status
+ * uses the values of {@code PowerManager.THERMAL_STATUS_*}.
+ */
+interface PowerMonitor {
+
+	int THERMAL_STATUS_NONE = 0;
+	int THERMAL_STATUS_LIGHT = 1;
+	int THERMAL_STATUS_MODERATE = 2;
+	int THERMAL_STATUS_SEVERE = 3;
+
+	/**
+	 * Returns {@link #THERMAL_STATUS_NONE} if the device doesn't report its
+	 * thermal status.
+	 */
+	int getThermalStatus();
+
+	/**
+	 * @return the battery level in percent, or 100 if unknown.
+	 */
+	int getBatteryPercent();
+
+	boolean isCharging();
+
+}
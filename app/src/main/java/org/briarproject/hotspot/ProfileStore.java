@@ -0,0 +1,65 @@
+package org.briarproject.hotspot;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.util.logging.Logger;
+
+import static android.content.Context.ACTIVITY_SERVICE;
+import static android.content.Context.MODE_PRIVATE;
+import static android.os.Build.VERSION.SDK_INT;
+import static java.util.logging.Level.INFO;
+import static java.util.logging.Logger.getLogger;
+
+/**
+ * Remembers the {@link PerformanceProfile} the user chose. Until they
+ * choose one, the default for the device's capabilities is used.
+ */
+class ProfileStore {
+
+	private static final Logger LOG = getLogger(ProfileStore.class.getName());
+
+	private static final String PREFS_NAME = "performance";
+	private static final String KEY_PROFILE = "profile";
+
+	private final Context ctx;
+	private final SharedPreferences prefs;
+
+	ProfileStore(Context ctx) {
+		this.ctx = ctx;
+		prefs = ctx.getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
+	}
+
+	PerformanceProfile getProfile() {
+		String name = prefs.getString(KEY_PROFILE, null);
+		if (name != null) {
+			try {
+				return PerformanceProfile.valueOf(name);
+			} catch (IllegalArgumentException e) {
+				// A profile of a newer version of the app
+				if (LOG.isLoggable(INFO)) LOG.info("Unknown profile " + name);
+			}
+		}
+		return getDefault();
+	}
+
+	void setProfile(PerformanceProfile profile) {
+		prefs.edit().putString(KEY_PROFILE, profile.name()).apply();
+	}
+
+	private PerformanceProfile getDefault() {
+		ActivityManager am =
+				(ActivityManager) ctx.getSystemService(ACTIVITY_SERVICE);
+		boolean lowRam = SDK_INT >= 19 && am.isLowRamDevice();
+		int cores = Runtime.getRuntime().availableProcessors();
+		PerformanceProfile profile =
+				PerformanceProfile.getDefault(lowRam, cores);
+		if (LOG.isLoggable(INFO)) {
+			LOG.info("Default profile " + profile + ", low RAM " + lowRam +
+					", " + cores + " cores");
+		}
+		return profile;
+	}
+
+}
@@ -0,0 +1,52 @@
+package org.briarproject.hotspot;
+
+import android.graphics.Bitmap;
+import android.util.LruCache;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import static org.briarproject.hotspot.QrCodeUtils.createQrCode;
+import static org.briarproject.hotspot.QrCodeUtils.createQrCodeSvg;
+
+/**
+ * Caches rendered QR codes keyed by their content, so that showing the same
+ * QR code again doesn't require encoding it again. QR codes are rendered at
+ * one pixel per module and scaled when drawn, so they don't depend on the
+ * size or density of the screen.
+ */
+class QrCodeCache {
+
+	private static final int MAX_ENTRIES = 8;
+
+	private final LruCache<String, Bitmap> cache =
+			new LruCache<>(MAX_ENTRIES);
+	private final LruCache<String, String> svgCache =
+			new LruCache<>(MAX_ENTRIES);
+
+	@Nullable
+	@WorkerThread
+	Bitmap getQrCode(String content) {
+		Bitmap qrCode = cache.get(content);
+		if (qrCode == null) {
+			qrCode = createQrCode(content);
+			if (qrCode != null) cache.put(content, qrCode);
+		}
+		return qrCode;
+	}
+
+	/**
+	 * Returns the QR code as an SVG document, for serving it to clients.
+	 */
+	@Nullable
+	@WorkerThread
+	String getQrCodeSvg(String content) {
+		String svg = svgCache.get(content);
+		if (svg == null) {
+			svg = createQrCodeSvg(content);
+			if (svg != null) svgCache.put(content, svg);
+		}
+		return svg;
+	}
+
+}
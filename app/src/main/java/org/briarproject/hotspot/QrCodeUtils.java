@@ -1,18 +1,22 @@
 package org.briarproject.hotspot;
 
+import android.content.res.Resources;
 import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
 import android.util.DisplayMetrics;
 import android.util.Log;
+import android.view.ViewGroup.LayoutParams;
+import android.widget.ImageView;
 
 import com.google.zxing.WriterException;
 import com.google.zxing.common.BitMatrix;
 import com.google.zxing.qrcode.QRCodeWriter;
 
+import java.nio.ByteBuffer;
+
 import androidx.annotation.Nullable;
 
-import static android.graphics.Bitmap.Config.ARGB_8888;
-import static android.graphics.Color.BLACK;
-import static android.graphics.Color.WHITE;
+import static android.graphics.Bitmap.Config.ALPHA_8;
 import static com.google.zxing.BarcodeFormat.QR_CODE;
 import static java.lang.Math.max;
 import static java.lang.Math.min;
@@ -21,21 +25,71 @@ class QrCodeUtils {
 
 	private static String TAG = QrCodeUtils.class.getName();
 
+	private static final byte DARK = (byte) 0xFF, LIGHT = 0;
+
 	static String createWifiLoginString(String ssid, String password) {
 		// https://en.wikipedia.org/wiki/QR_code#WiFi_network_login
 		// do not remove the dangling ';', it can cause problems to omit it
 		return "WIFI:S:" + ssid + ";T:WPA;P:" + password + ";;";
 	}
 
-	@Nullable
-	static Bitmap createQrCode(DisplayMetrics dm, String input) {
+	/**
+	 * Returns the edge length of a QR code in pixels. It doesn't change when
+	 * the screen gets rotated.
+	 */
+	static int getQrCodeSize(DisplayMetrics dm) {
 		int smallestDimen = min(dm.widthPixels, dm.heightPixels);
 		int largestDimen = max(dm.widthPixels, dm.heightPixels);
-		int size = min(smallestDimen, largestDimen / 2);
+		return min(smallestDimen, largestDimen / 2);
+	}
+
+	/**
+	 * Creates a QR code with one pixel per module, including the quiet zone.
+	 * Dark modules are opaque and light modules are transparent, so the
+	 * bitmap needs to be drawn on a light background.
+	 * Use {@link #showQrCode(ImageView, Bitmap)} to display it.
+	 */
+	@Nullable
+	static Bitmap createQrCode(String input) {
+		BitMatrix encoded = encode(input);
+		return encoded == null ? null : renderQrCode(encoded);
+	}
+
+	/**
+	 * Creates a QR code as an SVG document. The modules of each row are
+	 * merged into runs, so the size of the document only depends on the
+	 * content.
+	 */
+	@Nullable
+	static String createQrCodeSvg(String input) {
+		BitMatrix encoded = encode(input);
+		return encoded == null ? null : renderQrCodeSvg(encoded);
+	}
+
+	/**
+	 * Shows a QR code created by {@link #createQrCode(String)}, scaled up to
+	 * an integer multiple of its size that fits into
+	 * {@link #getQrCodeSize(DisplayMetrics)}. Scaling is done when drawing
+	 * and without filtering, so the modules stay sharp.
+	 */
+	static void showQrCode(ImageView view, Bitmap qrCode) {
+		Resources res = view.getResources();
+		int size = getQrCodeSize(res.getDisplayMetrics());
+		int scale = max(1, size / qrCode.getWidth());
+		BitmapDrawable drawable = new BitmapDrawable(res, qrCode);
+		drawable.setFilterBitmap(false);
+		LayoutParams params = view.getLayoutParams();
+		params.width = qrCode.getWidth() * scale;
+		params.height = qrCode.getHeight() * scale;
+		view.setLayoutParams(params);
+		view.setImageDrawable(drawable);
+	}
+
+	@Nullable
+	private static BitMatrix encode(String input) {
 		try {
-			BitMatrix encoded =
-					new QRCodeWriter().encode(input, QR_CODE, size, size);
-			return renderQrCode(encoded);
+			// With a requested size of zero, ZXing uses one pixel per module
+			return new QRCodeWriter().encode(input, QR_CODE, 0, 0);
 		} catch (WriterException e) {
 			Log.w(TAG, e);
 			return null;
@@ -45,14 +99,44 @@ class QrCodeUtils {
 	private static Bitmap renderQrCode(BitMatrix matrix) {
 		int width = matrix.getWidth();
 		int height = matrix.getHeight();
-		int[] pixels = new int[width * height];
-		for (int x = 0; x < width; x++) {
-			for (int y = 0; y < height; y++) {
-				pixels[y * width + x] = matrix.get(x, y) ? BLACK : WHITE;
+		Bitmap qr = Bitmap.createBitmap(width, height, ALPHA_8);
+		int rowBytes = qr.getRowBytes();
+		ByteBuffer pixels = ByteBuffer.allocate(rowBytes * height);
+		for (int y = 0; y < height; y++) {
+			pixels.position(y * rowBytes);
+			for (int x = 0; x < width; x++) {
+				pixels.put(matrix.get(x, y) ? DARK : LIGHT);
 			}
 		}
-		Bitmap qr = Bitmap.createBitmap(width, height, ARGB_8888);
-		qr.setPixels(pixels, 0, width, 0, 0, width, height);
+		pixels.rewind();
+		qr.copyPixelsFromBuffer(pixels);
 		return qr;
 	}
+
+	private static String renderQrCodeSvg(BitMatrix matrix) {
+		int width = matrix.getWidth();
+		int height = matrix.getHeight();
+		StringBuilder sb = new StringBuilder();
+		sb.append("<svg xmlns=\"http://www.w3.org/2000/svg\" viewBox=\"0 0 ")
+				.append(width).append(' ').append(height)
+				.append("\" shape-rendering=\"crispEdges\">")
+				.append("<rect width=\"100%\" height=\"100%\" fill=\"#fff\"/>")
+				.append("<path fill=\"#000\" d=\"");
+		for (int y = 0; y < height; y++) {
+			int x = 0;
+			while (x < width) {
+				if (!matrix.get(x, y)) {
+					x++;
+					continue;
+				}
+				int start = x;
+				while (x < width && matrix.get(x, y)) x++;
+				sb.append('M').append(start).append(' ').append(y)
+						.append('h').append(x - start).append("v1h-")
+						.append(x - start).append('z');
+			}
+		}
+		sb.append("\"/></svg>");
+		return sb.toString();
+	}
 }
@@ -1,7 +1,14 @@
 package org.briarproject.hotspot;
 
+import android.content.ActivityNotFoundException;
+import android.content.Intent;
 import android.graphics.Bitmap;
+import android.net.Uri;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.TextUtils;
+import android.text.format.Formatter;
 import android.view.LayoutInflater;
 import android.view.Menu;
 import android.view.MenuInflater;
@@ -11,18 +18,53 @@ import android.view.ViewGroup;
 import android.widget.ImageView;
 import android.widget.TextView;
 
+import org.briarproject.hotspot.ServingGovernor.ServingLevel;
+import org.briarproject.hotspot.server.ConnectionGuard.CloseReason;
+import org.briarproject.hotspot.server.LinkQuality;
+import org.briarproject.hotspot.server.Tracer;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.StringRes;
+import androidx.core.content.FileProvider;
 import androidx.fragment.app.Fragment;
 import androidx.lifecycle.ViewModelProvider;
 
+import static android.content.Intent.FLAG_GRANT_READ_URI_PERMISSION;
 import static android.view.View.GONE;
 import static android.view.View.VISIBLE;
-import static org.briarproject.hotspot.QrCodeUtils.createQrCode;
+import static java.util.logging.Level.WARNING;
+import static java.util.logging.Logger.getLogger;
+import static org.briarproject.hotspot.BuildConfig.APPLICATION_ID;
+import static org.briarproject.hotspot.QrCodeUtils.showQrCode;
+import static org.briarproject.hotspot.UiUtils.showProfileDialog;
+import static org.briarproject.hotspot.server.ConnectionGuard.CloseReason.HEADER_TIMEOUT;
+import static org.briarproject.hotspot.server.ConnectionGuard.CloseReason.IDLE_KEEP_ALIVE;
+import static org.briarproject.hotspot.server.ConnectionGuard.CloseReason.PER_IP_LIMIT;
+import static org.briarproject.hotspot.server.ConnectionGuard.CloseReason.SLOW_BODY;
+import static org.briarproject.hotspot.server.LogUtils.logException;
 
 public class ServerFragment extends Fragment {
 
+	private static final Logger LOG = getLogger(ServerFragment.class.getName());
+
+	private static final long CONNECTION_STATS_INTERVAL_MILLIS = 2000;
+	private static final String TRACE_FILE = "traces/trace.json";
+
+	private final Handler handler = new Handler(Looper.getMainLooper());
+
 	private MainViewModel viewModel;
+	private TextView connectionStatsView, bytesServedView, linkQualityView;
 
 	@Override
 	public View onCreateView(LayoutInflater inflater, ViewGroup container,
@@ -40,22 +82,108 @@ public class ServerFragment extends Fragment {
 		super.onViewCreated(v, savedInstanceState);
 		ImageView qrCode = v.findViewById(R.id.qr_code);
 		TextView urlView = v.findViewById(R.id.url);
+		TextView otherUrlsView = v.findViewById(R.id.other_urls);
+		TextView servingLevelView = v.findViewById(R.id.serving_level);
+		connectionStatsView = v.findViewById(R.id.connection_stats);
+		bytesServedView = v.findViewById(R.id.bytes_served);
+		linkQualityView = v.findViewById(R.id.link_quality);
 
 		viewModel.getStatus().observe(getViewLifecycleOwner(), status -> {
 			if (status instanceof HotspotState.HotspotStarted) {
 				HotspotState.HotspotStarted state =
 						(HotspotState.HotspotStarted) status;
-				Bitmap qrCodeBitmap = createQrCode(
-						getResources().getDisplayMetrics(), state.getUrl());
+				Bitmap qrCodeBitmap = state.getUrlQrCode();
 				if (qrCodeBitmap == null) {
 					qrCode.setVisibility(GONE);
 				} else {
-					qrCode.setImageBitmap(qrCodeBitmap);
+					showQrCode(qrCode, qrCodeBitmap);
 					qrCode.setVisibility(VISIBLE);
 				}
 				urlView.setText(state.getUrl());
+				// Faster paths for clients that share another network with us
+				List<String> otherUrls = new ArrayList<>(state.getUrls());
+				otherUrls.remove(state.getUrl());
+				if (otherUrls.isEmpty()) {
+					otherUrlsView.setVisibility(GONE);
+				} else {
+					otherUrlsView.setText(getString(R.string.other_urls,
+							TextUtils.join("\n", otherUrls)));
+					otherUrlsView.setVisibility(VISIBLE);
+				}
 			}
 		});
+		viewModel.getServingLevel().observe(getViewLifecycleOwner(),
+				level -> servingLevelView.setText(getServingLevelText(level)));
+	}
+
+	@Override
+	public void onStart() {
+		super.onStart();
+		handler.post(updateConnectionStats);
+	}
+
+	@Override
+	public void onStop() {
+		super.onStop();
+		handler.removeCallbacks(updateConnectionStats);
+	}
+
+	private final Runnable updateConnectionStats = new Runnable() {
+		@Override
+		public void run() {
+			Map<CloseReason, Long> counts =
+					viewModel.getClosedConnectionCounts();
+			connectionStatsView.setText(getString(R.string.connections_closed,
+					counts.get(PER_IP_LIMIT), counts.get(HEADER_TIMEOUT),
+					counts.get(SLOW_BODY), counts.get(IDLE_KEEP_ALIVE)));
+			Map<String, Long> bytesServed = viewModel.getBytesServed();
+			if (bytesServed.isEmpty()) {
+				bytesServedView.setVisibility(GONE);
+			} else {
+				List<String> parts = new ArrayList<>();
+				for (Map.Entry<String, Long> e : bytesServed.entrySet()) {
+					parts.add(e.getKey() + " " + Formatter.formatShortFileSize(
+							requireContext(), e.getValue()));
+				}
+				bytesServedView.setText(getString(R.string.bytes_served,
+						TextUtils.join(", ", parts)));
+				bytesServedView.setVisibility(VISIBLE);
+			}
+			updateLinkQuality();
+			handler.postDelayed(this, CONNECTION_STATS_INTERVAL_MILLIS);
+		}
+	};
+
+	private void updateLinkQuality() {
+		Map<String, LinkQuality> qualities = viewModel.getLinkQualities();
+		if (qualities.isEmpty()) {
+			linkQualityView.setVisibility(GONE);
+			return;
+		}
+		List<String> lines = new ArrayList<>();
+		for (Map.Entry<String, LinkQuality> e : qualities.entrySet()) {
+			LinkQuality q = e.getValue();
+			lines.add(getString(R.string.link_quality_client, e.getKey(),
+					Formatter.formatShortFileSize(requireContext(),
+							q.downBytesPerSecond),
+					Formatter.formatShortFileSize(requireContext(),
+							q.upBytesPerSecond), q.rttMillis));
+		}
+		linkQualityView.setText(getString(R.string.link_quality,
+				TextUtils.join("\n", lines)));
+		linkQualityView.setVisibility(VISIBLE);
+	}
+
+	@StringRes
+	private static int getServingLevelText(ServingLevel level) {
+		switch (level) {
+			case REDUCED:
+				return R.string.serving_level_reduced;
+			case MINIMAL:
+				return R.string.serving_level_minimal;
+			default:
+				return R.string.serving_level_normal;
+		}
 	}
 
 	@Override
@@ -64,6 +192,16 @@ public class ServerFragment extends Fragment {
 		inflater.inflate(R.menu.main, menu);
 	}
 
+	@Override
+	public void onPrepareOptionsMenu(@NonNull Menu menu) {
+		Boolean enabled = viewModel.getCarouselEnabled().getValue();
+		menu.findItem(R.id.carousel)
+				.setChecked(enabled != null && enabled);
+		Boolean share = viewModel.getSharePageEnabled().getValue();
+		menu.findItem(R.id.share_page).setChecked(share != null && share);
+		menu.findItem(R.id.export_trace).setVisible(Tracer.isEnabled());
+	}
+
 	@Override
 	public boolean onOptionsItemSelected(MenuItem item) {
 		if (item.getItemId() == R.id.interfaces) {
@@ -72,8 +210,63 @@ public class ServerFragment extends Fragment {
 					.addToBackStack("INTERFACES")
 					.commit();
 			return true;
+		} else if (item.getItemId() == R.id.performance_profile) {
+			showProfileDialog(requireContext(), viewModel);
+			return true;
+		} else if (item.getItemId() == R.id.session_history) {
+			getParentFragmentManager().beginTransaction()
+					.replace(R.id.fragment_container, new SessionsFragment())
+					.addToBackStack(null)
+					.commit();
+			return true;
+		} else if (item.getItemId() == R.id.carousel) {
+			boolean enabled = !item.isChecked();
+			item.setChecked(enabled);
+			viewModel.setCarouselEnabled(enabled);
+			return true;
+		} else if (item.getItemId() == R.id.share_page) {
+			boolean enabled = !item.isChecked();
+			item.setChecked(enabled);
+			viewModel.setSharePageEnabled(enabled);
+			return true;
+		} else if (item.getItemId() == R.id.export_trace) {
+			exportTrace();
+			return true;
 		}
 		return super.onOptionsItemSelected(item);
 	}
 
+	/**
+	 * Shares the trace in the JSON format of Chrome's trace viewer, so it
+	 * can be opened in Perfetto, see {@link Tracer}.
+	 */
+	private void exportTrace() {
+		File file = new File(requireContext().getExternalFilesDir(null),
+				TRACE_FILE);
+		File dir = file.getParentFile();
+		try {
+			if (dir != null && !dir.exists() && !dir.mkdirs())
+				throw new IOException("Could not create " + dir);
+			try (Writer out = new OutputStreamWriter(
+					new FileOutputStream(file), "UTF-8")) {
+				Tracer.writeChromeTrace(out);
+			}
+		} catch (IOException e) {
+			logException(LOG, WARNING, e);
+			return;
+		}
+		Uri uri = FileProvider.getUriForFile(requireContext(),
+				APPLICATION_ID + ".fileprovider", file);
+		Intent i = new Intent(Intent.ACTION_SEND);
+		i.setType("application/json");
+		i.putExtra(Intent.EXTRA_STREAM, uri);
+		i.addFlags(FLAG_GRANT_READ_URI_PERMISSION);
+		try {
+			startActivity(Intent.createChooser(i,
+					getString(R.string.menu_export_trace)));
+		} catch (ActivityNotFoundException e) {
+			logException(LOG, WARNING, e);
+		}
+	}
+
 }
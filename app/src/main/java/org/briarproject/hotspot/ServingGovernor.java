@@ -0,0 +1,209 @@
+package org.briarproject.hotspot;
+
+import org.briarproject.hotspot.server.ServingLimits;
+
+import java.util.logging.Logger;
+
+import androidx.annotation.UiThread;
+
+import static java.util.logging.Level.INFO;
+import static java.util.logging.Logger.getLogger;
+import static org.briarproject.hotspot.PowerMonitor.THERMAL_STATUS_MODERATE;
+import static org.briarproject.hotspot.PowerMonitor.THERMAL_STATUS_SEVERE;
+import static org.briarproject.hotspot.ServingGovernor.ServingLevel.MINIMAL;
+import static org.briarproject.hotspot.ServingGovernor.ServingLevel.NORMAL;
+import static org.briarproject.hotspot.ServingGovernor.ServingLevel.REDUCED;
+
+/**
+ * Scales down serving when the device gets hot or its battery runs low, so
+ * that the OS doesn't have to throttle it without warning.
+ * <p>
+ * The limits are the tighter ones of the {@link ServingLevel} and the
+ * {@link PerformanceProfile} chosen by the user.
+ * <p>
+ * The {@link PowerMonitor} is polled periodically. Pressure raises the
+ * {@link ServingLevel} at once, but the level is only lowered again once the
+ * readings have been clear of the thresholds, including a margin for the
+ * battery, for {@link #RELAX_DELAY_MILLIS}. This keeps the level from
+ * flapping while the readings hover around a threshold.
+ */
+class ServingGovernor implements ServingLimits {
+
+	enum ServingLevel {
+
+		NORMAL(8, 0, true),
+		REDUCED(3, 512 * 1024, true),
+		MINIMAL(1, 128 * 1024, false);
+
+		/**
+		 * The number of APK downloads that may run at the same time.
+		 */
+		final int maxTransfers;
+		/**
+		 * The rate limit of each download, or 0 if unlimited.
+		 */
+		final long bytesPerSecond;
+		/**
+		 * Whether the Wi-Fi lock should keep the radio out of power save.
+		 */
+		final boolean highPerformance;
+
+		ServingLevel(int maxTransfers, long bytesPerSecond,
+				boolean highPerformance) {
+			this.maxTransfers = maxTransfers;
+			this.bytesPerSecond = bytesPerSecond;
+			this.highPerformance = highPerformance;
+		}
+	}
+
+	interface GovernorListener {
+		@UiThread
+		void onServingLevelChanged(ServingLevel level);
+	}
+
+	private static final Logger LOG =
+			getLogger(ServingGovernor.class.getName());
+
+	static final long POLL_INTERVAL_MILLIS = 10_000;
+	static final long RELAX_DELAY_MILLIS = 60_000;
+
+	// Battery levels at which serving gets scaled down when not charging
+	private static final int BATTERY_REDUCED = 30, BATTERY_MINIMAL = 15;
+	// How much the battery needs to recover to scale up again
+	private static final int BATTERY_MARGIN = 5;
+
+	private final PowerMonitor monitor;
+	private final TaskScheduler scheduler;
+	private final GovernorListener listener;
+
+	// Read by the web server's threads
+	private volatile ServingLevel level = NORMAL;
+	private volatile PerformanceProfile profile;
+
+	// The following fields are only accessed on the scheduler's thread
+	private boolean running = false;
+	// Incremented on each start, so polls of an earlier run stop
+	private int generation = 0;
+	private long relaxSince = -1;
+
+	ServingGovernor(PowerMonitor monitor, TaskScheduler scheduler,
+			GovernorListener listener, PerformanceProfile profile) {
+		this.monitor = monitor;
+		this.scheduler = scheduler;
+		this.listener = listener;
+		this.profile = profile;
+	}
+
+	ServingLevel getLevel() {
+		return level;
+	}
+
+	PerformanceProfile getProfile() {
+		return profile;
+	}
+
+	/**
+	 * Applies the profile's limits to downloads starting from now.
+	 */
+	@UiThread
+	void setProfile(PerformanceProfile profile) {
+		this.profile = profile;
+	}
+
+	@Override
+	public int getMaxTransfers() {
+		return Math.min(level.maxTransfers, profile.maxTransfers);
+	}
+
+	@Override
+	public long getBytesPerSecond() {
+		long a = level.bytesPerSecond, b = profile.bytesPerSecond;
+		if (a == 0) return b;
+		if (b == 0) return a;
+		return Math.min(a, b);
+	}
+
+	/**
+	 * Returns whether the Wi-Fi lock should keep the radio out of power
+	 * save, which both the level and the profile need to allow.
+	 */
+	boolean isHighPerformance() {
+		return level.highPerformance && profile.highPerformance;
+	}
+
+	@UiThread
+	void start() {
+		if (running) return;
+		running = true;
+		int g = ++generation;
+		poll(g);
+	}
+
+	/**
+	 * Stops polling and returns to {@link ServingLevel#NORMAL}.
+	 */
+	@UiThread
+	void stop() {
+		running = false;
+		relaxSince = -1;
+		setLevel(NORMAL);
+	}
+
+	private void poll(int g) {
+		if (!running || g != generation) return;
+		evaluate();
+		scheduler.schedule(() -> poll(g), POLL_INTERVAL_MILLIS);
+	}
+
+	private void evaluate() {
+		int thermal = monitor.getThermalStatus();
+		int battery = monitor.getBatteryPercent();
+		boolean charging = monitor.isCharging();
+		ServingLevel pressure = getLevel(thermal, battery, charging, 0);
+		ServingLevel current = level;
+		if (pressure.compareTo(current) >= 0) {
+			relaxSince = -1;
+			if (pressure != current) {
+				if (LOG.isLoggable(INFO)) {
+					LOG.info("Scaling down to " + pressure + ": thermal " +
+							thermal + ", battery " + battery + "%" +
+							(charging ? " charging" : ""));
+				}
+				setLevel(pressure);
+			}
+			return;
+		}
+		ServingLevel relaxed =
+				getLevel(thermal, battery, charging, BATTERY_MARGIN);
+		if (relaxed.compareTo(current) >= 0) {
+			relaxSince = -1;
+			return;
+		}
+		long now = scheduler.now();
+		if (relaxSince == -1) {
+			relaxSince = now;
+		} else if (now - relaxSince >= RELAX_DELAY_MILLIS) {
+			relaxSince = -1;
+			if (LOG.isLoggable(INFO)) LOG.info("Scaling up to " + relaxed);
+			setLevel(relaxed);
+		}
+	}
+
+	private static ServingLevel getLevel(int thermal, int battery,
+			boolean charging, int batteryMargin) {
+		if (thermal >= THERMAL_STATUS_SEVERE) return MINIMAL;
+		if (!charging && battery <= BATTERY_MINIMAL + batteryMargin)
+			return MINIMAL;
+		if (thermal >= THERMAL_STATUS_MODERATE) return REDUCED;
+		if (!charging && battery <= BATTERY_REDUCED + batteryMargin)
+			return REDUCED;
+		return NORMAL;
+	}
+
+	private void setLevel(ServingLevel newLevel) {
+		if (newLevel == level) return;
+		level = newLevel;
+		listener.onServingLevelChanged(newLevel);
+	}
+
+}
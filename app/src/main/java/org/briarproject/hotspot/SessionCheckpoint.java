@@ -0,0 +1,106 @@
+package org.briarproject.hotspot;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import androidx.annotation.Nullable;
+
+import static android.content.Context.MODE_PRIVATE;
+import static org.briarproject.hotspot.HotspotManager.UNKNOWN_FREQUENCY;
+
+/**
+ * Persists what is needed to reattach to a running hotspot after the process
+ * has been recreated: the network, the URL, when the session started, how
+ * long starting it took and the addresses of the clients that connected.
+ * <p>
+ * The passphrase is not stored, it is part of the group info of the running
+ * hotspot.
+ */
+class SessionCheckpoint {
+
+	static class Checkpoint {
+
+		final String networkName, url;
+		final double frequency;
+		// Wall clock time, as it must survive the process
+		final long startedAt;
+		// Time from the conditions being met to the web server serving, or
+		// -1 if it's unknown
+		final long startupMillis;
+		final Set<String> clients;
+
+		private Checkpoint(String networkName, String url, double frequency,
+				long startedAt, long startupMillis, Set<String> clients) {
+			this.networkName = networkName;
+			this.url = url;
+			this.frequency = frequency;
+			this.startedAt = startedAt;
+			this.startupMillis = startupMillis;
+			this.clients = clients;
+		}
+	}
+
+	private static final String PREFS_NAME = "hotspot_session";
+	private static final String KEY_NETWORK_NAME = "networkName";
+	private static final String KEY_URL = "url";
+	private static final String KEY_FREQUENCY = "frequency";
+	private static final String KEY_STARTED_AT = "startedAt";
+	private static final String KEY_STARTUP_MILLIS = "startupMillis";
+	private static final String KEY_CLIENTS = "clients";
+
+	private final SharedPreferences prefs;
+
+	SessionCheckpoint(Context ctx) {
+		prefs = ctx.getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
+	}
+
+	@Nullable
+	Checkpoint load() {
+		String networkName = prefs.getString(KEY_NETWORK_NAME, null);
+		String url = prefs.getString(KEY_URL, null);
+		if (networkName == null || url == null) return null;
+		double frequency = Double.longBitsToDouble(prefs.getLong(
+				KEY_FREQUENCY, Double.doubleToLongBits(UNKNOWN_FREQUENCY)));
+		Set<String> clients = new HashSet<>(
+				prefs.getStringSet(KEY_CLIENTS, Collections.emptySet()));
+		return new Checkpoint(networkName, url, frequency,
+				prefs.getLong(KEY_STARTED_AT, 0),
+				prefs.getLong(KEY_STARTUP_MILLIS, -1), clients);
+	}
+
+	/**
+	 * Records a newly started session.
+	 */
+	void save(String networkName, double frequency, String url,
+			long startedAt, long startupMillis) {
+		prefs.edit()
+				.putString(KEY_NETWORK_NAME, networkName)
+				.putLong(KEY_FREQUENCY, Double.doubleToLongBits(frequency))
+				.putString(KEY_URL, url)
+				.putLong(KEY_STARTED_AT, startedAt)
+				.putLong(KEY_STARTUP_MILLIS, startupMillis)
+				.remove(KEY_CLIENTS)
+				.apply();
+	}
+
+	void setUrl(String url) {
+		prefs.edit().putString(KEY_URL, url).apply();
+	}
+
+	/**
+	 * @param clients The addresses of all clients known so far.
+	 */
+	void setClients(Set<String> clients) {
+		// The returned set must not be modified, so it is always replaced
+		prefs.edit().putStringSet(KEY_CLIENTS, new HashSet<>(clients)).apply();
+	}
+
+	void clear() {
+		prefs.edit().clear().apply();
+	}
+
+}
@@ -0,0 +1,342 @@
+package org.briarproject.hotspot;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.Nullable;
+
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.logging.Level.INFO;
+import static java.util.logging.Level.WARNING;
+import static java.util.logging.Logger.getLogger;
+import static org.briarproject.hotspot.server.LogUtils.logException;
+
+/**
+ * An append-only journal of session events, so sessions can be looked back
+ * on after an event.
+ * <p>
+ * Events are queued and written in batches on a background thread, so the
+ * serving threads never wait for flash. Each batch is synced to disk. A
+ * record consists of its length, its body and a CRC32 of the body, so a
+ * record that was torn by a crash is detected and cut off before the next
+ * write. The journal is split into files of at most
+ * {@link #MAX_FILE_BYTES}, and only the newest {@link #MAX_FILES} are kept.
+ */
+class SessionJournal {
+
+	enum EventType {
+		HOTSPOT_STARTED, HOTSPOT_STOPPED, CLIENT_JOINED, CLIENT_LEFT,
+		DOWNLOAD_STARTED, DOWNLOAD_COMPLETED, DOWNLOAD_ABORTED
+	}
+
+	static class Event {
+
+		final EventType type;
+		// Wall clock time
+		final long time;
+		// The client's address, or the network name of a started hotspot
+		final String subject;
+		// The APK variant of a download, the URL of a started hotspot or the
+		// error of a stopped one
+		final String detail;
+		final long bytes;
+		// The duration of downloads, or the startup time of started hotspots
+		final long durationMillis;
+
+		private Event(EventType type, long time, String subject,
+				String detail, long bytes, long durationMillis) {
+			this.type = type;
+			this.time = time;
+			this.subject = subject;
+			this.detail = detail;
+			this.bytes = bytes;
+			this.durationMillis = durationMillis;
+		}
+	}
+
+	interface EventsCallback {
+		/**
+		 * Called on the journal's thread.
+		 */
+		void onEventsLoaded(List<Event> events);
+	}
+
+	private static final Logger LOG =
+			getLogger(SessionJournal.class.getName());
+
+	static final int MAX_FILE_BYTES = 128 * 1024;
+	static final int MAX_FILES = 8;
+
+	// "HSJ1"
+	private static final int MAGIC = 0x48534a31;
+	private static final String PREFIX = "journal-";
+	private static final String SUFFIX = ".bin";
+	// Longer records can only be the result of corruption
+	private static final int MAX_RECORD_BYTES = 4096;
+	private static final long BATCH_DELAY_MILLIS = 1000;
+	// Events beyond this are dropped if the disk can't keep up
+	private static final int MAX_PENDING = 10_000;
+
+	private final File dir;
+	private final ScheduledExecutorService executor =
+			newSingleThreadScheduledExecutor();
+	private final Queue<Event> pending = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger pendingCount = new AtomicInteger(0);
+	private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+
+	// Only accessed on the executor
+	private boolean recovered = false;
+
+	SessionJournal(File dir) {
+		this.dir = dir;
+	}
+
+	/**
+	 * Queues an event with the current time. The event is written within
+	 * {@link #BATCH_DELAY_MILLIS}, or at once if the hotspot started or
+	 * stopped.
+	 */
+	@AnyThread
+	void append(EventType type, String subject, String detail, long bytes,
+			long durationMillis) {
+		if (pendingCount.incrementAndGet() > MAX_PENDING) {
+			pendingCount.decrementAndGet();
+			LOG.warning("Too many pending journal events, dropping one");
+			return;
+		}
+		pending.add(new Event(type, System.currentTimeMillis(), subject,
+				detail, bytes, durationMillis));
+		if (type == EventType.HOTSPOT_STARTED ||
+				type == EventType.HOTSPOT_STOPPED) {
+			executor.execute(this::flush);
+		} else if (flushScheduled.compareAndSet(false, true)) {
+			executor.schedule(this::flush, BATCH_DELAY_MILLIS, MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Loads all events of the journal, including those that are still
+	 * queued, oldest first.
+	 */
+	@AnyThread
+	void loadEvents(EventsCallback callback) {
+		executor.execute(() -> {
+			flush();
+			List<Event> events = new ArrayList<>();
+			for (File f : listFiles()) read(f, events);
+			callback.onEventsLoaded(events);
+		});
+	}
+
+	private void flush() {
+		flushScheduled.set(false);
+		List<byte[]> records = new ArrayList<>();
+		Event e;
+		while ((e = pending.poll()) != null) {
+			pendingCount.decrementAndGet();
+			records.add(encode(e));
+		}
+		if (records.isEmpty()) return;
+		try {
+			write(records);
+			if (LOG.isLoggable(INFO))
+				LOG.info("Journalled " + records.size() + " events");
+		} catch (IOException ex) {
+			logException(LOG, WARNING, ex);
+		}
+	}
+
+	private void write(List<byte[]> records) throws IOException {
+		if (!dir.isDirectory() && !dir.mkdirs())
+			throw new IOException("Could not create " + dir);
+		List<File> files = listFiles();
+		File current = files.isEmpty() ? null : files.get(files.size() - 1);
+		if (current != null && !recovered) recover(current);
+		recovered = true;
+		int i = 0;
+		while (i < records.size()) {
+			long length = current == null || !current.exists() ? -1 :
+					current.length();
+			if (length < 0 ||
+					length + records.get(i).length > MAX_FILE_BYTES) {
+				current = createFile(files, current);
+				length = current.length();
+			}
+			// Append as many records as fit in one write
+			ByteArrayOutputStream chunk = new ByteArrayOutputStream();
+			do {
+				chunk.write(records.get(i), 0, records.get(i).length);
+				i++;
+			} while (i < records.size() && length + chunk.size() +
+					records.get(i).length <= MAX_FILE_BYTES);
+			try (FileOutputStream out = new FileOutputStream(current, true)) {
+				chunk.writeTo(out);
+				out.getFD().sync();
+			}
+		}
+	}
+
+	/**
+	 * Starts a new file after the given one and deletes the oldest files
+	 * beyond {@link #MAX_FILES}.
+	 */
+	private File createFile(List<File> files, @Nullable File last)
+			throws IOException {
+		int index = last == null ? 0 : getIndex(last) + 1;
+		File f = new File(dir, String.format(Locale.US, "%s%08d%s", PREFIX,
+				index, SUFFIX));
+		try (DataOutputStream out =
+				new DataOutputStream(new FileOutputStream(f))) {
+			out.writeInt(MAGIC);
+		}
+		files.add(f);
+		while (files.size() > MAX_FILES) {
+			File oldest = files.remove(0);
+			if (oldest.exists() && !oldest.delete())
+				LOG.warning("Could not delete " + oldest);
+		}
+		return f;
+	}
+
+	/**
+	 * Cuts off a record at the end of the file that was torn by a crash, so
+	 * the following records can be read again. Deletes the file if it
+	 * doesn't even have a valid header.
+	 */
+	private void recover(File f) throws IOException {
+		long valid = read(f, null);
+		if (valid < 0) {
+			LOG.warning("Deleting invalid journal file");
+			if (!f.delete()) throw new IOException("Could not delete " + f);
+		} else if (valid < f.length()) {
+			if (LOG.isLoggable(INFO)) {
+				LOG.info("Cutting off " + (f.length() - valid) +
+						" bytes of a torn journal record");
+			}
+			try (RandomAccessFile raf = new RandomAccessFile(f, "rw")) {
+				raf.setLength(valid);
+			}
+		}
+	}
+
+	/**
+	 * Reads the valid records of the given file.
+	 *
+	 * @param events The list to add the events to, or null.
+	 * @return the length of the valid part of the file, or -1 if the file
+	 * has no valid header.
+	 */
+	private static long read(File f, @Nullable List<Event> events) {
+		long valid = -1;
+		try (DataInputStream in = new DataInputStream(
+				new FileInputStream(f))) {
+			if (in.readInt() != MAGIC) return -1;
+			valid = 4;
+			while (true) {
+				int length = in.readInt();
+				if (length <= 0 || length > MAX_RECORD_BYTES) break;
+				byte[] body = new byte[length];
+				in.readFully(body);
+				CRC32 crc = new CRC32();
+				crc.update(body);
+				if ((int) crc.getValue() != in.readInt()) break;
+				Event e = readBody(body);
+				if (e != null && events != null) events.add(e);
+				valid += 8 + length;
+			}
+		} catch (EOFException e) {
+			// The end of the file, or a torn record
+		} catch (IOException e) {
+			logException(LOG, WARNING, e);
+		}
+		return valid;
+	}
+
+	private static byte[] encode(Event e) {
+		try {
+			ByteArrayOutputStream bodyOut = new ByteArrayOutputStream();
+			DataOutputStream body = new DataOutputStream(bodyOut);
+			body.writeByte(e.type.ordinal());
+			body.writeLong(e.time);
+			body.writeUTF(e.subject);
+			body.writeUTF(e.detail);
+			body.writeLong(e.bytes);
+			body.writeLong(e.durationMillis);
+			byte[] b = bodyOut.toByteArray();
+			CRC32 crc = new CRC32();
+			crc.update(b);
+			ByteArrayOutputStream recordOut =
+					new ByteArrayOutputStream(b.length + 8);
+			DataOutputStream record = new DataOutputStream(recordOut);
+			record.writeInt(b.length);
+			record.write(b);
+			record.writeInt((int) crc.getValue());
+			return recordOut.toByteArray();
+		} catch (IOException ex) {
+			// Writing to memory doesn't fail
+			throw new AssertionError(ex);
+		}
+	}
+
+	/**
+	 * Returns null for event types of a newer version of the app.
+	 */
+	@Nullable
+	private static Event readBody(byte[] b) throws IOException {
+		DataInputStream body =
+				new DataInputStream(new ByteArrayInputStream(b));
+		int type = body.readUnsignedByte();
+		EventType[] types = EventType.values();
+		if (type >= types.length) return null;
+		return new Event(types[type], body.readLong(), body.readUTF(),
+				body.readUTF(), body.readLong(), body.readLong());
+	}
+
+	/**
+	 * Returns the journal files, oldest first.
+	 */
+	private List<File> listFiles() {
+		File[] files = dir.listFiles((d, name) ->
+				name.startsWith(PREFIX) && name.endsWith(SUFFIX) &&
+						getIndex(name) >= 0);
+		if (files == null) return new ArrayList<>();
+		Arrays.sort(files, (a, b) ->
+				Integer.compare(getIndex(a), getIndex(b)));
+		return new ArrayList<>(Arrays.asList(files));
+	}
+
+	private static int getIndex(File f) {
+		return getIndex(f.getName());
+	}
+
+	private static int getIndex(String name) {
+		try {
+			return Integer.parseInt(name.substring(PREFIX.length(),
+					name.length() - SUFFIX.length()));
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+}
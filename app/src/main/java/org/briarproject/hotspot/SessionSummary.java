@@ -0,0 +1,132 @@
+package org.briarproject.hotspot;
+
+import org.briarproject.hotspot.SessionJournal.Event;
+import org.briarproject.hotspot.SessionJournal.EventType;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * What happened in one session, aggregated from the {@link SessionJournal}.
+ */
+class SessionSummary {
+
+	final String networkName;
+	// Wall clock times
+	final long startedAt, endedAt;
+	// False if the session ended without the hotspot being stopped, for
+	// example because the app crashed
+	final boolean stopped;
+	// Time from the conditions being met to serving, or -1 if unknown
+	final long startupMillis;
+	final int clients;
+	final int downloadsStarted, downloadsCompleted, downloadsAborted;
+	final long bytesServed;
+	// Median time from a client's first connection to its first completed
+	// download, or -1 if no client completed a download
+	final long onboardingMillis;
+
+	private SessionSummary(String networkName, long startedAt, long endedAt,
+			boolean stopped, long startupMillis, int clients,
+			int downloadsStarted, int downloadsCompleted,
+			int downloadsAborted, long bytesServed, long onboardingMillis) {
+		this.networkName = networkName;
+		this.startedAt = startedAt;
+		this.endedAt = endedAt;
+		this.stopped = stopped;
+		this.startupMillis = startupMillis;
+		this.clients = clients;
+		this.downloadsStarted = downloadsStarted;
+		this.downloadsCompleted = downloadsCompleted;
+		this.downloadsAborted = downloadsAborted;
+		this.bytesServed = bytesServed;
+		this.onboardingMillis = onboardingMillis;
+	}
+
+	/**
+	 * Splits the events into sessions at each start of the hotspot. Events
+	 * before the first start, whose start has been rotated out of the
+	 * journal, are ignored.
+	 *
+	 * @return the sessions, newest first.
+	 */
+	static List<SessionSummary> aggregate(List<Event> events) {
+		List<SessionSummary> sessions = new ArrayList<>();
+		Builder b = null;
+		for (Event e : events) {
+			if (e.type == EventType.HOTSPOT_STARTED) {
+				if (b != null) sessions.add(b.build());
+				b = new Builder(e);
+			} else if (b != null) {
+				b.add(e);
+				if (e.type == EventType.HOTSPOT_STOPPED) {
+					sessions.add(b.build());
+					b = null;
+				}
+			}
+		}
+		if (b != null) sessions.add(b.build());
+		Collections.reverse(sessions);
+		return sessions;
+	}
+
+	private static class Builder {
+
+		private final Event start;
+		private final Map<String, Long> joinedAt = new HashMap<>();
+		private final Set<String> onboarded = new HashSet<>();
+		private final List<Long> onboardingTimes = new ArrayList<>();
+		private long endedAt;
+		private boolean stopped = false;
+		private int started = 0, completed = 0, aborted = 0;
+		private long bytes = 0;
+
+		private Builder(Event start) {
+			this.start = start;
+			endedAt = start.time;
+		}
+
+		private void add(Event e) {
+			endedAt = e.time;
+			switch (e.type) {
+				case HOTSPOT_STOPPED:
+					stopped = true;
+					break;
+				case CLIENT_JOINED:
+					if (!joinedAt.containsKey(e.subject))
+						joinedAt.put(e.subject, e.time);
+					break;
+				case DOWNLOAD_STARTED:
+					started++;
+					break;
+				case DOWNLOAD_COMPLETED:
+					completed++;
+					bytes += e.bytes;
+					Long joined = joinedAt.get(e.subject);
+					// Only the first download counts
+					if (joined != null && onboarded.add(e.subject))
+						onboardingTimes.add(e.time - joined);
+					break;
+				case DOWNLOAD_ABORTED:
+					aborted++;
+					bytes += e.bytes;
+					break;
+			}
+		}
+
+		private SessionSummary build() {
+			Collections.sort(onboardingTimes);
+			long median = onboardingTimes.isEmpty() ? -1 :
+					onboardingTimes.get(onboardingTimes.size() / 2);
+			return new SessionSummary(start.subject, start.time, endedAt,
+					stopped, start.durationMillis, joinedAt.size(), started,
+					completed, aborted, bytes, median);
+		}
+	}
+
+}
@@ -0,0 +1,113 @@
+package org.briarproject.hotspot;
+
+import android.os.Bundle;
+import android.text.format.DateUtils;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.LinearLayout;
+import android.widget.TextView;
+
+import java.util.List;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.fragment.app.Fragment;
+import androidx.lifecycle.ViewModelProvider;
+
+import static android.text.format.DateUtils.FORMAT_SHOW_DATE;
+import static android.text.format.DateUtils.FORMAT_SHOW_TIME;
+import static android.text.format.Formatter.formatShortFileSize;
+
+/**
+ * Shows the totals of past sessions and a summary of each of them, from the
+ * {@link SessionJournal}.
+ */
+public class SessionsFragment extends Fragment {
+
+	private MainViewModel viewModel;
+
+	@Override
+	public View onCreateView(LayoutInflater inflater, ViewGroup container,
+			Bundle savedInstanceState) {
+		viewModel = new ViewModelProvider(requireActivity())
+				.get(MainViewModel.class);
+		return inflater.inflate(R.layout.fragment_sessions, container, false);
+	}
+
+	@Override
+	public void onViewCreated(@NonNull View v,
+			@Nullable Bundle savedInstanceState) {
+		super.onViewCreated(v, savedInstanceState);
+		LinearLayout list = v.findViewById(R.id.sessions);
+		TextView total = v.findViewById(R.id.total);
+		viewModel.getSessionSummaries().observe(getViewLifecycleOwner(),
+				sessions -> {
+					// Keep the totals, replace the sessions
+					list.removeViews(1, list.getChildCount() - 1);
+					showTotal(total, sessions);
+					for (SessionSummary s : sessions) {
+						// The newest session may still be running
+						boolean running = s == sessions.get(0) &&
+								viewModel.isHotspotActive();
+						addSession(list, s, running);
+					}
+				});
+		viewModel.loadSessionSummaries();
+	}
+
+	private void showTotal(TextView total, List<SessionSummary> sessions) {
+		if (sessions.isEmpty()) {
+			total.setText(R.string.sessions_empty);
+			return;
+		}
+		int clients = 0, completed = 0, aborted = 0;
+		long bytes = 0;
+		for (SessionSummary s : sessions) {
+			clients += s.clients;
+			completed += s.downloadsCompleted;
+			aborted += s.downloadsAborted;
+			bytes += s.bytesServed;
+		}
+		total.setText(getString(R.string.sessions_total, sessions.size(),
+				clients, completed, aborted,
+				formatShortFileSize(requireContext(), bytes)));
+	}
+
+	private void addSession(LinearLayout list, SessionSummary s,
+			boolean running) {
+		View row = getLayoutInflater().inflate(R.layout.list_item_session,
+				list, false);
+		TextView title = row.findViewById(R.id.title);
+		String date = DateUtils.formatDateTime(requireContext(), s.startedAt,
+				FORMAT_SHOW_DATE | FORMAT_SHOW_TIME);
+		String duration =
+				DateUtils.formatElapsedTime((s.endedAt - s.startedAt) / 1000);
+		title.setText(getString(R.string.session_title, date, duration));
+		StringBuilder details = new StringBuilder(getString(
+				R.string.session_details, s.networkName, s.clients,
+				s.downloadsCompleted, s.downloadsStarted, s.downloadsAborted,
+				formatShortFileSize(requireContext(), s.bytesServed)));
+		if (s.startupMillis >= 0) {
+			details.append('\n').append(getString(R.string.session_startup,
+					formatSeconds(s.startupMillis)));
+		}
+		if (s.onboardingMillis >= 0) {
+			details.append('\n').append(getString(
+					R.string.session_onboarding,
+					formatSeconds(s.onboardingMillis)));
+		}
+		if (!s.stopped && !running) {
+			details.append('\n').append(getString(
+					R.string.session_not_stopped));
+		}
+		TextView detailsView = row.findViewById(R.id.details);
+		detailsView.setText(details);
+		list.addView(row);
+	}
+
+	private static String formatSeconds(long millis) {
+		return DateUtils.formatElapsedTime(Math.round(millis / 1000.0));
+	}
+
+}
@@ -0,0 +1,75 @@
+package org.briarproject.hotspot;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.util.AttributeSet;
+import android.view.View;
+
+import androidx.annotation.Nullable;
+
+import static android.graphics.Color.BLACK;
+
+/**
+ * Draws a small line chart of the values in a ring buffer, scaled to the
+ * largest value. Drawing doesn't allocate.
+ */
+public class SparklineView extends View {
+
+	private final Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+
+	@Nullable
+	private float[] values = null;
+	private int head = 0;
+	private float[] lines = new float[0];
+
+	public SparklineView(Context context, @Nullable AttributeSet attrs) {
+		super(context, attrs);
+		paint.setColor(BLACK);
+		paint.setStrokeWidth(
+				context.getResources().getDisplayMetrics().density);
+	}
+
+	/**
+	 * @param values A ring buffer of values, oldest first after the head.
+	 * @param head The index of the latest value.
+	 */
+	void setValues(float[] values, int head) {
+		this.values = values;
+		this.head = head;
+		if (lines.length != (values.length - 1) * 4) {
+			lines = new float[(values.length - 1) * 4];
+		}
+		invalidate();
+	}
+
+	@Override
+	protected void onDraw(Canvas canvas) {
+		super.onDraw(canvas);
+		if (values == null || values.length < 2) return;
+		int n = values.length;
+		float max = 0;
+		for (float v : values) if (v > max) max = v;
+		float width = getWidth() - getPaddingLeft() - getPaddingRight();
+		float height = getHeight() - getPaddingTop() - getPaddingBottom();
+		float left = getPaddingLeft(), bottom = getHeight() - getPaddingBottom();
+		float step = width / (n - 1);
+		float previousX = left, previousY = bottom;
+		for (int i = 0; i < n; i++) {
+			float v = values[(head + 1 + i) % n];
+			float x = left + i * step;
+			float y = max == 0 ? bottom : bottom - v / max * height;
+			if (i > 0) {
+				int offset = (i - 1) * 4;
+				lines[offset] = previousX;
+				lines[offset + 1] = previousY;
+				lines[offset + 2] = x;
+				lines[offset + 3] = y;
+			}
+			previousX = x;
+			previousY = y;
+		}
+		canvas.drawLines(lines, paint);
+	}
+
+}
@@ -0,0 +1,82 @@
+package org.briarproject.hotspot;
+
+import java.util.Arrays;
+
+/**
+ * Records when the milestones of starting the hotspot were reached, so the
+ * time from tapping the start button to serving the app can be broken down.
+ * Times are in milliseconds on any monotonic clock.
+ * <p>
+ * When the hotspot is reattached after the process has been recreated, the
+ * time saved compared to the original start is recorded as well.
+ */
+class StartupMetrics {
+
+	enum Milestone {
+		BUTTON_TAPPED, CONDITIONS_MET, HOTSPOT_STARTED, WEB_SERVER_STARTED
+	}
+
+	private final long[] times = new long[Milestone.values().length];
+	private long savedMillis = -1;
+
+	StartupMetrics() {
+		reset();
+	}
+
+	synchronized void reset() {
+		Arrays.fill(times, -1);
+		savedMillis = -1;
+	}
+
+	synchronized void mark(Milestone milestone, long time) {
+		times[milestone.ordinal()] = time;
+	}
+
+	/**
+	 * @return the time between the two milestones or -1 if one of them has
+	 * not been reached.
+	 */
+	synchronized long getDuration(Milestone from, Milestone to) {
+		long start = times[from.ordinal()], end = times[to.ordinal()];
+		if (start < 0 || end < 0) return -1;
+		return end - start;
+	}
+
+	/**
+	 * Records how much time reattaching saved compared to starting the
+	 * hotspot and the web server from scratch.
+	 */
+	synchronized void setSavedMillis(long savedMillis) {
+		this.savedMillis = savedMillis;
+	}
+
+	/**
+	 * @return the time saved by reattaching or -1 if the hotspot was not
+	 * reattached.
+	 */
+	synchronized long getSavedMillis() {
+		return savedMillis;
+	}
+
+	@Override
+	public synchronized String toString() {
+		StringBuilder sb = new StringBuilder();
+		Milestone previous = null;
+		for (Milestone m : Milestone.values()) {
+			if (times[m.ordinal()] < 0) continue;
+			if (previous != null) {
+				if (sb.length() > 0) sb.append(", ");
+				sb.append(previous).append(" -> ").append(m).append(": ")
+						.append(getDuration(previous, m)).append(" ms");
+			}
+			previous = m;
+		}
+		if (savedMillis >= 0) {
+			if (sb.length() > 0) sb.append(", ");
+			sb.append("saved by reattaching: ").append(savedMillis)
+					.append(" ms");
+		}
+		return sb.toString();
+	}
+
+}
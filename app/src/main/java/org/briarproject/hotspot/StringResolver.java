@@ -0,0 +1,14 @@
+package org.briarproject.hotspot;
+
+import androidx.annotation.StringRes;
+
+/**
+ * Resolves string resources, so that classes reporting errors to the user
+ * don't need a {@link android.content.Context}. On Android this is
+ * {@code Context::getString}.
+ */
+interface StringResolver {
+
+	String getString(@StringRes int resId, Object... formatArgs);
+
+}
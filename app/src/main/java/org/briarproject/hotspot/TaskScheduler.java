@@ -0,0 +1,17 @@
+package org.briarproject.hotspot;
+
+/**
+ * Schedules delayed tasks and provides the time base they are scheduled
+ * against. On Android this is backed by a {@link android.os.Handler}.
+ */
+interface TaskScheduler {
+
+	/**
+	 * @return the current time in milliseconds. Only differences between
+	 * values returned by this method are meaningful.
+	 */
+	long now();
+
+	void schedule(Runnable task, long delayMillis);
+
+}
@@ -0,0 +1,261 @@
+package org.briarproject.hotspot;
+
+import android.content.Context;
+import android.os.Handler;
+
+import org.briarproject.hotspot.HotspotState.NetworkConfig;
+import org.briarproject.hotspot.HotspotTransport.HotspotListener;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.UiThread;
+
+import static android.Manifest.permission.ACCESS_FINE_LOCATION;
+import static android.content.pm.PackageManager.PERMISSION_GRANTED;
+import static android.os.Build.VERSION.SDK_INT;
+import static androidx.core.content.ContextCompat.checkSelfPermission;
+import static java.util.logging.Level.INFO;
+import static java.util.logging.Logger.getLogger;
+import static org.briarproject.hotspot.TransportSelector.Transport.LOCAL_ONLY_HOTSPOT;
+import static org.briarproject.hotspot.TransportSelector.Transport.WIFI_DIRECT;
+
+/**
+ * A {@link HotspotTransport} that picks one of the available transports based
+ * on how well they performed on this device so far. If the chosen transport
+ * fails to start, the other one is tried before an error gets reported.
+ * <p>
+ * Wi-Fi Direct is the default. The local-only hotspot only gets tried if
+ * Wi-Fi Direct failed or was slow before, and gets preferred once its
+ * expected time to a successful start is lower.
+ */
+class TransportSelector implements HotspotTransport, HotspotListener {
+
+	enum Transport {
+		WIFI_DIRECT, LOCAL_ONLY_HOTSPOT
+	}
+
+	interface LocationPermission {
+		boolean isGranted();
+	}
+
+	private static final Logger LOG =
+			getLogger(TransportSelector.class.getName());
+
+	// Number of attempts before we trust the statistics of a transport
+	private static final int MIN_ATTEMPTS = 3;
+	private static final String WIFI_DIRECT_PREFIX = "DIRECT-";
+	// Wi-Fi Direct starts slower than this are worth trying an alternative
+	private static final long SLOW_START_MILLIS = 5_000;
+
+	private final HotspotListener listener;
+	private final TransportStats stats;
+	private final TaskScheduler scheduler;
+	private final LocationPermission locationPermission;
+	private final Map<Transport, HotspotTransport> transports =
+			new EnumMap<>(Transport.class);
+
+	@Nullable
+	private Transport active = null;
+	// Scheduled to start after the active transport failed
+	@Nullable
+	private Transport pendingFallback = null;
+	private boolean starting = false, fallbackTried = false;
+	private long startTime;
+
+	TransportSelector(Context ctx, HotspotListener listener) {
+		this(listener, new TransportStats(ctx),
+				new HandlerTaskScheduler(new Handler(ctx.getMainLooper())),
+				() -> checkSelfPermission(ctx, ACCESS_FINE_LOCATION) ==
+						PERMISSION_GRANTED);
+		addTransport(WIFI_DIRECT, new HotspotManager(ctx, this));
+		if (SDK_INT >= 26) {
+			addTransport(LOCAL_ONLY_HOTSPOT,
+					new LocalOnlyHotspotManager(ctx, this));
+		}
+	}
+
+	/**
+	 * Use this constructor to select between other transports, for example
+	 * fake ones, which are added with {@link #addTransport}.
+	 */
+	TransportSelector(HotspotListener listener, TransportStats stats,
+			TaskScheduler scheduler, LocationPermission locationPermission) {
+		this.listener = listener;
+		this.stats = stats;
+		this.scheduler = scheduler;
+		this.locationPermission = locationPermission;
+	}
+
+	/**
+	 * The transport needs to report to this selector.
+	 */
+	void addTransport(Transport t, HotspotTransport transport) {
+		transports.put(t, transport);
+	}
+
+	@Override
+	@UiThread
+	public void startHotspot() {
+		fallbackTried = false;
+		pendingFallback = null;
+		start(selectTransport());
+	}
+
+	/**
+	 * Only Wi-Fi Direct groups survive the process, local-only hotspots
+	 * don't, and their network names don't start with the Wi-Fi Direct
+	 * prefix.
+	 */
+	@Override
+	@UiThread
+	public void reattachHotspot(String networkName) {
+		if (!networkName.startsWith(WIFI_DIRECT_PREFIX)) {
+			startHotspot();
+			return;
+		}
+		LOG.info("reattaching hotspot using " + WIFI_DIRECT);
+		// Not counted in the statistics, it's not a real start
+		fallbackTried = false;
+		pendingFallback = null;
+		active = WIFI_DIRECT;
+		starting = false;
+		getTransport(WIFI_DIRECT).reattachHotspot(networkName);
+	}
+
+	@Override
+	@UiThread
+	public void stopHotspot() {
+		// A transport that fails to stop mustn't bring up the other one
+		starting = false;
+		fallbackTried = true;
+		if (pendingFallback != null) {
+			LOG.info("stopped before the fallback started");
+			pendingFallback = null;
+			listener.onHotspotStopped();
+		} else if (active != null) {
+			getTransport(active).stopHotspot();
+		}
+	}
+
+	private void start(Transport t) {
+		if (LOG.isLoggable(INFO)) LOG.info("starting hotspot using " + t);
+		active = t;
+		starting = true;
+		startTime = scheduler.now();
+		stats.onStartAttempt(t);
+		getTransport(t).startHotspot();
+	}
+
+	@Override
+	@UiThread
+	public void setHighPerformance(boolean highPerformance) {
+		for (HotspotTransport t : transports.values())
+			t.setHighPerformance(highPerformance);
+	}
+
+	@Override
+	@UiThread
+	public void setProfile(PerformanceProfile profile) {
+		for (HotspotTransport t : transports.values()) t.setProfile(profile);
+	}
+
+	private HotspotTransport getTransport(Transport t) {
+		HotspotTransport transport = transports.get(t);
+		if (transport == null) throw new AssertionError();
+		return transport;
+	}
+
+	private Transport selectTransport() {
+		if (!isEligible(LOCAL_ONLY_HOTSPOT)) return WIFI_DIRECT;
+		int wifiDirectAttempts = stats.getAttempts(WIFI_DIRECT);
+		if (wifiDirectAttempts < MIN_ATTEMPTS) return WIFI_DIRECT;
+		boolean wifiDirectReliable =
+				stats.getSuccesses(WIFI_DIRECT) == wifiDirectAttempts &&
+						stats.getAverageStartMillis(WIFI_DIRECT) <
+								SLOW_START_MILLIS;
+		if (stats.getAttempts(LOCAL_ONLY_HOTSPOT) < MIN_ATTEMPTS) {
+			return wifiDirectReliable ? WIFI_DIRECT : LOCAL_ONLY_HOTSPOT;
+		}
+		double wifiDirect = stats.getExpectedStartMillis(WIFI_DIRECT);
+		double localOnly = stats.getExpectedStartMillis(LOCAL_ONLY_HOTSPOT);
+		if (LOG.isLoggable(INFO)) {
+			LOG.info("expected start times: Wi-Fi Direct " + wifiDirect +
+					" ms, local-only hotspot " + localOnly + " ms");
+		}
+		return wifiDirect <= localOnly ? WIFI_DIRECT : LOCAL_ONLY_HOTSPOT;
+	}
+
+	private boolean isEligible(Transport t) {
+		if (!transports.containsKey(t)) return false;
+		// The local-only hotspot needs the location permission on all API
+		// levels, but we only ask for it on API 29+, where Wi-Fi Direct needs
+		// it too. On API 26-28 it's only used if granted before.
+		if (t == LOCAL_ONLY_HOTSPOT) return locationPermission.isGranted();
+		return true;
+	}
+
+	@Nullable
+	private Transport getFallback(Transport t) {
+		Transport fallback = t == WIFI_DIRECT ? LOCAL_ONLY_HOTSPOT : WIFI_DIRECT;
+		return isEligible(fallback) ? fallback : null;
+	}
+
+	private void startFallback() {
+		// Null if the hotspot has been stopped in the meantime
+		Transport fallback = pendingFallback;
+		if (fallback == null) return;
+		pendingFallback = null;
+		start(fallback);
+	}
+
+	@Override
+	public void onStartingHotspot() {
+		listener.onStartingHotspot();
+	}
+
+	@Override
+	public void onHotspotStarted(NetworkConfig networkConfig) {
+		if (starting && active != null) {
+			starting = false;
+			stats.onStartSucceeded(active, scheduler.now() - startTime);
+		}
+		listener.onHotspotStarted(networkConfig);
+	}
+
+	@Override
+	public void onDeviceConnected() {
+		listener.onDeviceConnected();
+	}
+
+	@Override
+	public void onHotspotStopped() {
+		active = null;
+		listener.onHotspotStopped();
+	}
+
+	@Override
+	public void onHotspotError(String error) {
+		Transport failed = active;
+		active = null;
+		if (starting && failed != null) {
+			starting = false;
+			Transport fallback = getFallback(failed);
+			if (!fallbackTried && fallback != null) {
+				if (LOG.isLoggable(INFO)) {
+					LOG.info(failed + " failed to start: " + error +
+							", trying " + fallback);
+				}
+				fallbackTried = true;
+				pendingFallback = fallback;
+				// let the failed transport release its resources first
+				scheduler.schedule(this::startFallback, 0);
+				return;
+			}
+		}
+		listener.onHotspotError(error);
+	}
+
+}
@@ -0,0 +1,83 @@
+package org.briarproject.hotspot;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import org.briarproject.hotspot.TransportSelector.Transport;
+
+import static android.content.Context.MODE_PRIVATE;
+
+/**
+ * Keeps track of how often and how quickly each {@link Transport} managed to
+ * start the hotspot on this device. The numbers are persisted, so they
+ * accumulate across sessions.
+ */
+class TransportStats {
+
+	private static final String PREFS_NAME = "transport_stats";
+	private static final String KEY_ATTEMPTS = "_attempts";
+	private static final String KEY_SUCCESSES = "_successes";
+	private static final String KEY_START_MILLIS = "_startMillis";
+
+	// Weight of a new start time in the moving average
+	private static final float SMOOTHING = 0.3f;
+	// Start time we assume for a transport that never started successfully
+	private static final long FAILURE_START_MILLIS = 30_000;
+
+	private final SharedPreferences prefs;
+
+	TransportStats(Context ctx) {
+		this(ctx.getSharedPreferences(PREFS_NAME, MODE_PRIVATE));
+	}
+
+	TransportStats(SharedPreferences prefs) {
+		this.prefs = prefs;
+	}
+
+	int getAttempts(Transport t) {
+		return prefs.getInt(t.name() + KEY_ATTEMPTS, 0);
+	}
+
+	int getSuccesses(Transport t) {
+		return prefs.getInt(t.name() + KEY_SUCCESSES, 0);
+	}
+
+	/**
+	 * @return the moving average of the start time of successful starts, or
+	 * {@link #FAILURE_START_MILLIS} if there was no successful start yet.
+	 */
+	long getAverageStartMillis(Transport t) {
+		return prefs.getLong(t.name() + KEY_START_MILLIS,
+				FAILURE_START_MILLIS);
+	}
+
+	/**
+	 * @return the expected time it takes to start the hotspot successfully,
+	 * taking into account that failed attempts need to be repeated.
+	 */
+	double getExpectedStartMillis(Transport t) {
+		// add one success and one failure, so we never divide by zero and
+		// a single result doesn't count too much
+		double successRate =
+				(getSuccesses(t) + 1.0) / (getAttempts(t) + 2.0);
+		return getAverageStartMillis(t) / successRate;
+	}
+
+	void onStartAttempt(Transport t) {
+		prefs.edit()
+				.putInt(t.name() + KEY_ATTEMPTS, getAttempts(t) + 1)
+				.apply();
+	}
+
+	void onStartSucceeded(Transport t, long startMillis) {
+		int successes = getSuccesses(t);
+		long average = successes == 0 ? startMillis : (long)
+				(SMOOTHING * startMillis +
+						(1 - SMOOTHING) * getAverageStartMillis(t));
+		prefs.edit()
+				.putInt(t.name() + KEY_SUCCESSES, successes + 1)
+				.putLong(t.name() + KEY_START_MILLIS, average)
+				.apply();
+	}
+
+}
@@ -49,4 +49,26 @@ class UiUtils {
 		builder.show();
 	}
 
+	/**
+	 * Lets the user switch to another {@link PerformanceProfile}.
+	 */
+	static void showProfileDialog(Context ctx, MainViewModel viewModel) {
+		PerformanceProfile[] profiles = viewModel.getAvailableProfiles();
+		PerformanceProfile current = viewModel.getProfile().getValue();
+		String[] labels = new String[profiles.length];
+		int checked = -1;
+		for (int i = 0; i < profiles.length; i++) {
+			labels[i] = ctx.getString(profiles[i].label);
+			if (profiles[i] == current) checked = i;
+		}
+		AlertDialog.Builder builder = new AlertDialog.Builder(ctx);
+		builder.setTitle(R.string.menu_performance_profile);
+		builder.setSingleChoiceItems(labels, checked, (dialog, which) -> {
+			viewModel.setProfile(profiles[which]);
+			dialog.dismiss();
+		});
+		builder.setNegativeButton(R.string.cancel, null);
+		builder.show();
+	}
+
 }
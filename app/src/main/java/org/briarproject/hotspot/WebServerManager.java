@@ -1,26 +1,69 @@
 package org.briarproject.hotspot;
 
 import android.content.Context;
+import android.os.Handler;
+
+import org.briarproject.hotspot.server.ApkCatalog;
+import org.briarproject.hotspot.server.AppCatalog;
+import org.briarproject.hotspot.server.BoundServerSocket;
+import org.briarproject.hotspot.server.BoundedAsyncRunner;
+import org.briarproject.hotspot.server.ConnectionGuard;
+import org.briarproject.hotspot.server.ConnectionGuard.ClientListener;
+import org.briarproject.hotspot.server.ConnectionGuard.CloseReason;
+import org.briarproject.hotspot.server.NetworkUtils;
+import org.briarproject.hotspot.server.ServedInterfaces;
+import org.briarproject.hotspot.server.SharePage;
+import org.briarproject.hotspot.server.Tracer;
+import org.briarproject.hotspot.server.Tracer.Span;
+import org.briarproject.hotspot.server.WebServer;
+import org.briarproject.hotspot.server.WebServer.TransferListener;
 
 import java.io.IOException;
 import java.net.InetAddress;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
 import java.util.logging.Logger;
 
+import androidx.annotation.AnyThread;
+import androidx.annotation.Nullable;
+import androidx.annotation.UiThread;
 import androidx.annotation.WorkerThread;
 
+import static java.util.concurrent.Executors.newSingleThreadExecutor;
 import static java.util.logging.Level.INFO;
 import static java.util.logging.Level.WARNING;
 import static java.util.logging.Logger.getLogger;
-import static org.briarproject.hotspot.LogUtils.logException;
-import static org.briarproject.hotspot.NetworkUtils.getAccessPointAddress;
-import static org.briarproject.hotspot.WebServer.PORT;
+import static org.briarproject.hotspot.BuildConfig.VERSION_NAME;
+import static org.briarproject.hotspot.server.LogUtils.logException;
 
-class WebServerManager {
+/**
+ * Runs the {@link WebServer} on all {@link ServedInterfaces}.
+ * <p>
+ * The URL published to the listener is the one on the access point
+ * interface, which every client of the hotspot can reach. Its address is
+ * provided by an {@link AccessPointAddressResolver}. If it is not known
+ * within {@link #ADDRESS_TIMEOUT_MILLIS}, it gets looked up or assumed. If
+ * the address changes later, the listener is informed about the new URL.
+ */
+class WebServerManager implements AccessPointAddressResolver.AddressListener {
 
-	interface WebServerListener {
+	/**
+	 * The methods inherited from {@link ClientListener} and
+	 * {@link TransferListener} are called on the server's threads.
+	 */
+	interface WebServerListener extends ClientListener, TransferListener {
 		@WorkerThread
 		void onWebServerStarted(String url);
 
+		/**
+		 * Called when the address of the access point changed after the
+		 * server has been started.
+		 */
+		@WorkerThread
+		void onWebServerUrlChanged(String url);
+
 		@WorkerThread
 		void onWebServerError();
 	}
@@ -28,45 +71,274 @@ class WebServerManager {
 	private static final Logger LOG =
 			getLogger(WebServerManager.class.getName());
 
-	private final WebServer webServer;
+	private static final String DEFAULT_ADDRESS = "192.168.49.1";
+	private static final long ADDRESS_TIMEOUT_MILLIS = 2000;
+
+	private final Context ctx;
 	private final WebServerListener listener;
+	private final ServingGovernor governor;
+	// These outlive the servers, so their counters cover the whole session
+	private final ConnectionGuard connectionGuard;
+	private final ServedInterfaces servedInterfaces = new ServedInterfaces();
+	private final AccessPointAddressResolver addressResolver;
+	private final InstalledApps installedApps;
+	private final Handler handler;
+	// Starting and stopping the server can block, so it's done on this
+	// executor, which also keeps those operations in order
+	private final Executor executor = newSingleThreadExecutor();
+
+	private volatile boolean started = false;
+	@Nullable
+	private volatile SharePage sharePage = null;
+	// Written on the executor
+	@Nullable
+	private volatile InetAddress accessPointAddress = null;
+
+	// The following fields are only accessed on the executor
+	@Nullable
+	private WebServer webServer = null;
+	// Bound before the server starts, see bindSocket()
+	@Nullable
+	private BoundServerSocket socket = null;
+	@Nullable
+	private ApkCatalog catalog = null;
+	private AppCatalog appCatalog = AppCatalog.EMPTY;
+	private boolean urlPublished = false;
 
-	WebServerManager(Context ctx, WebServerListener listener) {
+	WebServerManager(Context ctx, WebServerListener listener,
+			ServingGovernor governor) {
+		this.ctx = ctx;
 		this.listener = listener;
-		webServer = new WebServer(ctx);
+		this.governor = governor;
+		connectionGuard = new ConnectionGuard(listener);
+		addressResolver = new AccessPointAddressResolver(ctx, this);
+		installedApps = new InstalledApps(ctx, this::onAppCatalogChanged);
+		handler = new Handler(ctx.getMainLooper());
 	}
 
-	@WorkerThread
+	/**
+	 * Binds the server's socket in the background while the hotspot is
+	 * still starting, so the server can start without waiting for it.
+	 */
+	@SuppressWarnings("try")
+	@UiThread
+	void bindSocket() {
+		executor.execute(() -> {
+			if (webServer != null || socket != null) return;
+			try (Span ignored = Tracer.begin("bind web server")) {
+				socket = BoundServerSocket.bind();
+			} catch (IOException e) {
+				// Binding is tried again when the server starts
+				logException(LOG, WARNING, e);
+			}
+		});
+	}
+
+	@UiThread
 	void startWebServer() {
+		started = true;
+		// The server doesn't need to wait for the address, only the URL does
+		executor.execute(this::startServer);
+		addressResolver.start();
+		installedApps.start();
+		InetAddress address = addressResolver.getAddress();
+		if (address == null) {
+			LOG.info("Access point address unknown, waiting for it");
+			handler.postDelayed(publishWithoutAddress, ADDRESS_TIMEOUT_MILLIS);
+		} else {
+			executor.execute(() -> publishUrl(address));
+		}
+	}
+
+	private final Runnable publishWithoutAddress = () -> {
+		LOG.info("Access point address still unknown, looking it up");
+		// Enumerating the interfaces may block, so not on the main thread
+		executor.execute(
+				() -> publishUrl(NetworkUtils.getAccessPointAddress()));
+	};
+
+	@Override
+	@UiThread
+	public void onAccessPointAddressChanged(@Nullable InetAddress address) {
+		// if the address went away, the hotspot is stopping anyway
+		if (!started || address == null) return;
+		handler.removeCallbacks(publishWithoutAddress);
+		executor.execute(() -> publishUrl(address));
+	}
+
+	@SuppressWarnings("try")
+	@WorkerThread
+	private void startServer() {
+		if (!started || webServer != null) return;
+		// The APKs don't change while the app is running
+		if (catalog == null) {
+			try (Span ignored = Tracer.begin("load APK catalog")) {
+				catalog = ApkCatalogLoader.load(ctx);
+			}
+		}
+		WebServer server = new WebServer(ctx.getAssets()::open,
+				new AndroidPageStrings(ctx), VERSION_NAME, catalog, governor,
+				connectionGuard, servedInterfaces, listener);
+		server.setSharePage(sharePage);
+		server.setAppCatalog(appCatalog);
+		int maxThreads = governor.getProfile().maxServerThreads;
+		if (maxThreads > 0)
+			server.setAsyncRunner(new BoundedAsyncRunner(maxThreads));
+		connectionGuard.start();
 		try {
-			webServer.start();
-			onWebServerStarted();
+			BoundServerSocket s = socket;
+			socket = null;
+			if (s == null) server.start();
+			else server.start(s);
 		} catch (IOException e) {
 			logException(LOG, WARNING, e);
 			listener.onWebServerError();
+			return;
+		}
+		webServer = server;
+	}
+
+	@WorkerThread
+	private void publishUrl(@Nullable InetAddress address) {
+		// The server failed to start or has been stopped
+		if (!started || webServer == null) return;
+		if (urlPublished &&
+				(address == null || address.equals(accessPointAddress))) {
+			return;
 		}
+		accessPointAddress = address;
+		servedInterfaces.setAccessPointAddress(address);
+		String url = getUrl(address, webServer.getListeningPort());
+		if (urlPublished) {
+			listener.onWebServerUrlChanged(url);
+		} else {
+			urlPublished = true;
+			listener.onWebServerStarted(url);
+		}
+	}
+
+	/**
+	 * Sets the page that lets clients pass on the credentials and the URL,
+	 * which is rendered once per set of credentials, or removes it if null.
+	 */
+	@AnyThread
+	void setSharePage(@Nullable SharePage page) {
+		sharePage = page;
+		executor.execute(() -> {
+			if (webServer != null) webServer.setSharePage(page);
+		});
+	}
+
+	@WorkerThread
+	private void onAppCatalogChanged(AppCatalog catalog) {
+		executor.execute(() -> {
+			appCatalog = catalog;
+			if (webServer != null) webServer.setAppCatalog(catalog);
+		});
 	}
 
-	private void onWebServerStarted() {
-		String url = "http://192.168.49.1:" + PORT;
-		InetAddress address = getAccessPointAddress();
+	/**
+	 * Returns the address of the access point, or null if it isn't known.
+	 */
+	@Nullable
+	InetAddress getAccessPointAddress() {
+		return accessPointAddress;
+	}
+
+	/**
+	 * Returns the URLs of the server on all eligible interfaces, the one
+	 * that is likely to be fastest first.
+	 */
+	List<String> getRankedUrls() {
+		return servedInterfaces.getRankedUrls();
+	}
+
+	/**
+	 * Returns the number of bytes of APKs served on each interface, by name.
+	 */
+	Map<String, Long> getBytesServed() {
+		return servedInterfaces.getBytesServed();
+	}
+
+	/**
+	 * Restores the clients of a session from before the process was
+	 * recreated.
+	 */
+	void addKnownClients(Collection<String> clients) {
+		connectionGuard.addKnownClients(clients);
+	}
+
+	/**
+	 * Returns the number of devices that have connected to the server.
+	 */
+	int getKnownClientCount() {
+		return connectionGuard.getKnownClientCount();
+	}
+
+	/**
+	 * Returns the number of devices with connections open to the server.
+	 */
+	int getClientCount() {
+		return connectionGuard.getClientCount();
+	}
+
+	/**
+	 * Returns how many connections have been closed by the
+	 * {@link ConnectionGuard} for each reason.
+	 */
+	Map<CloseReason, Long> getClosedConnectionCounts() {
+		return connectionGuard.getCloseCounts();
+	}
+
+	private String getUrl(@Nullable InetAddress address, int port) {
+		String host = DEFAULT_ADDRESS;
 		if (address == null) {
-			LOG.info(
-					"Could not find access point address, assuming 192.168.49.1");
+			LOG.info("Could not find access point address, assuming " +
+					DEFAULT_ADDRESS);
 		} else {
+			host = address.getHostAddress();
 			if (LOG.isLoggable(INFO)) {
-				LOG.info("Access point address " + address.getHostAddress());
+				LOG.info("Access point address " + host);
 			}
-			url = "http://" + address.getHostAddress() + ":" + PORT;
 		}
-		listener.onWebServerStarted(url);
+		return "http://" + host + ":" + port;
 	}
 
 	/**
 	 * It is safe to call this more than once and it won't throw.
 	 */
+	@UiThread
 	void stopWebServer() {
-		webServer.stop();
+		started = false;
+		sharePage = null;
+		handler.removeCallbacks(publishWithoutAddress);
+		addressResolver.stop();
+		installedApps.stop();
+		// The next session starts with new clients
+		connectionGuard.clearKnownClients();
+		executor.execute(() -> {
+			if (webServer != null) webServer.stop();
+			webServer = null;
+			closeSocket();
+			connectionGuard.stop();
+			accessPointAddress = null;
+			servedInterfaces.setAccessPointAddress(null);
+			urlPublished = false;
+		});
+	}
+
+	/**
+	 * Closes the socket if the hotspot stopped before the server started.
+	 */
+	@WorkerThread
+	private void closeSocket() {
+		if (socket == null) return;
+		try {
+			socket.close();
+		} catch (IOException e) {
+			logException(LOG, WARNING, e);
+		}
+		socket = null;
 	}
 
 }
@@ -0,0 +1,40 @@
+package org.briarproject.hotspot;
+
+import androidx.annotation.Nullable;
+
+/**
+ * Abstraction over the Wi-Fi state used by the {@link ConditionManager}.
+ * The Android implementation is {@link AndroidWifiRadio}.
+ */
+interface WifiRadio {
+
+	interface P2pStateListener {
+
+		void onP2pStateChanged(boolean enabled);
+
+	}
+
+	boolean isWifiEnabled();
+
+	/**
+	 * @return true if Wi-Fi is either already in the requested state, or in
+	 * progress toward the requested state.
+	 */
+	boolean setWifiEnabled(boolean enabled);
+
+	boolean is5GHzBandSupported();
+
+	/**
+	 * Sets the listener that gets informed about changes to the Wi-Fi P2P
+	 * state. Pass null to stop listening.
+	 */
+	void setP2pStateListener(@Nullable P2pStateListener listener);
+
+	/**
+	 * Queries the current Wi-Fi P2P state and passes it to the given
+	 * listener, without waiting for the state to change. Does nothing if
+	 * the state can't be queried, which is the case below API 29.
+	 */
+	void requestP2pState(P2pStateListener listener);
+
+}
@@ -0,0 +1,40 @@
+package org.briarproject.hotspot;
+
+/**
+ * A {@link PowerMonitor} whose readings are set directly, for driving a
+ * {@link ServingGovernor} together with a {@link VirtualClock}.
+ */
+class FakePowerMonitor implements PowerMonitor {
+
+	private int thermalStatus = THERMAL_STATUS_NONE;
+	private int batteryPercent = 100;
+	private boolean charging = false;
+
+	void setThermalStatus(int thermalStatus) {
+		this.thermalStatus = thermalStatus;
+	}
+
+	void setBatteryPercent(int batteryPercent) {
+		this.batteryPercent = batteryPercent;
+	}
+
+	void setCharging(boolean charging) {
+		this.charging = charging;
+	}
+
+	@Override
+	public int getThermalStatus() {
+		return thermalStatus;
+	}
+
+	@Override
+	public int getBatteryPercent() {
+		return batteryPercent;
+	}
+
+	@Override
+	public boolean isCharging() {
+		return charging;
+	}
+
+}
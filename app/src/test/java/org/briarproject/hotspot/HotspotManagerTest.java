@@ -0,0 +1,217 @@
+package org.briarproject.hotspot;
+
+import org.briarproject.hotspot.HotspotState.NetworkConfig;
+import org.briarproject.hotspot.HotspotTransport.HotspotListener;
+import org.junit.Before;
+import org.junit.Test;
+
+import androidx.annotation.Nullable;
+
+import static org.briarproject.hotspot.P2pRadio.BUSY;
+import static org.briarproject.hotspot.P2pRadio.ERROR;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Starts the Wi-Fi Direct hotspot on a {@link SimulatedRadio}, so the
+ * retries and timings of {@link HotspotManager} can be checked without a
+ * device.
+ */
+public class HotspotManagerTest {
+
+	// Long enough for all attempts of every profile
+	private static final long LIMIT_MILLIS = 60_000;
+
+	private final VirtualClock clock = new VirtualClock();
+	private final SimulatedRadio radio = new SimulatedRadio(clock);
+	private final RecordingListener listener = new RecordingListener();
+
+	private HotspotManager manager;
+
+	@Before
+	public void setUp() {
+		manager = createManager(29);
+	}
+
+	private HotspotManager createManager(int sdkInt) {
+		return new HotspotManager((resId, formatArgs) -> "string " + resId,
+				sdkInt, listener, radio, clock);
+	}
+
+	@Test
+	public void testStartLatency() {
+		radio.setCallbackDelay(10);
+		radio.setGroupFormationDelay(500);
+		manager.startHotspot();
+		clock.advanceBy(LIMIT_MILLIS);
+
+		assertNotNull(listener.config);
+		assertNull(listener.error);
+		assertEquals(1, radio.getCreateGroupCalls());
+		// The group info is requested when the group has been created, but
+		// only arrives with the second request after the retry interval
+		assertEquals(3 * 10 + PerformanceProfile.MANY_CLIENTS
+				.groupInfoRetryMillis, listener.startedAt);
+		assertTrue(radio.isWifiLockHeld());
+	}
+
+	@Test
+	public void testStartsWithoutRetryIfGroupFormsQuickly() {
+		radio.setCallbackDelay(10);
+		radio.setGroupFormationDelay(0);
+		manager.startHotspot();
+		clock.advanceBy(LIMIT_MILLIS);
+
+		assertEquals(20, listener.startedAt);
+	}
+
+	@Test
+	public void testUsesRunningGroupIfBusy() {
+		radio.addCreateGroupFailures(BUSY);
+		manager.startHotspot();
+		clock.advanceBy(LIMIT_MILLIS);
+
+		assertNotNull(listener.config);
+		assertNull(listener.error);
+		assertEquals(1, radio.getCreateGroupCalls());
+	}
+
+	@Test
+	public void testReportsErrorAndReleasesRadio() {
+		radio.addCreateGroupFailures(ERROR);
+		manager.startHotspot();
+		clock.advanceBy(LIMIT_MILLIS);
+
+		assertNull(listener.config);
+		assertEquals("string " + R.string.start_callback_failed,
+				listener.error);
+		assertEquals(1, radio.getCreateGroupCalls());
+		assertEquals(0, radio.getGroupInfoRequests());
+		assertFalse(radio.isWifiLockHeld());
+		assertFalse(radio.isInitialized());
+	}
+
+	@Test
+	public void testRetriesMissingGroupInfoUpToAttempts() {
+		PerformanceProfile profile = PerformanceProfile.MANY_CLIENTS;
+		radio.setGroupFormationDelay(0);
+		radio.setMissingGroupInfoResponses(profile.groupInfoAttempts - 1);
+		manager.setProfile(profile);
+		manager.startHotspot();
+		clock.advanceBy(LIMIT_MILLIS);
+
+		assertNotNull(listener.config);
+		// The last attempt succeeded, then the clients get polled
+		assertTrue(radio.getGroupInfoRequests() > profile.groupInfoAttempts);
+	}
+
+	@Test
+	public void testFailsAfterMissingGroupInfoOnAllAttempts() {
+		PerformanceProfile profile = PerformanceProfile.LOW_RAM;
+		radio.setMissingGroupInfoResponses(Integer.MAX_VALUE);
+		manager.setProfile(profile);
+		manager.startHotspot();
+		clock.advanceBy(LIMIT_MILLIS);
+
+		assertNull(listener.config);
+		assertEquals("string " + R.string.start_callback_no_group_info,
+				listener.error);
+		assertEquals(profile.groupInfoAttempts, radio.getGroupInfoRequests());
+		assertFalse(radio.isWifiLockHeld());
+	}
+
+	@Test
+	public void testRequestsNetworkNameFromApi29() {
+		manager.startHotspot();
+		clock.advanceBy(LIMIT_MILLIS);
+
+		assertNotNull(listener.config);
+		assertTrue(listener.config.ssid.startsWith("DIRECT-"));
+		assertNotEquals(SimulatedRadio.DEFAULT_NETWORK_NAME,
+				listener.config.ssid);
+	}
+
+	@Test
+	public void testUsesSystemNetworkNameBeforeApi29() {
+		createManager(28).startHotspot();
+		clock.advanceBy(LIMIT_MILLIS);
+
+		assertNotNull(listener.config);
+		assertEquals(SimulatedRadio.DEFAULT_NETWORK_NAME,
+				listener.config.ssid);
+	}
+
+	@Test
+	public void testReportsConnectedClient() {
+		radio.setClientJoinDelay(3000);
+		manager.startHotspot();
+		clock.advanceBy(LIMIT_MILLIS);
+
+		assertTrue(listener.deviceConnected);
+	}
+
+	@Test
+	public void testStopsPollingForClientsWhenStopped() {
+		long period =
+				PerformanceProfile.MANY_CLIENTS.groupInfoRetryMillis + 10;
+		radio.setCallbackDelay(10);
+		manager.startHotspot();
+		clock.advanceBy(LIMIT_MILLIS);
+		manager.stopHotspot();
+		// The group has been removed, but the next poll of the first start
+		// isn't due yet
+		clock.advanceBy(20);
+		manager.startHotspot();
+		clock.advanceBy(LIMIT_MILLIS);
+
+		// Only the second start polls for clients
+		int requests = radio.getGroupInfoRequests();
+		clock.advanceBy(10 * period);
+		assertEquals(10, radio.getGroupInfoRequests() - requests);
+
+		manager.stopHotspot();
+		clock.advanceBy(20);
+		requests = radio.getGroupInfoRequests();
+		clock.advanceBy(LIMIT_MILLIS);
+		assertEquals(requests, radio.getGroupInfoRequests());
+	}
+
+	private class RecordingListener implements HotspotListener {
+
+		@Nullable
+		private NetworkConfig config = null;
+		@Nullable
+		private String error = null;
+		private long startedAt = -1;
+		private boolean deviceConnected = false;
+
+		@Override
+		public void onStartingHotspot() {
+		}
+
+		@Override
+		public void onHotspotStarted(NetworkConfig networkConfig) {
+			config = networkConfig;
+			startedAt = clock.now();
+		}
+
+		@Override
+		public void onDeviceConnected() {
+			deviceConnected = true;
+		}
+
+		@Override
+		public void onHotspotStopped() {
+		}
+
+		@Override
+		public void onHotspotError(String error) {
+			this.error = error;
+		}
+	}
+
+}
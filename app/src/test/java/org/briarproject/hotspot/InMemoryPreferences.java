@@ -0,0 +1,158 @@
+package org.briarproject.hotspot;
+
+import android.content.SharedPreferences;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import androidx.annotation.Nullable;
+
+/**
+ * {@link SharedPreferences} that are kept in memory, for testing classes
+ * that persist their state without a device. Listeners aren't supported.
+ */
+class InMemoryPreferences implements SharedPreferences {
+
+	private final Map<String, Object> values = new HashMap<>();
+
+	@Override
+	public Map<String, ?> getAll() {
+		return new HashMap<>(values);
+	}
+
+	@Nullable
+	@Override
+	public String getString(String key, @Nullable String defValue) {
+		return (String) get(key, defValue);
+	}
+
+	@Nullable
+	@Override
+	@SuppressWarnings("unchecked")
+	public Set<String> getStringSet(String key,
+			@Nullable Set<String> defValues) {
+		return (Set<String>) get(key, defValues);
+	}
+
+	@Override
+	public int getInt(String key, int defValue) {
+		return (Integer) get(key, defValue);
+	}
+
+	@Override
+	public long getLong(String key, long defValue) {
+		return (Long) get(key, defValue);
+	}
+
+	@Override
+	public float getFloat(String key, float defValue) {
+		return (Float) get(key, defValue);
+	}
+
+	@Override
+	public boolean getBoolean(String key, boolean defValue) {
+		return (Boolean) get(key, defValue);
+	}
+
+	@Override
+	public boolean contains(String key) {
+		return values.containsKey(key);
+	}
+
+	@Override
+	public Editor edit() {
+		return new InMemoryEditor();
+	}
+
+	@Override
+	public void registerOnSharedPreferenceChangeListener(
+			OnSharedPreferenceChangeListener listener) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void unregisterOnSharedPreferenceChangeListener(
+			OnSharedPreferenceChangeListener listener) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Nullable
+	private Object get(String key, @Nullable Object defValue) {
+		return values.containsKey(key) ? values.get(key) : defValue;
+	}
+
+	/**
+	 * Applies the changes at once when they are applied or committed.
+	 */
+	private class InMemoryEditor implements Editor {
+
+		private final Map<String, Object> changes = new HashMap<>();
+		private boolean clear = false;
+
+		@Override
+		public Editor putString(String key, @Nullable String value) {
+			changes.put(key, value);
+			return this;
+		}
+
+		@Override
+		public Editor putStringSet(String key, @Nullable Set<String> values) {
+			changes.put(key, values);
+			return this;
+		}
+
+		@Override
+		public Editor putInt(String key, int value) {
+			changes.put(key, value);
+			return this;
+		}
+
+		@Override
+		public Editor putLong(String key, long value) {
+			changes.put(key, value);
+			return this;
+		}
+
+		@Override
+		public Editor putFloat(String key, float value) {
+			changes.put(key, value);
+			return this;
+		}
+
+		@Override
+		public Editor putBoolean(String key, boolean value) {
+			changes.put(key, value);
+			return this;
+		}
+
+		@Override
+		public Editor remove(String key) {
+			// Like a null value, which removes the key as well
+			changes.put(key, null);
+			return this;
+		}
+
+		@Override
+		public Editor clear() {
+			clear = true;
+			return this;
+		}
+
+		@Override
+		public boolean commit() {
+			apply();
+			return true;
+		}
+
+		@Override
+		public void apply() {
+			if (clear) values.clear();
+			for (Map.Entry<String, Object> e : changes.entrySet()) {
+				if (e.getValue() == null) values.remove(e.getKey());
+				else values.put(e.getKey(), e.getValue());
+			}
+		}
+	}
+
+}
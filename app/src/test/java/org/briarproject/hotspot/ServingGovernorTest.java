@@ -0,0 +1,176 @@
+package org.briarproject.hotspot;
+
+import org.briarproject.hotspot.ServingGovernor.ServingLevel;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static org.briarproject.hotspot.PowerMonitor.THERMAL_STATUS_LIGHT;
+import static org.briarproject.hotspot.PowerMonitor.THERMAL_STATUS_MODERATE;
+import static org.briarproject.hotspot.PowerMonitor.THERMAL_STATUS_NONE;
+import static org.briarproject.hotspot.PowerMonitor.THERMAL_STATUS_SEVERE;
+import static org.briarproject.hotspot.ServingGovernor.POLL_INTERVAL_MILLIS;
+import static org.briarproject.hotspot.ServingGovernor.RELAX_DELAY_MILLIS;
+import static org.briarproject.hotspot.ServingGovernor.ServingLevel.MINIMAL;
+import static org.briarproject.hotspot.ServingGovernor.ServingLevel.NORMAL;
+import static org.briarproject.hotspot.ServingGovernor.ServingLevel.REDUCED;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Drives a {@link ServingGovernor} with a {@link FakePowerMonitor} and a
+ * {@link VirtualClock}.
+ */
+public class ServingGovernorTest {
+
+	private final VirtualClock clock = new VirtualClock();
+	private final FakePowerMonitor monitor = new FakePowerMonitor();
+	private final List<ServingLevel> changes = new ArrayList<>();
+
+	private ServingGovernor governor;
+
+	@Before
+	public void setUp() {
+		governor = new ServingGovernor(monitor, clock, changes::add,
+				PerformanceProfile.MANY_CLIENTS);
+	}
+
+	@Test
+	public void testScalesDownAtOnceWhenHot() {
+		governor.start();
+		assertEquals(NORMAL, governor.getLevel());
+
+		monitor.setThermalStatus(THERMAL_STATUS_LIGHT);
+		clock.advanceBy(POLL_INTERVAL_MILLIS);
+		assertEquals(NORMAL, governor.getLevel());
+
+		monitor.setThermalStatus(THERMAL_STATUS_MODERATE);
+		clock.advanceBy(POLL_INTERVAL_MILLIS);
+		assertEquals(REDUCED, governor.getLevel());
+
+		monitor.setThermalStatus(THERMAL_STATUS_SEVERE);
+		clock.advanceBy(POLL_INTERVAL_MILLIS);
+		assertEquals(MINIMAL, governor.getLevel());
+		assertEquals(asList(REDUCED, MINIMAL), changes);
+	}
+
+	@Test
+	public void testScalesDownWhenBatteryRunsLow() {
+		monitor.setBatteryPercent(30);
+		governor.start();
+		assertEquals(REDUCED, governor.getLevel());
+
+		monitor.setBatteryPercent(15);
+		clock.advanceBy(POLL_INTERVAL_MILLIS);
+		assertEquals(MINIMAL, governor.getLevel());
+	}
+
+	@Test
+	public void testIgnoresBatteryWhileCharging() {
+		monitor.setBatteryPercent(10);
+		monitor.setCharging(true);
+		governor.start();
+		assertEquals(NORMAL, governor.getLevel());
+	}
+
+	@Test
+	public void testScalesUpOnlyAfterRelaxDelay() {
+		monitor.setThermalStatus(THERMAL_STATUS_SEVERE);
+		governor.start();
+		assertEquals(MINIMAL, governor.getLevel());
+
+		// The first clear reading starts the delay
+		monitor.setThermalStatus(THERMAL_STATUS_MODERATE);
+		clock.advanceBy(POLL_INTERVAL_MILLIS);
+		clock.advanceBy(RELAX_DELAY_MILLIS - 1);
+		assertEquals(MINIMAL, governor.getLevel());
+		clock.advanceBy(1);
+		assertEquals(REDUCED, governor.getLevel());
+
+		monitor.setThermalStatus(THERMAL_STATUS_NONE);
+		clock.advanceBy(POLL_INTERVAL_MILLIS + RELAX_DELAY_MILLIS);
+		assertEquals(NORMAL, governor.getLevel());
+		assertEquals(asList(MINIMAL, REDUCED, NORMAL), changes);
+	}
+
+	@Test
+	public void testPressureDuringRelaxDelayRestartsIt() {
+		monitor.setThermalStatus(THERMAL_STATUS_MODERATE);
+		governor.start();
+
+		monitor.setThermalStatus(THERMAL_STATUS_NONE);
+		clock.advanceBy(POLL_INTERVAL_MILLIS + RELAX_DELAY_MILLIS / 2);
+		monitor.setThermalStatus(THERMAL_STATUS_MODERATE);
+		clock.advanceBy(POLL_INTERVAL_MILLIS);
+		monitor.setThermalStatus(THERMAL_STATUS_NONE);
+		clock.advanceBy(RELAX_DELAY_MILLIS);
+		assertEquals(REDUCED, governor.getLevel());
+
+		clock.advanceBy(POLL_INTERVAL_MILLIS);
+		assertEquals(NORMAL, governor.getLevel());
+	}
+
+	@Test
+	public void testBatteryNeedsToRecoverByMargin() {
+		monitor.setBatteryPercent(15);
+		governor.start();
+		assertEquals(MINIMAL, governor.getLevel());
+
+		// Above the threshold, but within the margin
+		monitor.setBatteryPercent(20);
+		clock.advanceBy(10 * RELAX_DELAY_MILLIS);
+		assertEquals(MINIMAL, governor.getLevel());
+
+		monitor.setBatteryPercent(21);
+		clock.advanceBy(POLL_INTERVAL_MILLIS + RELAX_DELAY_MILLIS);
+		assertEquals(REDUCED, governor.getLevel());
+
+		monitor.setBatteryPercent(35);
+		clock.advanceBy(10 * RELAX_DELAY_MILLIS);
+		assertEquals(REDUCED, governor.getLevel());
+
+		monitor.setBatteryPercent(36);
+		clock.advanceBy(POLL_INTERVAL_MILLIS + RELAX_DELAY_MILLIS);
+		assertEquals(NORMAL, governor.getLevel());
+	}
+
+	@Test
+	public void testStopReturnsToNormal() {
+		monitor.setThermalStatus(THERMAL_STATUS_SEVERE);
+		governor.start();
+		governor.stop();
+		assertEquals(NORMAL, governor.getLevel());
+
+		// Polls of the stopped run don't change the level
+		clock.advanceBy(POLL_INTERVAL_MILLIS);
+		assertEquals(NORMAL, governor.getLevel());
+		assertEquals(0, clock.getPendingTaskCount());
+	}
+
+	@Test
+	public void testCombinesLevelAndProfile() {
+		governor.setProfile(PerformanceProfile.BATTERY_SAVER);
+		governor.start();
+		assertEquals(PerformanceProfile.BATTERY_SAVER.maxTransfers,
+				governor.getMaxTransfers());
+		assertEquals(PerformanceProfile.BATTERY_SAVER.bytesPerSecond,
+				governor.getBytesPerSecond());
+		assertFalse(governor.isHighPerformance());
+
+		governor.setProfile(PerformanceProfile.MANY_CLIENTS);
+		assertEquals(NORMAL.maxTransfers, governor.getMaxTransfers());
+		assertEquals(0, governor.getBytesPerSecond());
+		assertTrue(governor.isHighPerformance());
+
+		monitor.setThermalStatus(THERMAL_STATUS_SEVERE);
+		clock.advanceBy(POLL_INTERVAL_MILLIS);
+		assertEquals(MINIMAL.maxTransfers, governor.getMaxTransfers());
+		assertEquals(MINIMAL.bytesPerSecond, governor.getBytesPerSecond());
+		assertFalse(governor.isHighPerformance());
+	}
+
+}
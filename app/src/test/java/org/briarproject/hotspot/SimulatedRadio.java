@@ -0,0 +1,295 @@
+package org.briarproject.hotspot;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Queue;
+
+import androidx.annotation.Nullable;
+
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static org.briarproject.hotspot.HotspotManager.UNKNOWN_FREQUENCY;
+
+/**
+ * A deterministic simulation of the Wi-Fi and Wi-Fi Direct radio, driven by a
+ * {@link VirtualClock}. All callbacks are delivered through the clock, so
+ * nothing happens until the clock is advanced.
+ * <p>
+ * The timing and failure behaviour can be configured before or while the
+ * hotspot is being started.
+ */
+class SimulatedRadio implements P2pRadio, WifiRadio {
+
+	static final String DEFAULT_NETWORK_NAME = "DIRECT-xy-SIMULATED";
+	private static final String DEFAULT_PASSPHRASE = "simulated";
+
+	private final VirtualClock clock;
+
+	// configuration
+	private boolean supported = true, channelAvailable = true;
+	private boolean fiveGhzSupported = false;
+	private long callbackDelayMillis = 10;
+	private long groupFormationDelayMillis = 500;
+	private long p2pEnableDelayMillis = 1000;
+	private long clientJoinDelayMillis = -1;
+	private int missingGroupInfoResponses = 0;
+	private double frequency = UNKNOWN_FREQUENCY;
+	private final Queue<Integer> createGroupFailures = new ArrayDeque<>();
+
+	// state
+	private boolean wifiEnabled = true, p2pEnabled = true, initialized = false;
+	private boolean wifiLockHeld = false, wifiLockHighPerformance = false;
+	private long groupFormedAt = -1, clientJoinedAt = -1;
+	private String networkName = DEFAULT_NETWORK_NAME;
+	private String passphrase = DEFAULT_PASSPHRASE;
+	@Nullable
+	private P2pStateListener p2pStateListener;
+
+	// statistics
+	private int createGroupCalls = 0, groupInfoRequests = 0;
+
+	SimulatedRadio(VirtualClock clock) {
+		this.clock = clock;
+	}
+
+	void setSupported(boolean supported) {
+		this.supported = supported;
+	}
+
+	void setChannelAvailable(boolean channelAvailable) {
+		this.channelAvailable = channelAvailable;
+	}
+
+	void set5GHzBandSupported(boolean fiveGhzSupported) {
+		this.fiveGhzSupported = fiveGhzSupported;
+	}
+
+	/**
+	 * Sets the delay of every callback delivered by the simulated framework.
+	 */
+	void setCallbackDelay(long millis) {
+		callbackDelayMillis = millis;
+	}
+
+	/**
+	 * Sets the time between a successful createGroup() and the group info
+	 * becoming available. Group info requests before that return null.
+	 */
+	void setGroupFormationDelay(long millis) {
+		groupFormationDelayMillis = millis;
+	}
+
+	/**
+	 * Sets the time between enabling Wi-Fi and Wi-Fi P2P becoming available.
+	 */
+	void setP2pEnableDelay(long millis) {
+		p2pEnableDelayMillis = millis;
+	}
+
+	/**
+	 * Sets the time between the group being formed and the first client
+	 * joining it. A negative value means no client ever joins.
+	 */
+	void setClientJoinDelay(long millis) {
+		clientJoinDelayMillis = millis;
+	}
+
+	/**
+	 * Makes the given number of group info requests return null even if the
+	 * group has been formed already.
+	 */
+	void setMissingGroupInfoResponses(int count) {
+		missingGroupInfoResponses = count;
+	}
+
+	void setFrequency(double frequency) {
+		this.frequency = frequency;
+	}
+
+	/**
+	 * Makes the next calls to createGroup() fail with the given reasons, for
+	 * example {@link P2pRadio#BUSY} or {@link P2pRadio#ERROR}.
+	 */
+	void addCreateGroupFailures(Integer... reasons) {
+		for (Integer reason : reasons) createGroupFailures.add(reason);
+	}
+
+	void setWifiAndP2pEnabled(boolean enabled) {
+		wifiEnabled = enabled;
+		p2pEnabled = enabled;
+	}
+
+	int getCreateGroupCalls() {
+		return createGroupCalls;
+	}
+
+	int getGroupInfoRequests() {
+		return groupInfoRequests;
+	}
+
+	boolean isWifiLockHeld() {
+		return wifiLockHeld;
+	}
+
+	boolean isWifiLockHighPerformance() {
+		return wifiLockHighPerformance;
+	}
+
+	boolean isGroupFormed() {
+		return groupFormedAt >= 0 && clock.now() >= groupFormedAt;
+	}
+
+	// P2pRadio
+
+	@Override
+	public boolean isSupported() {
+		return supported;
+	}
+
+	@Override
+	public boolean initialize() {
+		initialized = supported && channelAvailable;
+		return initialized;
+	}
+
+	@Override
+	public boolean isInitialized() {
+		return initialized;
+	}
+
+	@Override
+	public void close() {
+		initialized = false;
+	}
+
+	@Override
+	public void createGroup(@Nullable String networkName,
+			@Nullable String passphrase, boolean band5Ghz,
+			ActionCallback callback) {
+		if (!initialized) return;
+		createGroupCalls++;
+		Integer failure = createGroupFailures.poll();
+		if (failure != null) {
+			// BUSY means a group exists already, so we keep the old one
+			if (failure == BUSY && groupFormedAt < 0) formGroup(null, null);
+			deliver(() -> callback.onFailure(failure));
+			return;
+		}
+		if (!p2pEnabled) {
+			deliver(() -> callback.onFailure(ERROR));
+			return;
+		}
+		formGroup(networkName, passphrase);
+		deliver(callback::onSuccess);
+	}
+
+	private void formGroup(@Nullable String networkName,
+			@Nullable String passphrase) {
+		if (networkName != null && passphrase != null) {
+			this.networkName = networkName;
+			this.passphrase = passphrase;
+		}
+		groupFormedAt = clock.now() + groupFormationDelayMillis;
+		clientJoinedAt = clientJoinDelayMillis < 0 ? -1 :
+				groupFormedAt + clientJoinDelayMillis;
+	}
+
+	@Override
+	public void removeGroup(ActionCallback callback) {
+		if (!initialized) return;
+		if (groupFormedAt < 0) {
+			deliver(() -> callback.onFailure(ERROR));
+			return;
+		}
+		groupFormedAt = -1;
+		clientJoinedAt = -1;
+		deliver(callback::onSuccess);
+	}
+
+	@Override
+	public void requestGroupInfo(GroupInfoCallback callback) {
+		if (!initialized) return;
+		groupInfoRequests++;
+		GroupInfo group;
+		if (!isGroupFormed()) {
+			group = null;
+		} else if (missingGroupInfoResponses > 0) {
+			missingGroupInfoResponses--;
+			group = null;
+		} else {
+			group = new GroupInfo(networkName, passphrase, frequency,
+					getClients());
+		}
+		deliver(() -> callback.onGroupInfoAvailable(group));
+	}
+
+	private List<String> getClients() {
+		if (clientJoinedAt < 0 || clock.now() < clientJoinedAt) {
+			return emptyList();
+		}
+		return singletonList("02:00:00:00:00:01");
+	}
+
+	@Override
+	public void acquireWifiLock(boolean highPerformance) {
+		wifiLockHeld = true;
+		wifiLockHighPerformance = highPerformance;
+	}
+
+	@Override
+	public void releaseWifiLock() {
+		wifiLockHeld = false;
+	}
+
+	// WifiRadio
+
+	@Override
+	public boolean isWifiEnabled() {
+		return wifiEnabled;
+	}
+
+	@Override
+	public boolean setWifiEnabled(boolean enabled) {
+		if (enabled == wifiEnabled) return true;
+		wifiEnabled = enabled;
+		if (enabled) {
+			clock.schedule(() -> setP2pEnabled(wifiEnabled),
+					p2pEnableDelayMillis);
+		} else {
+			setP2pEnabled(false);
+		}
+		return true;
+	}
+
+	private void setP2pEnabled(boolean enabled) {
+		p2pEnabled = enabled;
+		if (p2pStateListener != null)
+			p2pStateListener.onP2pStateChanged(enabled);
+	}
+
+	@Override
+	public boolean is5GHzBandSupported() {
+		return fiveGhzSupported;
+	}
+
+	@Override
+	public void setP2pStateListener(@Nullable P2pStateListener listener) {
+		p2pStateListener = listener;
+		// like the sticky broadcast, deliver the current state right away
+		if (listener != null) {
+			boolean enabled = p2pEnabled;
+			deliver(() -> listener.onP2pStateChanged(enabled));
+		}
+	}
+
+	@Override
+	public void requestP2pState(P2pStateListener listener) {
+		boolean enabled = p2pEnabled;
+		deliver(() -> listener.onP2pStateChanged(enabled));
+	}
+
+	private void deliver(Runnable callback) {
+		clock.schedule(callback, callbackDelayMillis);
+	}
+
+}
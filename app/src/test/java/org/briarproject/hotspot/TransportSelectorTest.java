@@ -0,0 +1,288 @@
+package org.briarproject.hotspot;
+
+import org.briarproject.hotspot.HotspotState.NetworkConfig;
+import org.briarproject.hotspot.HotspotTransport.HotspotListener;
+import org.briarproject.hotspot.TransportSelector.Transport;
+import org.junit.Before;
+import org.junit.Test;
+
+import androidx.annotation.Nullable;
+
+import static org.briarproject.hotspot.HotspotManager.UNKNOWN_FREQUENCY;
+import static org.briarproject.hotspot.TransportSelector.Transport.LOCAL_ONLY_HOTSPOT;
+import static org.briarproject.hotspot.TransportSelector.Transport.WIFI_DIRECT;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Lets a {@link TransportSelector} choose between two fake transports,
+ * whose starts take virtual time on a {@link VirtualClock}.
+ */
+public class TransportSelectorTest {
+
+	private static final long LIMIT_MILLIS = 60_000;
+
+	private final VirtualClock clock = new VirtualClock();
+	private final TransportStats stats =
+			new TransportStats(new InMemoryPreferences());
+	private final RecordingListener listener = new RecordingListener();
+
+	private boolean locationPermission = true;
+	private TransportSelector selector;
+	private FakeTransport wifiDirect, localOnly;
+
+	@Before
+	public void setUp() {
+		selector = new TransportSelector(listener, stats, clock,
+				() -> locationPermission);
+		wifiDirect = new FakeTransport("DIRECT-ab-Hotspot");
+		localOnly = new FakeTransport("AndroidShare_1234");
+		selector.addTransport(WIFI_DIRECT, wifiDirect);
+		selector.addTransport(LOCAL_ONLY_HOTSPOT, localOnly);
+	}
+
+	@Test
+	public void testUsesWifiDirectUntilItHasEnoughAttempts() {
+		for (int i = 0; i < 3; i++) start();
+		assertEquals(3, wifiDirect.starts);
+		assertEquals(0, localOnly.starts);
+		assertEquals(3, stats.getAttempts(WIFI_DIRECT));
+		assertEquals(3, stats.getSuccesses(WIFI_DIRECT));
+		assertEquals(1000, stats.getAverageStartMillis(WIFI_DIRECT));
+	}
+
+	@Test
+	public void testTriesLocalOnlyHotspotIfWifiDirectIsSlow() {
+		wifiDirect.startMillis = 8000;
+		for (int i = 0; i < 3; i++) start();
+		assertEquals(0, localOnly.starts);
+
+		start();
+		assertEquals(1, localOnly.starts);
+		assertEquals(localOnly.ssid, getStartedSsid());
+	}
+
+	@Test
+	public void testChoosesBySuccessRate() {
+		// Equally fast, but Wi-Fi Direct fails every other start
+		recordStarts(WIFI_DIRECT, 10, 5, 2000);
+		recordStarts(LOCAL_ONLY_HOTSPOT, 10, 10, 2000);
+		start();
+		assertEquals(1, localOnly.starts);
+		assertEquals(0, wifiDirect.starts);
+	}
+
+	@Test
+	public void testChoosesByStartTime() {
+		// Wi-Fi Direct isn't reliable, but still faster
+		recordStarts(WIFI_DIRECT, 10, 9, 2000);
+		recordStarts(LOCAL_ONLY_HOTSPOT, 10, 10, 6000);
+		start();
+		assertEquals(1, wifiDirect.starts);
+		assertEquals(0, localOnly.starts);
+	}
+
+	@Test
+	public void testNeedsLocationPermissionForLocalOnlyHotspot() {
+		locationPermission = false;
+		recordStarts(WIFI_DIRECT, 10, 0, 0);
+		start();
+		assertEquals(1, wifiDirect.starts);
+		assertEquals(0, localOnly.starts);
+	}
+
+	@Test
+	public void testFallsBackOnStartError() {
+		wifiDirect.failStart = true;
+		start();
+		assertEquals(1, wifiDirect.starts);
+		assertEquals(1, localOnly.starts);
+		assertNull(listener.error);
+		assertEquals(localOnly.ssid, getStartedSsid());
+		assertEquals(1, stats.getAttempts(WIFI_DIRECT));
+		assertEquals(0, stats.getSuccesses(WIFI_DIRECT));
+		assertEquals(1, stats.getSuccesses(LOCAL_ONLY_HOTSPOT));
+	}
+
+	@Test
+	public void testFallsBackOnlyOnce() {
+		wifiDirect.failStart = true;
+		localOnly.failStart = true;
+		selector.startHotspot();
+		clock.advanceBy(LIMIT_MILLIS);
+		assertEquals(1, wifiDirect.starts);
+		assertEquals(1, localOnly.starts);
+		assertEquals("failed", listener.error);
+		assertNull(listener.config);
+	}
+
+	@Test
+	public void testDoesNotFallBackAfterStop() {
+		// Stopping fails while the start is in progress
+		wifiDirect.failStop = true;
+		selector.startHotspot();
+		clock.advanceBy(wifiDirect.startMillis / 2);
+		selector.stopHotspot();
+		clock.advanceBy(LIMIT_MILLIS);
+
+		assertEquals(0, localOnly.starts);
+		assertEquals("failed to stop", listener.error);
+	}
+
+	@Test
+	public void testStopCancelsPendingFallback() {
+		selector.startHotspot();
+		wifiDirect.failNow();
+		// The fallback is scheduled, but hasn't started yet
+		selector.stopHotspot();
+		clock.advanceBy(LIMIT_MILLIS);
+
+		assertEquals(0, localOnly.starts);
+		assertTrue(listener.stopped);
+		assertNull(listener.config);
+	}
+
+	@Test
+	public void testReattachesOnlyWifiDirect() {
+		selector.reattachHotspot("AndroidShare_5678");
+		clock.advanceBy(LIMIT_MILLIS);
+		assertEquals(1, wifiDirect.starts);
+		assertEquals(0, wifiDirect.reattaches);
+
+		selector.reattachHotspot(wifiDirect.ssid);
+		clock.advanceBy(LIMIT_MILLIS);
+		assertEquals(1, wifiDirect.reattaches);
+		// A reattach isn't a start
+		assertEquals(1, stats.getAttempts(WIFI_DIRECT));
+	}
+
+	/**
+	 * Starts the hotspot, waits for it to start or fail and stops it again.
+	 */
+	private void start() {
+		listener.config = null;
+		listener.error = null;
+		selector.startHotspot();
+		clock.advanceBy(LIMIT_MILLIS);
+		assertNotNull(listener.config);
+		selector.stopHotspot();
+		clock.advanceBy(LIMIT_MILLIS);
+		assertFalse(wifiDirect.running || localOnly.running);
+	}
+
+	@Nullable
+	private String getStartedSsid() {
+		return listener.config == null ? null : listener.config.ssid;
+	}
+
+	private void recordStarts(Transport t, int attempts, int successes,
+			long startMillis) {
+		for (int i = 0; i < attempts; i++) stats.onStartAttempt(t);
+		for (int i = 0; i < successes; i++)
+			stats.onStartSucceeded(t, startMillis);
+	}
+
+	/**
+	 * Starts after {@link #startMillis}, or fails to, and reports to the
+	 * selector. A stop ends a start in progress.
+	 */
+	private class FakeTransport implements HotspotTransport {
+
+		private final String ssid;
+
+		private long startMillis = 1000;
+		private boolean failStart = false, failStop = false;
+		private boolean starting = false, running = false;
+		private int starts = 0, reattaches = 0;
+
+		private FakeTransport(String ssid) {
+			this.ssid = ssid;
+		}
+
+		@Override
+		public void startHotspot() {
+			starts++;
+			starting = true;
+			selector.onStartingHotspot();
+			clock.schedule(() -> {
+				if (!starting) return;
+				if (failStart) {
+					failNow();
+				} else {
+					starting = false;
+					running = true;
+					selector.onHotspotStarted(new NetworkConfig(ssid,
+							"password", UNKNOWN_FREQUENCY));
+				}
+			}, startMillis);
+		}
+
+		/**
+		 * Fails the start in progress without waiting for it.
+		 */
+		private void failNow() {
+			starting = false;
+			selector.onHotspotError("failed");
+		}
+
+		@Override
+		public void reattachHotspot(String networkName) {
+			reattaches++;
+			running = true;
+			selector.onHotspotStarted(new NetworkConfig(networkName,
+					"password", UNKNOWN_FREQUENCY));
+		}
+
+		@Override
+		public void stopHotspot() {
+			starting = false;
+			running = false;
+			if (failStop) selector.onHotspotError("failed to stop");
+			else selector.onHotspotStopped();
+		}
+
+		@Override
+		public void setHighPerformance(boolean highPerformance) {
+		}
+
+		@Override
+		public void setProfile(PerformanceProfile profile) {
+		}
+	}
+
+	private static class RecordingListener implements HotspotListener {
+
+		@Nullable
+		private NetworkConfig config = null;
+		@Nullable
+		private String error = null;
+		private boolean stopped = false;
+
+		@Override
+		public void onStartingHotspot() {
+		}
+
+		@Override
+		public void onHotspotStarted(NetworkConfig networkConfig) {
+			config = networkConfig;
+		}
+
+		@Override
+		public void onDeviceConnected() {
+		}
+
+		@Override
+		public void onHotspotStopped() {
+			stopped = true;
+		}
+
+		@Override
+		public void onHotspotError(String error) {
+			this.error = error;
+		}
+	}
+
+}
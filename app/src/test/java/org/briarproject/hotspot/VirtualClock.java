@@ -0,0 +1,79 @@
+package org.briarproject.hotspot;
+
+import java.util.PriorityQueue;
+
+/**
+ * A {@link TaskScheduler} with a virtual time base. Time only advances when
+ * {@link #advanceBy(long)} or {@link #runUntilIdle(long)} is called, and
+ * scheduled tasks are run on the calling thread in deterministic order.
+ */
+class VirtualClock implements TaskScheduler {
+
+	private static class ScheduledTask implements Comparable<ScheduledTask> {
+
+		private final long time, sequence;
+		private final Runnable task;
+
+		private ScheduledTask(long time, long sequence, Runnable task) {
+			this.time = time;
+			this.sequence = sequence;
+			this.task = task;
+		}
+
+		@Override
+		public int compareTo(ScheduledTask o) {
+			if (time != o.time) return Long.compare(time, o.time);
+			return Long.compare(sequence, o.sequence);
+		}
+
+	}
+
+	private final PriorityQueue<ScheduledTask> tasks = new PriorityQueue<>();
+
+	private long now = 0, sequence = 0;
+
+	@Override
+	public long now() {
+		return now;
+	}
+
+	@Override
+	public void schedule(Runnable task, long delayMillis) {
+		tasks.add(new ScheduledTask(now + delayMillis, sequence++, task));
+	}
+
+	/**
+	 * Advances the clock by the given amount of time, running all tasks that
+	 * become due on the way, including tasks scheduled by those tasks.
+	 */
+	void advanceBy(long millis) {
+		long target = now + millis;
+		while (!tasks.isEmpty() && tasks.peek().time <= target) {
+			ScheduledTask next = tasks.poll();
+			now = next.time;
+			next.task.run();
+		}
+		now = target;
+	}
+
+	/**
+	 * Runs scheduled tasks until none are left or the given virtual time
+	 * limit has been reached.
+	 *
+	 * @return true if no tasks are left.
+	 */
+	boolean runUntilIdle(long limitMillis) {
+		long limit = now + limitMillis;
+		while (!tasks.isEmpty() && tasks.peek().time <= limit) {
+			ScheduledTask next = tasks.poll();
+			now = next.time;
+			next.task.run();
+		}
+		return tasks.isEmpty();
+	}
+
+	int getPendingTaskCount() {
+		return tasks.size();
+	}
+
+}
@@ -0,0 +1,189 @@
+package org.briarproject.hotspot.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import androidx.annotation.Nullable;
+
+/**
+ * The variants of the APK that the {@link WebServer} serves.
+ * <p>
+ * Split APKs are named after the density and/or ABI they contain, for
+ * example {@code xxhdpi.apk} or {@code xhdpi-arm64-v8a.apk}. The universal
+ * APK should always be part of the catalog, it is used when nothing is known
+ * about the client.
+ */
+public class ApkCatalog {
+
+	public static class Variant {
+
+		/**
+		 * The name used in URLs, which is the file name without extension.
+		 */
+		final String name;
+		@Nullable
+		final String density, abi;
+		final long length;
+		private final ServedFile file;
+
+		private Variant(String name, @Nullable String density,
+				@Nullable String abi, ServedFile file) throws IOException {
+			this.name = name;
+			this.density = density;
+			this.abi = abi;
+			this.file = file;
+			length = file.getLength();
+		}
+
+		InputStream open() throws IOException {
+			return file.open();
+		}
+
+		boolean isCompatible(@Nullable String density, @Nullable String abi) {
+			return (this.density == null || this.density.equals(density)) &&
+					(this.abi == null || this.abi.equals(abi));
+		}
+
+		@Override
+		public String toString() {
+			return name + " (" + length + " bytes)";
+		}
+	}
+
+	public static final String UNIVERSAL = "universal";
+
+	private static final String EXTENSION = ".apk";
+
+	// Density buckets and the highest dpi that gets served by each of them,
+	// half-way to the next bucket
+	private static final String[] DENSITIES =
+			{"mdpi", "hdpi", "xhdpi", "xxhdpi", "xxxhdpi"};
+	private static final int[] MAX_DPI =
+			{200, 280, 400, 560, Integer.MAX_VALUE};
+	private static final List<String> ABIS = Arrays.asList("arm64-v8a",
+			"armeabi-v7a", "armeabi", "x86_64", "x86");
+
+	// Only older user agents contain the CPU architecture
+	private static final Pattern REGEX_ARCH = Pattern.compile(
+			"\\b(aarch64|armv8l?|armv7l?|x86_64|i686)\\b",
+			Pattern.CASE_INSENSITIVE);
+
+	private final List<Variant> variants;
+
+	public ApkCatalog(List<Variant> variants) {
+		this.variants = variants;
+	}
+
+	/**
+	 * Returns the variant that is compatible with every client.
+	 */
+	public static Variant createUniversal(ServedFile file) throws IOException {
+		return new Variant(UNIVERSAL, null, null, file);
+	}
+
+	/**
+	 * Returns the variant for a split APK, or null if the file isn't named
+	 * after a density and/or ABI.
+	 */
+	@Nullable
+	public static Variant parse(String fileName, ServedFile file)
+			throws IOException {
+		if (!fileName.endsWith(EXTENSION)) return null;
+		String name = fileName.substring(0,
+				fileName.length() - EXTENSION.length());
+		String density = null, abi = null;
+		for (String d : DENSITIES) {
+			if (name.equals(d) || name.startsWith(d + "-")) density = d;
+		}
+		String rest = density == null ? name :
+				name.substring(density.length()).replaceFirst("^-", "");
+		if (ABIS.contains(rest)) abi = rest;
+		else if (!rest.isEmpty()) return null;
+		return new Variant(name, density, abi, file);
+	}
+
+	@Nullable
+	Variant getVariant(String name) {
+		for (Variant v : variants) if (v.name.equals(name)) return v;
+		return null;
+	}
+
+	/**
+	 * Returns the smallest variant that is compatible with what is known
+	 * about the client. Unknown properties only match the universal APK.
+	 */
+	@Nullable
+	Variant select(@Nullable String density, @Nullable String abi) {
+		Variant best = null;
+		for (Variant v : variants) {
+			if (v.isCompatible(density, abi) &&
+					(best == null || v.length < best.length)) {
+				best = v;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * @param devicePixelRatio As sent in the {@code Sec-CH-DPR} client hint
+	 * or found by JavaScript.
+	 */
+	@Nullable
+	static String getDensity(@Nullable String devicePixelRatio) {
+		if (devicePixelRatio == null) return null;
+		float dpr;
+		try {
+			dpr = Float.parseFloat(devicePixelRatio.trim());
+		} catch (NumberFormatException e) {
+			return null;
+		}
+		if (dpr <= 0) return null;
+		float dpi = dpr * 160;
+		for (int i = 0; i < DENSITIES.length; i++) {
+			if (dpi <= MAX_DPI[i]) return DENSITIES[i];
+		}
+		return null;
+	}
+
+	/**
+	 * @param arch The {@code Sec-CH-UA-Arch} client hint
+	 * @param bitness The {@code Sec-CH-UA-Bitness} client hint
+	 */
+	@Nullable
+	static String getAbi(@Nullable String userAgent, @Nullable String arch,
+			@Nullable String bitness) {
+		if (arch != null) {
+			boolean is64 = "64".equals(unquote(bitness));
+			switch (unquote(arch).toLowerCase(Locale.US)) {
+				case "arm":
+					return is64 ? "arm64-v8a" : "armeabi-v7a";
+				case "x86":
+					return is64 ? "x86_64" : "x86";
+			}
+		}
+		if (userAgent == null) return null;
+		Matcher matcher = REGEX_ARCH.matcher(userAgent);
+		if (!matcher.find()) return null;
+		String match = matcher.group(1).toLowerCase(Locale.US);
+		if (match.equals("aarch64") || match.startsWith("armv8"))
+			return "arm64-v8a";
+		if (match.startsWith("armv7")) return "armeabi-v7a";
+		if (match.equals("x86_64")) return "x86_64";
+		return "x86";
+	}
+
+	// Structured header strings are quoted
+	private static String unquote(@Nullable String s) {
+		if (s == null) return "";
+		s = s.trim();
+		if (s.length() >= 2 && s.startsWith("\"") && s.endsWith("\""))
+			return s.substring(1, s.length() - 1);
+		return s;
+	}
+
+}
@@ -0,0 +1,39 @@
+package org.briarproject.hotspot.server;
+
+import java.util.Collections;
+import java.util.List;
+
+import androidx.annotation.Nullable;
+
+/**
+ * The installed apps that the {@link WebServer} offers besides its own APK.
+ * Each change of the apps gets a new version, and the download page is
+ * rendered once per version.
+ */
+public class AppCatalog {
+
+	public static final AppCatalog EMPTY =
+			new AppCatalog(0, Collections.emptyList());
+
+	final int version;
+	final List<SharedApp> apps;
+
+	public AppCatalog(int version, List<SharedApp> apps) {
+		this.version = version;
+		this.apps = apps;
+	}
+
+	@Nullable
+	SharedApp getApp(String packageName) {
+		for (SharedApp a : apps) {
+			if (a.packageName.equals(packageName)) return a;
+		}
+		return null;
+	}
+
+	@Override
+	public String toString() {
+		return "version " + version + ": " + apps;
+	}
+
+}
@@ -0,0 +1,16 @@
+package org.briarproject.hotspot.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The files the web pages of the {@link WebServer} are rendered from.
+ */
+public interface Assets {
+
+	/**
+	 * Opens the asset with the given name. The caller needs to close the
+	 * stream.
+	 */
+	InputStream open(String name) throws IOException;
+}
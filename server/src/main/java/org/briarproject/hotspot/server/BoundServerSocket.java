@@ -0,0 +1,92 @@
+package org.briarproject.hotspot.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.SocketAddress;
+import java.util.logging.Logger;
+
+import static java.util.logging.Level.INFO;
+import static java.util.logging.Logger.getLogger;
+
+/**
+ * A server socket for the {@link WebServer} that is bound before the server
+ * starts, so binding can overlap with the hotspot starting and a busy port
+ * is noticed early.
+ * <p>
+ * The socket is bound with SO_REUSEADDR, so a restarted server gets its port
+ * back while connections of the previous one are in TIME_WAIT. If the port
+ * is taken anyway, the following ports are tried. NanoHTTPD binds the socket
+ * it is given, so binding again is a no-op.
+ */
+public class BoundServerSocket extends ServerSocket {
+
+	private static final Logger LOG =
+			getLogger(BoundServerSocket.class.getName());
+
+	/**
+	 * How many ports are tried, starting at {@link WebServer#PORT}.
+	 */
+	public static final int PORT_ATTEMPTS = 10;
+
+	// Set once the socket is bound
+	private long bindMillis = -1, boundAt = -1;
+
+	private BoundServerSocket() throws IOException {
+		setReuseAddress(true);
+	}
+
+	/**
+	 * Binds a socket on all interfaces to {@link WebServer#PORT}, or to the
+	 * first free port after it.
+	 *
+	 * @throws IOException if none of the {@link #PORT_ATTEMPTS} ports is
+	 * free.
+	 */
+	public static BoundServerSocket bind() throws IOException {
+		IOException last = null;
+		for (int i = 0; i < PORT_ATTEMPTS; i++) {
+			int port = WebServer.PORT + i;
+			BoundServerSocket socket = new BoundServerSocket();
+			long start = System.nanoTime();
+			try {
+				socket.bind(new InetSocketAddress(port));
+			} catch (IOException e) {
+				if (LOG.isLoggable(INFO))
+					LOG.info("Port " + port + " is busy: " + e);
+				socket.close();
+				last = e;
+				continue;
+			}
+			socket.boundAt = System.nanoTime();
+			socket.bindMillis = (socket.boundAt - start) / 1_000_000;
+			if (LOG.isLoggable(INFO)) {
+				LOG.info("Bound port " + port + " in " + socket.bindMillis +
+						" ms");
+			}
+			return socket;
+		}
+		throw last;
+	}
+
+	@Override
+	public void bind(SocketAddress endpoint, int backlog) throws IOException {
+		if (!isBound()) super.bind(endpoint, backlog);
+	}
+
+	/**
+	 * Returns how long binding the port took, without the ports tried
+	 * before.
+	 */
+	public long getBindMillis() {
+		return bindMillis;
+	}
+
+	/**
+	 * Returns when the port was bound, see {@link System#nanoTime()}.
+	 */
+	public long getBoundAt() {
+		return boundAt;
+	}
+
+}
@@ -0,0 +1,74 @@
+package org.briarproject.hotspot.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import fi.iki.elonen.NanoHTTPD.AsyncRunner;
+import fi.iki.elonen.NanoHTTPD.ClientHandler;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Handles the connections of the {@link WebServer} on a bounded number of
+ * threads, instead of a thread per connection. Connections beyond the bound
+ * wait until a thread becomes free. This caps the memory taken by thread
+ * stacks and buffers on devices that are short of it, at the cost of
+ * clients waiting when many connect at once.
+ * <p>
+ * Idle threads end after {@link #KEEP_ALIVE_SECONDS}, so a runner doesn't
+ * need to be shut down when its server stops.
+ */
+public class BoundedAsyncRunner implements AsyncRunner {
+
+	private static final long KEEP_ALIVE_SECONDS = 10;
+
+	private final ThreadPoolExecutor executor;
+	private final AtomicInteger threadCount = new AtomicInteger(0);
+	private final Object lock = new Object();
+	// Handlers that are queued or running. Locking: lock
+	private final List<ClientHandler> handlers = new ArrayList<>();
+
+	public BoundedAsyncRunner(int maxThreads) {
+		executor = new ThreadPoolExecutor(maxThreads, maxThreads,
+				KEEP_ALIVE_SECONDS, SECONDS, new LinkedBlockingQueue<>(),
+				r -> {
+					Thread t = new Thread(r, "Request Processor " +
+							threadCount.incrementAndGet());
+					t.setDaemon(true);
+					return t;
+				});
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	@Override
+	public void exec(ClientHandler handler) {
+		synchronized (lock) {
+			handlers.add(handler);
+		}
+		executor.execute(handler);
+	}
+
+	@Override
+	public void closed(ClientHandler handler) {
+		synchronized (lock) {
+			handlers.remove(handler);
+		}
+	}
+
+	/**
+	 * Closes the sockets of all connections. Queued connections end as soon
+	 * as they get a thread.
+	 */
+	@Override
+	public void closeAll() {
+		List<ClientHandler> copy;
+		synchronized (lock) {
+			copy = new ArrayList<>(handlers);
+		}
+		for (ClientHandler handler : copy) handler.close();
+	}
+
+}
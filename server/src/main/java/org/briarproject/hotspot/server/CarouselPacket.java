@@ -0,0 +1,115 @@
+package org.briarproject.hotspot.server;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * The wire format of the packets sent by {@link CarouselSender}.
+ * <p>
+ * The file is split into blocks of {@link #DATA_SHARDS} shards of
+ * {@link #SHARD_SIZE} bytes. Each block is extended by {@link #PARITY_SHARDS}
+ * Reed-Solomon parity shards and each shard is sent in its own packet, so a
+ * block can be recovered from any {@link #DATA_SHARDS} of its packets.
+ * <p>
+ * All integers are big-endian. A packet consists of:
+ * <ul>
+ * <li>magic number (4 bytes)</li>
+ * <li>session ID, random for each sender (4 bytes)</li>
+ * <li>file length (8 bytes)</li>
+ * <li>block index (4 bytes)</li>
+ * <li>shard index within the block (2 bytes)</li>
+ * <li>shard size (2 bytes)</li>
+ * <li>number of data shards per block (1 byte)</li>
+ * <li>number of parity shards per block (1 byte)</li>
+ * <li>SHA-256 of the file (32 bytes)</li>
+ * <li>shard data</li>
+ * </ul>
+ * Receivers only accept files of up to {@link #MAX_FILE_LENGTH} bytes in up
+ * to {@link #MAX_SHARDS} shards, so a spoofed header can't make them
+ * allocate more than a few times that.
+ */
+public class CarouselPacket {
+
+	/**
+	 * An organisation-local scope address, so the packets don't leave the
+	 * hotspot network.
+	 */
+	public static final String GROUP_ADDRESS = "239.255.42.99";
+	public static final int PORT = 9998;
+
+	static final int MAGIC = 0x48534332; // "HSC2"
+	static final int DIGEST_LENGTH = 32;
+	static final int HEADER_LENGTH = 26 + DIGEST_LENGTH;
+	// Keeps packets below the usual MTU of 1500 bytes
+	static final int SHARD_SIZE = 1400;
+	static final int DATA_SHARDS = 32;
+	static final int PARITY_SHARDS = 16;
+	static final int MAX_PACKET_LENGTH = HEADER_LENGTH + SHARD_SIZE;
+	// Far more than our APK, which is held in memory while it's received
+	static final long MAX_FILE_LENGTH = 32 * 1024 * 1024;
+	static final long MAX_SHARDS = 1 << 16;
+
+	int sessionId;
+	long fileLength;
+	int blockIndex;
+	int shardIndex;
+	int shardSize;
+	int dataShards;
+	int parityShards;
+	final byte[] digest = new byte[DIGEST_LENGTH];
+
+	static int getBlockCount(long fileLength, int dataShards, int shardSize) {
+		long blockSize = (long) dataShards * shardSize;
+		return (int) ((fileLength + blockSize - 1) / blockSize);
+	}
+
+	void writeHeader(ByteBuffer buf) {
+		buf.putInt(MAGIC);
+		buf.putInt(sessionId);
+		buf.putLong(fileLength);
+		buf.putInt(blockIndex);
+		buf.putShort((short) shardIndex);
+		buf.putShort((short) shardSize);
+		buf.put((byte) dataShards);
+		buf.put((byte) parityShards);
+		buf.put(digest);
+	}
+
+	/**
+	 * Reads the header and checks that it is consistent with the length of
+	 * the packet.
+	 *
+	 * @return false if this is not a valid carousel packet.
+	 */
+	boolean readHeader(ByteBuffer buf) {
+		if (buf.remaining() < HEADER_LENGTH) return false;
+		if (buf.getInt() != MAGIC) return false;
+		sessionId = buf.getInt();
+		fileLength = buf.getLong();
+		blockIndex = buf.getInt();
+		shardIndex = buf.getShort() & 0xFFFF;
+		shardSize = buf.getShort() & 0xFFFF;
+		dataShards = buf.get() & 0xFF;
+		parityShards = buf.get() & 0xFF;
+		buf.get(digest);
+		if (fileLength <= 0 || fileLength > MAX_FILE_LENGTH) return false;
+		if (shardSize == 0 || dataShards == 0) return false;
+		int totalShards = dataShards + parityShards;
+		if (totalShards > 256) return false;
+		if (shardIndex >= totalShards) return false;
+		int blockCount = getBlockCount(fileLength, dataShards, shardSize);
+		if ((long) blockCount * totalShards > MAX_SHARDS) return false;
+		if (blockIndex < 0 || blockIndex >= blockCount) return false;
+		return buf.remaining() == shardSize;
+	}
+
+	static byte[] getDigest(byte[] file) {
+		try {
+			return MessageDigest.getInstance("SHA-256").digest(file);
+		} catch (NoSuchAlgorithmException e) {
+			throw new AssertionError(e);
+		}
+	}
+
+}
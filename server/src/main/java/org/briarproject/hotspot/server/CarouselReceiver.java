@@ -0,0 +1,211 @@
+package org.briarproject.hotspot.server;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MulticastSocket;
+import java.net.NetworkInterface;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.logging.Logger;
+
+import androidx.annotation.Nullable;
+
+import static java.util.logging.Level.INFO;
+import static java.util.logging.Logger.getLogger;
+import static org.briarproject.hotspot.server.CarouselPacket.DIGEST_LENGTH;
+import static org.briarproject.hotspot.server.CarouselPacket.HEADER_LENGTH;
+import static org.briarproject.hotspot.server.CarouselPacket.getBlockCount;
+import static org.briarproject.hotspot.server.CarouselPacket.getDigest;
+
+/**
+ * Receives a file from a {@link CarouselSender}.
+ * <p>
+ * Shards of each block are kept until enough of them have arrived to decode
+ * the block, then the data is copied into the file and the shards are
+ * dropped. If packets from a different session or with a different layout
+ * arrive, the sender has been restarted and reception starts over. The file
+ * is only returned if it matches the digest sent by the sender, otherwise
+ * reception starts over as well.
+ * <p>
+ * On Android, a {@code WifiManager.MulticastLock} needs to be held while
+ * receiving.
+ */
+public class CarouselReceiver {
+
+	public interface ProgressListener {
+		void onProgress(int blocksDecoded, int blockCount);
+	}
+
+	private static final Logger LOG =
+			getLogger(CarouselReceiver.class.getName());
+
+	private static final int RECEIVE_TIMEOUT_MILLIS = 1000;
+	private static final int RECEIVE_BUFFER_SIZE = 1 << 20;
+
+	private final InetAddress group;
+	private final int port;
+	@Nullable
+	private final NetworkInterface networkInterface;
+	@Nullable
+	private final ProgressListener listener;
+
+	private volatile boolean cancelled = false;
+
+	// The following fields are only accessed by the receiving thread
+	private final CarouselPacket header = new CarouselPacket();
+	@Nullable
+	private ReedSolomon rs = null;
+	private int sessionId, shardSize, blockCount, blocksDecoded;
+	private final byte[] digest = new byte[DIGEST_LENGTH];
+	private byte[] file = new byte[0];
+	private byte[][][] shards = new byte[0][][];
+	private boolean[][] present = new boolean[0][];
+	private int[] shardCounts = new int[0];
+	private boolean[] decoded = new boolean[0];
+
+	/**
+	 * @param networkInterface The interface to join the group on or null to
+	 * let the system choose.
+	 */
+	public CarouselReceiver(InetAddress group, int port,
+			@Nullable NetworkInterface networkInterface,
+			@Nullable ProgressListener listener) {
+		this.group = group;
+		this.port = port;
+		this.networkInterface = networkInterface;
+		this.listener = listener;
+	}
+
+	/**
+	 * Receives the file, blocking until it is complete.
+	 *
+	 * @param timeoutMillis How long to wait without receiving any packets.
+	 * @return the file or null if reception was cancelled or timed out.
+	 */
+	@Nullable
+	public byte[] receive(long timeoutMillis) throws IOException {
+		InetSocketAddress groupAddress = new InetSocketAddress(group, port);
+		try (MulticastSocket socket = new MulticastSocket(port)) {
+			socket.setReceiveBufferSize(RECEIVE_BUFFER_SIZE);
+			socket.setSoTimeout(RECEIVE_TIMEOUT_MILLIS);
+			socket.joinGroup(groupAddress, networkInterface);
+			byte[] buf = new byte[65536];
+			DatagramPacket packet = new DatagramPacket(buf, buf.length);
+			long lastPacket = System.currentTimeMillis();
+			while (!cancelled) {
+				try {
+					packet.setLength(buf.length);
+					socket.receive(packet);
+				} catch (SocketTimeoutException e) {
+					long idle = System.currentTimeMillis() - lastPacket;
+					if (idle >= timeoutMillis) {
+						LOG.info("Timed out waiting for packets");
+						return null;
+					}
+					continue;
+				}
+				lastPacket = System.currentTimeMillis();
+				if (onPacket(buf, packet.getLength())) {
+					socket.leaveGroup(groupAddress, networkInterface);
+					return file;
+				}
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Makes {@link #receive(long)} return within a second. May be called
+	 * from any thread.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	/**
+	 * @return true if the file is complete.
+	 */
+	private boolean onPacket(byte[] buf, int length) {
+		ByteBuffer bb = ByteBuffer.wrap(buf, 0, length);
+		if (!header.readHeader(bb)) return false;
+		if (!isCurrentSession()) startSession();
+		int block = header.blockIndex, shard = header.shardIndex;
+		if (decoded[block] || present[block][shard]) return false;
+		if (shards[block] == null) {
+			shards[block] = new byte[rs.getTotalShards()][];
+		}
+		byte[] data = new byte[shardSize];
+		System.arraycopy(buf, HEADER_LENGTH, data, 0, shardSize);
+		shards[block][shard] = data;
+		present[block][shard] = true;
+		if (++shardCounts[block] < rs.getDataShards()) return false;
+		decodeBlock(block);
+		if (blocksDecoded < blockCount) return false;
+		if (!Arrays.equals(getDigest(file), digest)) {
+			LOG.warning("File doesn't match its digest, starting over");
+			rs = null;
+			return false;
+		}
+		return true;
+	}
+
+	private boolean isCurrentSession() {
+		return rs != null && header.sessionId == sessionId &&
+				header.fileLength == file.length &&
+				header.shardSize == shardSize &&
+				header.dataShards == rs.getDataShards() &&
+				header.dataShards + header.parityShards ==
+						rs.getTotalShards() &&
+				Arrays.equals(header.digest, digest);
+	}
+
+	/**
+	 * Starts receiving the file described by the current header, which has
+	 * been checked to be small enough to receive.
+	 */
+	private void startSession() {
+		if (rs != null) LOG.info("Sender restarted, starting over");
+		rs = new ReedSolomon(header.dataShards, header.parityShards);
+		sessionId = header.sessionId;
+		shardSize = header.shardSize;
+		System.arraycopy(header.digest, 0, digest, 0, DIGEST_LENGTH);
+		blockCount = getBlockCount(header.fileLength, header.dataShards,
+				shardSize);
+		blocksDecoded = 0;
+		file = new byte[(int) header.fileLength];
+		shards = new byte[blockCount][][];
+		present = new boolean[blockCount][rs.getTotalShards()];
+		shardCounts = new int[blockCount];
+		decoded = new boolean[blockCount];
+		if (LOG.isLoggable(INFO)) {
+			LOG.info("Receiving " + file.length + " bytes in " + blockCount +
+					" blocks");
+		}
+	}
+
+	private void decodeBlock(int block) {
+		ReedSolomon rs = this.rs;
+		byte[][] blockShards = shards[block];
+		for (int s = 0; s < rs.getDataShards(); s++) {
+			if (blockShards[s] == null) blockShards[s] = new byte[shardSize];
+		}
+		if (!rs.decode(blockShards, present[block], shardSize)) {
+			throw new AssertionError();
+		}
+		long blockOffset = (long) block * rs.getDataShards() * shardSize;
+		for (int s = 0; s < rs.getDataShards(); s++) {
+			long offset = blockOffset + (long) s * shardSize;
+			int length = (int) Math.min(shardSize, file.length - offset);
+			if (length <= 0) break;
+			System.arraycopy(blockShards[s], 0, file, (int) offset, length);
+		}
+		shards[block] = null;
+		decoded[block] = true;
+		blocksDecoded++;
+		if (listener != null) listener.onProgress(blocksDecoded, blockCount);
+	}
+
+}
@@ -0,0 +1,167 @@
+package org.briarproject.hotspot.server;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.MulticastSocket;
+import java.net.NetworkInterface;
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+
+import androidx.annotation.Nullable;
+
+import static java.util.logging.Level.INFO;
+import static java.util.logging.Level.WARNING;
+import static java.util.logging.Logger.getLogger;
+import static org.briarproject.hotspot.server.CarouselPacket.DATA_SHARDS;
+import static org.briarproject.hotspot.server.CarouselPacket.HEADER_LENGTH;
+import static org.briarproject.hotspot.server.CarouselPacket.MAX_FILE_LENGTH;
+import static org.briarproject.hotspot.server.CarouselPacket.MAX_PACKET_LENGTH;
+import static org.briarproject.hotspot.server.CarouselPacket.PARITY_SHARDS;
+import static org.briarproject.hotspot.server.CarouselPacket.SHARD_SIZE;
+import static org.briarproject.hotspot.server.CarouselPacket.getBlockCount;
+import static org.briarproject.hotspot.server.CarouselPacket.getDigest;
+import static org.briarproject.hotspot.server.LogUtils.logException;
+
+/**
+ * Sends a file to a multicast group in a loop until it gets stopped.
+ * <p>
+ * The file is encoded once when the sender starts. Packets are sent shard by
+ * shard across all blocks, so that a burst of lost packets hits many blocks
+ * a little rather than one block a lot. Receivers can join at any time and
+ * finish as soon as they have enough shards of every block.
+ */
+public class CarouselSender {
+
+	private static final Logger LOG =
+			getLogger(CarouselSender.class.getName());
+
+	private final byte[] file;
+	private final InetAddress group;
+	private final int port;
+	@Nullable
+	private final NetworkInterface networkInterface;
+	private final long packetIntervalNanos;
+	private final int sessionId = new SecureRandom().nextInt();
+
+	private volatile boolean running = false;
+	@Nullable
+	private volatile MulticastSocket socket = null;
+	@Nullable
+	private Thread thread = null;
+
+	/**
+	 * @param networkInterface The interface to send on or null to let the
+	 * system choose.
+	 * @param packetsPerSecond The sending rate. Multicast is sent at a low
+	 * basic rate on Wi-Fi, so sending too fast just causes losses.
+	 */
+	public CarouselSender(byte[] file, InetAddress group, int port,
+			@Nullable NetworkInterface networkInterface, int packetsPerSecond) {
+		if (file.length == 0 || file.length > MAX_FILE_LENGTH)
+			throw new IllegalArgumentException();
+		this.file = file;
+		this.group = group;
+		this.port = port;
+		this.networkInterface = networkInterface;
+		packetIntervalNanos = 1_000_000_000L / packetsPerSecond;
+	}
+
+	public synchronized void start() throws IOException {
+		if (running) return;
+		MulticastSocket s = new MulticastSocket();
+		if (networkInterface != null) s.setNetworkInterface(networkInterface);
+		// Don't let the packets leave the hotspot network
+		s.setTimeToLive(1);
+		socket = s;
+		running = true;
+		thread = new Thread(this::run, "CarouselSender");
+		thread.start();
+	}
+
+	public synchronized void stop() {
+		running = false;
+		MulticastSocket s = socket;
+		if (s != null) s.close();
+		socket = null;
+		if (thread != null) thread.interrupt();
+		thread = null;
+	}
+
+	private void run() {
+		ReedSolomon rs = new ReedSolomon(DATA_SHARDS, PARITY_SHARDS);
+		int blockCount = getBlockCount(file.length, DATA_SHARDS, SHARD_SIZE);
+		byte[][][] blocks = encode(rs, blockCount);
+		if (LOG.isLoggable(INFO)) {
+			LOG.info("Sending " + file.length + " bytes in " + blockCount +
+					" blocks");
+		}
+
+		CarouselPacket header = new CarouselPacket();
+		header.sessionId = sessionId;
+		header.fileLength = file.length;
+		header.shardSize = SHARD_SIZE;
+		header.dataShards = DATA_SHARDS;
+		header.parityShards = PARITY_SHARDS;
+		byte[] digest = getDigest(file);
+		System.arraycopy(digest, 0, header.digest, 0, digest.length);
+		byte[] buf = new byte[MAX_PACKET_LENGTH];
+		ByteBuffer bb = ByteBuffer.wrap(buf);
+		DatagramPacket packet =
+				new DatagramPacket(buf, buf.length, group, port);
+		long rounds = 0, next = System.nanoTime();
+		try {
+			while (running) {
+				for (int shard = 0; shard < rs.getTotalShards(); shard++) {
+					for (int block = 0; block < blockCount; block++) {
+						if (!running) return;
+						header.blockIndex = block;
+						header.shardIndex = shard;
+						bb.clear();
+						header.writeHeader(bb);
+						System.arraycopy(blocks[block][shard], 0, buf,
+								HEADER_LENGTH, SHARD_SIZE);
+						MulticastSocket s = socket;
+						if (s == null) return;
+						s.send(packet);
+						next += packetIntervalNanos;
+						long wait = next - System.nanoTime();
+						if (wait > 0) LockSupport.parkNanos(wait);
+						else next = System.nanoTime();
+					}
+				}
+				rounds++;
+				if (LOG.isLoggable(INFO)) LOG.info("Sent round " + rounds);
+			}
+		} catch (IOException e) {
+			// Closing the socket while sending is expected
+			if (running) logException(LOG, WARNING, e);
+		}
+	}
+
+	private byte[][][] encode(ReedSolomon rs, int blockCount) {
+		int blockSize = DATA_SHARDS * SHARD_SIZE;
+		byte[][][] blocks = new byte[blockCount][rs.getTotalShards()][];
+		for (int b = 0; b < blockCount; b++) {
+			byte[][] shards = blocks[b];
+			for (int s = 0; s < rs.getTotalShards(); s++) {
+				// The last block gets padded with zeroes
+				shards[s] = new byte[SHARD_SIZE];
+				if (s < DATA_SHARDS) {
+					long offset = (long) b * blockSize + (long) s * SHARD_SIZE;
+					int length = (int) Math.min(SHARD_SIZE,
+							Math.max(0, file.length - offset));
+					if (length > 0) {
+						System.arraycopy(file, (int) offset, shards[s], 0,
+								length);
+					}
+				}
+			}
+			rs.encodeParity(shards, SHARD_SIZE);
+		}
+		return blocks;
+	}
+
+}
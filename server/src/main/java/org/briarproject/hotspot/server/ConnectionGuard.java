@@ -0,0 +1,396 @@
+package org.briarproject.hotspot.server;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Logger;
+
+import androidx.annotation.Nullable;
+
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.logging.Level.INFO;
+import static java.util.logging.Logger.getLogger;
+import static org.briarproject.hotspot.server.ConnectionGuard.CloseReason.HEADER_TIMEOUT;
+import static org.briarproject.hotspot.server.ConnectionGuard.CloseReason.IDLE_KEEP_ALIVE;
+import static org.briarproject.hotspot.server.ConnectionGuard.CloseReason.PER_IP_LIMIT;
+import static org.briarproject.hotspot.server.ConnectionGuard.CloseReason.SLOW_BODY;
+
+/**
+ * Protects the {@link WebServer} from clients that tie up its threads and
+ * file handles.
+ * <p>
+ * Each connection waits in a queue until a thread handles it, and then
+ * moves through three phases: reading the request headers, responding, and
+ * waiting idle for the next request on a kept-alive connection. A reaper
+ * thread closes connections that spend too long queued, reading headers or
+ * waiting idle, or that receive their response body too slowly. New
+ * connections are refused when the client's address already has
+ * {@link #MAX_CONNECTIONS_PER_IP} open connections.
+ */
+public class ConnectionGuard {
+
+	/**
+	 * Called on the server's threads.
+	 */
+	public interface ClientListener {
+		/**
+		 * Called when a client connects for the first time.
+		 *
+		 * @param clients The addresses of all clients known so far.
+		 */
+		void onClientsChanged(Set<String> clients);
+
+		/**
+		 * Called when a client opens a connection while it has none open.
+		 */
+		void onClientConnected(String address);
+
+		/**
+		 * Called when the last open connection of a client is closed.
+		 */
+		void onClientDisconnected(String address);
+	}
+
+	public enum CloseReason {
+		PER_IP_LIMIT, HEADER_TIMEOUT, SLOW_BODY, IDLE_KEEP_ALIVE
+	}
+
+	private enum Phase {
+		QUEUED, HEADERS, RESPONDING, IDLE
+	}
+
+	private static final Logger LOG =
+			getLogger(ConnectionGuard.class.getName());
+
+	static final int MAX_CONNECTIONS_PER_IP = 4;
+	static final long HEADER_DEADLINE_MILLIS = 10_000;
+	static final long IDLE_TIMEOUT_MILLIS = 5_000;
+	// A response body needs to make this much progress in each window
+	static final long MIN_BODY_BYTES_PER_SECOND = 2048;
+	static final long BODY_WINDOW_MILLIS = 20_000;
+	private static final long REAP_INTERVAL_MILLIS = 1000;
+
+	private final Object lock = new Object();
+	// Locking: lock
+	private final List<Connection> connections = new ArrayList<>();
+	// Locking: lock
+	private final Map<InetAddress, Integer> connectionsPerIp = new HashMap<>();
+	// Locking: lock
+	private final Set<String> knownClients = new HashSet<>();
+	private final ClientListener clientListener;
+	private final AtomicLongArray closeCounts =
+			new AtomicLongArray(CloseReason.values().length);
+
+	// Locking: lock
+	@Nullable
+	private ScheduledExecutorService reaper = null;
+
+	public ConnectionGuard(ClientListener clientListener) {
+		this.clientListener = clientListener;
+	}
+
+	/**
+	 * A connection from a client. The phase is updated by the thread that
+	 * handles the connection and read by the reaper.
+	 */
+	class Connection {
+
+		private final Socket socket;
+		private final InetAddress address;
+
+		// Waiting for a thread while the server's threads are busy. The
+		// header deadline starts again when a thread handles it.
+		private volatile Phase phase = Phase.QUEUED;
+		private volatile long phaseStart = now();
+		// Written only by the handling thread
+		private volatile long bodyBytes = 0;
+		// Only accessed by the reaper
+		private long windowPhaseStart = Long.MIN_VALUE;
+		private long windowStart = 0, windowStartBytes = 0;
+		// True while the request is being handled by WebServer#serve(),
+		// when reading from the socket means reading the request body
+		private boolean serving = false;
+
+		private Connection(Socket socket, InetAddress address) {
+			this.socket = socket;
+			this.address = address;
+		}
+
+		/**
+		 * Wraps the input stream of the socket, so reading the next request
+		 * moves the connection through its phases.
+		 */
+		InputStream wrapInput(InputStream in) {
+			return new FilterInputStream(in) {
+
+				@Override
+				public int read() throws IOException {
+					beforeRead();
+					int b = super.read();
+					if (b != -1) afterRead();
+					return b;
+				}
+
+				@Override
+				public int read(byte[] b, int off, int len)
+						throws IOException {
+					beforeRead();
+					int read = super.read(b, off, len);
+					if (read > 0) afterRead();
+					return read;
+				}
+			};
+		}
+
+		/**
+		 * Wraps the body of a response, so its progress can be measured.
+		 */
+		InputStream wrapBody(InputStream in) {
+			return new FilterInputStream(in) {
+
+				@Override
+				public int read() throws IOException {
+					int b = super.read();
+					if (b != -1) bodyBytes++;
+					return b;
+				}
+
+				@Override
+				public int read(byte[] b, int off, int len)
+						throws IOException {
+					int read = super.read(b, off, len);
+					if (read > 0) bodyBytes += read;
+					return read;
+				}
+			};
+		}
+
+		/**
+		 * Called when a thread starts handling the connection.
+		 */
+		void onHandlerStarted() {
+			setPhase(Phase.HEADERS);
+		}
+
+		/**
+		 * Called when the headers have been read and the request gets
+		 * handled.
+		 */
+		void onServeStarted() {
+			serving = true;
+			setPhase(Phase.RESPONDING);
+		}
+
+		/**
+		 * Called when the response has been created. It gets sent after
+		 * this.
+		 */
+		void onServeFinished() {
+			serving = false;
+		}
+
+		private void beforeRead() {
+			// The response has been sent and the server waits for the next
+			// request on the kept-alive connection
+			if (phase == Phase.RESPONDING && !serving) setPhase(Phase.IDLE);
+		}
+
+		private void afterRead() {
+			if (phase == Phase.IDLE) setPhase(Phase.HEADERS);
+		}
+
+		private void setPhase(Phase p) {
+			phaseStart = now();
+			phase = p;
+		}
+	}
+
+	/**
+	 * Returns a new connection, or null if the client has too many open
+	 * connections already. In that case the caller needs to close the
+	 * socket.
+	 */
+	@Nullable
+	Connection register(Socket socket) {
+		InetAddress address = socket.getInetAddress();
+		String hostAddress = address.getHostAddress();
+		Set<String> clients = null;
+		Connection connection;
+		int c;
+		synchronized (lock) {
+			Integer count = connectionsPerIp.get(address);
+			c = count == null ? 0 : count;
+			if (c >= MAX_CONNECTIONS_PER_IP) {
+				onClosed(PER_IP_LIMIT, address);
+				return null;
+			}
+			connectionsPerIp.put(address, c + 1);
+			connection = new Connection(socket, address);
+			connections.add(connection);
+			if (knownClients.add(hostAddress)) {
+				clients = new HashSet<>(knownClients);
+			}
+		}
+		if (clients != null) clientListener.onClientsChanged(clients);
+		if (c == 0) clientListener.onClientConnected(hostAddress);
+		return connection;
+	}
+
+	void unregister(Connection connection) {
+		boolean last;
+		synchronized (lock) {
+			if (!connections.remove(connection)) return;
+			Integer count = connectionsPerIp.get(connection.address);
+			last = count == null || count <= 1;
+			if (last) {
+				connectionsPerIp.remove(connection.address);
+			} else {
+				connectionsPerIp.put(connection.address, count - 1);
+			}
+		}
+		if (last) {
+			clientListener.onClientDisconnected(
+					connection.address.getHostAddress());
+		}
+	}
+
+	public void start() {
+		synchronized (lock) {
+			if (reaper != null) return;
+			reaper = newSingleThreadScheduledExecutor();
+			reaper.scheduleWithFixedDelay(this::reap, REAP_INTERVAL_MILLIS,
+					REAP_INTERVAL_MILLIS, MILLISECONDS);
+		}
+	}
+
+	public void stop() {
+		synchronized (lock) {
+			if (reaper != null) reaper.shutdownNow();
+			reaper = null;
+		}
+	}
+
+	/**
+	 * Adds clients that are known from before, for example from before the
+	 * process was recreated.
+	 */
+	public void addKnownClients(Collection<String> clients) {
+		synchronized (lock) {
+			knownClients.addAll(clients);
+		}
+	}
+
+	public void clearKnownClients() {
+		synchronized (lock) {
+			knownClients.clear();
+		}
+	}
+
+	/**
+	 * Returns the number of clients that have connected so far.
+	 */
+	public int getKnownClientCount() {
+		synchronized (lock) {
+			return knownClients.size();
+		}
+	}
+
+	/**
+	 * Returns the number of client addresses with open connections.
+	 */
+	public int getClientCount() {
+		synchronized (lock) {
+			return connectionsPerIp.size();
+		}
+	}
+
+	/**
+	 * Returns how many connections have been closed for each reason since
+	 * this guard was created.
+	 */
+	public Map<CloseReason, Long> getCloseCounts() {
+		Map<CloseReason, Long> counts = new EnumMap<>(CloseReason.class);
+		for (CloseReason r : CloseReason.values()) {
+			counts.put(r, closeCounts.get(r.ordinal()));
+		}
+		return counts;
+	}
+
+	private void reap() {
+		List<Connection> snapshot;
+		synchronized (lock) {
+			snapshot = new ArrayList<>(connections);
+		}
+		long now = now();
+		for (Connection c : snapshot) {
+			CloseReason reason = check(c, now);
+			if (reason == null) continue;
+			unregister(c);
+			onClosed(reason, c.address);
+			try {
+				// Unblocks the handling thread, which then cleans up
+				c.socket.close();
+			} catch (IOException e) {
+				// Already closed
+			}
+		}
+	}
+
+	@Nullable
+	private CloseReason check(Connection c, long now) {
+		long inPhase = now - c.phaseStart;
+		switch (c.phase) {
+			case QUEUED:
+				// Otherwise a client could hold its slots with connections
+				// that never get handled
+			case HEADERS:
+				if (inPhase > HEADER_DEADLINE_MILLIS) return HEADER_TIMEOUT;
+				break;
+			case IDLE:
+				if (inPhase > IDLE_TIMEOUT_MILLIS) return IDLE_KEEP_ALIVE;
+				break;
+			case RESPONDING:
+				long bytes = c.bodyBytes;
+				if (c.windowPhaseStart != c.phaseStart) {
+					// A new response, start measuring
+					c.windowPhaseStart = c.phaseStart;
+					c.windowStart = now;
+					c.windowStartBytes = bytes;
+				} else if (now - c.windowStart >= BODY_WINDOW_MILLIS) {
+					long min = MIN_BODY_BYTES_PER_SECOND *
+							(now - c.windowStart) / 1000;
+					if (bytes - c.windowStartBytes < min) return SLOW_BODY;
+					c.windowStart = now;
+					c.windowStartBytes = bytes;
+				}
+				break;
+		}
+		return null;
+	}
+
+	private void onClosed(CloseReason reason, InetAddress address) {
+		closeCounts.incrementAndGet(reason.ordinal());
+		if (LOG.isLoggable(INFO)) {
+			LOG.info("Closing connection from " + address.getHostAddress() +
+					": " + reason);
+		}
+	}
+
+	private static long now() {
+		return System.nanoTime() / 1_000_000;
+	}
+
+}
@@ -0,0 +1,207 @@
+package org.briarproject.hotspot.server;
+
+import org.briarproject.hotspot.server.ApkCatalog.Variant;
+import org.briarproject.hotspot.server.ConnectionGuard.ClientListener;
+import org.briarproject.hotspot.server.PageStrings.Key;
+import org.briarproject.hotspot.server.WebServer.TransferListener;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.briarproject.hotspot.server.PageStrings.Key.APP_NAME;
+import static org.briarproject.hotspot.server.PageStrings.Key.DOWNLOAD_INTRO;
+import static org.briarproject.hotspot.server.PageStrings.Key.DOWNLOAD_OUTRO;
+import static org.briarproject.hotspot.server.PageStrings.Key.DOWNLOAD_TITLE;
+import static org.briarproject.hotspot.server.PageStrings.Key.SHARE_DOWNLOAD;
+import static org.briarproject.hotspot.server.PageStrings.Key.SHARE_LINK;
+import static org.briarproject.hotspot.server.PageStrings.Key.SHARE_NETWORK_NAME;
+import static org.briarproject.hotspot.server.PageStrings.Key.SHARE_PASSWORD;
+import static org.briarproject.hotspot.server.PageStrings.Key.SHARE_TITLE;
+import static org.briarproject.hotspot.server.PageStrings.Key.SHARE_WIFI;
+import static org.briarproject.hotspot.server.PageStrings.Key.TROUBLESHOOTING_1;
+import static org.briarproject.hotspot.server.PageStrings.Key.TROUBLESHOOTING_2_NEW;
+import static org.briarproject.hotspot.server.PageStrings.Key.TROUBLESHOOTING_2_OLD;
+import static org.briarproject.hotspot.server.PageStrings.Key.TROUBLESHOOTING_TITLE;
+
+/**
+ * Runs the {@link WebServer} on a desktop JVM, so serving can be profiled
+ * and load-tested without a device. Clients on this machine are served as
+ * well, and downloads are not limited.
+ * <p>
+ * Usage: {@code DesktopServer <assets dir> <apk> [<splits dir>]}, where the
+ * assets dir contains the page, usually app/src/main/assets. If the system
+ * property {@value #TRACE_PROPERTY} is set, the server is traced and the
+ * trace is written to the file it names on shutdown, see {@link Tracer}.
+ */
+public class DesktopServer {
+
+	private static final String TRACE_PROPERTY = "hotspot.trace";
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2 || args.length > 3) {
+			System.err.println(
+					"Usage: DesktopServer <assets dir> <apk> [<splits dir>]");
+			System.exit(1);
+		}
+		File assetDir = new File(args[0]);
+		List<Variant> variants = new ArrayList<>();
+		variants.add(ApkCatalog.createUniversal(
+				new FileServedFile(new File(args[1]))));
+		if (args.length == 3) {
+			File[] splits = new File(args[2]).listFiles();
+			if (splits != null) {
+				for (File f : splits) {
+					Variant v = ApkCatalog.parse(f.getName(),
+							new FileServedFile(f));
+					if (v != null) variants.add(v);
+				}
+			}
+		}
+		System.out.println("APK variants: " + variants);
+		String traceFile = System.getProperty(TRACE_PROPERTY);
+		if (traceFile != null) Tracer.enable(null);
+
+		DownloadCounter counter = new DownloadCounter();
+		ConnectionGuard guard = new ConnectionGuard(counter);
+		ServedInterfaces servedInterfaces = new ServedInterfaces(true);
+		WebServer server = new WebServer(
+				name -> new FileInputStream(new File(assetDir, name)),
+				new EnglishPageStrings(), "desktop",
+				new ApkCatalog(variants), new UnlimitedServing(), guard,
+				servedInterfaces, counter);
+		guard.start();
+		server.start();
+		System.out.println("Serving on " + servedInterfaces.getRankedUrls());
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			server.stop();
+			guard.stop();
+			System.out.println("Bytes served: " +
+					servedInterfaces.getBytesServed());
+			System.out.println("Closed connections: " +
+					guard.getCloseCounts());
+			System.out.println("Downloads: " + counter);
+			if (traceFile != null) writeTrace(new File(traceFile));
+		}));
+	}
+
+	private static void writeTrace(File f) {
+		try (Writer out = new OutputStreamWriter(new FileOutputStream(f),
+				Charset.forName("UTF-8"))) {
+			Tracer.writeChromeTrace(out);
+			System.out.println("Trace written to " + f);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	static class DownloadCounter
+			implements ClientListener, TransferListener {
+
+		private final AtomicLong clients = new AtomicLong();
+		private final AtomicLong completed = new AtomicLong();
+		private final AtomicLong aborted = new AtomicLong();
+
+		@Override
+		public void onClientsChanged(Set<String> clients) {
+			this.clients.set(clients.size());
+		}
+
+		@Override
+		public void onClientConnected(String address) {
+		}
+
+		@Override
+		public void onClientDisconnected(String address) {
+		}
+
+		@Override
+		public void onActiveTransfersChanged(int active) {
+		}
+
+		@Override
+		public void onTransferStarted(String client, String variant,
+				long length) {
+		}
+
+		@Override
+		public void onTransferFinished(String client, String variant,
+				long bytes, long durationMillis, boolean complete) {
+			if (complete) completed.incrementAndGet();
+			else aborted.incrementAndGet();
+		}
+
+		@Override
+		public void onLinkMeasured(String client, LinkQuality quality) {
+			// Logged by the speed test
+		}
+
+		@Override
+		public String toString() {
+			return completed.get() + " completed, " + aborted.get() +
+					" aborted by " + clients.get() + " clients";
+		}
+	}
+
+	static class UnlimitedServing implements ServingLimits {
+
+		@Override
+		public int getMaxTransfers() {
+			return Integer.MAX_VALUE;
+		}
+
+		@Override
+		public long getBytesPerSecond() {
+			return 0;
+		}
+	}
+
+	/**
+	 * The strings of app/src/main/res/values/strings.xml.
+	 */
+	static class EnglishPageStrings implements PageStrings {
+
+		private final Map<Key, String> strings = new EnumMap<>(Key.class);
+
+		EnglishPageStrings() {
+			strings.put(APP_NAME, "Offline Hotspot");
+			strings.put(DOWNLOAD_TITLE, "Download %s");
+			strings.put(DOWNLOAD_INTRO, "Someone nearby shared %s with you.");
+			strings.put(DOWNLOAD_OUTRO, "After the download is complete, " +
+					"open the downloaded file and install it.");
+			strings.put(TROUBLESHOOTING_TITLE, "Troubleshooting");
+			strings.put(TROUBLESHOOTING_1, "If you cannot download the app, " +
+					"try it with a different web browser app.");
+			strings.put(TROUBLESHOOTING_2_NEW, "To install the downloaded " +
+					"app, you might need to allow your browser to install " +
+					"unknown apps.");
+			strings.put(TROUBLESHOOTING_2_OLD, "To install the downloaded " +
+					"app, you might need to allow installation of apps from " +
+					"\"Unknown sources\" in system settings. Afterwards, " +
+					"you may need to download the app again.");
+			strings.put(SHARE_LINK, "Help others download the app");
+			strings.put(SHARE_TITLE, "Show this to the next person");
+			strings.put(SHARE_WIFI, "1. Scan to join the Wi-Fi network");
+			strings.put(SHARE_NETWORK_NAME, "Name: %s");
+			strings.put(SHARE_PASSWORD, "Password: %s");
+			strings.put(SHARE_DOWNLOAD, "2. Then scan to download %s");
+		}
+
+		@Override
+		public String get(Key key, Object... formatArgs) {
+			return String.format(Locale.US, strings.get(key), formatArgs);
+		}
+	}
+
+}
@@ -0,0 +1,29 @@
+package org.briarproject.hotspot.server;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A {@link ServedFile} in the file system.
+ */
+public class FileServedFile implements ServedFile {
+
+	private final File file;
+
+	public FileServedFile(File file) {
+		this.file = file;
+	}
+
+	@Override
+	public long getLength() {
+		return file.length();
+	}
+
+	@Override
+	public InputStream open() throws IOException {
+		return new FileInputStream(file);
+	}
+
+}
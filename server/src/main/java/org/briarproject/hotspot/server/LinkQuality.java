@@ -0,0 +1,24 @@
+package org.briarproject.hotspot.server;
+
+/**
+ * The quality of the link between a client and the {@link WebServer}, as
+ * measured by the speed test of the download page.
+ */
+public class LinkQuality {
+
+	public final long downBytesPerSecond, upBytesPerSecond, rttMillis;
+
+	LinkQuality(long downBytesPerSecond, long upBytesPerSecond,
+			long rttMillis) {
+		this.downBytesPerSecond = downBytesPerSecond;
+		this.upBytesPerSecond = upBytesPerSecond;
+		this.rttMillis = rttMillis;
+	}
+
+	@Override
+	public String toString() {
+		return downBytesPerSecond + " B/s down, " + upBytesPerSecond +
+				" B/s up, RTT " + rttMillis + " ms";
+	}
+
+}
@@ -1,4 +1,4 @@
-package org.briarproject.hotspot;
+package org.briarproject.hotspot.server;
 
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -0,0 +1,102 @@
+package org.briarproject.hotspot.server;
+
+
+import java.net.InetAddress;
+import java.net.InterfaceAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.logging.Logger;
+
+import androidx.annotation.Nullable;
+
+import static java.util.Collections.emptyList;
+import static java.util.Collections.list;
+import static java.util.logging.Level.WARNING;
+import static java.util.logging.Logger.getLogger;
+import static org.briarproject.hotspot.server.LogUtils.logException;
+
+public class NetworkUtils {
+
+	private final static Logger LOG = getLogger(NetworkUtils.class.getName());
+
+	/**
+	 * Returns the first IPv4 address of the interface with the given name,
+	 * without enumerating all interfaces.
+	 */
+	@Nullable
+	public static InetAddress getIpv4Address(String interfaceName) {
+		try {
+			NetworkInterface i = NetworkInterface.getByName(interfaceName);
+			if (i == null) return null;
+			for (InterfaceAddress a : i.getInterfaceAddresses()) {
+				if (a.getAddress().getAddress().length == 4)
+					return a.getAddress();
+			}
+		} catch (SocketException e) {
+			logException(LOG, WARNING, e);
+		}
+		return null;
+	}
+
+	// Interface names used for Wi-Fi Direct groups
+	static final String P2P_PREFIX = "p2p";
+	// Interface names used for the local-only hotspot by different vendors
+	static final String[] SOFT_AP_PREFIXES = {"swlan", "ap", "softap"};
+
+	/**
+	 * Looks for the access point address by enumerating all interfaces. This
+	 * is slow, the app prefers the address reported by the system.
+	 */
+	@Nullable
+	public static InetAddress getAccessPointAddress() {
+		List<NetworkInterface> ifaces = getNetworkInterfaces();
+		InetAddress address = getIpv4Address(ifaces, P2P_PREFIX);
+		for (String prefix : SOFT_AP_PREFIXES) {
+			if (address != null) break;
+			address = getIpv4Address(ifaces, prefix);
+		}
+		return address;
+	}
+
+	@Nullable
+	private static InetAddress getIpv4Address(List<NetworkInterface> ifaces,
+			String namePrefix) {
+		for (NetworkInterface i : ifaces) {
+			if (i.getName().startsWith(namePrefix)) {
+				for (InterfaceAddress a : i.getInterfaceAddresses()) {
+					if (a.getAddress().getAddress().length == 4)
+						return a.getAddress();
+				}
+			}
+		}
+		return null;
+	}
+
+	public static String getNetworkInterfaceSummary() {
+		StringBuilder sb = new StringBuilder();
+		for (NetworkInterface i : getNetworkInterfaces()) {
+			sb.append(i.getName()).append(":");
+			for (InterfaceAddress a : i.getInterfaceAddresses()) {
+				if (a.getAddress().getAddress().length <= 4) {
+					sb.append(" ").append(a.getAddress());
+				}
+			}
+			sb.append("\n");
+		}
+		return sb.toString();
+	}
+
+	static List<NetworkInterface> getNetworkInterfaces() {
+		try {
+			Enumeration<NetworkInterface> ifaces =
+					NetworkInterface.getNetworkInterfaces();
+			return ifaces == null ? emptyList() : list(ifaces);
+		} catch (SocketException e) {
+			logException(LOG, WARNING, e);
+			return emptyList();
+		}
+	}
+
+}
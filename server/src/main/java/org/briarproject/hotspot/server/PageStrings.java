@@ -0,0 +1,56 @@
+package org.briarproject.hotspot.server;
+
+/**
+ * The localised strings of the web pages of the {@link WebServer}.
+ */
+public interface PageStrings {
+
+	enum Key {
+		APP_NAME,
+		/**
+		 * Takes the name of the app as an argument.
+		 */
+		DOWNLOAD_TITLE,
+		/**
+		 * Takes the name of the app as an argument.
+		 */
+		DOWNLOAD_INTRO,
+		DOWNLOAD_OUTRO,
+		TROUBLESHOOTING_TITLE,
+		TROUBLESHOOTING_1,
+		/**
+		 * Shown to clients with Android 8 or higher.
+		 */
+		TROUBLESHOOTING_2_NEW,
+		/**
+		 * Shown to clients with older or unknown versions of Android.
+		 */
+		TROUBLESHOOTING_2_OLD,
+		SHARE_LINK,
+		SHARE_TITLE,
+		SHARE_WIFI,
+		/**
+		 * Takes the name of the network as an argument.
+		 */
+		SHARE_NETWORK_NAME,
+		/**
+		 * Takes the password of the network as an argument.
+		 */
+		SHARE_PASSWORD,
+		/**
+		 * Takes the name of the app as an argument.
+		 */
+		SHARE_DOWNLOAD,
+		APPS_TITLE,
+		/**
+		 * Takes the version of the app and its size in MB as arguments.
+		 */
+		APP_DETAILS,
+		/**
+		 * Takes the hex encoded SHA-256 of the APK as an argument.
+		 */
+		APP_DIGEST
+	}
+
+	String get(Key key, Object... formatArgs);
+}
@@ -0,0 +1,191 @@
+package org.briarproject.hotspot.server;
+
+/**
+ * A systematic Reed-Solomon erasure code over GF(2^8).
+ * <p>
+ * A block of data is split into {@code dataShards} shards of equal size and
+ * {@code parityShards} parity shards are computed from them. The data shards
+ * can be recovered from any {@code dataShards} of the
+ * {@code dataShards + parityShards} shards.
+ * <p>
+ * The encoding matrix is a Vandermonde matrix that has been transformed so
+ * that its top rows are the identity, which means the data shards are sent
+ * unchanged. Any square matrix made of rows of it is invertible.
+ */
+class ReedSolomon {
+
+	// The field is generated by x^8 + x^4 + x^3 + x^2 + 1
+	private static final int GENERATOR = 0x11D;
+
+	private static final byte[] EXP = new byte[510];
+	private static final int[] LOG = new int[256];
+	private static final byte[][] MUL = new byte[256][256];
+
+	static {
+		int x = 1;
+		for (int i = 0; i < 255; i++) {
+			EXP[i] = (byte) x;
+			EXP[i + 255] = (byte) x;
+			LOG[x] = i;
+			x <<= 1;
+			if ((x & 0x100) != 0) x ^= GENERATOR;
+		}
+		for (int a = 1; a < 256; a++) {
+			for (int b = 1; b < 256; b++) {
+				MUL[a][b] = EXP[LOG[a] + LOG[b]];
+			}
+		}
+	}
+
+	private final int dataShards, totalShards;
+	// totalShards rows of dataShards columns
+	private final byte[][] matrix;
+
+	ReedSolomon(int dataShards, int parityShards) {
+		if (dataShards <= 0 || parityShards < 0 ||
+				dataShards + parityShards > 256) {
+			throw new IllegalArgumentException();
+		}
+		this.dataShards = dataShards;
+		this.totalShards = dataShards + parityShards;
+		byte[][] vandermonde = new byte[totalShards][dataShards];
+		for (int r = 0; r < totalShards; r++) {
+			for (int c = 0; c < dataShards; c++) {
+				vandermonde[r][c] = power(r, c);
+			}
+		}
+		byte[][] top = new byte[dataShards][];
+		System.arraycopy(vandermonde, 0, top, 0, dataShards);
+		matrix = multiply(vandermonde, invert(top));
+	}
+
+	int getDataShards() {
+		return dataShards;
+	}
+
+	int getTotalShards() {
+		return totalShards;
+	}
+
+	/**
+	 * Computes the parity shards from the data shards.
+	 *
+	 * @param shards {@link #getTotalShards()} arrays of at least
+	 * {@code shardSize} bytes, the first {@link #getDataShards()} of which
+	 * contain the data.
+	 */
+	void encodeParity(byte[][] shards, int shardSize) {
+		for (int p = dataShards; p < totalShards; p++) {
+			byte[] out = shards[p];
+			byte[] row = matrix[p];
+			for (int i = 0; i < shardSize; i++) out[i] = 0;
+			for (int c = 0; c < dataShards; c++) {
+				byte[] table = MUL[row[c] & 0xFF];
+				byte[] in = shards[c];
+				for (int i = 0; i < shardSize; i++) {
+					out[i] ^= table[in[i] & 0xFF];
+				}
+			}
+		}
+	}
+
+	/**
+	 * Recovers the missing data shards. Missing parity shards are not
+	 * recovered.
+	 *
+	 * @param shards {@link #getTotalShards()} arrays, missing data shards
+	 * must be arrays of at least {@code shardSize} bytes as well.
+	 * @param present Which of the shards have been received.
+	 * @return false if fewer than {@link #getDataShards()} shards are present.
+	 */
+	boolean decode(byte[][] shards, boolean[] present, int shardSize) {
+		int[] rows = new int[dataShards];
+		int found = 0;
+		for (int r = 0; r < totalShards && found < dataShards; r++) {
+			if (present[r]) rows[found++] = r;
+		}
+		if (found < dataShards) return false;
+		boolean complete = true;
+		for (int d = 0; d < dataShards; d++) complete &= present[d];
+		if (complete) return true;
+
+		byte[][] sub = new byte[dataShards][];
+		for (int i = 0; i < dataShards; i++) sub[i] = matrix[rows[i]];
+		byte[][] decoding = invert(sub);
+		for (int d = 0; d < dataShards; d++) {
+			if (present[d]) continue;
+			byte[] out = shards[d];
+			for (int i = 0; i < shardSize; i++) out[i] = 0;
+			for (int j = 0; j < dataShards; j++) {
+				byte[] table = MUL[decoding[d][j] & 0xFF];
+				byte[] in = shards[rows[j]];
+				for (int i = 0; i < shardSize; i++) {
+					out[i] ^= table[in[i] & 0xFF];
+				}
+			}
+		}
+		return true;
+	}
+
+	private static byte power(int a, int n) {
+		if (n == 0) return 1;
+		if (a == 0) return 0;
+		return EXP[(LOG[a] * n) % 255];
+	}
+
+	private static byte inverse(byte a) {
+		return EXP[255 - LOG[a & 0xFF]];
+	}
+
+	private static byte[][] multiply(byte[][] a, byte[][] b) {
+		int rows = a.length, inner = b.length, cols = b[0].length;
+		byte[][] result = new byte[rows][cols];
+		for (int r = 0; r < rows; r++) {
+			for (int c = 0; c < cols; c++) {
+				byte value = 0;
+				for (int i = 0; i < inner; i++) {
+					value ^= MUL[a[r][i] & 0xFF][b[i][c] & 0xFF];
+				}
+				result[r][c] = value;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Inverts a square matrix using Gauss-Jordan elimination.
+	 */
+	private static byte[][] invert(byte[][] m) {
+		int n = m.length;
+		byte[][] work = new byte[n][2 * n];
+		for (int r = 0; r < n; r++) {
+			System.arraycopy(m[r], 0, work[r], 0, n);
+			work[r][n + r] = 1;
+		}
+		for (int c = 0; c < n; c++) {
+			int pivot = c;
+			while (pivot < n && work[pivot][c] == 0) pivot++;
+			if (pivot == n) throw new IllegalArgumentException("singular");
+			byte[] tmp = work[c];
+			work[c] = work[pivot];
+			work[pivot] = tmp;
+			byte[] scale = MUL[inverse(work[c][c]) & 0xFF];
+			for (int i = 0; i < 2 * n; i++) {
+				work[c][i] = scale[work[c][i] & 0xFF];
+			}
+			for (int r = 0; r < n; r++) {
+				if (r == c || work[r][c] == 0) continue;
+				byte[] factor = MUL[work[r][c] & 0xFF];
+				for (int i = 0; i < 2 * n; i++) {
+					work[r][i] ^= factor[work[c][i] & 0xFF];
+				}
+			}
+		}
+		byte[][] result = new byte[n][n];
+		for (int r = 0; r < n; r++) {
+			System.arraycopy(work[r], n, result[r], 0, n);
+		}
+		return result;
+	}
+
+}
@@ -0,0 +1,17 @@
+package org.briarproject.hotspot.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A file the {@link WebServer} serves, such as an APK bundled as an asset.
+ */
+public interface ServedFile {
+
+	long getLength() throws IOException;
+
+	/**
+	 * Opens the file. The caller needs to close the stream.
+	 */
+	InputStream open() throws IOException;
+}
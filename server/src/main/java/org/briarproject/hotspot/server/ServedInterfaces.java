@@ -0,0 +1,270 @@
+package org.briarproject.hotspot.server;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InterfaceAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import androidx.annotation.Nullable;
+
+import static java.util.Collections.emptyList;
+import static java.util.logging.Level.INFO;
+import static java.util.logging.Level.WARNING;
+import static java.util.logging.Logger.getLogger;
+import static org.briarproject.hotspot.server.LogUtils.logException;
+import static org.briarproject.hotspot.server.NetworkUtils.P2P_PREFIX;
+import static org.briarproject.hotspot.server.NetworkUtils.SOFT_AP_PREFIXES;
+import static org.briarproject.hotspot.server.NetworkUtils.getNetworkInterfaces;
+import static org.briarproject.hotspot.server.WebServer.PORT;
+
+/**
+ * The local interfaces the {@link WebServer} serves clients on, ranked by
+ * how fast they are likely to be.
+ * <p>
+ * Besides the access point, clients may already share a wired link (USB or
+ * Ethernet) or a Wi-Fi network with this device, and those paths are
+ * usually faster than the access point. Interfaces that lead to the internet
+ * via mobile data or VPNs are not eligible, and neither are interfaces
+ * without a private IPv4 address.
+ */
+public class ServedInterfaces {
+
+	/**
+	 * Kinds of interfaces, from the most to the least preferred.
+	 */
+	enum Kind {
+		WIRED, WIFI, ACCESS_POINT, LOOPBACK
+	}
+
+	static class Endpoint {
+
+		final String name;
+		final InetAddress address;
+		final Kind kind;
+
+		private Endpoint(String name, InetAddress address, Kind kind) {
+			this.name = name;
+			this.address = address;
+			this.kind = kind;
+		}
+
+		String getUrl(int port) {
+			return "http://" + address.getHostAddress() + ":" + port;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Endpoint)) return false;
+			Endpoint e = (Endpoint) o;
+			return name.equals(e.name) && address.equals(e.address) &&
+					kind == e.kind;
+		}
+
+		@Override
+		public int hashCode() {
+			return address.hashCode();
+		}
+
+		@Override
+		public String toString() {
+			return name + " " + address.getHostAddress() + " " + kind;
+		}
+	}
+
+	private static final Logger LOG =
+			getLogger(ServedInterfaces.class.getName());
+
+	// Interfaces come and go rarely, so they are only enumerated this often
+	private static final long REFRESH_INTERVAL_MILLIS = 5000;
+	private static final String[] WIRED_PREFIXES =
+			{"eth", "usb", "rndis", "ncm"};
+	private static final String WIFI_PREFIX = "wlan";
+
+	private final boolean serveLoopback;
+	private final Map<String, AtomicLong> bytesServed =
+			new ConcurrentHashMap<>();
+
+	@Nullable
+	private volatile InetAddress accessPointAddress = null;
+	private volatile List<Endpoint> endpoints = emptyList();
+	private volatile long refreshedAt = Long.MIN_VALUE;
+	// When the interfaces were last enumerated for an unknown address
+	private volatile long forcedRefreshAt = Long.MIN_VALUE;
+	private volatile int port = PORT;
+
+	public ServedInterfaces() {
+		this(false);
+	}
+
+	/**
+	 * @param serveLoopback Whether clients on this device are served as
+	 * well, for running and load-testing the server on a desktop.
+	 */
+	public ServedInterfaces(boolean serveLoopback) {
+		this.serveLoopback = serveLoopback;
+	}
+
+	/**
+	 * Sets the address of the access point, so that its interface is ranked
+	 * as such whatever its name.
+	 */
+	public void setAccessPointAddress(@Nullable InetAddress address) {
+		accessPointAddress = address;
+		refreshedAt = Long.MIN_VALUE;
+	}
+
+	/**
+	 * Sets the port the server listens on, which may not be
+	 * {@link WebServer#PORT} if that was taken.
+	 */
+	void setPort(int port) {
+		this.port = port;
+	}
+
+	/**
+	 * Returns the eligible interfaces, the most preferred first.
+	 */
+	List<Endpoint> getEndpoints() {
+		long now = System.nanoTime() / 1_000_000;
+		long last = refreshedAt;
+		// The difference would overflow before the first refresh
+		if (last == Long.MIN_VALUE || now - last >= REFRESH_INTERVAL_MILLIS)
+			refresh(now);
+		return endpoints;
+	}
+
+	/**
+	 * Returns the URLs of the server on the eligible interfaces, the most
+	 * preferred first.
+	 */
+	public List<String> getRankedUrls() {
+		List<String> urls = new ArrayList<>();
+		for (Endpoint e : getEndpoints()) urls.add(e.getUrl(port));
+		return urls;
+	}
+
+	/**
+	 * Returns the endpoint a client connected to, or null if the address
+	 * doesn't belong to an eligible interface.
+	 */
+	@Nullable
+	Endpoint getEndpoint(InetAddress localAddress) {
+		Endpoint e = find(getEndpoints(), localAddress);
+		if (e != null) return e;
+		// The interface may have come up since the last refresh. But clients
+		// of ineligible interfaces, or scanners, may connect over and over,
+		// so this refresh isn't done more often than the regular one.
+		long now = System.nanoTime() / 1_000_000;
+		long last = forcedRefreshAt;
+		if (last != Long.MIN_VALUE && now - last < REFRESH_INTERVAL_MILLIS)
+			return null;
+		forcedRefreshAt = now;
+		return find(refresh(now), localAddress);
+	}
+
+	/**
+	 * Counts the bytes read from the given stream as served on the given
+	 * endpoint.
+	 */
+	InputStream countBytes(InputStream in, Endpoint endpoint) {
+		AtomicLong counter = bytesServed.get(endpoint.name);
+		if (counter == null) {
+			bytesServed.putIfAbsent(endpoint.name, new AtomicLong());
+			counter = bytesServed.get(endpoint.name);
+		}
+		AtomicLong c = counter;
+		return new FilterInputStream(in) {
+
+			@Override
+			public int read() throws IOException {
+				int b = super.read();
+				if (b != -1) c.incrementAndGet();
+				return b;
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				int read = super.read(b, off, len);
+				if (read > 0) c.addAndGet(read);
+				return read;
+			}
+		};
+	}
+
+	/**
+	 * Returns the number of bytes served on each interface, by name.
+	 */
+	public Map<String, Long> getBytesServed() {
+		Map<String, Long> result = new TreeMap<>();
+		for (Map.Entry<String, AtomicLong> e : bytesServed.entrySet()) {
+			result.put(e.getKey(), e.getValue().get());
+		}
+		return result;
+	}
+
+	@Nullable
+	private static Endpoint find(List<Endpoint> endpoints,
+			InetAddress address) {
+		for (Endpoint e : endpoints) if (e.address.equals(address)) return e;
+		return null;
+	}
+
+	private List<Endpoint> refresh(long now) {
+		InetAddress apAddress = accessPointAddress;
+		List<Endpoint> found = new ArrayList<>();
+		for (NetworkInterface i : getNetworkInterfaces()) {
+			try {
+				if (!i.isUp() || (i.isLoopback() && !serveLoopback)) continue;
+			} catch (SocketException e) {
+				logException(LOG, WARNING, e);
+				continue;
+			}
+			for (InterfaceAddress a : i.getInterfaceAddresses()) {
+				InetAddress address = a.getAddress();
+				if (address.getAddress().length != 4) continue;
+				Kind kind = getKind(i.getName(), address, apAddress);
+				if (kind != null) {
+					found.add(new Endpoint(i.getName(), address, kind));
+				}
+			}
+		}
+		Collections.sort(found, (a, b) -> a.kind != b.kind ?
+				a.kind.compareTo(b.kind) : a.name.compareTo(b.name));
+		List<Endpoint> result = Collections.unmodifiableList(found);
+		if (!result.equals(endpoints) && LOG.isLoggable(INFO))
+			LOG.info("Serving on " + result);
+		endpoints = result;
+		refreshedAt = now;
+		return result;
+	}
+
+	@Nullable
+	private static Kind getKind(String name, InetAddress address,
+			@Nullable InetAddress apAddress) {
+		if (address.equals(apAddress)) return Kind.ACCESS_POINT;
+		if (address.isLoopbackAddress()) return Kind.LOOPBACK;
+		// Mobile data and most VPNs don't use private addresses
+		if (!address.isSiteLocalAddress()) return null;
+		if (name.startsWith(P2P_PREFIX)) return Kind.ACCESS_POINT;
+		for (String prefix : SOFT_AP_PREFIXES) {
+			if (name.startsWith(prefix)) return Kind.ACCESS_POINT;
+		}
+		if (name.startsWith(WIFI_PREFIX)) return Kind.WIFI;
+		for (String prefix : WIRED_PREFIXES) {
+			if (name.startsWith(prefix)) return Kind.WIRED;
+		}
+		return null;
+	}
+
+}
@@ -0,0 +1,18 @@
+package org.briarproject.hotspot.server;
+
+/**
+ * Limits on serving APKs, which may change while the {@link WebServer} is
+ * running. They are read by the server's threads.
+ */
+public interface ServingLimits {
+
+	/**
+	 * Returns the number of APK downloads that may run at the same time.
+	 */
+	int getMaxTransfers();
+
+	/**
+	 * Returns the rate limit of each download, or 0 if unlimited.
+	 */
+	long getBytesPerSecond();
+}
@@ -0,0 +1,23 @@
+package org.briarproject.hotspot.server;
+
+/**
+ * What the {@link WebServer} shows on its share page, so that a client can
+ * pass on the Wi-Fi credentials and the download URL to the next person.
+ * The QR codes are rendered by the app once per set of credentials.
+ */
+public class SharePage {
+
+	final String networkName, password, url;
+	// SVG documents
+	final String wifiQrCode, urlQrCode;
+
+	public SharePage(String networkName, String password, String wifiQrCode,
+			String url, String urlQrCode) {
+		this.networkName = networkName;
+		this.password = password;
+		this.wifiQrCode = wifiQrCode;
+		this.url = url;
+		this.urlQrCode = urlQrCode;
+	}
+
+}
@@ -0,0 +1,47 @@
+package org.briarproject.hotspot.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import androidx.annotation.Nullable;
+
+/**
+ * An installed app that the {@link WebServer} offers besides its own APK.
+ */
+public class SharedApp {
+
+	/**
+	 * Also the name of the APK and the icon in URLs.
+	 */
+	public final String packageName;
+	final String label, versionName;
+	final long length;
+	// Hex encoded SHA-256 of the APK, shown on the page so it can be verified
+	final String sha256;
+	// Encoded as WebP, or null if the app has no icon
+	@Nullable
+	final byte[] icon;
+	private final ServedFile apk;
+
+	public SharedApp(String packageName, String label, String versionName,
+			ServedFile apk, String sha256, @Nullable byte[] icon)
+			throws IOException {
+		this.packageName = packageName;
+		this.label = label;
+		this.versionName = versionName;
+		this.apk = apk;
+		this.sha256 = sha256;
+		this.icon = icon;
+		length = apk.getLength();
+	}
+
+	InputStream open() throws IOException {
+		return apk.open();
+	}
+
+	@Override
+	public String toString() {
+		return packageName + " " + versionName + " (" + length + " bytes)";
+	}
+
+}
@@ -0,0 +1,206 @@
+package org.briarproject.hotspot.server;
+
+import org.briarproject.hotspot.server.ConnectionGuard.Connection;
+import org.briarproject.hotspot.server.WebServer.TransferListener;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Logger;
+
+import androidx.annotation.Nullable;
+import fi.iki.elonen.NanoHTTPD.IHTTPSession;
+import fi.iki.elonen.NanoHTTPD.Method;
+import fi.iki.elonen.NanoHTTPD.Response;
+import fi.iki.elonen.NanoHTTPD.Response.Status;
+
+import static fi.iki.elonen.NanoHTTPD.MIME_PLAINTEXT;
+import static fi.iki.elonen.NanoHTTPD.Response.Status.BAD_REQUEST;
+import static fi.iki.elonen.NanoHTTPD.Response.Status.NOT_FOUND;
+import static fi.iki.elonen.NanoHTTPD.Response.Status.NO_CONTENT;
+import static fi.iki.elonen.NanoHTTPD.Response.Status.OK;
+import static fi.iki.elonen.NanoHTTPD.Response.Status.SERVICE_UNAVAILABLE;
+import static fi.iki.elonen.NanoHTTPD.newFixedLengthResponse;
+import static java.util.logging.Level.INFO;
+import static java.util.logging.Logger.getLogger;
+import static org.briarproject.hotspot.server.LogUtils.logException;
+
+/**
+ * The routes of the speed test that the download page runs, so the
+ * operator can tell a slow link from a slow device. The page measures the
+ * round trip time with the ping route, downloads and uploads some bytes
+ * and reports the results, which are passed on to the
+ * {@link TransferListener}.
+ * <p>
+ * Downloads stream bytes from a buffer that is shared by all requests, and
+ * uploads are read into another one and discarded, so tests don't allocate
+ * per byte. Both are capped at {@link #MAX_BYTES}.
+ */
+class SpeedTest {
+
+	private static final Logger LOG = getLogger(SpeedTest.class.getName());
+
+	static final String PATH = "/speedtest/";
+	private static final String PATH_DOWNLOAD = PATH + "download";
+	private static final String PATH_UPLOAD = PATH + "upload";
+	private static final String PATH_RESULT = PATH + "result";
+	private static final String MIME_BINARY = "application/octet-stream";
+
+	private static final int MAX_BYTES = 4 * 1024 * 1024;
+	private static final int DEFAULT_BYTES = 256 * 1024;
+	// Random, so nothing on the way can compress it
+	private static final byte[] PATTERN = new byte[64 * 1024];
+	// Written by all uploads at once, never read
+	private static final byte[] DISCARD = new byte[16 * 1024];
+
+	static {
+		new Random().nextBytes(PATTERN);
+	}
+
+	private SpeedTest() {
+	}
+
+	static Response serve(IHTTPSession session,
+			@Nullable Connection connection, ServingLimits limits,
+			TransferListener listener) {
+		String uri = session.getUri();
+		if (uri.equals(PATH_RESULT)) return serveResult(session, listener);
+		if (!uri.equals(PATH_DOWNLOAD) && !uri.equals(PATH_UPLOAD))
+			return newResponse(NOT_FOUND);
+		// Under a rate limit, a test would measure the limit, not the link
+		if (limits.getBytesPerSecond() != 0)
+			return newClosingResponse(SERVICE_UNAVAILABLE);
+		if (uri.equals(PATH_DOWNLOAD))
+			return serveDownload(session, connection);
+		return serveUpload(session, connection);
+	}
+
+	private static Response serveDownload(IHTTPSession session,
+			@Nullable Connection connection) {
+		long bytes = getLong(session, "bytes", DEFAULT_BYTES);
+		if (bytes < 0 || bytes > MAX_BYTES) return newResponse(BAD_REQUEST);
+		InputStream in = new PatternInputStream(bytes);
+		if (connection != null) in = connection.wrapBody(in);
+		Response res = newFixedLengthResponse(OK, MIME_BINARY, in, bytes);
+		res.addHeader("Content-Length", "" + bytes);
+		res.addHeader("Cache-Control", "no-store");
+		return res;
+	}
+
+	private static Response serveUpload(IHTTPSession session,
+			@Nullable Connection connection) {
+		long bytes = parseLong(session.getHeaders().get("content-length"));
+		if (session.getMethod() != Method.POST || bytes < 0 ||
+				bytes > MAX_BYTES) {
+			return newClosingResponse(BAD_REQUEST);
+		}
+		InputStream in = session.getInputStream();
+		if (connection != null) in = connection.wrapBody(in);
+		try {
+			long remaining = bytes;
+			while (remaining > 0) {
+				int read = in.read(DISCARD, 0,
+						(int) Math.min(DISCARD.length, remaining));
+				if (read == -1) throw new EOFException();
+				remaining -= read;
+			}
+		} catch (IOException e) {
+			logException(LOG, INFO, e);
+			return newClosingResponse(BAD_REQUEST);
+		}
+		return newResponse(NO_CONTENT);
+	}
+
+	private static Response serveResult(IHTTPSession session,
+			TransferListener listener) {
+		long down = getLong(session, "down", -1);
+		long up = getLong(session, "up", -1);
+		long rtt = getLong(session, "rtt", -1);
+		if (down < 0 || up < 0 || rtt < 0) return newResponse(BAD_REQUEST);
+		LinkQuality quality = new LinkQuality(down, up, rtt);
+		String client = session.getRemoteIpAddress();
+		if (LOG.isLoggable(INFO))
+			LOG.info("Link to " + client + ": " + quality);
+		listener.onLinkMeasured(client, quality);
+		return newResponse(NO_CONTENT);
+	}
+
+	/**
+	 * Returns the value of the given query parameter, the default if it is
+	 * missing, or -1 if it isn't a number.
+	 */
+	private static long getLong(IHTTPSession session, String name,
+			long defaultValue) {
+		List<String> values = session.getParameters().get(name);
+		if (values == null || values.isEmpty()) return defaultValue;
+		return parseLong(values.get(0));
+	}
+
+	private static long parseLong(@Nullable String s) {
+		if (s == null) return -1;
+		try {
+			return Long.parseLong(s);
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	private static Response newResponse(Status status) {
+		Response res = newFixedLengthResponse(status, MIME_PLAINTEXT,
+				status == NO_CONTENT ? "" : status.getDescription());
+		res.addHeader("Cache-Control", "no-store");
+		return res;
+	}
+
+	/**
+	 * Returns a response after which the connection gets closed, because
+	 * the request body may not have been read.
+	 */
+	private static Response newClosingResponse(Status status) {
+		Response res = newResponse(status);
+		res.closeConnection(true);
+		return res;
+	}
+
+	/**
+	 * Repeats the {@link #PATTERN} for the given number of bytes.
+	 */
+	private static class PatternInputStream extends InputStream {
+
+		private long remaining;
+		private int offset = 0;
+
+		private PatternInputStream(long length) {
+			remaining = length;
+		}
+
+		@Override
+		public int read() {
+			if (remaining == 0) return -1;
+			remaining--;
+			int b = PATTERN[offset] & 0xFF;
+			offset = (offset + 1) % PATTERN.length;
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if (len == 0) return 0;
+			if (remaining == 0) return -1;
+			int n = (int) Math.min(Math.min(len, remaining),
+					PATTERN.length - offset);
+			System.arraycopy(PATTERN, offset, b, off, n);
+			remaining -= n;
+			offset = (offset + n) % PATTERN.length;
+			return n;
+		}
+
+		@Override
+		public int available() {
+			return (int) Math.min(remaining, PATTERN.length - offset);
+		}
+	}
+
+}
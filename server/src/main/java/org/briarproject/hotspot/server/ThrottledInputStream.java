@@ -0,0 +1,86 @@
+package org.briarproject.hotspot.server;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the rate at which a download is read to the current rate of the
+ * {@link ServingLimits}. Changes of the rate take effect while the download
+ * is running.
+ */
+class ThrottledInputStream extends FilterInputStream {
+
+	interface CloseListener {
+		void onClosed(long bytesRead);
+	}
+
+	private final ServingLimits limits;
+	private final CloseListener closeListener;
+
+	private long bytesRead = 0;
+	private long windowStart = System.nanoTime(), windowBytes = 0;
+	private long windowRate = 0;
+	private boolean closed = false;
+
+	/**
+	 * @param closeListener Called once when the stream gets closed.
+	 */
+	ThrottledInputStream(InputStream in, ServingLimits limits,
+			CloseListener closeListener) {
+		super(in);
+		this.limits = limits;
+		this.closeListener = closeListener;
+	}
+
+	@Override
+	public int read() throws IOException {
+		int b = super.read();
+		if (b != -1) throttle(1);
+		return b;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		int read = super.read(b, off, len);
+		if (read > 0) throttle(read);
+		return read;
+	}
+
+	private void throttle(int bytes) throws IOException {
+		bytesRead += bytes;
+		long rate = limits.getBytesPerSecond();
+		if (rate != windowRate) {
+			// Start measuring again at the new rate
+			windowRate = rate;
+			windowStart = System.nanoTime();
+			windowBytes = 0;
+		}
+		if (rate == 0) return;
+		windowBytes += bytes;
+		long due = windowStart +
+				TimeUnit.SECONDS.toNanos(1) * windowBytes / rate;
+		long wait = due - System.nanoTime();
+		if (wait <= 0) return;
+		try {
+			TimeUnit.NANOSECONDS.sleep(wait);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while throttling");
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			super.close();
+		} finally {
+			if (!closed) {
+				closed = true;
+				closeListener.onClosed(bytesRead);
+			}
+		}
+	}
+
+}
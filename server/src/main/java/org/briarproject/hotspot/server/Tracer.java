@@ -0,0 +1,254 @@
+package org.briarproject.hotspot.server;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import androidx.annotation.Nullable;
+
+/**
+ * Records spans of work, so it can be seen where the time goes when
+ * starting the hotspot and serving takes long on a device.
+ * <p>
+ * Spans on one thread nest and are ended by closing them, ideally with
+ * try-with-resources. Async spans can end on another thread and are
+ * matched by their name and the cookie returned when they began. The spans
+ * are passed on to a {@link Backend}, such as Android's system tracing, and
+ * are recorded in a buffer of the last {@link #MAX_EVENTS} events, which can
+ * be exported in the JSON format of Chrome's trace viewer and Perfetto.
+ * <p>
+ * Tracing is disabled by default. While it is disabled, spans cost a
+ * volatile read and don't allocate, and the buffer isn't allocated until
+ * tracing is first enabled.
+ */
+public class Tracer {
+
+	/**
+	 * Called on the thread that begins or ends a span.
+	 */
+	public interface Backend {
+
+		void beginSection(String name);
+
+		void endSection();
+
+		void beginAsyncSection(String name, int cookie);
+
+		void endAsyncSection(String name, int cookie);
+	}
+
+	/**
+	 * A span on the current thread, which ends when it is closed.
+	 */
+	public interface Span extends AutoCloseable {
+		@Override
+		void close();
+	}
+
+	public static final int MAX_EVENTS = 20_000;
+
+	private static final char BEGIN = 'B', END = 'E', ASYNC_BEGIN = 'b',
+			ASYNC_END = 'e', INSTANT = 'i';
+
+	private static final Span NO_SPAN = () -> {
+	};
+
+	private static final AtomicInteger nextCookie = new AtomicInteger(1);
+
+	// Null while tracing is disabled
+	@Nullable
+	private static volatile Session session = null;
+	// The times of events are relative to this
+	private static volatile long startNanos = 0;
+
+	private static final Object lock = new Object();
+	// A ring buffer of events, allocated when tracing is first enabled.
+	// Locking: lock
+	private static char[] phases;
+	private static String[] names;
+	private static long[] times, threads;
+	private static int[] cookies;
+	// Locking: lock
+	private static final Map<Long, String> threadNames = new HashMap<>();
+	// Locking: lock
+	private static int next = 0, size = 0;
+
+	private Tracer() {
+	}
+
+	/**
+	 * Starts tracing and clears the events recorded before.
+	 *
+	 * @param backend Also receives the spans, or null.
+	 */
+	public static void enable(@Nullable Backend backend) {
+		synchronized (lock) {
+			if (phases == null) {
+				phases = new char[MAX_EVENTS];
+				names = new String[MAX_EVENTS];
+				times = new long[MAX_EVENTS];
+				threads = new long[MAX_EVENTS];
+				cookies = new int[MAX_EVENTS];
+			}
+			next = 0;
+			size = 0;
+			threadNames.clear();
+		}
+		startNanos = System.nanoTime();
+		session = new Session(backend);
+	}
+
+	/**
+	 * Stops tracing. The recorded events can still be exported.
+	 */
+	public static void disable() {
+		session = null;
+	}
+
+	public static boolean isEnabled() {
+		return session != null;
+	}
+
+	/**
+	 * Begins a span on the current thread. The span ends the section it
+	 * began in the backend even if tracing is disabled before it's closed.
+	 */
+	public static Span begin(String name) {
+		Session s = session;
+		if (s == null) return NO_SPAN;
+		record(BEGIN, name, 0);
+		if (s.backend != null) s.backend.beginSection(name);
+		return s;
+	}
+
+	/**
+	 * Begins a span that may end on another thread.
+	 *
+	 * @return the cookie to pass to {@link #endAsync(String, int)}, or 0 if
+	 * tracing is disabled.
+	 */
+	public static int beginAsync(String name) {
+		Session s = session;
+		if (s == null) return 0;
+		int cookie = nextCookie.getAndIncrement();
+		record(ASYNC_BEGIN, name, cookie);
+		if (s.backend != null) s.backend.beginAsyncSection(name, cookie);
+		return cookie;
+	}
+
+	/**
+	 * Ends a span begun by {@link #beginAsync(String)}. It's safe to call
+	 * this with the cookie 0, or more than once.
+	 */
+	public static void endAsync(String name, int cookie) {
+		Session s = session;
+		if (s == null || cookie == 0) return;
+		record(ASYNC_END, name, cookie);
+		if (s.backend != null) s.backend.endAsyncSection(name, cookie);
+	}
+
+	/**
+	 * Records a moment on the current thread.
+	 */
+	public static void instant(String name) {
+		if (session == null) return;
+		record(INSTANT, name, 0);
+	}
+
+	private static void record(char phase, @Nullable String name,
+			int cookie) {
+		long time = System.nanoTime() - startNanos;
+		Thread t = Thread.currentThread();
+		synchronized (lock) {
+			phases[next] = phase;
+			names[next] = name;
+			times[next] = time;
+			threads[next] = t.getId();
+			cookies[next] = cookie;
+			next = (next + 1) % MAX_EVENTS;
+			if (size < MAX_EVENTS) size++;
+			if (!threadNames.containsKey(t.getId()))
+				threadNames.put(t.getId(), t.getName());
+		}
+	}
+
+	/**
+	 * Writes the recorded events as a JSON trace, which can be opened in
+	 * chrome://tracing or ui.perfetto.dev.
+	 */
+	public static void writeChromeTrace(Writer out) throws IOException {
+		StringBuilder sb = new StringBuilder("{\"traceEvents\":[");
+		synchronized (lock) {
+			for (Map.Entry<Long, String> e : threadNames.entrySet()) {
+				sb.append("\n{\"ph\":\"M\",\"name\":\"thread_name\",")
+						.append("\"pid\":1,\"tid\":").append(e.getKey())
+						.append(",\"args\":{\"name\":");
+				appendString(sb, e.getValue());
+				sb.append("}},");
+			}
+			int first = (next - size + MAX_EVENTS) % MAX_EVENTS;
+			for (int i = 0; i < size; i++) {
+				appendEvent(sb, (first + i) % MAX_EVENTS);
+				if (i < size - 1) sb.append(',');
+			}
+		}
+		if (sb.charAt(sb.length() - 1) == ',') sb.setLength(sb.length() - 1);
+		sb.append("\n],\"displayTimeUnit\":\"ms\"}\n");
+		out.write(sb.toString());
+		out.flush();
+	}
+
+	// Locking: lock
+	private static void appendEvent(StringBuilder sb, int i) {
+		sb.append("\n{\"ph\":\"").append(phases[i]).append('"');
+		if (names[i] != null) {
+			sb.append(",\"name\":");
+			appendString(sb, names[i]);
+		}
+		if (phases[i] == ASYNC_BEGIN || phases[i] == ASYNC_END) {
+			sb.append(",\"cat\":\"async\",\"id\":").append(cookies[i]);
+		} else if (phases[i] == INSTANT) {
+			sb.append(",\"s\":\"t\"");
+		}
+		// Microseconds
+		sb.append(",\"ts\":").append(times[i] / 1000).append('.')
+				.append(times[i] / 100 % 10).append(",\"pid\":1,\"tid\":")
+				.append(threads[i]).append('}');
+	}
+
+	private static void appendString(StringBuilder sb, String s) {
+		sb.append('"');
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c == '"' || c == '\\') sb.append('\\').append(c);
+			else if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+			else sb.append(c);
+		}
+		sb.append('"');
+	}
+
+	/**
+	 * The time between enabling and disabling tracing. It's also the span
+	 * returned while tracing is enabled, so it ends the sections it began
+	 * in its own backend, without allocating per span.
+	 */
+	private static class Session implements Span {
+
+		@Nullable
+		private final Backend backend;
+
+		private Session(@Nullable Backend backend) {
+			this.backend = backend;
+		}
+
+		@Override
+		public void close() {
+			// Events of an earlier session were cleared when enabling
+			if (session == this) record(END, null, 0);
+			if (backend != null) backend.endSection();
+		}
+	}
+
+}
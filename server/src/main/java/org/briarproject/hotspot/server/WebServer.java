@@ -0,0 +1,666 @@
+package org.briarproject.hotspot.server;
+
+import org.briarproject.hotspot.server.ApkCatalog.Variant;
+import org.briarproject.hotspot.server.ConnectionGuard.Connection;
+import org.briarproject.hotspot.server.ServedInterfaces.Endpoint;
+import org.briarproject.hotspot.server.ServedInterfaces.Kind;
+import org.briarproject.hotspot.server.Tracer.Span;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import androidx.annotation.Nullable;
+import fi.iki.elonen.NanoHTTPD;
+
+import static fi.iki.elonen.NanoHTTPD.Response.Status.INTERNAL_ERROR;
+import static fi.iki.elonen.NanoHTTPD.Response.Status.NO_CONTENT;
+import static fi.iki.elonen.NanoHTTPD.Response.Status.NOT_FOUND;
+import static fi.iki.elonen.NanoHTTPD.Response.Status.OK;
+import static fi.iki.elonen.NanoHTTPD.Response.Status.SERVICE_UNAVAILABLE;
+import static java.util.Objects.requireNonNull;
+import static java.util.logging.Level.INFO;
+import static java.util.logging.Level.WARNING;
+import static java.util.logging.Logger.getLogger;
+import static org.briarproject.hotspot.server.ApkCatalog.getAbi;
+import static org.briarproject.hotspot.server.ApkCatalog.getDensity;
+import static org.briarproject.hotspot.server.LogUtils.logException;
+import static org.briarproject.hotspot.server.PageStrings.Key.APPS_TITLE;
+import static org.briarproject.hotspot.server.PageStrings.Key.APP_DETAILS;
+import static org.briarproject.hotspot.server.PageStrings.Key.APP_DIGEST;
+import static org.briarproject.hotspot.server.PageStrings.Key.APP_NAME;
+import static org.briarproject.hotspot.server.PageStrings.Key.DOWNLOAD_INTRO;
+import static org.briarproject.hotspot.server.PageStrings.Key.DOWNLOAD_OUTRO;
+import static org.briarproject.hotspot.server.PageStrings.Key.DOWNLOAD_TITLE;
+import static org.briarproject.hotspot.server.PageStrings.Key.SHARE_DOWNLOAD;
+import static org.briarproject.hotspot.server.PageStrings.Key.SHARE_LINK;
+import static org.briarproject.hotspot.server.PageStrings.Key.SHARE_NETWORK_NAME;
+import static org.briarproject.hotspot.server.PageStrings.Key.SHARE_PASSWORD;
+import static org.briarproject.hotspot.server.PageStrings.Key.SHARE_TITLE;
+import static org.briarproject.hotspot.server.PageStrings.Key.SHARE_WIFI;
+import static org.briarproject.hotspot.server.PageStrings.Key.TROUBLESHOOTING_1;
+import static org.briarproject.hotspot.server.PageStrings.Key.TROUBLESHOOTING_2_NEW;
+import static org.briarproject.hotspot.server.PageStrings.Key.TROUBLESHOOTING_2_OLD;
+import static org.briarproject.hotspot.server.PageStrings.Key.TROUBLESHOOTING_TITLE;
+
+/**
+ * Serves the download page and the APK, the APKs and icons of the
+ * {@link AppCatalog}, and the routes of the {@link SpeedTest}. It has no
+ * dependencies on Android, the app provides the assets, strings and APKs
+ * through small interfaces.
+ */
+public class WebServer extends NanoHTTPD {
+
+	/**
+	 * Called on the server's threads.
+	 */
+	public interface TransferListener {
+
+		void onActiveTransfersChanged(int active);
+
+		void onTransferStarted(String client, String variant, long length);
+
+		/**
+		 * Called when the response of a download that has been started is
+		 * closed.
+		 *
+		 * @param complete True if all bytes of the APK have been read.
+		 */
+		void onTransferFinished(String client, String variant, long bytes,
+				long durationMillis, boolean complete);
+
+		/**
+		 * Called when the download page reports the result of its speed
+		 * test, see {@link SpeedTest}.
+		 */
+		void onLinkMeasured(String client, LinkQuality quality);
+	}
+
+	/**
+	 * The preferred port, see {@link BoundServerSocket} for the fallback.
+	 */
+	public final static int PORT = 9999;
+
+	private static final Logger LOG = getLogger(WebServer.class.getName());
+	private static final String FILE_HTML = "hotspot.html";
+	private static final String FILE_SHARE_HTML = "share.html";
+	private static final String UTF_8 = "UTF-8";
+	private static final String PATH_PING = "/ping";
+	private static final String PATH_SHARE = "/share";
+	private static final String PATH_APPS = "/apps/";
+	private static final String APK_EXTENSION = ".apk";
+	private static final String ICON_EXTENSION = ".webp";
+	private static final String MIME_APK =
+			"application/vnd.android.package-archive";
+	private static final String MIME_WEBP = "image/webp";
+	// The icon URLs contain the version of the catalog
+	private static final String ICON_MAX_AGE = "max-age=86400";
+	// Room for the parts of the page that depend on the request
+	private static final int PAGE_MARGIN_CHARS = 1024;
+	// Each thread renders the page into its own builder
+	private static final ThreadLocal<StringBuilder> PAGE_BUILDER =
+			new ThreadLocal<>();
+	private static final Pattern REGEX_AGENT =
+			Pattern.compile("Android ([0-9]+)");
+
+	// Clients are asked to retry after this when too many are downloading
+	private static final String RETRY_AFTER_SECONDS = "10";
+	// Only a backstop, the ConnectionGuard enforces tighter deadlines for
+	// each phase of a connection
+	private static final int SOCKET_TIMEOUT_MILLIS = 30_000;
+	private static final byte[] TOO_MANY_CONNECTIONS = ("HTTP/1.1 503 " +
+			"Service Unavailable\r\nConnection: close\r\n" +
+			"Content-Length: 0\r\n\r\n").getBytes(Charset.forName("US-ASCII"));
+
+	// The client handled by the current thread
+	private static final ThreadLocal<GuardedClientHandler> CLIENT =
+			new ThreadLocal<>();
+
+	private final Assets assets;
+	private final PageStrings strings;
+	private final String versionName;
+	private final ApkCatalog catalog;
+	private final ServingLimits limits;
+	private final ConnectionGuard guard;
+	private final ServedInterfaces servedInterfaces;
+	private final TransferListener transferListener;
+	private final AtomicInteger activeTransfers = new AtomicInteger(0);
+	// The rendered share page, or null if there is none
+	@Nullable
+	private volatile String shareHtml = null;
+	private volatile AppCatalog appCatalog = AppCatalog.EMPTY;
+	private volatile long bindToReadyMillis = -1;
+	@Nullable
+	private volatile PageTemplate template = null;
+
+	/**
+	 * The server listens on all interfaces, but only serves clients that
+	 * connect via one of the {@link ServedInterfaces}.
+	 *
+	 * @param versionName The version of the app, shown on the page.
+	 */
+	public WebServer(Assets assets, PageStrings strings, String versionName,
+			ApkCatalog catalog, ServingLimits limits, ConnectionGuard guard,
+			ServedInterfaces servedInterfaces,
+			TransferListener transferListener) {
+		super(null, PORT);
+		this.assets = assets;
+		this.strings = strings;
+		this.versionName = versionName;
+		this.catalog = catalog;
+		this.limits = limits;
+		this.guard = guard;
+		this.servedInterfaces = servedInterfaces;
+		this.transferListener = transferListener;
+	}
+
+	@SuppressWarnings("try")
+	public void start() throws IOException {
+		BoundServerSocket socket;
+		try (Span ignored = Tracer.begin("bind web server")) {
+			socket = BoundServerSocket.bind();
+		}
+		start(socket);
+	}
+
+	/**
+	 * Starts the server on a socket that has been bound before, which the
+	 * server closes when it stops.
+	 */
+	@SuppressWarnings("try")
+	public void start(BoundServerSocket socket) throws IOException {
+		setServerSocketFactory(() -> socket);
+		try (Span ignored = Tracer.begin("start web server")) {
+			start(SOCKET_TIMEOUT_MILLIS, false);
+		} catch (IOException e) {
+			socket.close();
+			throw e;
+		}
+		servedInterfaces.setPort(getListeningPort());
+		bindToReadyMillis = (System.nanoTime() - socket.getBoundAt()) /
+				1_000_000;
+		if (LOG.isLoggable(INFO)) {
+			LOG.info("Listening on port " + getListeningPort() + ", ready " +
+					bindToReadyMillis + " ms after binding");
+		}
+	}
+
+	/**
+	 * Returns the time from binding the socket to accepting connections,
+	 * or -1 if the server hasn't started.
+	 */
+	public long getBindToReadyMillis() {
+		return bindToReadyMillis;
+	}
+
+	/**
+	 * Sets the share page, or removes it if the page is null. The page is
+	 * rendered once here, not for each request.
+	 */
+	public void setSharePage(@Nullable SharePage page) {
+		if (page == null) {
+			shareHtml = null;
+			return;
+		}
+		try {
+			shareHtml = renderSharePage(page);
+		} catch (IOException e) {
+			logException(LOG, WARNING, e);
+			shareHtml = null;
+		}
+	}
+
+	/**
+	 * Sets the installed apps that are offered besides our own APK.
+	 */
+	public void setAppCatalog(AppCatalog catalog) {
+		if (LOG.isLoggable(INFO)) LOG.info("Serving apps " + catalog);
+		appCatalog = catalog;
+	}
+
+	@Override
+	protected ClientHandler createClientHandler(Socket socket,
+			InputStream inputStream) {
+		Endpoint endpoint =
+				servedInterfaces.getEndpoint(socket.getLocalAddress());
+		if (endpoint == null) {
+			// For example a client on the mobile network
+			if (LOG.isLoggable(INFO)) {
+				LOG.info("Refusing connection to " +
+						socket.getLocalAddress().getHostAddress());
+			}
+			return new RejectingClientHandler(socket, inputStream, null);
+		}
+		Connection connection = guard.register(socket);
+		if (connection == null) {
+			return new RejectingClientHandler(socket, inputStream,
+					TOO_MANY_CONNECTIONS);
+		}
+		return new GuardedClientHandler(socket,
+				connection.wrapInput(inputStream), connection, endpoint);
+	}
+
+	@Override
+	@SuppressWarnings("try")
+	public Response serve(IHTTPSession session) {
+		try (Span ignored = Tracer.begin("serve")) {
+			GuardedClientHandler client = CLIENT.get();
+			if (client == null) return handle(session, null);
+			client.connection.onServeStarted();
+			try {
+				return handle(session, client);
+			} finally {
+				client.connection.onServeFinished();
+			}
+		}
+	}
+
+	private Response handle(IHTTPSession session,
+			@Nullable GuardedClientHandler client) {
+		if (session.getUri().endsWith("favicon.ico")) {
+			return newFixedLengthResponse(NOT_FOUND, MIME_PLAINTEXT,
+					NOT_FOUND.getDescription());
+		}
+		if (session.getUri().equals(PATH_PING)) {
+			// Lets the page find out which of our URLs the client can reach
+			Response res = newFixedLengthResponse(NO_CONTENT, MIME_PLAINTEXT,
+					"");
+			res.addHeader("Access-Control-Allow-Origin", "*");
+			res.addHeader("Cache-Control", "no-store");
+			return res;
+		}
+		if (session.getUri().equals(PATH_SHARE)) {
+			String html = shareHtml;
+			// Clients on a LAN we share with may not join the hotspot
+			if (html == null || !isOnAccessPoint(client)) {
+				return newFixedLengthResponse(NOT_FOUND, MIME_PLAINTEXT,
+						NOT_FOUND.getDescription());
+			}
+			Response res = newFixedLengthResponse(OK, MIME_HTML, html);
+			// The credentials may change
+			res.addHeader("Cache-Control", "no-cache");
+			return res;
+		}
+		if (session.getUri().startsWith(SpeedTest.PATH)) {
+			return SpeedTest.serve(session,
+					client == null ? null : client.connection, limits,
+					transferListener);
+		}
+		if (session.getUri().startsWith(PATH_APPS) &&
+				session.getUri().endsWith(ICON_EXTENSION)) {
+			return serveIcon(session.getUri());
+		}
+		if (session.getUri().endsWith(APK_EXTENSION)) {
+			int maxTransfers = limits.getMaxTransfers();
+			if (activeTransfers.incrementAndGet() > maxTransfers) {
+				activeTransfers.decrementAndGet();
+				LOG.info("Too many downloads, asking client to retry");
+				Response res = newFixedLengthResponse(SERVICE_UNAVAILABLE,
+						MIME_PLAINTEXT, SERVICE_UNAVAILABLE.getDescription());
+				res.addHeader("Retry-After", RETRY_AFTER_SECONDS);
+				return res;
+			}
+			transferListener.onActiveTransfersChanged(activeTransfers.get());
+			return serveApk(session, client);
+		}
+		Response res;
+		try {
+			String html = getHtml(session, isOnAccessPoint(client));
+			res = newFixedLengthResponse(OK, MIME_HTML, html);
+		} catch (Exception e) {
+			logException(LOG, WARNING, e);
+			res = newFixedLengthResponse(INTERNAL_ERROR, MIME_PLAINTEXT,
+					INTERNAL_ERROR.getDescription());
+		}
+		return res;
+	}
+
+	private static boolean isOnAccessPoint(
+			@Nullable GuardedClientHandler client) {
+		return client != null && client.endpoint.kind == Kind.ACCESS_POINT;
+	}
+
+	private String getHtml(IHTTPSession session, boolean onAccessPoint)
+			throws IOException {
+		PageTemplate t = getPageTemplate();
+		Document doc;
+		// jsoup's nodes aren't safe for concurrent use, even for reading
+		synchronized (t) {
+			doc = t.doc.clone();
+		}
+		// The page tries these in order and downloads from the first one
+		// that the client can reach
+		StringBuilder urls = new StringBuilder();
+		for (String url : servedInterfaces.getRankedUrls()) {
+			if (urls.length() > 0) urls.append(' ');
+			urls.append(url);
+		}
+		if (t.share && !onAccessPoint) doc.select("#share_link").remove();
+		Element link = doc.select("#download_link").first();
+		link.attr("data-urls", urls.toString());
+		String density = getDensity(session.getHeaders().get("sec-ch-dpr"));
+		if (density != null) {
+			// Otherwise the page finds the density and adds it to the link
+			Variant variant = selectVariant(session, density);
+			if (variant != null)
+				link.attr("href", "/app.apk?variant=" + variant.name);
+		}
+		String userAgent = session.getHeaders().get("user-agent");
+		doc.select("#troubleshooting_2").first()
+				.text(getUnknownSourcesString(userAgent));
+		StringBuilder html = PAGE_BUILDER.get();
+		if (html == null || html.capacity() < t.length + PAGE_MARGIN_CHARS) {
+			// Sized for the page, so it doesn't grow while rendering
+			html = new StringBuilder(t.length + PAGE_MARGIN_CHARS);
+			PAGE_BUILDER.set(html);
+		}
+		html.setLength(0);
+		// Like outerHtml(), which only reuses builders for small pages
+		return doc.html(html).toString().trim();
+	}
+
+	/**
+	 * Returns the page without the parts that depend on the request. It is
+	 * rendered again when the apps or the share page change.
+	 */
+	@SuppressWarnings("try")
+	private PageTemplate getPageTemplate() throws IOException {
+		AppCatalog apps = appCatalog;
+		boolean share = shareHtml != null;
+		PageTemplate t = template;
+		if (t == null || t.appsVersion != apps.version || t.share != share) {
+			try (Span ignored = Tracer.begin("render page template")) {
+				Document doc = renderPageTemplate(apps, share);
+				t = new PageTemplate(apps.version, share, doc,
+						doc.outerHtml().length());
+			}
+			template = t;
+		}
+		return t;
+	}
+
+	private Document renderPageTemplate(AppCatalog apps, boolean share)
+			throws IOException {
+		Document doc;
+		try (InputStream is = assets.open(FILE_HTML)) {
+			doc = Jsoup.parse(is, UTF_8, "");
+		}
+		String app = strings.get(APP_NAME);
+		String appV = app + " " + versionName;
+		doc.select("#download_title").first()
+				.text(strings.get(DOWNLOAD_TITLE, appV));
+		doc.select("#download_intro").first()
+				.text(strings.get(DOWNLOAD_INTRO, app));
+		doc.select("#download_button").first()
+				.text(strings.get(DOWNLOAD_TITLE, app));
+		doc.select("#download_outro").first()
+				.text(strings.get(DOWNLOAD_OUTRO));
+		if (apps.apps.isEmpty()) {
+			doc.select("#apps").remove();
+		} else {
+			doc.select("#apps_title").first().text(strings.get(APPS_TITLE));
+			Element list = doc.select("#apps_list").first();
+			for (SharedApp a : apps.apps) addApp(list, a, apps.version);
+		}
+		if (!share) doc.select("#share_link").remove();
+		else doc.select("#share_link").first().text(strings.get(SHARE_LINK));
+		doc.select("#troubleshooting_title").first()
+				.text(strings.get(TROUBLESHOOTING_TITLE));
+		doc.select("#troubleshooting_1").first()
+				.text(strings.get(TROUBLESHOOTING_1));
+		return doc;
+	}
+
+	private void addApp(Element list, SharedApp app, int version) {
+		Element item = list.appendElement("li");
+		if (app.icon != null) {
+			item.appendElement("img").addClass("app_icon").attr("alt", "")
+					.attr("src", PATH_APPS + app.packageName +
+							ICON_EXTENSION + "?v=" + version);
+		}
+		item.appendElement("a")
+				.attr("href", PATH_APPS + app.packageName + APK_EXTENSION)
+				.text(app.label);
+		item.appendElement("br");
+		item.appendElement("span").text(strings.get(APP_DETAILS,
+				app.versionName, app.length / 1_000_000.0));
+		item.appendElement("br");
+		item.appendElement("span").addClass("app_digest")
+				.text(strings.get(APP_DIGEST, app.sha256));
+	}
+
+	private String renderSharePage(SharePage page) throws IOException {
+		Document doc;
+		try (InputStream is = assets.open(FILE_SHARE_HTML)) {
+			doc = Jsoup.parse(is, UTF_8, "");
+		}
+		String app = strings.get(APP_NAME);
+		doc.select("#share_title").first().text(strings.get(SHARE_TITLE));
+		doc.select("#wifi_title").first().text(strings.get(SHARE_WIFI));
+		doc.select("#wifi_qr").first().html(page.wifiQrCode);
+		doc.select("#network_name").first()
+				.text(strings.get(SHARE_NETWORK_NAME, page.networkName));
+		doc.select("#password").first()
+				.text(strings.get(SHARE_PASSWORD, page.password));
+		doc.select("#download_title").first()
+				.text(strings.get(SHARE_DOWNLOAD, app));
+		doc.select("#download_qr").first().html(page.urlQrCode);
+		doc.select("#download_url").first().text(page.url);
+		return doc.outerHtml();
+	}
+
+	private String getUnknownSourcesString(String userAgent) {
+		boolean is8OrHigher = false;
+		if (userAgent != null) {
+			Matcher matcher = REGEX_AGENT.matcher(userAgent);
+			if (matcher.find()) {
+				int androidMajorVersion =
+						Integer.parseInt(requireNonNull(matcher.group(1)));
+				is8OrHigher = androidMajorVersion >= 8;
+			}
+		}
+		return strings.get(is8OrHigher ? TROUBLESHOOTING_2_NEW :
+				TROUBLESHOOTING_2_OLD);
+	}
+
+	/**
+	 * Selects the smallest APK for the client from what is known about it:
+	 * the variant in the link, the density added to the link by the page,
+	 * client hints and the user agent.
+	 */
+	@Nullable
+	private Variant selectVariant(IHTTPSession session,
+			@Nullable String density) {
+		String name = getParameter(session, "variant");
+		if (name != null) {
+			Variant v = catalog.getVariant(name);
+			if (v != null) return v;
+		}
+		if (density == null) {
+			density = getDensity(getParameter(session, "dpr"));
+		}
+		Map<String, String> headers = session.getHeaders();
+		String abi = getAbi(headers.get("user-agent"),
+				headers.get("sec-ch-ua-arch"),
+				headers.get("sec-ch-ua-bitness"));
+		return catalog.select(density, abi);
+	}
+
+	/**
+	 * Returns the first value of the given query parameter, or null.
+	 */
+	@Nullable
+	private static String getParameter(IHTTPSession session, String name) {
+		List<String> values = session.getParameters().get(name);
+		if (values == null || values.isEmpty()) return null;
+		return values.get(0);
+	}
+
+	private Response serveIcon(String uri) {
+		SharedApp app = appCatalog.getApp(getPackageName(uri, ICON_EXTENSION));
+		if (app == null || app.icon == null) {
+			return newFixedLengthResponse(NOT_FOUND, MIME_PLAINTEXT,
+					NOT_FOUND.getDescription());
+		}
+		// Already compressed, so it's served as it is
+		Response res = newFixedLengthResponse(OK, MIME_WEBP,
+				new ByteArrayInputStream(app.icon), app.icon.length);
+		res.addHeader("Cache-Control", ICON_MAX_AGE);
+		return res;
+	}
+
+	private static String getPackageName(String uri, String extension) {
+		return uri.substring(PATH_APPS.length(),
+				uri.length() - extension.length());
+	}
+
+	private Response serveApk(IHTTPSession session,
+			@Nullable GuardedClientHandler client) {
+		Response res;
+		try {
+			String uri = session.getUri();
+			String name;
+			long fileLen;
+			InputStream source;
+			if (uri.startsWith(PATH_APPS)) {
+				SharedApp app =
+						appCatalog.getApp(getPackageName(uri, APK_EXTENSION));
+				if (app == null) throw new FileNotFoundException(uri);
+				name = app.packageName;
+				fileLen = app.length;
+				source = app.open();
+			} else {
+				Variant variant = selectVariant(session,
+						getDensity(session.getHeaders().get("sec-ch-dpr")));
+				if (variant == null) throw new FileNotFoundException();
+				name = variant.name;
+				fileLen = variant.length;
+				source = variant.open();
+			}
+			if (LOG.isLoggable(INFO))
+				LOG.info("Serving APK " + name + " (" + fileLen + " bytes)");
+			String clientAddress = session.getRemoteIpAddress();
+			long start = System.nanoTime();
+			// The transfer counts as active until the response is closed
+			InputStream is = new ThrottledInputStream(source, limits,
+					bytes -> {
+				onTransferFinished();
+				long duration = (System.nanoTime() - start) / 1_000_000;
+				transferListener.onTransferFinished(clientAddress, name,
+						bytes, duration, bytes == fileLen);
+			});
+			transferListener.onTransferStarted(clientAddress, name, fileLen);
+			if (client != null) {
+				is = client.connection.wrapBody(is);
+				is = servedInterfaces.countBytes(is, client.endpoint);
+			}
+			res = newFixedLengthResponse(OK, MIME_APK, is, fileLen);
+			res.addHeader("Content-Length", "" + fileLen);
+		} catch (IOException e) {
+			logException(LOG, WARNING, e);
+			onTransferFinished();
+			res = newFixedLengthResponse(NOT_FOUND, MIME_PLAINTEXT,
+					"Error 404, file not found.");
+		}
+		return res;
+	}
+
+	private void onTransferFinished() {
+		transferListener.onActiveTransfersChanged(
+				activeTransfers.decrementAndGet());
+	}
+
+	/**
+	 * The download page without the parts that depend on the request.
+	 */
+	private static class PageTemplate {
+
+		private final int appsVersion;
+		private final boolean share;
+		private final Document doc;
+		// The length of the rendered template in chars
+		private final int length;
+
+		private PageTemplate(int appsVersion, boolean share, Document doc,
+				int length) {
+			this.appsVersion = appsVersion;
+			this.share = share;
+			this.doc = doc;
+			this.length = length;
+		}
+	}
+
+	private class GuardedClientHandler extends ClientHandler {
+
+		private final Connection connection;
+		private final Endpoint endpoint;
+
+		private GuardedClientHandler(Socket socket, InputStream inputStream,
+				Connection connection, Endpoint endpoint) {
+			super(inputStream, socket);
+			this.connection = connection;
+			this.endpoint = endpoint;
+		}
+
+		@Override
+		public void run() {
+			// The connection is handled on this thread until it gets closed
+			CLIENT.set(this);
+			connection.onHandlerStarted();
+			try {
+				super.run();
+			} finally {
+				CLIENT.remove();
+				guard.unregister(connection);
+			}
+		}
+	}
+
+	/**
+	 * Closes the connection without reading the request, optionally after
+	 * sending a canned response.
+	 */
+	private class RejectingClientHandler extends ClientHandler {
+
+		private final Socket socket;
+		@Nullable
+		private final byte[] response;
+
+		private RejectingClientHandler(Socket socket, InputStream inputStream,
+				@Nullable byte[] response) {
+			super(inputStream, socket);
+			this.socket = socket;
+			this.response = response;
+		}
+
+		@Override
+		public void run() {
+			try {
+				if (response != null) {
+					OutputStream out = socket.getOutputStream();
+					out.write(response);
+					out.flush();
+				}
+			} catch (IOException e) {
+				// The client has gone away
+			} finally {
+				close();
+				asyncRunner.closed(this);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,210 @@
+package org.briarproject.hotspot.server;
+
+import org.briarproject.hotspot.server.ApkCatalog.Variant;
+import org.briarproject.hotspot.server.DesktopServer.DownloadCounter;
+import org.briarproject.hotspot.server.DesktopServer.EnglishPageStrings;
+import org.briarproject.hotspot.server.DesktopServer.UnlimitedServing;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import com.sun.management.ThreadMXBean;
+import fi.iki.elonen.NanoHTTPD.CookieHandler;
+import fi.iki.elonen.NanoHTTPD.IHTTPSession;
+import fi.iki.elonen.NanoHTTPD.Method;
+import fi.iki.elonen.NanoHTTPD.Response;
+
+import static java.util.logging.Level.WARNING;
+import static org.briarproject.hotspot.server.WebServerTest.ASSETS_PROPERTY;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Measures the bytes the {@link WebServer} allocates for each request to
+ * the page, the APK and a missing file, and fails if a route allocates more
+ * than its budget. Garbage from each request adds up to GC pauses on phones
+ * serving many clients. The budgets are set in gradle.properties and passed
+ * on as system properties, see server/build.gradle.
+ * <p>
+ * Requests are handed to {@link WebServer#serve(IHTTPSession)} directly,
+ * without sockets, so only the serving core is measured. The response is
+ * closed without sending it, so the bytes of the APK aren't read. The
+ * allocations are counted by the JVM for the measuring thread.
+ */
+public class AllocationBudgetTest {
+
+	// Enough for the JIT to compile the hot path, which allocates less than
+	// the interpreter
+	private static final int WARM_UP_REQUESTS = 2000;
+	private static final int MEASURED_REQUESTS = 1000;
+	private static final int APK_BYTES = 64 * 1024;
+	// Chrome on a phone with Android 10
+	private static final String USER_AGENT = "Mozilla/5.0 (Linux; " +
+			"Android 10; Pixel 3) AppleWebKit/537.36 (KHTML, like Gecko) " +
+			"Chrome/90.0.4430.91 Mobile Safari/537.36";
+
+	// Held, so the level isn't lost when the logger is collected
+	private static Logger serverLogger;
+	private static WebServer server;
+
+	@BeforeClass
+	public static void setUpClass() throws IOException {
+		// Log output isn't part of the budget and would flood the build
+		serverLogger =
+				Logger.getLogger(WebServer.class.getPackage().getName());
+		serverLogger.setLevel(WARNING);
+
+		File assetDir = new File(System.getProperty(ASSETS_PROPERTY));
+		byte[] apk = new byte[APK_BYTES];
+		ServedFile apkFile = new ServedFile() {
+			@Override
+			public long getLength() {
+				return apk.length;
+			}
+
+			@Override
+			public InputStream open() {
+				return new ByteArrayInputStream(apk);
+			}
+		};
+		List<Variant> variants =
+				Collections.singletonList(ApkCatalog.createUniversal(apkFile));
+		DownloadCounter counter = new DownloadCounter();
+		server = new WebServer(
+				name -> new FileInputStream(new File(assetDir, name)),
+				new EnglishPageStrings(), "budget", new ApkCatalog(variants),
+				new UnlimitedServing(), new ConnectionGuard(counter),
+				new ServedInterfaces(true), counter);
+	}
+
+	@Test
+	public void testPageIsWithinBudget() throws IOException {
+		check("/", "hotspot.pageAllocationMaxBytes");
+	}
+
+	@Test
+	public void testApkIsWithinBudget() throws IOException {
+		check("/app.apk", "hotspot.apkAllocationMaxBytes");
+	}
+
+	@Test
+	public void testNotFoundIsWithinBudget() throws IOException {
+		check("/favicon.ico", "hotspot.notFoundAllocationMaxBytes");
+	}
+
+	private void check(String uri, String budgetProperty) throws IOException {
+		assumeTrue("This JVM can't count allocated bytes",
+				ManagementFactory.getThreadMXBean() instanceof ThreadMXBean);
+		ThreadMXBean threads =
+				(ThreadMXBean) ManagementFactory.getThreadMXBean();
+		threads.setThreadAllocatedMemoryEnabled(true);
+		long maxBytes = Long.parseLong(System.getProperty(budgetProperty));
+
+		Request request = new Request(uri);
+		for (int i = 0; i < WARM_UP_REQUESTS; i++) serve(request);
+		long thread = Thread.currentThread().getId();
+		long before = threads.getThreadAllocatedBytes(thread);
+		for (int i = 0; i < MEASURED_REQUESTS; i++) serve(request);
+		long after = threads.getThreadAllocatedBytes(thread);
+		long bytes = (after - before) / MEASURED_REQUESTS;
+		assertTrue(uri + ": " + bytes + " bytes per request, the budget is " +
+				maxBytes + " bytes", bytes <= maxBytes);
+	}
+
+	private void serve(IHTTPSession request) throws IOException {
+		Response res = server.serve(request);
+		if (res.getStatus() != Response.Status.OK &&
+				res.getStatus() != Response.Status.NOT_FOUND) {
+			throw new IOException("Unexpected response " + res.getStatus());
+		}
+		// Finishes the transfer of the APK
+		res.close();
+	}
+
+	/**
+	 * A GET request from a phone, without a body.
+	 */
+	private static class Request implements IHTTPSession {
+
+		private final String uri;
+		private final Map<String, String> headers = new HashMap<>();
+
+		private Request(String uri) {
+			this.uri = uri;
+			headers.put("user-agent", USER_AGENT);
+			headers.put("sec-ch-dpr", "2.75");
+		}
+
+		@Override
+		public void execute() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public CookieHandler getCookies() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public Map<String, String> getHeaders() {
+			return headers;
+		}
+
+		@Override
+		public InputStream getInputStream() {
+			return new ByteArrayInputStream(new byte[0]);
+		}
+
+		@Override
+		public Method getMethod() {
+			return Method.GET;
+		}
+
+		@Override
+		@Deprecated
+		public Map<String, String> getParms() {
+			return Collections.emptyMap();
+		}
+
+		@Override
+		public Map<String, List<String>> getParameters() {
+			return Collections.emptyMap();
+		}
+
+		@Override
+		public String getQueryParameterString() {
+			return "";
+		}
+
+		@Override
+		public String getUri() {
+			return uri;
+		}
+
+		@Override
+		public void parseBody(Map<String, String> files) {
+		}
+
+		@Override
+		public String getRemoteIpAddress() {
+			return "192.168.49.2";
+		}
+
+		@Override
+		public String getRemoteHostName() {
+			return "localhost";
+		}
+	}
+
+}
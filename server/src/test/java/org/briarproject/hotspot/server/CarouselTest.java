@@ -0,0 +1,98 @@
+package org.briarproject.hotspot.server;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MulticastSocket;
+import java.net.SocketException;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Sends a file from a {@link CarouselSender} to a {@link CarouselReceiver}
+ * over loopback multicast. The packets pass through a relay that drops some
+ * of them, so the receiver needs to recover shards from parity shards and
+ * later rounds.
+ */
+public class CarouselTest {
+
+	private static final String SENDER_GROUP = "239.255.42.100";
+	private static final String RECEIVER_GROUP = "239.255.42.101";
+	private static final int SENDER_PORT = 19998;
+	private static final int RECEIVER_PORT = 19999;
+	private static final int PACKETS_PER_SECOND = 5000;
+	private static final long TIMEOUT_MILLIS = 10_000;
+	private static final double LOSS = 0.3;
+
+	private final Random random = new Random();
+
+	private CarouselSender sender;
+	private MulticastSocket relaySocket;
+	private Thread relay;
+
+	@Before
+	public void setUp() throws IOException {
+		InetSocketAddress senderGroup = new InetSocketAddress(
+				InetAddress.getByName(SENDER_GROUP), SENDER_PORT);
+		InetAddress receiverGroup = InetAddress.getByName(RECEIVER_GROUP);
+		relaySocket = new MulticastSocket(SENDER_PORT);
+		relaySocket.joinGroup(senderGroup, null);
+		relay = new Thread(() -> relay(receiverGroup), "CarouselRelay");
+		relay.start();
+	}
+
+	@After
+	public void tearDown() throws InterruptedException {
+		if (sender != null) sender.stop();
+		relaySocket.close();
+		relay.join();
+	}
+
+	@Test
+	public void testReceivesFileDespiteLoss() throws IOException {
+		// Several blocks, the last of them padded
+		byte[] file = new byte[200_000];
+		random.nextBytes(file);
+		sender = new CarouselSender(file, InetAddress.getByName(SENDER_GROUP),
+				SENDER_PORT, null, PACKETS_PER_SECOND);
+		sender.start();
+
+		CarouselReceiver receiver = new CarouselReceiver(
+				InetAddress.getByName(RECEIVER_GROUP), RECEIVER_PORT, null,
+				null);
+		byte[] received = receiver.receive(TIMEOUT_MILLIS);
+		assertNotNull(received);
+		assertArrayEquals(file, received);
+	}
+
+	/**
+	 * Forwards the sender's packets to the receiver's group, dropping
+	 * {@link #LOSS} of them.
+	 */
+	private void relay(InetAddress receiverGroup) {
+		byte[] buf = new byte[65536];
+		DatagramPacket packet = new DatagramPacket(buf, buf.length);
+		try {
+			while (true) {
+				packet.setLength(buf.length);
+				relaySocket.receive(packet);
+				if (random.nextDouble() < LOSS) continue;
+				packet.setAddress(receiverGroup);
+				packet.setPort(RECEIVER_PORT);
+				relaySocket.send(packet);
+			}
+		} catch (SocketException e) {
+			// Closed by tearDown()
+		} catch (IOException e) {
+			throw new AssertionError(e);
+		}
+	}
+
+}
@@ -0,0 +1,233 @@
+package org.briarproject.hotspot.server;
+
+import org.briarproject.hotspot.server.DesktopServer.DownloadCounter;
+import org.briarproject.hotspot.server.DesktopServer.EnglishPageStrings;
+import org.briarproject.hotspot.server.DesktopServer.UnlimitedServing;
+import org.briarproject.hotspot.server.WebServer.TransferListener;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+import androidx.annotation.Nullable;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Requests each route of the {@link WebServer} over loopback. The page is
+ * read from the assets dir named by the system property
+ * {@value #ASSETS_PROPERTY}, see server/build.gradle.
+ */
+public class WebServerTest {
+
+	static final String ASSETS_PROPERTY = "hotspot.assets";
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final byte[] apk = new byte[100_000];
+	private final RecordingListener listener = new RecordingListener();
+
+	private WebServer server;
+	private ConnectionGuard guard;
+	private ServedInterfaces interfaces;
+	private int port;
+
+	@Before
+	public void setUp() throws IOException {
+		new Random().nextBytes(apk);
+		File assetDir = new File(System.getProperty(ASSETS_PROPERTY));
+		ServedFile apkFile = new ServedFile() {
+			@Override
+			public long getLength() {
+				return apk.length;
+			}
+
+			@Override
+			public InputStream open() {
+				return new ByteArrayInputStream(apk);
+			}
+		};
+		guard = new ConnectionGuard(new DownloadCounter());
+		interfaces = new ServedInterfaces(true);
+		server = new WebServer(
+				name -> new FileInputStream(new File(assetDir, name)),
+				new EnglishPageStrings(), "test",
+				new ApkCatalog(Collections.singletonList(
+						ApkCatalog.createUniversal(apkFile))),
+				new UnlimitedServing(), guard, interfaces, listener);
+		guard.start();
+		server.start();
+		port = server.getListeningPort();
+	}
+
+	@After
+	public void tearDown() {
+		server.stop();
+		guard.stop();
+	}
+
+	@Test
+	public void testServesPage() throws IOException {
+		HttpURLConnection c = open("/");
+		assertEquals(200, c.getResponseCode());
+		assertTrue(c.getContentType().startsWith("text/html"));
+		String html = new String(read(c), UTF_8);
+		assertTrue(html.contains("Download Offline Hotspot test"));
+		assertTrue(html.contains("http://127.0.0.1:" + port));
+		// There is no share page yet
+		assertFalse(html.contains("id=\"share_link\""));
+	}
+
+	@Test
+	public void testServesApk() throws Exception {
+		HttpURLConnection c = open("/app.apk");
+		assertEquals(200, c.getResponseCode());
+		assertEquals("application/vnd.android.package-archive",
+				c.getContentType());
+		assertArrayEquals(apk, read(c));
+		assertTrue(listener.transferFinished.await(5, SECONDS));
+		assertTrue(listener.transferComplete);
+	}
+
+	@Test
+	public void testServesNotFound() throws IOException {
+		assertEquals(404, open("/favicon.ico").getResponseCode());
+		assertEquals(404, open("/apps/missing.apk").getResponseCode());
+		assertEquals(404, open("/apps/missing.webp").getResponseCode());
+	}
+
+	@Test
+	public void testServesSharePage() throws IOException {
+		// Clients on loopback count as clients of the access point now
+		interfaces.setAccessPointAddress(InetAddress.getByName("127.0.0.1"));
+		assertEquals(404, open("/share").getResponseCode());
+
+		server.setSharePage(createSharePage());
+		HttpURLConnection c = open("/share");
+		assertEquals(200, c.getResponseCode());
+		assertEquals("no-cache", c.getHeaderField("Cache-Control"));
+		String html = new String(read(c), UTF_8);
+		assertTrue(html.contains("Name: DIRECT-ab-Hotspot"));
+		assertTrue(html.contains("Password: secret"));
+		assertTrue(html.contains("http://192.168.49.1:9999"));
+		// The page links to the share page now
+		html = new String(read(open("/")), UTF_8);
+		assertTrue(html.contains("id=\"share_link\""));
+
+		server.setSharePage(null);
+		assertEquals(404, open("/share").getResponseCode());
+	}
+
+	@Test
+	public void testRefusesSharePageOffAccessPoint() throws IOException {
+		// Clients on loopback are served like those on a shared LAN
+		server.setSharePage(createSharePage());
+		assertEquals(404, open("/share").getResponseCode());
+		String html = new String(read(open("/")), UTF_8);
+		assertFalse(html.contains("id=\"share_link\""));
+	}
+
+	@Test
+	public void testServesSpeedTest() throws Exception {
+		HttpURLConnection c = open("/speedtest/download?bytes=100000");
+		assertEquals(200, c.getResponseCode());
+		assertEquals(100_000, read(c).length);
+		assertEquals(400,
+				open("/speedtest/download?bytes=-1").getResponseCode());
+
+		c = open("/speedtest/upload");
+		c.setRequestMethod("POST");
+		c.setDoOutput(true);
+		c.setFixedLengthStreamingMode(50_000);
+		try (OutputStream out = c.getOutputStream()) {
+			out.write(new byte[50_000]);
+		}
+		assertEquals(204, c.getResponseCode());
+
+		c = open("/speedtest/result?down=1000&up=2000&rtt=3");
+		assertEquals(204, c.getResponseCode());
+		assertTrue(listener.linkMeasured.await(5, SECONDS));
+		LinkQuality quality = listener.linkQuality;
+		assertNotNull(quality);
+		assertEquals(1000, quality.downBytesPerSecond);
+		assertEquals(2000, quality.upBytesPerSecond);
+		assertEquals(3, quality.rttMillis);
+		assertEquals(400,
+				open("/speedtest/result?down=1000").getResponseCode());
+		assertEquals(404, open("/speedtest/other").getResponseCode());
+	}
+
+	private static SharePage createSharePage() {
+		return new SharePage("DIRECT-ab-Hotspot", "secret", "<svg></svg>",
+				"http://192.168.49.1:9999", "<svg></svg>");
+	}
+
+	private HttpURLConnection open(String path) throws IOException {
+		URL url = new URL("http://127.0.0.1:" + port + path);
+		HttpURLConnection c = (HttpURLConnection) url.openConnection();
+		c.setConnectTimeout(5000);
+		c.setReadTimeout(5000);
+		return c;
+	}
+
+	private static byte[] read(HttpURLConnection c) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (InputStream in = c.getInputStream()) {
+			byte[] buf = new byte[4096];
+			int read;
+			while ((read = in.read(buf)) != -1) out.write(buf, 0, read);
+		}
+		return out.toByteArray();
+	}
+
+	private static class RecordingListener implements TransferListener {
+
+		private final CountDownLatch transferFinished = new CountDownLatch(1);
+		private final CountDownLatch linkMeasured = new CountDownLatch(1);
+		private volatile boolean transferComplete = false;
+		@Nullable
+		private volatile LinkQuality linkQuality = null;
+
+		@Override
+		public void onActiveTransfersChanged(int active) {
+		}
+
+		@Override
+		public void onTransferStarted(String client, String variant,
+				long length) {
+		}
+
+		@Override
+		public void onTransferFinished(String client, String variant,
+				long bytes, long durationMillis, boolean complete) {
+			transferComplete = complete;
+			transferFinished.countDown();
+		}
+
+		@Override
+		public void onLinkMeasured(String client, LinkQuality quality) {
+			linkQuality = quality;
+			linkMeasured.countDown();
+		}
+	}
+
+}